@@ -0,0 +1,181 @@
+package com.example.android.inventory_project;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.database.MatrixCursor;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.Build;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.view.ContextThemeWrapper;
+import android.widget.FrameLayout;
+
+import com.example.android.inventory_project.data.PhotoStore;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static com.example.android.inventory_project.data.InventoryContract.InventoryEntry;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Binds the rows of {@link InventoryCursorAdapter} to view holders that showed other rows
+ * before, the way the list rebinds them while scrolling back, and fails if that allocates:
+ * the texts come from the TextCaches of the adapter and the photos from the memory cache of
+ * the {@link ImageLoader}, so none of it should.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BindAllocationTest {
+
+    // A screen of rows, each with a photo of its own
+    private static final int ROWS = 20;
+    private static final int WARMUP_PASSES = 500;
+    private static final int PASSES = 100;
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    private Instrumentation mInstrumentation;
+    private Context mContext;
+    private String[] mPhotos;
+
+    @Before
+    public void setUp() throws IOException {
+        mInstrumentation = InstrumentationRegistry.getInstrumentation();
+        mContext = mInstrumentation.getTargetContext();
+        mPhotos = createPhotos();
+    }
+
+    @After
+    public void tearDown() {
+        File directory = PhotoStore.getDirectory(mContext);
+        for (String photo : mPhotos) {
+            PhotoStore.getFile(directory, photo).delete();
+        }
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void rebindShownRows_allocatesNothing() {
+        // ImageView.setImageBitmap() makes a new drawable for every bitmap before Lollipop
+        assumeTrue(Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP);
+
+        final InventoryCursorAdapter.ViewHolder[] holders = new InventoryCursorAdapter.ViewHolder[ROWS];
+        final InventoryCursorAdapter[] adapter = new InventoryCursorAdapter[1];
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                ImageLoader loader = ImageLoader.getInstance(mContext,
+                        mContext.getResources().getDimensionPixelSize(R.dimen.list_photo_size));
+                adapter[0] = new InventoryCursorAdapter(new NoActions(), loader);
+                adapter[0].swapCursor(createCursor());
+                FrameLayout parent = new FrameLayout(new ContextThemeWrapper(mContext, R.style.AppTheme));
+                for (int i = 0; i < ROWS; i++) {
+                    holders[i] = adapter[0].onCreateViewHolder(parent, 0);
+                    adapter[0].onBindViewHolder(holders[i], i);
+                }
+            }
+        });
+        waitForPhotos(holders);
+
+        final int[] allocations = new int[1];
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                // Warm up, so the passes measured don't run in the interpreter
+                rebind(adapter[0], holders, WARMUP_PASSES);
+
+                Debug.resetThreadAllocCount();
+                Debug.startAllocCounting();
+                rebind(adapter[0], holders, PASSES);
+                Debug.stopAllocCounting();
+                allocations[0] = Debug.getThreadAllocCount();
+            }
+        });
+
+        assertEquals("Objects allocated by " + PASSES * ROWS + " binds", 0, allocations[0]);
+    }
+
+    // Bind every holder to another row than before in each pass, so no bind is skipped for
+    // showing the same photo
+    private static void rebind(InventoryCursorAdapter adapter, InventoryCursorAdapter.ViewHolder[] holders,
+                               int passes) {
+        for (int pass = 1; pass <= passes; pass++) {
+            for (int i = 0; i < holders.length; i++) {
+                adapter.onBindViewHolder(holders[i], (i + pass) % ROWS);
+            }
+        }
+    }
+
+    // Wait until every photo was loaded into its view, and so into the memory cache
+    private void waitForPhotos(final InventoryCursorAdapter.ViewHolder[] holders) {
+        long deadline = SystemClock.uptimeMillis() + TIMEOUT_MILLIS;
+        final boolean[] loaded = new boolean[1];
+        while (!loaded[0] && SystemClock.uptimeMillis() < deadline) {
+            SystemClock.sleep(20);
+            mInstrumentation.runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    loaded[0] = true;
+                    for (InventoryCursorAdapter.ViewHolder holder : holders) {
+                        // The loader keeps the request of a view in its tag until it's done
+                        loaded[0] &= holder.photoView.getTag() == null;
+                    }
+                }
+            });
+        }
+        assertTrue("The photos weren't loaded in " + TIMEOUT_MILLIS + "ms", loaded[0]);
+    }
+
+    private MatrixCursor createCursor() {
+        MatrixCursor cursor = new MatrixCursor(new String[]{InventoryEntry._ID,
+                InventoryEntry.COLUMN_PRODUCT_NAME, InventoryEntry.COLUMN_PRODUCT_PRICE,
+                InventoryEntry.COLUMN_PRODUCT_QUANTITY, InventoryEntry.COLUMN_PHOTO}, ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            cursor.addRow(new Object[]{i + 1, "Item " + i, 199 + i * 1250, i * 7, mPhotos[i]});
+        }
+        return cursor;
+    }
+
+    // Small photos, the test is about the bind and not the decode
+    private String[] createPhotos() throws IOException {
+        File directory = PhotoStore.getDirectory(mContext);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        Bitmap bitmap = Bitmap.createBitmap(400, 300, Bitmap.Config.ARGB_8888);
+        String[] photos = new String[ROWS];
+        long run = System.currentTimeMillis();
+        try {
+            for (int i = 0; i < ROWS; i++) {
+                photos[i] = "bind-allocation-" + run + "-" + i + ".jpg";
+                bitmap.eraseColor(Color.HSVToColor(new float[]{i * 360f / ROWS, 0.6f, 0.8f}));
+                try (FileOutputStream out = new FileOutputStream(PhotoStore.getFile(directory, photos[i]))) {
+                    bitmap.compress(Bitmap.CompressFormat.JPEG, 90, out);
+                }
+            }
+        } finally {
+            bitmap.recycle();
+        }
+        return photos;
+    }
+
+    private static final class NoActions implements InventoryCursorAdapter.OnItemActionListener {
+        @Override
+        public void onItemClick(long id) {
+        }
+
+        @Override
+        public void onSaleClick(long id) {
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.android.inventory_project;
+
+import android.app.Activity;
+import android.app.Instrumentation;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static com.example.android.inventory_project.data.InventoryContract.InventoryEntry;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Scrolls the catalog through 10k items without photos at the speed of a brisk fling, so
+ * what is measured is the list itself: the RecyclerView, the binds of the adapter and the
+ * pages of the CatalogPager. Fails if too many frames are late, or, in a second scroll that
+ * counts allocations, if the main thread allocates more than MAX_ALLOCATIONS_PER_FRAME
+ * objects per frame. Run it on its own, on a device rather than an emulator:
+ * <pre>
+ *   ./gradlew connectedAndroidTest \
+ *       -Pandroid.testInstrumentationRunnerArguments.class=com.example.android.inventory_project.CatalogScrollBenchmarkTest
+ * </pre>
+ * The items are added to the app for the run and deleted afterwards.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CatalogScrollBenchmarkTest {
+
+    private static final String LOG_TAG = CatalogScrollBenchmarkTest.class.getSimpleName();
+
+    private static final int ITEMS = 10000;
+    private static final String NAME_PREFIX = "List benchmark ";
+
+    // Speed of the scroll, in dp per second
+    private static final int SCROLL_SPEED_DP = 4000;
+    // A frame is janky if it took longer than this many refresh intervals
+    private static final float JANK_INTERVALS = 1.5f;
+    private static final double MAX_JANK_FRACTION = 0.02;
+    // Rebinding a row allocates nothing, see BindAllocationTest. What's left is binding rows
+    // never shown before, whose name, price and quantity are new, and the cursors and diffs
+    // of the pages loaded along the way, spread over the frames between them.
+    private static final double MAX_ALLOCATIONS_PER_FRAME = 100;
+    private static final long TIMEOUT_MILLIS = 5 * 60 * 1000;
+
+    private Instrumentation mInstrumentation;
+    private Context mContext;
+    // _ID of the last item added, the end of the scroll
+    private long mLastItemId;
+
+    @Before
+    public void setUp() {
+        mInstrumentation = InstrumentationRegistry.getInstrumentation();
+        mContext = mInstrumentation.getTargetContext();
+        deleteItems();
+
+        ContentValues[] items = new ContentValues[ITEMS];
+        for (int i = 0; i < ITEMS; i++) {
+            items[i] = new ContentValues();
+            items[i].put(InventoryEntry.COLUMN_PRODUCT_NAME, NAME_PREFIX + i);
+            items[i].put(InventoryEntry.COLUMN_PRODUCT_PRICE, 100 + i);
+            items[i].put(InventoryEntry.COLUMN_PRODUCT_QUANTITY, i % 50);
+            items[i].put(InventoryEntry.COLUMN_SUPPLIER_NAME, "Benchmark Supplies");
+        }
+        ContentResolver resolver = mContext.getContentResolver();
+        resolver.bulkInsert(InventoryEntry.CONTENT_URI, items);
+        Cursor cursor = resolver.query(InventoryEntry.CONTENT_URI, new String[]{InventoryEntry._ID},
+                InventoryEntry.COLUMN_PRODUCT_NAME + " = ?", new String[]{NAME_PREFIX + (ITEMS - 1)}, null);
+        try {
+            assertTrue("The items weren't added", cursor != null && cursor.moveToFirst());
+            mLastItemId = cursor.getLong(0);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    @After
+    public void tearDown() {
+        deleteItems();
+    }
+
+    @Test
+    public void scroll_withinJankBudget() throws InterruptedException {
+        ScrollDriver driver = scroll(false);
+        assertTrue("Too many janky frames: " + driver.report(),
+                driver.getJankyFrames() <= driver.getFrames() * MAX_JANK_FRACTION);
+    }
+
+    @Test
+    public void scroll_withinAllocationBudget() throws InterruptedException {
+        ScrollDriver driver = scroll(true);
+        assertTrue("Too many allocations: " + driver.report(),
+                driver.getAllocationsPerFrame() <= MAX_ALLOCATIONS_PER_FRAME);
+    }
+
+    // Opens the catalog and scrolls it from the top to the last item added
+    private ScrollDriver scroll(boolean countAllocations) throws InterruptedException {
+        Intent intent = new Intent(Intent.ACTION_MAIN)
+                .setClassName(mContext, CatalogActivity.class.getName())
+                .addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        Activity activity = mInstrumentation.startActivitySync(intent);
+        try {
+            RecyclerView list = activity.findViewById(R.id.list_view_item);
+            ScrollDriver.waitForRows(mInstrumentation, list, TIMEOUT_MILLIS);
+            float refreshRate = activity.getWindowManager().getDefaultDisplay().getRefreshRate();
+            float density = activity.getResources().getDisplayMetrics().density;
+
+            final ScrollDriver driver = new ScrollDriver(list, mLastItemId,
+                    Math.max(1, Math.round(SCROLL_SPEED_DP * density / refreshRate)),
+                    (long) (1e9 / refreshRate * JANK_INTERVALS), countAllocations);
+            mInstrumentation.runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    driver.start();
+                }
+            });
+            assertTrue("The scroll didn't reach the end in " + TIMEOUT_MILLIS + "ms",
+                    driver.await(TIMEOUT_MILLIS));
+            Log.i(LOG_TAG, driver.report());
+            return driver;
+        } finally {
+            activity.finish();
+        }
+    }
+
+    private void deleteItems() {
+        ContentResolver resolver = mContext.getContentResolver();
+        resolver.delete(InventoryEntry.CONTENT_URI, InventoryEntry.COLUMN_PRODUCT_NAME + " LIKE ?",
+                new String[]{NAME_PREFIX + "%"});
+    }
+}
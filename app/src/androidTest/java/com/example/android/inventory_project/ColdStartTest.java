@@ -0,0 +1,63 @@
+package com.example.android.inventory_project;
+
+import android.app.Activity;
+import android.app.Instrumentation;
+import android.content.Intent;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.inventory_project.data.StartupTimeline;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Launches the catalog and fails if its first data takes longer than
+ * {@link StartupTimeline#FIRST_DATA_BUDGET_MILLIS}. The timeline records each phase once per
+ * process, so the launch only counts as a cold start in a process no other test opened the
+ * catalog in; the test fails if the first data it finds was recorded before its launch. The
+ * Android Test Orchestrator runs every test in a process of its own, see app/build.gradle.
+ * For a meaningful number, run it on its own:
+ * <pre>
+ *   ./gradlew connectedAndroidTest \
+ *       -Pandroid.testInstrumentationRunnerArguments.class=com.example.android.inventory_project.ColdStartTest
+ * </pre>
+ */
+@RunWith(AndroidJUnit4.class)
+public class ColdStartTest {
+
+    // Longest to wait for the first data before failing without a timeline
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    @Test
+    public void firstData_withinBudget() {
+        Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+        Intent intent = new Intent(Intent.ACTION_MAIN)
+                .setClassName(instrumentation.getTargetContext(), CatalogActivity.class.getName())
+                .addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        long launchNanos = System.nanoTime();
+        Activity activity = instrumentation.startActivitySync(intent);
+        try {
+            StartupTimeline timeline = StartupTimeline.get();
+            long deadline = SystemClock.uptimeMillis() + TIMEOUT_MILLIS;
+            while (!timeline.has(StartupTimeline.PHASE_FIRST_DATA) && SystemClock.uptimeMillis() < deadline) {
+                SystemClock.sleep(10);
+            }
+
+            assertTrue("No data after " + TIMEOUT_MILLIS + "ms:\n" + timeline.format(),
+                    timeline.has(StartupTimeline.PHASE_FIRST_DATA));
+            assertTrue("The first data was recorded before this launch, not a cold start:\n" + timeline.format(),
+                    timeline.getStartNanos(StartupTimeline.PHASE_FIRST_DATA) >= launchNanos);
+            assertFalse("First data took " + timeline.getDurationNanos(StartupTimeline.PHASE_FIRST_DATA) / 1000000 +
+                            "ms, over the budget of " + StartupTimeline.FIRST_DATA_BUDGET_MILLIS + "ms:\n" +
+                            timeline.format(),
+                    timeline.isOverBudget());
+        } finally {
+            activity.finish();
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.example.android.inventory_project;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.text.TextUtils;
+
+import com.example.android.inventory_project.data.InventoryDbHelper;
+import com.example.android.inventory_project.data.InventorySql;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.example.android.inventory_project.data.InventoryContract.SyncEntry;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Upgrades a version 1 database of 100k items through every migration of
+ * {@link InventoryDbHelper} and checks that no item is lost, that the tables the migrations
+ * fill agree with the items, that the queries of the app use their indexes, and that the
+ * schema is the same as the one of a new database. Also checks that the copy of the schema in
+ * {@link InventorySql}, which the benchmark module creates its databases from, is still the
+ * one the migrations build.
+ * <p>
+ * Runs in the context of the test package, so the database of the app is left alone.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DatabaseUpgradeTest {
+
+    private static final String DATABASE_NAME = "inventory.db";
+    private static final int ITEMS = 100000;
+    private static final int SUPPLIERS = 100;
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getContext();
+        mContext.deleteDatabase(DATABASE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        mContext.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void upgradeFromVersion1_keepsItemsAndIndexes() {
+        createVersion1();
+
+        InventoryDbHelper helper = new InventoryDbHelper(mContext);
+        List<String> upgradedSchema;
+        try {
+            SQLiteDatabase db = helper.getWritableDatabase();
+
+            assertEquals(ITEMS, count(db, "SELECT COUNT(*) FROM inventory"));
+            // Version 3 indexed the names of every existing item
+            assertEquals(ITEMS, count(db, "SELECT COUNT(*) FROM inventory_fts"));
+            assertEquals(1, count(db, "SELECT COUNT(*) FROM inventory_fts WHERE inventory_fts MATCH 'item99999'"));
+            // Version 5 filled the totals from the items, which version 9 moved to cents
+            assertEquals(ITEMS, count(db, "SELECT itemCount FROM inventory_totals"));
+            assertEquals(count(db, "SELECT SUM(quantity) FROM inventory"),
+                    count(db, "SELECT totalUnits FROM inventory_totals"));
+            assertEquals(count(db, "SELECT SUM(price * quantity) FROM inventory"),
+                    count(db, "SELECT totalValue FROM inventory_totals"));
+            assertEquals(count(db, "SELECT COUNT(*) FROM inventory WHERE quantity < reorderLevel"),
+                    count(db, "SELECT lowStockCount FROM inventory_totals"));
+            assertEquals(100 * 50, count(db, "SELECT price FROM inventory WHERE _id = 50"));
+            // Version 11 marked every item as changed, in _ID order
+            assertEquals(ITEMS, count(db, "SELECT COUNT(DISTINCT syncId) FROM inventory"));
+            assertEquals(0, count(db, "SELECT COUNT(*) FROM inventory WHERE changeSeq <> _id"));
+            assertEquals(ITEMS, count(db, "SELECT lastSeq FROM sync_state"));
+            // Version 13 numbers a sale after the last change, in the sale itself, and leaves
+            // the counter of version 11 as it was
+            db.execSQL(InventorySql.SQL_SELL_ITEM, new Object[]{1, 1, 1});
+            assertEquals(ITEMS + 1, count(db, "SELECT changeSeq FROM inventory WHERE _id = 1"));
+            assertEquals(ITEMS, count(db, "SELECT lastSeq FROM sync_state"));
+
+            assertPlanUses(db, "SELECT _id FROM inventory WHERE name = 'item7'", "inventory_name_idx");
+            assertPlanUses(db, "SELECT _id FROM inventory WHERE quantity < 5", "inventory_quantity_idx");
+            assertPlanUses(db, "SELECT _id FROM inventory WHERE sku = 'x'", "inventory_sku_idx");
+            assertPlanUses(db, "SELECT _id FROM inventory WHERE barcode = 'x'", "inventory_barcode_idx");
+            assertPlanUses(db, "SELECT suppName, SUM(quantity), SUM(price * quantity), " +
+                    "SUM(quantity < reorderLevel) FROM inventory GROUP BY suppName", "inventory_supplier_reorder_idx");
+            assertPlanUses(db, "SELECT _id FROM inventory WHERE changeSeq > 0 ORDER BY changeSeq",
+                    "inventory_change_idx");
+            assertPlanUses(db, "SELECT _id FROM sales WHERE itemId = 1 AND ts >= 0 ORDER BY ts",
+                    "sales_item_ts_idx");
+            assertPlanUses(db, "SELECT itemId, quantity FROM stock WHERE locationId = 1 ORDER BY itemId",
+                    "stock_location_stock_idx");
+
+            upgradedSchema = schema(db);
+        } finally {
+            helper.close();
+        }
+
+        mContext.deleteDatabase(DATABASE_NAME);
+        helper = new InventoryDbHelper(mContext);
+        try {
+            assertEquals(upgradedSchema, schema(helper.getReadableDatabase()));
+        } finally {
+            helper.close();
+        }
+    }
+
+    @Test
+    public void newDatabase_matchesInventorySql() {
+        InventoryDbHelper helper = new InventoryDbHelper(mContext);
+        List<String> schema;
+        try {
+            schema = schema(helper.getReadableDatabase());
+        } finally {
+            helper.close();
+        }
+
+        SQLiteDatabase copy = SQLiteDatabase.create(null);
+        try {
+            for (String sql : InventorySql.SCHEMA) {
+                copy.execSQL(sql);
+            }
+            assertEquals("InventorySql.SCHEMA differs from the migrations of InventoryDbHelper",
+                    schema, schema(copy));
+        } finally {
+            copy.close();
+        }
+        assertEquals(TextUtils.join(", ", SyncEntry.COLUMNS), InventorySql.SYNC_COLUMNS);
+    }
+
+    // The database as the first release of the app left it, with prices in whole units
+    private void createVersion1() {
+        SQLiteDatabase db = mContext.openOrCreateDatabase(DATABASE_NAME, Context.MODE_PRIVATE, null);
+        try {
+            db.execSQL(InventoryDbHelper.SQL_CREATE_INVENTORY_TABLE);
+            SQLiteStatement insert = db.compileStatement(
+                    "INSERT INTO inventory (name, price, quantity, suppName, suppPhone) VALUES (?, ?, ?, ?, ?)");
+            db.beginTransaction();
+            try {
+                for (int i = 1; i <= ITEMS; i++) {
+                    insert.bindString(1, "item" + i);
+                    insert.bindLong(2, i);
+                    insert.bindLong(3, i % 20);
+                    insert.bindString(4, "supplier" + i % SUPPLIERS);
+                    insert.bindLong(5, 5550000 + i % SUPPLIERS);
+                    insert.executeInsert();
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            db.setVersion(1);
+        } finally {
+            db.close();
+        }
+    }
+
+    private static long count(SQLiteDatabase db, String sql) {
+        return DatabaseUtils.longForQuery(db, sql, null);
+    }
+
+    private static void assertPlanUses(SQLiteDatabase db, String sql, String index) {
+        StringBuilder plan = new StringBuilder();
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, null);
+        try {
+            int detail = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(detail)).append('\n');
+            }
+        } finally {
+            cursor.close();
+        }
+        assertTrue(sql + " does not use " + index + ":\n" + plan, plan.toString().contains(index));
+    }
+
+    // Every table, index and trigger, with the SQL that created it
+    private static List<String> schema(SQLiteDatabase db) {
+        List<String> schema = new ArrayList<>();
+        Cursor cursor = db.rawQuery("SELECT type, name, sql FROM sqlite_master " +
+                "WHERE name NOT LIKE 'sqlite_%' AND name <> 'android_metadata' ORDER BY type, name", null);
+        try {
+            while (cursor.moveToNext()) {
+                schema.add(cursor.getString(0) + " " + cursor.getString(1) + ": " + cursor.getString(2));
+            }
+        } finally {
+            cursor.close();
+        }
+        return schema;
+    }
+}
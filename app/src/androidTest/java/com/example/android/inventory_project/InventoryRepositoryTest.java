@@ -0,0 +1,205 @@
+package com.example.android.inventory_project;
+
+import android.app.Instrumentation;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Looper;
+import android.os.StrictMode;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.inventory_project.data.InventoryRepository;
+import com.example.android.inventory_project.data.PhotoStore;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.example.android.inventory_project.data.InventoryContract.EXTRA_SOLD;
+import static com.example.android.inventory_project.data.InventoryContract.InventoryEntry;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives every write of {@link InventoryRepository} from the main thread, with a StrictMode
+ * policy on the main thread that kills the process on any disk read or write. The test only
+ * gets to its assertions if every write ran on the writer thread, and the results all came
+ * back on the main thread. Also checks that the provider refuses a write made on the main
+ * thread, in release builds too.
+ */
+@RunWith(AndroidJUnit4.class)
+public class InventoryRepositoryTest {
+
+    private static final String NAME = "Repository test item";
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    private Instrumentation mInstrumentation;
+    private Context mContext;
+    private InventoryRepository mRepository;
+    private File mImage;
+    private StrictMode.ThreadPolicy mOldPolicy;
+
+    // Written on the main thread, read by the test once the writes are done
+    private final List<String> mFailures = new ArrayList<>();
+    private final CountDownLatch mDone = new CountDownLatch(1);
+    private String mPhoto;
+
+    @Before
+    public void setUp() throws IOException {
+        mInstrumentation = InstrumentationRegistry.getInstrumentation();
+        mContext = mInstrumentation.getTargetContext();
+        // Reads the photo directory, so before the policy is on
+        mRepository = InventoryRepository.getInstance(mContext);
+        mImage = new File(mContext.getCacheDir(), "repository-test.jpg");
+        try (FileOutputStream out = new FileOutputStream(mImage)) {
+            out.write(new byte[1024]);
+        }
+
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mOldPolicy = StrictMode.getThreadPolicy();
+                StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                        .detectDiskReads()
+                        .detectDiskWrites()
+                        .penaltyLog()
+                        .penaltyDeath()
+                        .build());
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                StrictMode.setThreadPolicy(mOldPolicy);
+            }
+        });
+        mImage.delete();
+        mContext.getContentResolver().delete(InventoryEntry.CONTENT_URI,
+                InventoryEntry.COLUMN_PRODUCT_NAME + " = ?", new String[]{NAME});
+    }
+
+    @Test
+    public void writes_runOffMainThread() throws InterruptedException {
+        // Each write is made from the callback of the one before, on the main thread
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                ContentValues values = new ContentValues();
+                values.put(InventoryEntry.COLUMN_PRODUCT_NAME, NAME);
+                values.put(InventoryEntry.COLUMN_PRODUCT_PRICE, 1999);
+                values.put(InventoryEntry.COLUMN_PRODUCT_QUANTITY, 5);
+                values.put(InventoryEntry.COLUMN_SUPPLIER_NAME, "Test Supplies");
+                mRepository.insert(values, new InventoryRepository.Callback<Uri>() {
+                    @Override
+                    public void onResult(Uri uri) {
+                        check("insert", uri != null);
+                        if (uri == null) {
+                            mDone.countDown();
+                            return;
+                        }
+                        update(uri);
+                    }
+                });
+            }
+        });
+
+        assertTrue("The writes didn't finish in " + TIMEOUT_MILLIS + "ms",
+                mDone.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        assertEquals(new ArrayList<String>(), mFailures);
+        // Deleted in order, before the item
+        assertFalse(PhotoStore.getFile(PhotoStore.getDirectory(mContext), mPhoto).exists());
+    }
+
+    @Test
+    public void providerWrite_onMainThread_throws() {
+        final RuntimeException[] error = new RuntimeException[1];
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                // Refused before the database is touched, so the policy doesn't kill the process
+                try {
+                    mContext.getContentResolver().delete(InventoryEntry.CONTENT_URI,
+                            InventoryEntry.COLUMN_PRODUCT_NAME + " = ?", new String[]{NAME});
+                } catch (RuntimeException e) {
+                    error[0] = e;
+                }
+            }
+        });
+        assertTrue("A write on the main thread went through", error[0] instanceof IllegalStateException);
+    }
+
+    private void update(final Uri uri) {
+        ContentValues values = new ContentValues();
+        values.put(InventoryEntry.COLUMN_PRODUCT_QUANTITY, 10);
+        mRepository.update(uri, values, new InventoryRepository.Callback<Integer>() {
+            @Override
+            public void onResult(Integer updated) {
+                check("update", updated != null && updated == 1);
+                sell(uri);
+            }
+        });
+    }
+
+    private void sell(final Uri uri) {
+        mRepository.sell(ContentUris.parseId(uri), 2, new InventoryRepository.Callback<Bundle>() {
+            @Override
+            public void onResult(Bundle result) {
+                check("sell", result != null && result.getBoolean(EXTRA_SOLD));
+                savePhoto(uri);
+            }
+        });
+    }
+
+    private void savePhoto(final Uri uri) {
+        mRepository.savePhoto(Uri.fromFile(mImage), new InventoryRepository.Callback<String>() {
+            @Override
+            public void onResult(String photo) {
+                check("savePhoto", photo != null);
+                mPhoto = photo;
+                if (photo != null) {
+                    mRepository.deletePhoto(photo);
+                }
+                delete(uri);
+            }
+        });
+    }
+
+    private void delete(Uri uri) {
+        mRepository.delete(uri, new InventoryRepository.Callback<Integer>() {
+            @Override
+            public void onResult(Integer deleted) {
+                check("delete", deleted != null && deleted == 1);
+                mDone.countDown();
+            }
+        });
+    }
+
+    // Record a failed write, or a result that didn't come back on the main thread
+    private void check(String write, boolean succeeded) {
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            mFailures.add(write + " reported off the main thread");
+        }
+        if (!succeeded) {
+            // Also what a write that ran on the main thread would come to, as the provider
+            // refuses those and the repository reports them with a null result
+            mFailures.add(write + " failed");
+        }
+    }
+}
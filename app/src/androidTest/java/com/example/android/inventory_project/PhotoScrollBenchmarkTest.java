@@ -0,0 +1,186 @@
+package com.example.android.inventory_project;
+
+import android.app.Activity;
+import android.app.Instrumentation;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+
+import com.example.android.inventory_project.data.PhotoStore;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static com.example.android.inventory_project.data.InventoryContract.InventoryEntry;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Scrolls the catalog through 10k items with photos at the speed of a brisk fling and fails
+ * if too many frames are late or the heap grows past what the image caches may hold. Every
+ * frame of the scroll binds new rows, so the photos are loaded while the list moves, as
+ * when the user scrolls. Run it on its own, on a device rather than an emulator:
+ * <pre>
+ *   ./gradlew connectedAndroidTest \
+ *       -Pandroid.testInstrumentationRunnerArguments.class=com.example.android.inventory_project.PhotoScrollBenchmarkTest
+ * </pre>
+ * The first round through the photos decodes each from its file, the later rounds find
+ * their thumbnails on disk. The items and photos are added to the app for the run and
+ * deleted afterwards.
+ * <p>
+ * Not run on a device yet: MAX_JANK_FRACTION and HEAP_SLACK_BYTES are estimates, to be set
+ * from the numbers of a first run on a mid-range device.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PhotoScrollBenchmarkTest {
+
+    private static final String LOG_TAG = PhotoScrollBenchmarkTest.class.getSimpleName();
+
+    private static final int ITEMS = 10000;
+    // Distinct photos, shared by the items in turn. More than the memory cache holds at the
+    // size of a row on most devices, so the scroll comes back to them through the disk cache.
+    private static final int PHOTOS = 1000;
+    // Size of the generated photos, about what a camera picture is after the gallery's resize
+    private static final int PHOTO_WIDTH = 1600;
+    private static final int PHOTO_HEIGHT = 1200;
+    private static final String NAME_PREFIX = "Scroll benchmark ";
+
+    // Speed of the scroll, in dp per second
+    private static final int SCROLL_SPEED_DP = 4000;
+    // A frame is janky if it took longer than this many refresh intervals
+    private static final float JANK_INTERVALS = 1.5f;
+    private static final double MAX_JANK_FRACTION = 0.05;
+    // Heap growth allowed on top of the memory cache of the ImageLoader, for the rows, the
+    // pages of the catalog and the decodes under way
+    private static final long HEAP_SLACK_BYTES = 16 * 1024 * 1024;
+    private static final long TIMEOUT_MILLIS = 10 * 60 * 1000;
+
+    private Instrumentation mInstrumentation;
+    private Context mContext;
+    // _ID of the last item added, the end of the scroll
+    private long mLastItemId;
+
+    @Before
+    public void setUp() throws IOException {
+        mInstrumentation = InstrumentationRegistry.getInstrumentation();
+        mContext = mInstrumentation.getTargetContext();
+        deleteItems();
+
+        String[] photos = createPhotos();
+        ContentValues[] items = new ContentValues[ITEMS];
+        for (int i = 0; i < ITEMS; i++) {
+            items[i] = new ContentValues();
+            items[i].put(InventoryEntry.COLUMN_PRODUCT_NAME, NAME_PREFIX + i);
+            items[i].put(InventoryEntry.COLUMN_PRODUCT_PRICE, 100 + i);
+            items[i].put(InventoryEntry.COLUMN_PRODUCT_QUANTITY, i % 50);
+            items[i].put(InventoryEntry.COLUMN_SUPPLIER_NAME, "Benchmark Supplies");
+            items[i].put(InventoryEntry.COLUMN_PHOTO, photos[i % PHOTOS]);
+        }
+        ContentResolver resolver = mContext.getContentResolver();
+        resolver.bulkInsert(InventoryEntry.CONTENT_URI, items);
+        Cursor cursor = resolver.query(InventoryEntry.CONTENT_URI, new String[]{InventoryEntry._ID},
+                InventoryEntry.COLUMN_PRODUCT_NAME + " = ?", new String[]{NAME_PREFIX + (ITEMS - 1)}, null);
+        try {
+            assertTrue("The items weren't added", cursor != null && cursor.moveToFirst());
+            mLastItemId = cursor.getLong(0);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    @After
+    public void tearDown() {
+        // The photos go to the trash with the items, and PhotoStore deletes their files
+        deleteItems();
+    }
+
+    @Test
+    public void scroll_withinJankAndHeapBudget() throws InterruptedException {
+        Intent intent = new Intent(Intent.ACTION_MAIN)
+                .setClassName(mContext, CatalogActivity.class.getName())
+                .addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        Activity activity = mInstrumentation.startActivitySync(intent);
+        try {
+            final RecyclerView list = activity.findViewById(R.id.list_view_item);
+            ScrollDriver.waitForRows(mInstrumentation, list, TIMEOUT_MILLIS);
+            float refreshRate = activity.getWindowManager().getDefaultDisplay().getRefreshRate();
+            float density = activity.getResources().getDisplayMetrics().density;
+
+            final ScrollDriver driver = new ScrollDriver(list, mLastItemId,
+                    Math.max(1, Math.round(SCROLL_SPEED_DP * density / refreshRate)),
+                    (long) (1e9 / refreshRate * JANK_INTERVALS), false);
+            mInstrumentation.runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    driver.start();
+                }
+            });
+            assertTrue("The scroll didn't reach the end in " + TIMEOUT_MILLIS + "ms",
+                    driver.await(TIMEOUT_MILLIS));
+
+            String report = driver.report();
+            Log.i(LOG_TAG, report);
+            long heapBudget = Runtime.getRuntime().maxMemory() / ImageLoader.MEMORY_CACHE_DIVISOR + HEAP_SLACK_BYTES;
+            assertTrue("Too many janky frames: " + report,
+                    driver.getJankyFrames() <= driver.getFrames() * MAX_JANK_FRACTION);
+            assertTrue("Heap grew by more than " + heapBudget / (1024 * 1024) + " MB: " + report,
+                    driver.getHeapGrowth() <= heapBudget);
+        } finally {
+            activity.finish();
+        }
+    }
+
+    // Write the photos to the photo directory. The names are new for every run: the photos of
+    // the items of an earlier run may still be waiting to be deleted.
+    private String[] createPhotos() throws IOException {
+        File directory = PhotoStore.getDirectory(mContext);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        Bitmap bitmap = Bitmap.createBitmap(PHOTO_WIDTH, PHOTO_HEIGHT, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setTextSize(PHOTO_HEIGHT / 3);
+        paint.setColor(Color.WHITE);
+        String[] photos = new String[PHOTOS];
+        long run = System.currentTimeMillis();
+        try {
+            for (int i = 0; i < PHOTOS; i++) {
+                photos[i] = "scroll-benchmark-" + run + "-" + i + ".jpg";
+                File file = PhotoStore.getFile(directory, photos[i]);
+                // Something to compress, so the files are about the size of real photos
+                canvas.drawColor(Color.HSVToColor(new float[]{i * 360f / PHOTOS, 0.6f, 0.8f}));
+                canvas.drawText(String.valueOf(i), PHOTO_WIDTH / 8, PHOTO_HEIGHT * 2 / 3, paint);
+                try (FileOutputStream out = new FileOutputStream(file)) {
+                    bitmap.compress(Bitmap.CompressFormat.JPEG, 90, out);
+                }
+            }
+        } finally {
+            bitmap.recycle();
+        }
+        return photos;
+    }
+
+    private void deleteItems() {
+        ContentResolver resolver = mContext.getContentResolver();
+        resolver.delete(InventoryEntry.CONTENT_URI, InventoryEntry.COLUMN_PRODUCT_NAME + " LIKE ?",
+                new String[]{NAME_PREFIX + "%"});
+    }
+}
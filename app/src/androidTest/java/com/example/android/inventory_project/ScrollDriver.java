@@ -0,0 +1,180 @@
+package com.example.android.inventory_project;
+
+import android.app.Instrumentation;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.view.Choreographer;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Scrolls the list by the same distance every frame, from the first row to the row of the
+ * last item, and records how long every frame took and how large the heap got, and if asked
+ * for, how many objects the main thread allocated. Runs on the main thread, frame by frame.
+ */
+final class ScrollDriver implements Choreographer.FrameCallback {
+    private final RecyclerView mList;
+    private final LinearLayoutManager mLayoutManager;
+    private final long mLastItemId;
+    private final int mStep;
+    private final long mJankNanos;
+    private final boolean mCountAllocations;
+    private final CountDownLatch mDone = new CountDownLatch(1);
+
+    // Written on the main thread, read once mDone is counted down
+    private long[] mFrameNanos = new long[4096];
+    private long mLastFrameNanos;
+    private int mFrames;
+    private int mJankyFrames;
+    private long mStartHeap;
+    private long mPeakHeap;
+    private int mAllocations;
+
+    /**
+     * @param step             pixels to scroll every frame
+     * @param jankNanos        a frame that took longer than this is janky
+     * @param countAllocations count the objects the main thread allocates during the scroll.
+     *                         Counting makes every allocation slower, so the frame times of
+     *                         such a scroll are not the ones of the app.
+     */
+    ScrollDriver(RecyclerView list, long lastItemId, int step, long jankNanos, boolean countAllocations) {
+        mList = list;
+        mLayoutManager = (LinearLayoutManager) list.getLayoutManager();
+        mLastItemId = lastItemId;
+        mStep = step;
+        mJankNanos = jankNanos;
+        mCountAllocations = countAllocations;
+    }
+
+    /**
+     * Waits until the list shows its first rows.
+     */
+    static void waitForRows(Instrumentation instrumentation, final RecyclerView list, long timeoutMillis) {
+        long deadline = SystemClock.uptimeMillis() + timeoutMillis;
+        final int[] count = new int[1];
+        while (count[0] == 0 && SystemClock.uptimeMillis() < deadline) {
+            SystemClock.sleep(50);
+            instrumentation.runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    count[0] = list.getAdapter().getItemCount();
+                }
+            });
+        }
+        assertTrue("The catalog showed no rows", count[0] > 0);
+    }
+
+    /**
+     * Starts the scroll with the next frame. Must be called on the main thread.
+     */
+    @SuppressWarnings("deprecation")
+    void start() {
+        mStartHeap = heapSize();
+        mPeakHeap = mStartHeap;
+        if (mCountAllocations) {
+            Debug.resetThreadAllocCount();
+            Debug.startAllocCounting();
+        }
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    /**
+     * Waits for the scroll to reach the last item.
+     *
+     * @return false if it didn't in time
+     */
+    boolean await(long timeoutMillis) throws InterruptedException {
+        return mDone.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void doFrame(long frameTimeNanos) {
+        if (mLastFrameNanos != 0) {
+            long duration = frameTimeNanos - mLastFrameNanos;
+            if (mFrames == mFrameNanos.length) {
+                mFrameNanos = Arrays.copyOf(mFrameNanos, mFrames * 2);
+            }
+            mFrameNanos[mFrames++] = duration;
+            if (duration > mJankNanos) {
+                mJankyFrames++;
+            }
+        }
+        mLastFrameNanos = frameTimeNanos;
+        mPeakHeap = Math.max(mPeakHeap, heapSize());
+
+        if (isAtLastItem()) {
+            if (mCountAllocations) {
+                Debug.stopAllocCounting();
+                mAllocations = Debug.getThreadAllocCount();
+            }
+            mDone.countDown();
+            return;
+        }
+        // Laid out and bound in the traversal of this same frame, as in a fling
+        mList.scrollBy(0, mStep);
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    // Whether the last item of the catalog is on screen. The pager only holds a window
+    // of pages, so the end of the list isn't the end of the catalog; while the next
+    // page loads the list stays where it is.
+    private boolean isAtLastItem() {
+        int last = mLayoutManager.findLastVisibleItemPosition();
+        return last != RecyclerView.NO_POSITION && mList.getAdapter().getItemId(last) == mLastItemId;
+    }
+
+    // Bitmaps are on the Java heap before Android 8.0, and in native memory from then
+    private static long heapSize() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory() + Debug.getNativeHeapAllocatedSize();
+    }
+
+    int getFrames() {
+        return mFrames;
+    }
+
+    int getJankyFrames() {
+        return mJankyFrames;
+    }
+
+    long getHeapGrowth() {
+        return mPeakHeap - mStartHeap;
+    }
+
+    /**
+     * @return the objects the main thread allocated per frame, if they were counted
+     */
+    double getAllocationsPerFrame() {
+        return (double) mAllocations / Math.max(1, mFrames);
+    }
+
+    String report() {
+        long[] frames = Arrays.copyOf(mFrameNanos, mFrames);
+        Arrays.sort(frames);
+        String report = String.format(Locale.US, "%d frames, %d janky (%.1f%%), p50 %.1fms, p90 %.1fms, " +
+                        "p99 %.1fms, heap %.1f MB at the start, %.1f MB at the peak",
+                mFrames, mJankyFrames, 100.0 * mJankyFrames / Math.max(1, mFrames),
+                percentile(frames, 0.5), percentile(frames, 0.9), percentile(frames, 0.99),
+                mStartHeap / 1048576.0, mPeakHeap / 1048576.0);
+        if (mCountAllocations) {
+            report += String.format(Locale.US, ", %d allocations (%.1f per frame)", mAllocations,
+                    getAllocationsPerFrame());
+        }
+        return report;
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * fraction))] / 1e6;
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.android.inventory_project;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static com.example.android.inventory_project.data.InventoryContract.EXTRA_COUNT;
+import static com.example.android.inventory_project.data.InventoryContract.EXTRA_QUANTITY;
+import static com.example.android.inventory_project.data.InventoryContract.EXTRA_SOLD;
+import static com.example.android.inventory_project.data.InventoryContract.InventoryEntry;
+import static com.example.android.inventory_project.data.InventoryContract.METHOD_SELL;
+import static com.example.android.inventory_project.data.InventoryContract.SaleEntry;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Sells one item out from several threads at once through the METHOD_SELL call of the
+ * provider, one unit per call, and checks that no decrement was lost and no unit oversold:
+ * exactly STOCK sales go through, each leaves a different quantity, the item ends with no
+ * stock, and the ledger holds one row of one unit for every sale.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SellConcurrencyTest {
+
+    private static final String NAME = "Sell concurrency test item";
+    private static final int STOCK = 500;
+    private static final int THREADS = 8;
+
+    private ContentResolver mResolver;
+    private Uri mItemUri;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getTargetContext();
+        mResolver = context.getContentResolver();
+        deleteItem();
+
+        ContentValues values = new ContentValues();
+        values.put(InventoryEntry.COLUMN_PRODUCT_NAME, NAME);
+        values.put(InventoryEntry.COLUMN_PRODUCT_PRICE, 10);
+        values.put(InventoryEntry.COLUMN_PRODUCT_QUANTITY, STOCK);
+        values.put(InventoryEntry.COLUMN_SUPPLIER_NAME, "Test Supplies");
+        mItemUri = mResolver.insert(InventoryEntry.CONTENT_URI, values);
+        assertNotNull("The item wasn't added", mItemUri);
+    }
+
+    @After
+    public void tearDown() {
+        deleteItem();
+    }
+
+    @Test
+    public void concurrentSales_neverLoseADecrementOrOversell() throws Exception {
+        final String id = String.valueOf(ContentUris.parseId(mItemUri));
+        final AtomicInteger sold = new AtomicInteger();
+        // How many sales left each quantity
+        final AtomicIntegerArray left = new AtomicIntegerArray(STOCK);
+        final Exception[] errors = new Exception[THREADS];
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] sellers = new Thread[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            final int index = i;
+            sellers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Bundle extras = new Bundle();
+                    extras.putInt(EXTRA_COUNT, 1);
+                    try {
+                        start.await();
+                        while (true) {
+                            Bundle result = mResolver.call(InventoryEntry.CONTENT_URI, METHOD_SELL, id, extras);
+                            if (!result.getBoolean(EXTRA_SOLD)) {
+                                break;
+                            }
+                            sold.incrementAndGet();
+                            int quantity = result.getInt(EXTRA_QUANTITY, -1);
+                            if (quantity < 0 || quantity >= STOCK) {
+                                throw new IllegalStateException("A sale left " + quantity + " units");
+                            }
+                            left.incrementAndGet(quantity);
+                        }
+                    } catch (Exception e) {
+                        errors[index] = e;
+                    }
+                }
+            }, "seller-" + i);
+            sellers[i].start();
+        }
+        start.countDown();
+        for (int i = 0; i < THREADS; i++) {
+            sellers[i].join();
+            if (errors[i] != null) {
+                throw errors[i];
+            }
+        }
+
+        assertEquals(STOCK, sold.get());
+        for (int quantity = 0; quantity < STOCK; quantity++) {
+            assertEquals("Sales that left " + quantity + " units", 1, left.get(quantity));
+        }
+        assertEquals(0, queryQuantity());
+        assertEquals(STOCK, countLedgerRows());
+    }
+
+    private int queryQuantity() {
+        Cursor cursor = mResolver.query(mItemUri, new String[]{InventoryEntry.COLUMN_PRODUCT_QUANTITY},
+                null, null, null);
+        try {
+            assertTrue("The item is gone", cursor != null && cursor.moveToFirst());
+            return cursor.getInt(0);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    // Rows of one unit in the ledger of the item, which should be all of them
+    private int countLedgerRows() {
+        Cursor cursor = mResolver.query(SaleEntry.buildItemSalesUri(ContentUris.parseId(mItemUri)),
+                new String[]{SaleEntry.COLUMN_QUANTITY}, null, null, null);
+        assertNotNull("The ledger can't be read", cursor);
+        try {
+            int rows = 0;
+            while (cursor.moveToNext()) {
+                assertEquals("Units of a sale", 1, cursor.getInt(0));
+                rows++;
+            }
+            return rows;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void deleteItem() {
+        mResolver.delete(InventoryEntry.CONTENT_URI, InventoryEntry.COLUMN_PRODUCT_NAME + " = ?",
+                new String[]{NAME});
+    }
+}
@@ -9,37 +9,149 @@ import android.content.Loader;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.StrictMode;
 import android.support.design.widget.FloatingActionButton;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SearchView;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ListView;
+import android.widget.TextView;
 import android.widget.Toast;
 
+import com.example.android.inventory_project.data.CatalogSnapshot;
+import com.example.android.inventory_project.data.CsvImporter;
+import com.example.android.inventory_project.data.InventoryContract;
 import com.example.android.inventory_project.data.InventoryContract.InventoryEntry;
+import com.example.android.inventory_project.data.InventoryContract.StatsEntry;
+import com.example.android.inventory_project.data.InventoryCsv;
 import com.example.android.inventory_project.data.InventoryDbHelper;
 import com.example.android.inventory_project.data.InventoryProvider;
+import com.example.android.inventory_project.data.InventoryRepository;
+import com.example.android.inventory_project.data.Prices;
+import com.example.android.inventory_project.data.StartupTimeline;
+import com.example.android.inventory_project.data.StartupTrace;
 
-public class CatalogActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<Cursor> {
+public class CatalogActivity extends AppCompatActivity implements CatalogPager.Callback,
+        InventoryCursorAdapter.OnItemActionListener, LoaderManager.LoaderCallbacks<Cursor> {
 
     // Tag for all log messages
     public static final String LOG_TAG = InventoryProvider.class.getSimpleName();
-    private static final int ITEM_LOADER = 0;
+    private static final int SEARCH_LOADER = 1;
+    private static final int STATS_LOADER = 2;
+    // The pager uses this loader id and the ones after it, one per page
+    private static final int ITEM_LOADER = 100;
+
+    // Wait this long after the last key stroke before searching
+    private static final long SEARCH_DELAY_MILLIS = 300;
+    private static final String ARG_QUERY = "query";
+
+    // Request code for picking the CSV file to import
+    private static final int REQUEST_IMPORT = 1;
+
+    // Define a projection that specifies the columns from the table we care about.
+    private static final String[] CATALOG_PROJECTION = {
+            InventoryEntry._ID,
+            InventoryEntry.COLUMN_PRODUCT_NAME,
+            InventoryEntry.COLUMN_PRODUCT_PRICE,
+            InventoryEntry.COLUMN_PRODUCT_QUANTITY,
+            InventoryEntry.COLUMN_PHOTO};
+
+    // Columns of the totals shown above the list
+    private static final String[] STATS_PROJECTION = {
+            StatsEntry.COLUMN_ITEM_COUNT,
+            StatsEntry.COLUMN_TOTAL_UNITS,
+            StatsEntry.COLUMN_TOTAL_VALUE,
+            StatsEntry.COLUMN_LOW_STOCK_COUNT};
 
     InventoryCursorAdapter mCursorAdapter;
 
+    // Loads the catalog page by page as the list is scrolled
+    private CatalogPager mPager;
+    // Rows of the pages loaded so far, shown whenever there is no search
+    private Cursor mPagesCursor;
+
+    // Text currently searched for, or null if the whole catalog is shown
+    private String mSearchQuery;
+    // Text typed into the search box that hasn't been searched for yet
+    private String mPendingQuery;
+    private final Handler mHandler = new Handler();
+    private final Runnable mSearchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            search(mPendingQuery);
+        }
+    };
+
+    // Shown instead of the list when there are no items
+    private View mEmptyView;
+
+    // Totals of the inventory, above the list
+    private TextView mStatsView;
+
     /**
      * Database helper that will provide handle to database
      */
     private InventoryDbHelper mDbHelper;
 
+    // All writes go through the repository, off the main thread
+    private InventoryRepository mRepository;
+
+    // CSV import that is running, or null. It outlives the activity, see onCreate().
+    private CsvImporter mImporter;
+
+    // Shows the progress and the result of the CSV import
+    private final CsvImporter.Listener mImportListener = new CsvImporter.Listener() {
+        @Override
+        public void onProgress(int imported, int rejected) {
+            getSupportActionBar().setSubtitle(getString(R.string.import_progress, imported, rejected));
+        }
+
+        @Override
+        public void onFinished(CsvImporter.Report report) {
+            mImporter = null;
+            invalidateOptionsMenu();
+            getSupportActionBar().setSubtitle(null);
+            for (CsvImporter.Reject reject : report.getRejects()) {
+                Log.w(LOG_TAG, "Import rejected row " + reject.getRow() + ": " + reject.getReason());
+            }
+
+            String message;
+            if (report.getError() != null) {
+                message = getString(R.string.import_failed, report.getError());
+            } else if (report.isCancelled()) {
+                message = getString(R.string.import_cancelled, report.getImportedCount());
+            } else {
+                message = getString(R.string.import_finished, report.getImportedCount(),
+                        report.getRejectedCount());
+            }
+            Toast.makeText(CatalogActivity.this, message, Toast.LENGTH_LONG).show();
+        }
+    };
+
+    // When onCreate() started, the start of the startup phases of the activity
+    private long mCreateStart;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        mCreateStart = StartupTrace.begin(StartupTimeline.PHASE_ACTIVITY_CREATE);
         super.onCreate(savedInstanceState);
+        if (BuildConfig.DEBUG) {
+            // Flag any database access that slips onto the main thread
+            StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                    .detectDiskReads()
+                    .detectDiskWrites()
+                    .penaltyLog()
+                    .build());
+        }
         setContentView(R.layout.activity_main);
+        mRepository = InventoryRepository.getInstance(this);
+        // Alert on items going low on stock from now on, and on any missed since the last run
+        LowStockMonitor.getInstance(this).start();
 
         // Setup FAB to open EditorActivity
         FloatingActionButton fab = findViewById(R.id.fab);
@@ -51,80 +163,168 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
             }
         });
 
-        // Find the ListView which will be populated with item data
-        ListView itemListView = (ListView) findViewById(R.id.list_view_item);
+        // Find the RecyclerView which will be populated with item data
+        RecyclerView itemListView = findViewById(R.id.list_view_item);
+        final LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        itemListView.setLayoutManager(layoutManager);
 
-        // Find and set empty view on the Listview, so that it only shows when the list
-        // has 0 items.
-        View emptyView = findViewById(R.id.empty_view);
-        itemListView.setEmptyView(emptyView);
+        // Find the empty view, so that it only shows when the list has 0 items.
+        mEmptyView = findViewById(R.id.empty_view);
+        mStatsView = findViewById(R.id.catalog_stats);
 
         // Setup an Adapter to create a list item for each row of item data in the Cursor.
-        // There is no item data yet (until the loader finishes) so pass in null for the Cursor.
-        mCursorAdapter = new InventoryCursorAdapter(this, null);
+        // There is no item data yet (until the loader finishes).
+        mCursorAdapter = new InventoryCursorAdapter(this, ImageLoader.getInstance(this,
+                getResources().getDimensionPixelSize(R.dimen.list_photo_size)));
         itemListView.setAdapter(mCursorAdapter);
 
-        itemListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+        // Let the pager know which rows are on screen, so it can load the next page in time.
+        // This is also called after a layout when the visible rows change.
+        itemListView.addOnScrollListener(new RecyclerView.OnScrollListener() {
             @Override
-            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
-                Intent intent = new Intent(CatalogActivity.this, EditorActivity.class);
-                // Need a new URI that appends the id to create the specific ID for the
-                // item we clicked on.
-                Uri currentItemUri = ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id);
-                // This is how we add the Uri to the intent.
-                intent.setData(currentItemUri);
-                startActivity(intent);
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                if (mSearchQuery == null) {
+                    mPager.onVisibleRangeChanged(layoutManager.findFirstVisibleItemPosition(),
+                            layoutManager.findLastVisibleItemPosition());
+                }
             }
         });
-        // Kick off the loader
-        getLoaderManager().initLoader(ITEM_LOADER, null, this);
+
+        // Show the first rows as they were when the app last ran, while the database opens
+        // and the first page loads
+        showSnapshot();
+
+        // Take over the import an activity before a configuration change started. Its report
+        // comes right away if it finished in between.
+        mImporter = CsvImporter.getRunning();
+        if (mImporter != null) {
+            mImporter.setListener(mImportListener);
+        }
+
+        // Kick off the loader for the first page
+        mPager = new CatalogPager(this, getLoaderManager(), ITEM_LOADER, CATALOG_PROJECTION, this);
+        mPager.start();
+
+        // The totals come from a one row summary table, so they are cheap to reload on
+        // every change
+        getLoaderManager().initLoader(STATS_LOADER, null, this);
+        StartupTrace.end(StartupTimeline.PHASE_ACTIVITY_CREATE, mCreateStart);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mHandler.removeCallbacks(mSearchRunnable);
+        if (mImporter != null) {
+            // The next activity attaches its own listener
+            mImporter.setListener(null);
+            if (isFinishing()) {
+                mImporter.cancel();
+            }
+        }
+    }
+
+    @Override
+    public void onItemClick(long id) {
+        Intent intent = new Intent(CatalogActivity.this, EditorActivity.class);
+        // Need a new URI that appends the id to create the specific ID for the
+        // item we clicked on.
+        Uri currentItemUri = ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id);
+        // This is how we add the Uri to the intent.
+        intent.setData(currentItemUri);
+        startActivity(intent);
+    }
+
+    @Override
+    public void onSaleClick(long id) {
+        sellItem(id, 1);
     }
 
     // Create the options menu that will house the navigation of our app.
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.menu_main, menu);
+
+        // Search as the user types, but only once they pause typing.
+        SearchView searchView = (SearchView) menu.findItem(R.id.action_search).getActionView();
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                mHandler.removeCallbacks(mSearchRunnable);
+                search(query);
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                mPendingQuery = newText;
+                mHandler.removeCallbacks(mSearchRunnable);
+                mHandler.postDelayed(mSearchRunnable, SEARCH_DELAY_MILLIS);
+                return true;
+            }
+        });
         return true;
     }
 
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        // Only one import runs at a time
+        menu.findItem(R.id.action_import).setVisible(mImporter == null);
+        menu.findItem(R.id.action_cancel_import).setVisible(mImporter != null);
+        return super.onPrepareOptionsMenu(menu);
+    }
+
+    // Show the items matching the query, or the whole catalog again if the query is empty.
+    private void search(String query) {
+        query = query == null ? "" : query.trim();
+        if (query.isEmpty()) {
+            if (mSearchQuery != null) {
+                mSearchQuery = null;
+                getLoaderManager().destroyLoader(SEARCH_LOADER);
+                showCursor(mPagesCursor);
+            }
+            return;
+        }
+        if (query.equals(mSearchQuery)) {
+            return;
+        }
+        mSearchQuery = query;
+        Bundle args = new Bundle();
+        args.putString(ARG_QUERY, query);
+        getLoaderManager().restartLoader(SEARCH_LOADER, args, this);
+    }
+
     private void insertItem() {
         // Need a ContentValues object to store the column names
         ContentValues values = new ContentValues();
         values.put(InventoryEntry.COLUMN_PRODUCT_NAME, "Kraken V2");
-        values.put(InventoryEntry.COLUMN_PRODUCT_PRICE, 20);
+        values.put(InventoryEntry.COLUMN_PRODUCT_PRICE, 2000);
         values.put(InventoryEntry.COLUMN_PRODUCT_QUANTITY, 1);
         values.put(InventoryEntry.COLUMN_SUPPLIER_NAME, "Razer");
         values.put(InventoryEntry.COLUMN_SUPPLIER_PHONE, R.string.generic_phone);
 
-        Uri newUri = getContentResolver().insert(InventoryEntry.CONTENT_URI, values);
-    }
-
-    // Sell an Item.
-    public void sellItem(int itemId, int quantity) {
-        // If quantity more than zero, reduce it
-        if (quantity > 0) {
-            quantity--;
-
-            // Create new URI and ContentValues objects to store new values.
-            Uri sellUri = ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, itemId);
-            ContentValues values = new ContentValues();
-            values.put(InventoryEntry.COLUMN_PRODUCT_QUANTITY, quantity);
-            int rowsUpdated = getContentResolver().update(
-                    sellUri,
-                    values,
-                    null,
-                    null);
-            if (rowsUpdated == 0) {
-                // If no rows were updated, there was an error with the sale, and we need to show
-                // a toast about it.
-                Toast.makeText(this, R.string.sale_item_error, Toast.LENGTH_LONG).show();
-            } else {
-                // Otherwise, the sale was good and we can show a toast for that.
-                Toast.makeText(this, R.string.sale_item_ok, Toast.LENGTH_LONG).show();
+        mRepository.insert(values, null);
+    }
+
+    // Sell count units of an Item.
+    // The provider checks the stock and decrements it in one step, so the quantity shown
+    // in the list is never used to compute the new value.
+    public void sellItem(long itemId, int count) {
+        mRepository.sell(itemId, count, new InventoryRepository.Callback<Bundle>() {
+            @Override
+            public void onResult(Bundle result) {
+                if (result != null && result.getBoolean(InventoryContract.EXTRA_SOLD)) {
+                    // The sale was good and we can show a toast for that.
+                    Toast.makeText(CatalogActivity.this, R.string.sale_item_ok, Toast.LENGTH_LONG).show();
+                } else if (result != null) {
+                    // There was not enough stock left for the sale.
+                    Toast.makeText(CatalogActivity.this, R.string.sale_item_big_error, Toast.LENGTH_LONG).show();
+                } else {
+                    // Otherwise there was an error with the sale.
+                    Toast.makeText(CatalogActivity.this, R.string.sale_item_error, Toast.LENGTH_LONG).show();
+                }
             }
-        } else {
-            Toast.makeText(this, R.string.sale_item_big_error, Toast.LENGTH_LONG).show();
-        }
+        });
     }
 
     // Actions for the Options menu.
@@ -135,6 +335,15 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
             case R.id.insert:
                 insertItem(); // Inserts the sample object into the database for testing.
                 return true;
+            case R.id.action_import:
+                pickImportFile();
+                return true;
+            case R.id.action_cancel_import:
+                mImporter.cancel();
+                return true;
+            case R.id.action_export:
+                exportItems();
+                return true;
             case R.id.action_delete_all_entries:
                 deleteAllItems();
                 return true;
@@ -142,9 +351,51 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
         return super.onOptionsItemSelected(item);
     }
 
+    // Let the user pick the CSV file to import, see onActivityResult()
+    private void pickImportFile() {
+        Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
+        // CSV files come with many MIME types, depending on the app that provides them
+        intent.setType("*/*");
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        startActivityForResult(Intent.createChooser(intent, getString(R.string.import_items)),
+                REQUEST_IMPORT);
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        if (requestCode == REQUEST_IMPORT) {
+            if (resultCode == RESULT_OK && data != null && data.getData() != null) {
+                importItems(data.getData());
+            }
+            return;
+        }
+        super.onActivityResult(requestCode, resultCode, data);
+    }
+
+    // Add the items of a CSV file. The import runs in the background and its progress is
+    // shown below the title; the list picks up the new items as they are committed.
+    private void importItems(Uri source) {
+        mImporter = CsvImporter.start(this, source, mImportListener);
+        invalidateOptionsMenu();
+    }
+
+    // Share the CSV export of all items. The receiving app reads it straight from the provider,
+    // which streams the rows as they are read.
+    private void exportItems() {
+        Intent intent = new Intent(Intent.ACTION_SEND);
+        intent.setType(InventoryCsv.MIME_TYPE);
+        intent.putExtra(Intent.EXTRA_STREAM, InventoryEntry.EXPORT_URI);
+        intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        startActivity(Intent.createChooser(intent, getString(R.string.export_items)));
+    }
+
     private void deleteAllItems() {
-        int rowsDeleted = getContentResolver().delete(InventoryEntry.CONTENT_URI, null, null);
-        Log.v(LOG_TAG, rowsDeleted + getString(R.string.rows_deleted_from_db));
+        mRepository.delete(InventoryEntry.CONTENT_URI, new InventoryRepository.Callback<Integer>() {
+            @Override
+            public void onResult(Integer rowsDeleted) {
+                Log.v(LOG_TAG, rowsDeleted + getString(R.string.rows_deleted_from_db));
+            }
+        });
     }
 
 
@@ -154,33 +405,99 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
         super.onStart();
     }
 
+    @Override
+    public void onPagesChanged(Cursor cursor) {
+        if (cursor != null) {
+            reportStartup();
+        }
+        mPagesCursor = cursor;
+        if (mSearchQuery == null) {
+            showCursor(cursor);
+        }
+    }
+
     @Override
     public Loader<Cursor> onCreateLoader(int id, Bundle args) {
+        if (id == STATS_LOADER) {
+            return new CursorLoader(this, StatsEntry.CONTENT_URI, STATS_PROJECTION, null, null, null);
+        }
 
-        // Define a projection that specifies the columns from the table we care about.
-        String[] projection = {
-                InventoryEntry._ID,
-                InventoryEntry.COLUMN_PRODUCT_NAME,
-                InventoryEntry.COLUMN_PRODUCT_PRICE,
-                InventoryEntry.COLUMN_PRODUCT_QUANTITY};
+        Uri searchUri = InventoryEntry.SEARCH_URI.buildUpon()
+                .appendQueryParameter(InventoryContract.QUERY_PARAMETER_QUERY, args.getString(ARG_QUERY))
+                .build();
 
         // This loader will execute the ContentProvider's query method on a background thread
-        return new CursorLoader(this,
-                InventoryEntry.CONTENT_URI,
-                projection,
-                null,
-                null,
-                null);
+        return new CursorLoader(this, searchUri, CATALOG_PROJECTION, null, null, null);
     }
 
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-        // Update {@Link #InventoryCursorAdapter} with this new cursor containing update item data
-        mCursorAdapter.swapCursor(data);
+        if (loader.getId() == STATS_LOADER) {
+            showStats(data);
+            return;
+        }
+        if (mSearchQuery != null) {
+            showCursor(data);
+        }
     }
 
     @Override
     public void onLoaderReset(Loader<Cursor> loader) {
-        mCursorAdapter.swapCursor(null);
+        if (loader.getId() == STATS_LOADER) {
+            return;
+        }
+        if (mSearchQuery != null) {
+            showCursor(null);
+        }
+    }
+
+    // Show the totals of the inventory above the list
+    private void showStats(Cursor cursor) {
+        if (cursor == null || !cursor.moveToFirst()) {
+            mStatsView.setText(null);
+            return;
+        }
+        mStatsView.setText(getString(R.string.catalog_stats,
+                cursor.getInt(cursor.getColumnIndexOrThrow(StatsEntry.COLUMN_ITEM_COUNT)),
+                cursor.getLong(cursor.getColumnIndexOrThrow(StatsEntry.COLUMN_TOTAL_UNITS)),
+                Prices.format(cursor.getLong(cursor.getColumnIndexOrThrow(StatsEntry.COLUMN_TOTAL_VALUE))),
+                cursor.getInt(cursor.getColumnIndexOrThrow(StatsEntry.COLUMN_LOW_STOCK_COUNT))));
+    }
+
+    // Show the snapshot of the first rows, if there is one. It is read on the main thread, as
+    // waiting for a background thread would take longer than the read, which maps a few KB.
+    private void showSnapshot() {
+        StrictMode.ThreadPolicy policy = StrictMode.allowThreadDiskReads();
+        CatalogSnapshot snapshot;
+        try {
+            snapshot = CatalogSnapshot.read(CatalogSnapshot.getFile(getCacheDir()));
+        } finally {
+            StrictMode.setThreadPolicy(policy);
+        }
+        if (snapshot != null && snapshot.getCount() > 0) {
+            mCursorAdapter.showSnapshot(snapshot);
+            mEmptyView.setVisibility(View.GONE);
+            StartupTimeline.get().record(StartupTimeline.PHASE_SNAPSHOT_SHOWN, mCreateStart, System.nanoTime());
+        }
+    }
+
+    // Log the startup timeline, once the first page has been loaded on the first start of
+    // the process. The phase spans callbacks, so it is not a trace section of its own.
+    private void reportStartup() {
+        StartupTimeline timeline = StartupTimeline.get();
+        if (!timeline.record(StartupTimeline.PHASE_FIRST_DATA, mCreateStart, System.nanoTime())) {
+            return;
+        }
+        Log.i(LOG_TAG, "Startup timeline:\n" + timeline.format());
+        if (timeline.isOverBudget()) {
+            Log.w(LOG_TAG, "First data took " + timeline.getDurationNanos(StartupTimeline.PHASE_FIRST_DATA) / 1000000 +
+                    "ms, over the budget of " + StartupTimeline.FIRST_DATA_BUDGET_MILLIS + "ms");
+        }
+    }
+
+    // Update {@Link #InventoryCursorAdapter} with the rows to show
+    private void showCursor(Cursor cursor) {
+        mCursorAdapter.swapCursor(cursor);
+        mEmptyView.setVisibility(mCursorAdapter.getItemCount() == 0 ? View.VISIBLE : View.GONE);
     }
 }
@@ -0,0 +1,215 @@
+package com.example.android.inventory_project;
+
+import android.app.LoaderManager;
+import android.content.Context;
+import android.content.CursorLoader;
+import android.content.Loader;
+import android.database.Cursor;
+import android.database.MergeCursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.util.SparseArray;
+
+import com.example.android.inventory_project.data.InventoryContract;
+import com.example.android.inventory_project.data.InventoryContract.InventoryEntry;
+
+import java.util.ArrayList;
+
+/**
+ * Loads the catalog in pages, using keyset pagination on _ID, and keeps only a bounded
+ * window of pages in memory. When the visible rows get close to either end of the window
+ * the neighbouring page is loaded, and once the window is full the page at the other end
+ * is dropped.
+ */
+public class CatalogPager implements LoaderManager.LoaderCallbacks<Cursor> {
+
+    /**
+     * Receives the rows of the current window.
+     */
+    public interface Callback {
+        /**
+         * Called whenever the window changes.
+         *
+         * @param cursor the rows of all pages in the window, or null if there are none
+         */
+        void onPagesChanged(Cursor cursor);
+    }
+
+    // Number of rows per page
+    public static final int PAGE_SIZE = 50;
+    // Maximum number of pages kept in memory at once
+    public static final int MAX_PAGES = 5;
+    // Start loading the next page when the visible rows are this close to the window edge
+    private static final int PREFETCH_DISTANCE = PAGE_SIZE / 2;
+
+    private final Context mContext;
+    private final LoaderManager mLoaderManager;
+    private final int mLoaderIdBase;
+    private final String[] mProjection;
+    private final Callback mCallback;
+
+    // The _ID each page starts after. Entry n belongs to page n, and is known as soon as
+    // page n - 1 has been loaded.
+    private final ArrayList<Long> mPageKeys = new ArrayList<>();
+    // Loaded pages of the window, keyed by page number
+    private final SparseArray<Cursor> mPages = new SparseArray<>();
+    // Page numbers of the first and last page in the window
+    private int mFirstPage;
+    private int mLastPage = -1;
+    // Page that is currently being fetched to grow the window, or -1 if there is none
+    private int mPendingPage = -1;
+
+    /**
+     * @param loaderIdBase first loader id used for pages; page n uses loaderIdBase + n, so
+     *                     the ids from there on must not be used by other loaders
+     */
+    public CatalogPager(Context context, LoaderManager loaderManager, int loaderIdBase,
+                        String[] projection, Callback callback) {
+        mContext = context;
+        mLoaderManager = loaderManager;
+        mLoaderIdBase = loaderIdBase;
+        mProjection = projection;
+        mCallback = callback;
+    }
+
+    /**
+     * Starts loading from the first page.
+     */
+    public void start() {
+        mPageKeys.add(0L);
+        mPendingPage = 0;
+        mLoaderManager.initLoader(mLoaderIdBase, null, this);
+    }
+
+    /**
+     * Tells the pager which rows of the window are on screen, so it can fetch the next
+     * or previous page in time.
+     *
+     * @param firstVisible position of the first visible row in the window
+     * @param lastVisible  position of the last visible row in the window
+     */
+    public void onVisibleRangeChanged(int firstVisible, int lastVisible) {
+        if (mPendingPage != -1 || mLastPage < 0) {
+            // Still busy with a page
+            return;
+        }
+
+        if (lastVisible >= getRowCount() - PREFETCH_DISTANCE && hasNextPage()) {
+            requestPage(mLastPage + 1);
+        } else if (firstVisible < PREFETCH_DISTANCE && mFirstPage > 0) {
+            requestPage(mFirstPage - 1);
+        }
+    }
+
+    private void requestPage(int page) {
+        mPendingPage = page;
+        mLoaderManager.restartLoader(mLoaderIdBase + page, null, this);
+    }
+
+    // Only a full last page can be followed by another page.
+    private boolean hasNextPage() {
+        Cursor last = mPages.get(mLastPage);
+        return last != null && last.getCount() == PAGE_SIZE;
+    }
+
+    private int getRowCount() {
+        int count = 0;
+        for (int page = mFirstPage; page <= mLastPage; page++) {
+            count += mPages.get(page).getCount();
+        }
+        return count;
+    }
+
+    @Override
+    public Loader<Cursor> onCreateLoader(int id, Bundle args) {
+        int page = id - mLoaderIdBase;
+        Uri pageUri = InventoryEntry.CONTENT_URI.buildUpon()
+                .appendQueryParameter(InventoryContract.QUERY_PARAMETER_LIMIT, String.valueOf(PAGE_SIZE))
+                .appendQueryParameter(InventoryContract.QUERY_PARAMETER_AFTER, String.valueOf(mPageKeys.get(page)))
+                .build();
+
+        // This loader will execute the ContentProvider's query method on a background thread
+        return new CursorLoader(mContext, pageUri, mProjection, null, null, null);
+    }
+
+    @Override
+    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
+        int page = loader.getId() - mLoaderIdBase;
+        int droppedPage = -1;
+
+        if (page == mPendingPage) {
+            // A new page for the window
+            mPendingPage = -1;
+            mPages.put(page, data);
+            if (mLastPage < 0) {
+                mFirstPage = page;
+                mLastPage = page;
+            } else if (page > mLastPage) {
+                mLastPage = page;
+                if (mLastPage - mFirstPage >= MAX_PAGES) {
+                    droppedPage = mFirstPage;
+                    mFirstPage++;
+                }
+            } else {
+                mFirstPage = page;
+                if (mLastPage - mFirstPage >= MAX_PAGES) {
+                    droppedPage = mLastPage;
+                    mLastPage--;
+                }
+            }
+        } else if (page >= mFirstPage && page <= mLastPage) {
+            // A page in the window was reloaded because the data changed
+            mPages.put(page, data);
+        } else {
+            return;
+        }
+
+        // The next page starts after the last row of this one. If that moved because rows
+        // were added or removed, the next page has to be loaded again from the new key.
+        long nextKey = mPageKeys.get(page);
+        if (data.moveToLast()) {
+            nextKey = data.getLong(data.getColumnIndex(InventoryEntry._ID));
+        }
+        if (page + 1 == mPageKeys.size()) {
+            mPageKeys.add(nextKey);
+        } else if (mPageKeys.get(page + 1) != nextKey) {
+            mPageKeys.set(page + 1, nextKey);
+            if (page + 1 <= mLastPage && page + 1 != droppedPage) {
+                mLoaderManager.restartLoader(mLoaderIdBase + page + 1, null, this);
+            }
+        }
+
+        if (droppedPage != -1) {
+            mPages.remove(droppedPage);
+        }
+        mCallback.onPagesChanged(mergePages());
+        if (droppedPage != -1) {
+            // Only destroy the loader once the list no longer uses its cursor
+            mLoaderManager.destroyLoader(mLoaderIdBase + droppedPage);
+        }
+    }
+
+    @Override
+    public void onLoaderReset(Loader<Cursor> loader) {
+        int page = loader.getId() - mLoaderIdBase;
+        if (mPages.get(page) != null) {
+            // The loaders are going away, so is the window
+            mFirstPage = 0;
+            mLastPage = -1;
+            mPages.clear();
+            mCallback.onPagesChanged(null);
+        }
+    }
+
+    // Combine the pages of the window into one cursor for the list.
+    private Cursor mergePages() {
+        if (mLastPage < mFirstPage) {
+            return null;
+        }
+        Cursor[] cursors = new Cursor[mLastPage - mFirstPage + 1];
+        for (int page = mFirstPage; page <= mLastPage; page++) {
+            cursors[page - mFirstPage] = mPages.get(page);
+        }
+        return new MergeCursor(cursors);
+    }
+}
@@ -3,6 +3,7 @@ package com.example.android.inventory_project;
 import android.app.AlertDialog;
 import android.app.LoaderManager;
 import android.content.ContentValues;
+import android.content.Context;
 import android.content.CursorLoader;
 import android.content.DialogInterface;
 import android.content.Intent;
@@ -22,9 +23,13 @@ import android.view.MotionEvent;
 import android.view.View;
 import android.widget.Button;
 import android.widget.EditText;
+import android.widget.ImageView;
 import android.widget.Toast;
 
+import com.example.android.inventory_project.data.InventoryContract;
 import com.example.android.inventory_project.data.InventoryContract.InventoryEntry;
+import com.example.android.inventory_project.data.InventoryRepository;
+import com.example.android.inventory_project.data.Prices;
 
 public class EditorActivity extends AppCompatActivity implements
         LoaderManager.LoaderCallbacks<Cursor> {
@@ -32,20 +37,44 @@ public class EditorActivity extends AppCompatActivity implements
     // Member Variables go here
     public static final String LOG_TAG = EditorActivity.class.getSimpleName();
     private static final int EXISTING_ITEM_LOADER = 0;
+    // Request code of picking a photo
+    private static final int PICK_PHOTO_REQUEST = 1;
+    // Saved instance state of the photo chosen in the editor
+    private static final String STATE_PHOTO = "photo";
+    private static final String STATE_PHOTO_CHOSEN = "photoChosen";
     // Uri stuff
     private Uri mCurrentItemUri;
     // Edit Fields
     private EditText mNameEditText;
     private EditText mPriceEditText;
     private EditText mQuantityEditText;
+    private EditText mReorderLevelEditText;
     private EditText mSupplierNameEditText;
     private EditText mSupplierPhoneEditText;
+    private ImageView mPhotoView;
+
+    // Name of the photo shown, see InventoryEntry.COLUMN_PHOTO. Either the photo of the item
+    // as loaded, or one chosen in the editor that no item refers to until the item is saved.
+    private String mPhoto;
+    // The photo of the item in the database, null if none or if the item is new
+    private String mItemPhoto;
+    // Whether mPhoto was chosen in the editor, so the loaded item doesn't replace it
+    private boolean mPhotoChosen;
+    // Whether the item was saved, which makes mPhoto the photo of the item
+    private boolean mSaved;
+    private boolean mDestroyed;
+    private ImageLoader mImageLoader;
 
 
     // Status flags
     // Boolean flag that keeps track of whether the item has been updated (true) or not (false)
     private boolean mItemHasUpdate = false;
 
+    // All writes go through the repository, off the main thread. Their results usually
+    // arrive after the editor has closed, so they are reported with the app context.
+    private InventoryRepository mRepository;
+    private Context mAppContext;
+
     // Helper Method for listening for changes from the user
     private View.OnTouchListener mTouchListener = new View.OnTouchListener() {
         @Override
@@ -59,6 +88,14 @@ public class EditorActivity extends AppCompatActivity implements
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_editor);
+        mRepository = InventoryRepository.getInstance(this);
+        mAppContext = getApplicationContext();
+        mImageLoader = ImageLoader.getInstance(this,
+                getResources().getDimensionPixelSize(R.dimen.editor_photo_size));
+        if (savedInstanceState != null) {
+            mPhoto = savedInstanceState.getString(STATE_PHOTO);
+            mPhotoChosen = savedInstanceState.getBoolean(STATE_PHOTO_CHOSEN);
+        }
 
         // Get the intent that was used to launch the activity,
         // in order to figure out if we're creating a new item or editing an existing one.
@@ -84,11 +121,15 @@ public class EditorActivity extends AppCompatActivity implements
         mNameEditText = (EditText) findViewById(R.id.edit_item_name);
         mPriceEditText = (EditText) findViewById(R.id.edit_item_price);
         mQuantityEditText = (EditText) findViewById(R.id.edit_item_quantity);
+        mReorderLevelEditText = (EditText) findViewById(R.id.edit_item_reorder_level);
         mSupplierNameEditText = (EditText) findViewById(R.id.edit_supplier_name);
         mSupplierPhoneEditText = (EditText) findViewById(R.id.edit_supplier_phone);
         Button mDecreaseItemCount = (Button) findViewById(R.id.button_decrease_quantity);
         // Other UI items
         Button mIncreaseItemCount = (Button) findViewById(R.id.button_increase_quantity);
+        mPhotoView = (ImageView) findViewById(R.id.edit_item_photo);
+        Button choosePhotoButton = (Button) findViewById(R.id.button_choose_photo);
+        showPhoto();
 
         // Setup an InputFilter to only allow numeric entry into certain fields.
         InputFilter filter = new InputFilter() {
@@ -106,6 +147,7 @@ public class EditorActivity extends AppCompatActivity implements
 
         mPriceEditText.setFilters(new InputFilter[]{filter});
         mQuantityEditText.setFilters(new InputFilter[]{filter});
+        mReorderLevelEditText.setFilters(new InputFilter[]{filter});
         mSupplierPhoneEditText.setFilters(new InputFilter[]{filter});
         // Setup OnTouchListeners on all the input fields, so we can determine if the user
         // has touched or modified them. This will let up know if there are unsaved changes
@@ -113,6 +155,7 @@ public class EditorActivity extends AppCompatActivity implements
         mNameEditText.setOnTouchListener(mTouchListener);
         mPriceEditText.setOnTouchListener(mTouchListener);
         mQuantityEditText.setOnTouchListener(mTouchListener);
+        mReorderLevelEditText.setOnTouchListener(mTouchListener);
         mSupplierNameEditText.setOnTouchListener(mTouchListener);
         mSupplierPhoneEditText.setOnTouchListener(mTouchListener);
 
@@ -133,6 +176,16 @@ public class EditorActivity extends AppCompatActivity implements
                 }
             }
         });
+        // Button to choose a photo from the gallery or the files
+        choosePhotoButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                Intent pickIntent = new Intent(Intent.ACTION_GET_CONTENT);
+                pickIntent.setType("image/*");
+                pickIntent.addCategory(Intent.CATEGORY_OPENABLE);
+                startActivityForResult(pickIntent, PICK_PHOTO_REQUEST);
+            }
+        });
         // Button to increase Item Count in UI
         mIncreaseItemCount.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -149,6 +202,63 @@ public class EditorActivity extends AppCompatActivity implements
     }
 
 
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        if (requestCode != PICK_PHOTO_REQUEST) {
+            super.onActivityResult(requestCode, resultCode, data);
+            return;
+        }
+        if (resultCode != RESULT_OK || data == null || data.getData() == null) {
+            return;
+        }
+        mItemHasUpdate = true;
+        // The picked image may be large and slow to read, copy it off the main thread
+        mRepository.savePhoto(data.getData(), new InventoryRepository.Callback<String>() {
+            @Override
+            public void onResult(String photo) {
+                if (photo == null) {
+                    Toast.makeText(mAppContext, R.string.photo_error, Toast.LENGTH_SHORT).show();
+                } else if (mDestroyed) {
+                    // The editor is gone, nothing refers to the copy
+                    mRepository.deletePhoto(photo);
+                } else {
+                    discardChosenPhoto();
+                    mPhoto = photo;
+                    mPhotoChosen = true;
+                    showPhoto();
+                }
+            }
+        });
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putString(STATE_PHOTO, mPhoto);
+        outState.putBoolean(STATE_PHOTO_CHOSEN, mPhotoChosen);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mDestroyed = true;
+        mImageLoader.cancel(mPhotoView);
+        if (isFinishing() && !mSaved) {
+            discardChosenPhoto();
+        }
+    }
+
+    private void showPhoto() {
+        mImageLoader.load(mPhoto, mPhotoView, R.drawable.stylephones);
+    }
+
+    // Delete the photo chosen in the editor, as it is replaced or the changes are discarded
+    private void discardChosenPhoto() {
+        if (mPhotoChosen && mPhoto != null && !mPhoto.equals(mItemPhoto)) {
+            mRepository.deletePhoto(mPhoto);
+        }
+    }
+
     // CRUD Functions for DB.
     private void saveItem() {
         // Read from input fields
@@ -156,6 +266,7 @@ public class EditorActivity extends AppCompatActivity implements
         String nameString = mNameEditText.getText().toString().trim();
         String priceString = mPriceEditText.getText().toString().trim();
         String quantityString = mQuantityEditText.getText().toString().trim();
+        String reorderLevelString = mReorderLevelEditText.getText().toString().trim();
         String supplierNameString = mSupplierNameEditText.getText().toString().trim();
         String supplierPhoneString = mSupplierPhoneEditText.getText().toString().trim();
 
@@ -163,8 +274,9 @@ public class EditorActivity extends AppCompatActivity implements
         // and check if all the fields in the editor are blank
         if (mCurrentItemUri == null &&
                 TextUtils.isEmpty(nameString) && TextUtils.isEmpty(priceString) &&
-                TextUtils.isEmpty(quantityString) && TextUtils.isEmpty(supplierNameString) &&
-                TextUtils.isEmpty(supplierPhoneString)) {
+                TextUtils.isEmpty(quantityString) && TextUtils.isEmpty(reorderLevelString) &&
+                TextUtils.isEmpty(supplierNameString) &&
+                TextUtils.isEmpty(supplierPhoneString) && mPhoto == null) {
             // Sine no fields have changed, we can return early without creating a new item.
             // No need to create ContentValues and no need to do any ConentProvider ops.
             return;
@@ -194,9 +306,14 @@ public class EditorActivity extends AppCompatActivity implements
         }
         values.put(InventoryEntry.COLUMN_SUPPLIER_PHONE, supplierPhone);
         // If the price is not provided, default to 0 without parsing.
+        // It is typed in units with up to two decimals and stored in cents.
         int itemPrice = 0;
         if (!TextUtils.isEmpty(priceString)) {
-            itemPrice = Integer.parseInt(priceString);
+            try {
+                itemPrice = Prices.parse(priceString);
+            } catch (NumberFormatException e) {
+                Toast.makeText(this, R.string.price_error, Toast.LENGTH_SHORT).show();
+            }
         }
         values.put(InventoryEntry.COLUMN_PRODUCT_PRICE, itemPrice);
 
@@ -206,34 +323,50 @@ public class EditorActivity extends AppCompatActivity implements
         }
 
         values.put(InventoryEntry.COLUMN_PRODUCT_QUANTITY, itemQuantity);
+
+        // If the reorder level is not provided, use the default one.
+        int reorderLevel = InventoryContract.LOW_STOCK_THRESHOLD;
+        if (!TextUtils.isEmpty(reorderLevelString)) {
+            reorderLevel = Integer.parseInt(reorderLevelString);
+        }
+        values.put(InventoryEntry.COLUMN_REORDER_LEVEL, reorderLevel);
+        // The photo of an item that had one and got a new one goes in the trash with the update
+        values.put(InventoryEntry.COLUMN_PHOTO, mPhoto);
+        mSaved = true;
         // Determine if this is a new or existing item by checking if mCurrentItemUri is null or not
         if (mCurrentItemUri == null) {
             // This is a NEW item, so insert a new item into the provider,
             // returning the content URI for the new item.
-            Uri newUri = getContentResolver().insert(InventoryEntry.CONTENT_URI, values);
-
-            // Show a toast message depending on whether or not the insertion was good.
-            if (newUri == null) {
-                // If the new content URI is null, then there was an error with insertion.
-                Toast.makeText(this, R.string.issue_with_save, Toast.LENGTH_SHORT).show();
-            } else {
-                // Otherwise, the insertion was good and we can display a toast.
-                Toast.makeText(this, R.string.save_ok, Toast.LENGTH_SHORT).show();
-            }
+            mRepository.insert(values, new InventoryRepository.Callback<Uri>() {
+                @Override
+                public void onResult(Uri newUri) {
+                    // Show a toast message depending on whether or not the insertion was good.
+                    if (newUri == null) {
+                        // If the new content URI is null, then there was an error with insertion.
+                        Toast.makeText(mAppContext, R.string.issue_with_save, Toast.LENGTH_SHORT).show();
+                    } else {
+                        // Otherwise, the insertion was good and we can display a toast.
+                        Toast.makeText(mAppContext, R.string.save_ok, Toast.LENGTH_SHORT).show();
+                    }
+                }
+            });
         } else {
             // Otherwise this is an existing item, so update the item with content URI: mCurrentItemUri
             // and pass in the new ContentValues. Pass is null for the selection and selection args
             // because mCurrentItemUri will already id the correct row in the db that we want.
-            int rowsaffected = getContentResolver().update(mCurrentItemUri, values, null, null);
-
-            // Show a toast message depending on whether or not the update was good.
-            if (rowsaffected == 0) {
-                // If no rows were affected, then there was an error with the update.
-                Toast.makeText(this, R.string.error_update, Toast.LENGTH_SHORT).show();
-            } else {
-                // Otherwise, the update was good and we can display a toast.
-                Toast.makeText(this, R.string.update_ok, Toast.LENGTH_SHORT).show();
-            }
+            mRepository.update(mCurrentItemUri, values, new InventoryRepository.Callback<Integer>() {
+                @Override
+                public void onResult(Integer rowsaffected) {
+                    // Show a toast message depending on whether or not the update was good.
+                    if (rowsaffected == null || rowsaffected == 0) {
+                        // If no rows were affected, then there was an error with the update.
+                        Toast.makeText(mAppContext, R.string.error_update, Toast.LENGTH_SHORT).show();
+                    } else {
+                        // Otherwise, the update was good and we can display a toast.
+                        Toast.makeText(mAppContext, R.string.update_ok, Toast.LENGTH_SHORT).show();
+                    }
+                }
+            });
         }
     }
 
@@ -271,15 +404,20 @@ public class EditorActivity extends AppCompatActivity implements
             // Call the ContentResolver to delete the item at the given Uri.
             // Pass in null for the selection and selection args since mCurrentItemUri
             // content URI already id's the item we want.
-            int rowsDeleted = getContentResolver().delete(mCurrentItemUri, null, null);
-            // Show a toast message depending on whether or not the delete was good.
-            if (rowsDeleted == 0) {
-                Toast.makeText(this, R.string.error_delete, Toast.LENGTH_SHORT).show();
-                Log.e(LOG_TAG, getString(R.string.error_delete_message) + mCurrentItemUri);
-            } else {
-                // Otherwise, the delete was good and we can display a toast.
-                Toast.makeText(this, R.string.delete_ok, Toast.LENGTH_SHORT).show();
-            }
+            final Uri itemUri = mCurrentItemUri;
+            mRepository.delete(itemUri, new InventoryRepository.Callback<Integer>() {
+                @Override
+                public void onResult(Integer rowsDeleted) {
+                    // Show a toast message depending on whether or not the delete was good.
+                    if (rowsDeleted == null || rowsDeleted == 0) {
+                        Toast.makeText(mAppContext, R.string.error_delete, Toast.LENGTH_SHORT).show();
+                        Log.e(LOG_TAG, mAppContext.getString(R.string.error_delete_message) + itemUri);
+                    } else {
+                        // Otherwise, the delete was good and we can display a toast.
+                        Toast.makeText(mAppContext, R.string.delete_ok, Toast.LENGTH_SHORT).show();
+                    }
+                }
+            });
             // Close the activity
             finish();
         }
@@ -386,7 +524,9 @@ public class EditorActivity extends AppCompatActivity implements
                 InventoryEntry.COLUMN_PRODUCT_PRICE,
                 InventoryEntry.COLUMN_PRODUCT_QUANTITY,
                 InventoryEntry.COLUMN_SUPPLIER_NAME,
-                InventoryEntry.COLUMN_SUPPLIER_PHONE
+                InventoryEntry.COLUMN_SUPPLIER_PHONE,
+                InventoryEntry.COLUMN_REORDER_LEVEL,
+                InventoryEntry.COLUMN_PHOTO
         };
         // This loader will execute the ContentProvider's query method on a background thread
 
@@ -413,6 +553,8 @@ public class EditorActivity extends AppCompatActivity implements
             int quantityColumnIndex = cursor.getColumnIndex(InventoryEntry.COLUMN_PRODUCT_QUANTITY);
             int supplierNameColumnIndex = cursor.getColumnIndex(InventoryEntry.COLUMN_SUPPLIER_NAME);
             int supplierPhoneColumnIndex = cursor.getColumnIndex(InventoryEntry.COLUMN_SUPPLIER_PHONE);
+            int reorderLevelColumnIndex = cursor.getColumnIndex(InventoryEntry.COLUMN_REORDER_LEVEL);
+            int photoColumnIndex = cursor.getColumnIndex(InventoryEntry.COLUMN_PHOTO);
 
             // Extract out the value from the Cursor for the given column index
             String name = cursor.getString(nameColumnIndex);
@@ -420,13 +562,20 @@ public class EditorActivity extends AppCompatActivity implements
             int quantity = cursor.getInt(quantityColumnIndex);
             String supplierName = cursor.getString(supplierNameColumnIndex);
             Long supplierPhoneNumber = cursor.getLong(supplierPhoneColumnIndex);
+            int reorderLevel = cursor.getInt(reorderLevelColumnIndex);
+            mItemPhoto = cursor.getString(photoColumnIndex);
 
             // Update the views on the screen with the values from the db.
             mNameEditText.setText(name);
-            mPriceEditText.setText(Integer.toString(price));
+            mPriceEditText.setText(Prices.format(price));
             mQuantityEditText.setText(Integer.toString(quantity));
             mSupplierNameEditText.setText(supplierName);
             mSupplierPhoneEditText.setText(Long.toString(supplierPhoneNumber));
+            mReorderLevelEditText.setText(Integer.toString(reorderLevel));
+            if (!mPhotoChosen) {
+                mPhoto = mItemPhoto;
+                showPhoto();
+            }
         }
     }
 
@@ -436,6 +585,7 @@ public class EditorActivity extends AppCompatActivity implements
         mNameEditText.setText(R.string.empty);
         mPriceEditText.setText(R.string.empty);
         mQuantityEditText.setText(R.string.empty);
+        mReorderLevelEditText.setText(R.string.empty);
         mSupplierNameEditText.setText(R.string.empty);
         mSupplierPhoneEditText.setText(R.string.empty);
     }
@@ -0,0 +1,291 @@
+package com.example.android.inventory_project;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import android.util.LruCache;
+import android.util.SparseArray;
+import android.widget.ImageView;
+
+import com.example.android.inventory_project.data.PhotoStore;
+import com.example.android.inventory_project.data.ThumbnailCache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Loads the photos of the items into square image views of one size, decoded on background
+ * threads and downsampled to the size of the view, so a full size photo never reaches the
+ * heap. There is a loader for every size the app shows photos at, see
+ * {@link #getInstance(Context, int)}.
+ * <p>
+ * Photos that were shown before come from two levels of cache: the bitmaps in memory, up
+ * to a sixteenth of the heap for each size, and their thumbnails on disk, see
+ * {@link ThumbnailCache}. Only a photo that is in neither is decoded from its file. The
+ * memory cache is keyed by the name of the photo alone, so showing a photo from it
+ * allocates nothing, as the list needs while it scrolls.
+ * <p>
+ * Every method must be called on the main thread. The loader keeps the request of a view in
+ * its tag, so the views it loads into must not have a tag of their own.
+ */
+public final class ImageLoader implements ComponentCallbacks2 {
+
+    private static final String LOG_TAG = ImageLoader.class.getSimpleName();
+
+    // Directory of the thumbnails in the cache directory of the app
+    private static final String THUMBNAIL_DIRECTORY = "thumbnails";
+    private static final long MAX_THUMBNAIL_BYTES = 32 * 1024 * 1024;
+    private static final int THUMBNAIL_QUALITY = 85;
+
+    // Share of the heap the bitmaps of one size may take. The app shows photos at two sizes,
+    // in the list and in the editor, which together take at most an eighth.
+    static final int MEMORY_CACHE_DIVISOR = 16;
+
+    // Decoding is bound by the CPU, and the list has a few rows to fill at a time
+    private static final int THREADS = 2;
+
+    // The loaders by size, and the threads and thumbnails they share
+    private static final SparseArray<ImageLoader> sInstances = new SparseArray<>();
+    private static ExecutorService sExecutor;
+    private static ThumbnailCache sThumbnails;
+
+    private final File mPhotoDirectory;
+    // Width and height of the views, in pixels
+    private final int mSize;
+    // Keyed by the name of the photo
+    private final LruCache<String, Bitmap> mBitmaps;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private ImageLoader(Context context, int size) {
+        mPhotoDirectory = PhotoStore.getDirectory(context);
+        mSize = size;
+        mBitmaps = new LruCache<String, Bitmap>((int) (Runtime.getRuntime().maxMemory() / MEMORY_CACHE_DIVISOR)) {
+            @Override
+            protected int sizeOf(String photo, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+    }
+
+    /**
+     * Returns the loader of the photos of square views of the given size.
+     *
+     * @param size width and height of the views in pixels
+     */
+    public static ImageLoader getInstance(Context context, int size) {
+        ImageLoader loader = sInstances.get(size);
+        if (loader == null) {
+            Context appContext = context.getApplicationContext();
+            if (sExecutor == null) {
+                sThumbnails = new ThumbnailCache(new File(appContext.getCacheDir(), THUMBNAIL_DIRECTORY),
+                        MAX_THUMBNAIL_BYTES);
+                sExecutor = newExecutor();
+            }
+            loader = new ImageLoader(appContext, size);
+            sInstances.put(size, loader);
+            appContext.registerComponentCallbacks(loader);
+        }
+        return loader;
+    }
+
+    private static ExecutorService newExecutor() {
+        return Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+            private int mCount;
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Below the main thread and the render thread, so scrolling keeps
+                        // its frames while photos decode
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "image-loader-" + ++mCount);
+            }
+        });
+    }
+
+    /**
+     * Shows a photo in a view of the size of this loader. The placeholder is shown until the
+     * photo is loaded, and instead of it if there is none. Cancels the photo the view was
+     * loading before, e.g. when a list row is bound to another item.
+     *
+     * @param photo       name of the photo in InventoryEntry.COLUMN_PHOTO, or null if none
+     * @param placeholder drawable resource to show until the photo is loaded
+     */
+    public void load(String photo, ImageView view, int placeholder) {
+        if (photo == null) {
+            cancel(view);
+            view.setImageResource(placeholder);
+            return;
+        }
+        Object tag = view.getTag();
+        if (tag instanceof Request && ((Request) tag).mPhoto.equals(photo)) {
+            // Bound to the same photo again while it loads
+            return;
+        }
+        cancel(view);
+
+        Bitmap bitmap = mBitmaps.get(photo);
+        if (bitmap != null) {
+            view.setImageBitmap(bitmap);
+            return;
+        }
+        view.setImageResource(placeholder);
+        Request request = new Request(photo, view);
+        view.setTag(request);
+        request.mFuture = sExecutor.submit(request);
+    }
+
+    /**
+     * Cancels the photo a view is loading, if any, e.g. when a list row is recycled. The
+     * view keeps showing what it shows.
+     */
+    public void cancel(ImageView view) {
+        Object tag = view.getTag();
+        if (tag instanceof Request) {
+            Request request = (Request) tag;
+            request.mCancelled = true;
+            request.mFuture.cancel(false);
+            view.setTag(null);
+        }
+    }
+
+    // Runs on a loader thread
+    private Bitmap decode(Request request) {
+        // The thumbnails of all sizes share the directory
+        String key = ThumbnailCache.getKey(request.mPhoto, mSize, mSize);
+        File thumbnail = sThumbnails.get(key);
+        if (thumbnail != null) {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inPreferredConfig = Bitmap.Config.RGB_565;
+            Bitmap bitmap = BitmapFactory.decodeFile(thumbnail.getPath(), options);
+            if (bitmap != null) {
+                return bitmap;
+            }
+        }
+
+        Bitmap bitmap = decodePhoto(PhotoStore.getFile(mPhotoDirectory, request.mPhoto), mSize, mSize);
+        if (bitmap != null && !request.mCancelled) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            bitmap.compress(Bitmap.CompressFormat.JPEG, THUMBNAIL_QUALITY, out);
+            try {
+                sThumbnails.put(key, out.toByteArray());
+            } catch (IOException e) {
+                // Decoded from the photo again next time
+                Log.w(LOG_TAG, "Could not write the thumbnail of " + request.mPhoto, e);
+            }
+        }
+        return bitmap;
+    }
+
+    // Decode the photo at the smallest size that still covers the view. Photos have no
+    // transparency, so RGB_565 holds them at half the memory of ARGB_8888.
+    private static Bitmap decodePhoto(File file, int width, int height) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            // Missing, or not an image
+            return null;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = ThumbnailCache.sampleSize(options.outWidth, options.outHeight, width, height);
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        Bitmap sampled = BitmapFactory.decodeFile(file.getPath(), options);
+        if (sampled == null) {
+            return null;
+        }
+
+        // Sampling only goes by powers of two, which leaves the bitmap up to twice as large
+        // as the view in each direction. Scale the rest of the way, keeping the aspect ratio.
+        float scale = Math.max((float) width / sampled.getWidth(), (float) height / sampled.getHeight());
+        if (scale >= 1) {
+            return sampled;
+        }
+        Bitmap scaled = Bitmap.createScaledBitmap(sampled, Math.round(sampled.getWidth() * scale),
+                Math.round(sampled.getHeight() * scale), true);
+        if (scaled != sampled) {
+            sampled.recycle();
+        }
+        return scaled;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_BACKGROUND) {
+            // The disk cache has them all
+            mBitmaps.evictAll();
+        } else if (level >= TRIM_MEMORY_UI_HIDDEN) {
+            mBitmaps.trimToSize(mBitmaps.maxSize() / 2);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        mBitmaps.evictAll();
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    /**
+     * Loads one photo into one view.
+     */
+    private final class Request implements Runnable {
+        final String mPhoto;
+        final ImageView mView;
+
+        Future<?> mFuture;
+        // Set on the main thread when the view moves on, read by the loader thread to skip
+        // the work that is left
+        volatile boolean mCancelled;
+
+        Request(String photo, ImageView view) {
+            mPhoto = photo;
+            mView = view;
+        }
+
+        @Override
+        public void run() {
+            if (mCancelled) {
+                return;
+            }
+            final Bitmap bitmap = decode(this);
+            if (bitmap == null) {
+                // The placeholder stays
+                Log.w(LOG_TAG, "Could not decode the photo " + mPhoto);
+            } else {
+                mBitmaps.put(mPhoto, bitmap);
+            }
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    // The view may have been bound to another photo in the meantime
+                    if (mView.getTag() != Request.this) {
+                        return;
+                    }
+                    mView.setTag(null);
+                    if (bitmap != null) {
+                        mView.setImageBitmap(bitmap);
+                    }
+                }
+            });
+        }
+    }
+}
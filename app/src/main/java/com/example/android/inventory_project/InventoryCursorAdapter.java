@@ -1,61 +1,287 @@
 package com.example.android.inventory_project;
 
-import android.content.Context;
 import android.database.Cursor;
+import android.support.annotation.NonNull;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Button;
-import android.widget.CursorAdapter;
+import android.widget.ImageView;
 import android.widget.TextView;
 
+import com.example.android.inventory_project.data.CatalogSnapshot;
+import com.example.android.inventory_project.data.TextCache;
+
+import java.util.List;
+
 import static com.example.android.inventory_project.data.InventoryContract.InventoryEntry;
 
 
-public class InventoryCursorAdapter extends CursorAdapter {
-    public InventoryCursorAdapter(Context context, Cursor c) {
-        super(context, c, 0);
+public class InventoryCursorAdapter extends RecyclerView.Adapter<InventoryCursorAdapter.ViewHolder> {
+
+    /**
+     * Receives clicks on the rows of the list.
+     */
+    public interface OnItemActionListener {
+        // The row itself was clicked
+        void onItemClick(long id);
+
+        // The Sale button of the row was clicked
+        void onSaleClick(long id);
+    }
+
+    // Change payload for a row where only the quantity changed, e.g. after a sale.
+    private static final Object PAYLOAD_QUANTITY = new Object();
+
+    // Number of price and quantity texts kept, a few screens worth of rows
+    private static final int TEXT_CACHE_SIZE = 256;
+
+    private final OnItemActionListener mListener;
+
+    // Loads the photos of the rows, at the size of the photo of a row
+    private final ImageLoader mImageLoader;
+
+    private Cursor mCursor;
+
+    // The rows of the current cursor. The list binds from here, and the next cursor is
+    // diffed against it.
+    private Snapshot mSnapshot = new Snapshot(null);
+
+    // Texts of the prices and quantities shown, so rebinding a row that was shown before,
+    // e.g. while scrolling back, formats and allocates nothing
+    private final TextCache mPriceTexts = TextCache.forPrices(TEXT_CACHE_SIZE);
+    private final TextCache mQuantityTexts = TextCache.forNumbers(TEXT_CACHE_SIZE);
+
+    // One click handler shared by every row. The view holder is stored as tag on the
+    // clickable views, so the handler can tell which row was clicked.
+    private final View.OnClickListener mClickHandler = new View.OnClickListener() {
+        @Override
+        public void onClick(View v) {
+            ViewHolder holder = (ViewHolder) v.getTag();
+            if (holder.getAdapterPosition() == RecyclerView.NO_POSITION) {
+                return;
+            }
+            if (v.getId() == R.id.main_action_sale) {
+                mListener.onSaleClick(holder.getItemId());
+            } else {
+                mListener.onItemClick(holder.getItemId());
+            }
+        }
+    };
+
+    public InventoryCursorAdapter(OnItemActionListener listener, ImageLoader imageLoader) {
+        mListener = listener;
+        mImageLoader = imageLoader;
+        setHasStableIds(true);
+    }
+
+    /**
+     * Replaces the cursor of the list. Only the rows that differ from the old cursor are
+     * rebound, and rows where just the quantity changed only get their quantity updated.
+     * The old cursor is not closed.
+     */
+    public void swapCursor(Cursor cursor) {
+        if (cursor == mCursor) {
+            return;
+        }
+        mCursor = cursor;
+
+        Snapshot snapshot = new Snapshot(cursor);
+        DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new SnapshotDiff(mSnapshot, snapshot), false);
+        mSnapshot = snapshot;
+        diff.dispatchUpdatesTo(this);
+    }
+
+    /**
+     * Shows the rows of a snapshot until the first cursor arrives, which is then diffed
+     * against them like against the rows of a previous cursor. Ignored once there is a cursor.
+     */
+    public void showSnapshot(CatalogSnapshot snapshot) {
+        if (mCursor != null) {
+            return;
+        }
+        mSnapshot = new Snapshot(snapshot);
+        notifyDataSetChanged();
     }
 
     @Override
-    public View newView(Context context, Cursor cursor, ViewGroup parent) {
-        return LayoutInflater.from(context).inflate(R.layout.list_item, parent, false);
+    public int getItemCount() {
+        return mSnapshot.size;
     }
 
+    @Override
+    public long getItemId(int position) {
+        return mSnapshot.ids[position];
+    }
 
+    @NonNull
     @Override
-    public void bindView(View view, final Context context, Cursor cursor) {
-        // Individual views that we want to modify in the list item layout
-        TextView nameTextView = (TextView) view.findViewById(R.id.name);
-        TextView priceTextView = (TextView) view.findViewById(R.id.price);
-        final TextView quantityTextView = (TextView) view.findViewById(R.id.quantity);
-        Button saleButton = (Button) view.findViewById(R.id.main_action_sale);
-
-        // Find the columns of the item attribs that we're interested in
-        int nameColumnIndex = cursor.getColumnIndex(InventoryEntry.COLUMN_PRODUCT_NAME);
-        int priceColumnIndex = cursor.getColumnIndex(InventoryEntry.COLUMN_PRODUCT_PRICE);
-        final int quantityColumnIndex = cursor.getColumnIndex(InventoryEntry.COLUMN_PRODUCT_QUANTITY);
-
-        // Read in the data from the Cursor for the current item
-        String itemName = cursor.getString(nameColumnIndex);
-        String itemPrice = cursor.getString(priceColumnIndex);
-        String itemQuantity = cursor.getString(quantityColumnIndex);
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.list_item, parent, false);
+        ViewHolder holder = new ViewHolder(view);
+        view.setTag(holder);
+        view.setOnClickListener(mClickHandler);
+        holder.saleButton.setTag(holder);
+        holder.saleButton.setOnClickListener(mClickHandler);
+        return holder;
+    }
 
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
         // Populate views with data we want to show
-        nameTextView.setText(itemName);
-        priceTextView.setText(itemPrice);
-        quantityTextView.setText(itemQuantity);
-
-        final int id = cursor.getInt(cursor.getColumnIndex(InventoryEntry._ID));
-        final int quantity = Integer.parseInt(itemQuantity);
-
-        saleButton.findViewById(R.id.main_action_sale).setOnClickListener(new View.OnClickListener() {
-            @Override
-            public void onClick(View v) {
-                CatalogActivity mainActivity = (CatalogActivity) context;
-                mainActivity.sellItem(id, quantity);
+        holder.nameTextView.setText(mSnapshot.names[position]);
+        holder.priceTextView.setText(mPriceTexts.get(mSnapshot.prices[position]));
+        holder.quantityTextView.setText(mQuantityTexts.get(mSnapshot.quantities[position]));
+        // The name of the photo is the key of the memory cache, so a photo shown before
+        // needs no lookup key built
+        mImageLoader.load(mSnapshot.photos[position], holder.photoView, R.drawable.stylephones);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.isEmpty()) {
+            onBindViewHolder(holder, position);
+            return;
+        }
+        for (Object payload : payloads) {
+            if (payload != PAYLOAD_QUANTITY) {
+                onBindViewHolder(holder, position);
+                return;
             }
-        });
+        }
+        // Only the quantity changed, leave the rest of the row alone
+        holder.quantityTextView.setText(mQuantityTexts.get(mSnapshot.quantities[position]));
     }
 
+    @Override
+    public void onViewRecycled(@NonNull ViewHolder holder) {
+        // The row scrolled away, its photo isn't needed any more
+        mImageLoader.cancel(holder.photoView);
+    }
+
+    /**
+     * Holds the views of one row, so they are only looked up once.
+     */
+    static class ViewHolder extends RecyclerView.ViewHolder {
+        final TextView nameTextView;
+        final TextView priceTextView;
+        final TextView quantityTextView;
+        final Button saleButton;
+        final ImageView photoView;
+
+        ViewHolder(View view) {
+            super(view);
+            nameTextView = view.findViewById(R.id.name);
+            priceTextView = view.findViewById(R.id.price);
+            quantityTextView = view.findViewById(R.id.quantity);
+            saleButton = view.findViewById(R.id.main_action_sale);
+            photoView = view.findViewById(R.id.photo);
+        }
+    }
+
+    /**
+     * The values of every row of a cursor, or of a {@link CatalogSnapshot}, that the list shows. The column indexes are
+     * resolved once per cursor, and binding a row needs no cursor access at all.
+     */
+    private static class Snapshot {
+        final int size;
+        final long[] ids;
+        final String[] names;
+        // In cents
+        final int[] prices;
+        final int[] quantities;
+        final String[] photos;
+
+        Snapshot(Cursor cursor) {
+            size = cursor == null ? 0 : cursor.getCount();
+            ids = new long[size];
+            names = new String[size];
+            prices = new int[size];
+            quantities = new int[size];
+            photos = new String[size];
+            if (cursor == null) {
+                return;
+            }
+
+            int idColumnIndex = cursor.getColumnIndex(InventoryEntry._ID);
+            int nameColumnIndex = cursor.getColumnIndex(InventoryEntry.COLUMN_PRODUCT_NAME);
+            int priceColumnIndex = cursor.getColumnIndex(InventoryEntry.COLUMN_PRODUCT_PRICE);
+            int quantityColumnIndex = cursor.getColumnIndex(InventoryEntry.COLUMN_PRODUCT_QUANTITY);
+            int photoColumnIndex = cursor.getColumnIndex(InventoryEntry.COLUMN_PHOTO);
+            for (int i = 0; i < size && cursor.moveToPosition(i); i++) {
+                ids[i] = cursor.getLong(idColumnIndex);
+                names[i] = cursor.getString(nameColumnIndex);
+                prices[i] = cursor.getInt(priceColumnIndex);
+                quantities[i] = cursor.getInt(quantityColumnIndex);
+                photos[i] = cursor.getString(photoColumnIndex);
+            }
+        }
+
+        Snapshot(CatalogSnapshot snapshot) {
+            size = snapshot.getCount();
+            ids = new long[size];
+            names = new String[size];
+            prices = new int[size];
+            quantities = new int[size];
+            photos = new String[size];
+            for (int i = 0; i < size; i++) {
+                ids[i] = snapshot.getId(i);
+                names[i] = snapshot.getName(i);
+                prices[i] = snapshot.getPrice(i);
+                quantities[i] = snapshot.getQuantity(i);
+                photos[i] = snapshot.getPhoto(i);
+            }
+        }
+    }
+
+    /**
+     * Compares two snapshots row by row, matching rows on their _ID.
+     */
+    private static class SnapshotDiff extends DiffUtil.Callback {
+        private final Snapshot mOld;
+        private final Snapshot mNew;
+
+        SnapshotDiff(Snapshot oldSnapshot, Snapshot newSnapshot) {
+            mOld = oldSnapshot;
+            mNew = newSnapshot;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOld.size;
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNew.size;
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOld.ids[oldItemPosition] == mNew.ids[newItemPosition];
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOld.quantities[oldItemPosition] == mNew.quantities[newItemPosition]
+                    && isSameExceptQuantity(oldItemPosition, newItemPosition);
+        }
+
+        @Override
+        public Object getChangePayload(int oldItemPosition, int newItemPosition) {
+            return isSameExceptQuantity(oldItemPosition, newItemPosition) ? PAYLOAD_QUANTITY : null;
+        }
+
+        private boolean isSameExceptQuantity(int oldItemPosition, int newItemPosition) {
+            return mOld.prices[oldItemPosition] == mNew.prices[newItemPosition]
+                    && equals(mOld.names[oldItemPosition], mNew.names[newItemPosition])
+                    && equals(mOld.photos[oldItemPosition], mNew.photos[newItemPosition]);
+        }
+
+        private static boolean equals(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
 }
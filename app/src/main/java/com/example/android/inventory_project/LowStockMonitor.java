@@ -0,0 +1,236 @@
+package com.example.android.inventory_project;
+
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.support.v4.app.NotificationCompat;
+import android.support.v4.app.NotificationManagerCompat;
+import android.util.Log;
+
+import com.example.android.inventory_project.data.InventoryContract;
+import com.example.android.inventory_project.data.InventoryContract.InventoryEntry;
+import com.example.android.inventory_project.data.InventoryContract.QuantityChangeEntry;
+import com.example.android.inventory_project.data.LowStockCheck;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Posts a notification for every item that goes low on stock, and takes it away again once
+ * the item is restocked. Runs a {@link LowStockCheck} on a background thread whenever the
+ * inventory changes, which only reads the change log written by the triggers, never the
+ * inventory itself. The checkpoint of the check is kept in the shared preferences.
+ */
+public final class LowStockMonitor {
+
+    // Tag for all log messages
+    public static final String LOG_TAG = LowStockMonitor.class.getSimpleName();
+
+    private static final String CHANNEL_ID = "low_stock";
+    private static final String NOTIFICATION_TAG = "low_stock";
+    private static final String NOTIFICATION_GROUP = "com.example.android.inventory_project.LOW_STOCK";
+
+    private static final String PREFERENCES_NAME = "low_stock_monitor";
+    private static final String KEY_CHECKPOINT = "checkpoint";
+
+    private static final String[] CHANGE_PROJECTION = {
+            QuantityChangeEntry._ID,
+            QuantityChangeEntry.COLUMN_ITEM_ID,
+            QuantityChangeEntry.COLUMN_QUANTITY,
+            QuantityChangeEntry.COLUMN_REORDER_LEVEL};
+
+    private static final String[] NAME_PROJECTION = {InventoryEntry.COLUMN_PRODUCT_NAME};
+
+    private static LowStockMonitor sInstance;
+
+    private final Context mContext;
+    private final ContentResolver mContentResolver;
+    private final Handler mHandler;
+    private final LowStockCheck mCheck;
+    private boolean mStarted;
+
+    private final Runnable mRunCheck = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                int handled = mCheck.run();
+                if (handled != 0) {
+                    Log.d(LOG_TAG, "Handled " + handled + " stock level changes");
+                }
+            } catch (RuntimeException e) {
+                // Picked up again from the checkpoint on the next change
+                Log.e(LOG_TAG, "Low stock check failed", e);
+            }
+        }
+    };
+
+    private LowStockMonitor(Context context) {
+        mContext = context;
+        mContentResolver = context.getContentResolver();
+        HandlerThread thread = new HandlerThread("low-stock-monitor",
+                android.os.Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        mHandler = new Handler(thread.getLooper());
+        mCheck = new LowStockCheck(new ProviderChangeLog(),
+                new PreferencesCheckpointStore(
+                        context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE)),
+                new NotificationAlerter());
+    }
+
+    public static synchronized LowStockMonitor getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new LowStockMonitor(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Starts watching the inventory, and catches up on the changes made while the app
+     * wasn't running. Does nothing if the monitor is already started.
+     */
+    public synchronized void start() {
+        if (mStarted) {
+            return;
+        }
+        mStarted = true;
+        createChannel();
+        mContentResolver.registerContentObserver(InventoryEntry.CONTENT_URI, true,
+                new ContentObserver(mHandler) {
+                    @Override
+                    public void onChange(boolean selfChange) {
+                        check();
+                    }
+                });
+        check();
+    }
+
+    // Run the check on the background thread. A burst of changes that arrives while a
+    // check is waiting only runs it once.
+    private void check() {
+        mHandler.removeCallbacks(mRunCheck);
+        mHandler.post(mRunCheck);
+    }
+
+    private void createChannel() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationChannel channel = new NotificationChannel(CHANNEL_ID,
+                    mContext.getString(R.string.low_stock_channel), NotificationManager.IMPORTANCE_DEFAULT);
+            mContext.getSystemService(NotificationManager.class).createNotificationChannel(channel);
+        }
+    }
+
+    /**
+     * Reads and prunes the change log through {@link QuantityChangeEntry#CONTENT_URI}.
+     */
+    private final class ProviderChangeLog implements LowStockCheck.ChangeLog {
+        @Override
+        public List<LowStockCheck.Change> read(long afterId, int limit) {
+            Uri uri = QuantityChangeEntry.CONTENT_URI.buildUpon()
+                    .appendQueryParameter(InventoryContract.QUERY_PARAMETER_AFTER, String.valueOf(afterId))
+                    .appendQueryParameter(InventoryContract.QUERY_PARAMETER_LIMIT, String.valueOf(limit))
+                    .build();
+            List<LowStockCheck.Change> changes = new ArrayList<>();
+            Cursor cursor = mContentResolver.query(uri, CHANGE_PROJECTION, null, null, null);
+            if (cursor == null) {
+                return changes;
+            }
+            try {
+                while (cursor.moveToNext()) {
+                    changes.add(new LowStockCheck.Change(cursor.getLong(0), cursor.getLong(1),
+                            cursor.getInt(2), cursor.getInt(3)));
+                }
+            } finally {
+                cursor.close();
+            }
+            return changes;
+        }
+
+        @Override
+        public void prune(long upToId) {
+            mContentResolver.delete(QuantityChangeEntry.CONTENT_URI, QuantityChangeEntry._ID + " <= ?",
+                    new String[]{String.valueOf(upToId)});
+        }
+    }
+
+    /**
+     * Keeps the checkpoint in the shared preferences. Written with commit(), so it is on
+     * disk before the change log is pruned.
+     */
+    private static final class PreferencesCheckpointStore implements LowStockCheck.CheckpointStore {
+        private final SharedPreferences mPreferences;
+
+        PreferencesCheckpointStore(SharedPreferences preferences) {
+            mPreferences = preferences;
+        }
+
+        @Override
+        public long load() {
+            return mPreferences.getLong(KEY_CHECKPOINT, 0);
+        }
+
+        @Override
+        public void save(long lastId) {
+            if (!mPreferences.edit().putLong(KEY_CHECKPOINT, lastId).commit()) {
+                throw new IllegalStateException("Failed to save the low stock checkpoint");
+            }
+        }
+    }
+
+    /**
+     * One notification per item, with the item _ID as its id, so an alert raised twice
+     * replaces the first one. Tapping it opens the item in the editor.
+     */
+    private final class NotificationAlerter implements LowStockCheck.Alerter {
+        @Override
+        public void onLowStock(long itemId, int quantity, int reorderLevel) {
+            Uri itemUri = ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, itemId);
+            String name = queryName(itemUri);
+            if (name == null) {
+                // Deleted since
+                return;
+            }
+
+            Intent intent = new Intent(mContext, EditorActivity.class);
+            intent.setData(itemUri);
+            PendingIntent pendingIntent = PendingIntent.getActivity(mContext, 0, intent,
+                    PendingIntent.FLAG_UPDATE_CURRENT);
+            NotificationCompat.Builder builder = new NotificationCompat.Builder(mContext, CHANNEL_ID)
+                    .setSmallIcon(R.drawable.ic_headset_black_24dp)
+                    .setContentTitle(mContext.getString(R.string.low_stock_title, name))
+                    .setContentText(mContext.getString(R.string.low_stock_text, quantity, reorderLevel))
+                    .setContentIntent(pendingIntent)
+                    .setGroup(NOTIFICATION_GROUP)
+                    .setOnlyAlertOnce(true)
+                    .setAutoCancel(true);
+            NotificationManagerCompat.from(mContext).notify(NOTIFICATION_TAG, (int) itemId, builder.build());
+        }
+
+        @Override
+        public void onRestocked(long itemId) {
+            NotificationManagerCompat.from(mContext).cancel(NOTIFICATION_TAG, (int) itemId);
+        }
+
+        private String queryName(Uri itemUri) {
+            Cursor cursor = mContentResolver.query(itemUri, NAME_PROJECTION, null, null, null);
+            if (cursor == null) {
+                return null;
+            }
+            try {
+                return cursor.moveToFirst() ? cursor.getString(0) : null;
+            } finally {
+                cursor.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.android.inventory_project.data;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used map of barcodes to the _ID of their item, for the barcode lookups of
+ * {@link InventoryProvider}. Bounded, as a catalog can have far more barcodes than are worth
+ * keeping in memory; the items a shop sells most stay in it.
+ * <p>
+ * Entries are never invalidated by writes. A barcode can move to another item or disappear
+ * with its item, so callers must check that the item they find still has the barcode, and
+ * {@link #remove} the entry if it doesn't.
+ */
+class BarcodeCache {
+
+    // Max number of barcodes kept in memory
+    static final int MAX_SIZE = 4096;
+
+    private final Map<String, Long> mIds;
+
+    private long mHits;
+    private long mMisses;
+
+    BarcodeCache(final int maxSize) {
+        mIds = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the _ID of the item last seen with the barcode, or -1 if it isn't cached.
+     */
+    synchronized long get(String barcode) {
+        Long id = mIds.get(barcode);
+        if (id == null) {
+            mMisses++;
+            return -1;
+        }
+        mHits++;
+        return id;
+    }
+
+    synchronized void put(String barcode, long id) {
+        mIds.put(barcode, id);
+    }
+
+    /**
+     * Drops a barcode that no longer belongs to the cached item.
+     */
+    synchronized void remove(String barcode) {
+        mIds.remove(barcode);
+    }
+
+    synchronized long getHitCount() {
+        return mHits;
+    }
+
+    synchronized long getMissCount() {
+        return mMisses;
+    }
+}
@@ -0,0 +1,221 @@
+package com.example.android.inventory_project.data;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The first rows of the catalog as the list shows them: _ID, name, price in cents, quantity
+ * and photo. Kept in a small file that is rewritten after every burst of changes, so a cold
+ * start can show the list before the database is even opened.
+ * <p>
+ * The file is read through a memory mapping, without copying it through a stream. It starts
+ * with a header and a table of fixed size rows, followed by the names and photos in UTF-8:
+ * <pre>
+ *   int magic, int format, int count
+ *   count times: long id, int price, int quantity, int name offset, int name length,
+ *                int photo offset, int photo length
+ *   the names and photos
+ * </pre>
+ * A length of -1 is a null name or photo. The file is replaced in one rename, so a reader sees
+ * either the old or the new snapshot, never a part of one.
+ */
+public final class CatalogSnapshot {
+
+    // The first page of the catalog, same as CatalogPager.PAGE_SIZE
+    public static final int MAX_ROWS = 50;
+
+    public static final String FILE_NAME = "catalog.snapshot";
+
+    private static final int MAGIC = 0x494e5653;
+    // Version of the file layout. A file of another one is ignored, and replaced on the next write.
+    private static final int FORMAT = 2;
+    private static final int HEADER_SIZE = 12;
+    private static final int ROW_SIZE = 32;
+    private static final String CHARSET = "UTF-8";
+
+    private final int mCount;
+    private final long[] mIds;
+    private final String[] mNames;
+    private final int[] mPrices;
+    private final int[] mQuantities;
+    private final String[] mPhotos;
+
+    /**
+     * @param count number of rows, the first count entries of each array
+     */
+    public CatalogSnapshot(int count, long[] ids, String[] names, int[] prices, int[] quantities,
+                           String[] photos) {
+        if (count < 0 || count > ids.length || count > names.length || count > prices.length
+                || count > quantities.length || count > photos.length) {
+            throw new IllegalArgumentException("Count " + count + " exceeds the rows given");
+        }
+        mCount = count;
+        mIds = ids;
+        mNames = names;
+        mPrices = prices;
+        mQuantities = quantities;
+        mPhotos = photos;
+    }
+
+    /**
+     * Returns the file of the snapshot in the given directory.
+     */
+    public static File getFile(File directory) {
+        return new File(directory, FILE_NAME);
+    }
+
+    /**
+     * Reads the snapshot from the file.
+     *
+     * @return the snapshot, or null if there is none or the file isn't a snapshot that can be read
+     */
+    public static CatalogSnapshot read(File file) {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            FileChannel channel = in.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return decode(buffer);
+        } catch (IOException | BufferUnderflowException | IndexOutOfBoundsException
+                | IllegalArgumentException e) {
+            // Missing, or not written by this version of the app
+            return null;
+        }
+    }
+
+    private static CatalogSnapshot decode(ByteBuffer buffer) throws IOException {
+        if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT) {
+            return null;
+        }
+        int count = buffer.getInt();
+        if (count < 0 || count > (buffer.limit() - HEADER_SIZE) / ROW_SIZE) {
+            return null;
+        }
+
+        long[] ids = new long[count];
+        String[] names = new String[count];
+        int[] prices = new int[count];
+        int[] quantities = new int[count];
+        String[] photos = new String[count];
+        byte[] bytes = new byte[64];
+        for (int i = 0; i < count; i++) {
+            ids[i] = buffer.getLong();
+            prices[i] = buffer.getInt();
+            quantities[i] = buffer.getInt();
+            for (int j = 0; j < 2; j++) {
+                int offset = buffer.getInt();
+                int length = buffer.getInt();
+                if (length < 0) {
+                    continue;
+                }
+                if (length > bytes.length) {
+                    bytes = new byte[length];
+                }
+                // Read through a copy, the position stays in the row table
+                ByteBuffer text = buffer.duplicate();
+                text.position(offset);
+                text.get(bytes, 0, length);
+                (j == 0 ? names : photos)[i] = new String(bytes, 0, length, CHARSET);
+            }
+        }
+        return new CatalogSnapshot(count, ids, names, prices, quantities, photos);
+    }
+
+    /**
+     * Writes the snapshot to the file, replacing the one there.
+     */
+    public void write(File file) throws IOException {
+        // The name and photo of every row, in the order they are written after the table
+        byte[][] texts = new byte[mCount * 2][];
+        int textsSize = 0;
+        for (int i = 0; i < mCount; i++) {
+            texts[2 * i] = encode(mNames[i]);
+            texts[2 * i + 1] = encode(mPhotos[i]);
+            textsSize += size(texts[2 * i]) + size(texts[2 * i + 1]);
+        }
+
+        int tableSize = HEADER_SIZE + mCount * ROW_SIZE;
+        ByteBuffer buffer = ByteBuffer.allocate(tableSize + textsSize);
+        buffer.putInt(MAGIC).putInt(FORMAT).putInt(mCount);
+        int offset = tableSize;
+        for (int i = 0; i < mCount; i++) {
+            buffer.putLong(mIds[i]).putInt(mPrices[i]).putInt(mQuantities[i]);
+            for (int j = 2 * i; j <= 2 * i + 1; j++) {
+                if (texts[j] == null) {
+                    buffer.putInt(0).putInt(-1);
+                } else {
+                    buffer.putInt(offset).putInt(texts[j].length);
+                    offset += texts[j].length;
+                }
+            }
+        }
+        for (byte[] text : texts) {
+            if (text != null) {
+                buffer.put(text);
+            }
+        }
+
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(buffer.array());
+            // On disk before it replaces the old snapshot, which would otherwise be lost in
+            // a crash too
+            out.getFD().sync();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    private static byte[] encode(String text) {
+        if (text == null) {
+            return null;
+        }
+        try {
+            return text.getBytes(CHARSET);
+        } catch (UnsupportedEncodingException e) {
+            // Every Java platform has UTF-8
+            throw new AssertionError(e);
+        }
+    }
+
+    private static int size(byte[] text) {
+        return text == null ? 0 : text.length;
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    public long getId(int position) {
+        return mIds[position];
+    }
+
+    public String getName(int position) {
+        return mNames[position];
+    }
+
+    /**
+     * Returns the price in cents.
+     */
+    public int getPrice(int position) {
+        return mPrices[position];
+    }
+
+    public int getQuantity(int position) {
+        return mQuantities[position];
+    }
+
+    /**
+     * Returns the file name of the photo, see InventoryEntry.COLUMN_PHOTO, or null if none.
+     */
+    public String getPhoto(int position) {
+        return mPhotos[position];
+    }
+}
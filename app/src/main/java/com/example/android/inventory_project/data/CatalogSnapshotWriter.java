@@ -0,0 +1,116 @@
+package com.example.android.inventory_project.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.example.android.inventory_project.data.InventoryContract.InventoryEntry;
+
+/**
+ * Writes the {@link CatalogSnapshot} of the first page of the catalog on a background
+ * thread. Requests made while a write is waiting to run are served by that write, so a
+ * burst of changes leads to one write once the burst is over.
+ */
+class CatalogSnapshotWriter {
+
+    private static final String LOG_TAG = CatalogSnapshotWriter.class.getSimpleName();
+
+    // The rows of the first page of the catalog, as CatalogPager loads them
+    private static final String SQL_FIRST_PAGE = "SELECT " + InventoryEntry._ID + ", "
+            + InventoryEntry.COLUMN_PRODUCT_NAME + ", "
+            + InventoryEntry.COLUMN_PRODUCT_PRICE + ", "
+            + InventoryEntry.COLUMN_PRODUCT_QUANTITY + ", "
+            + InventoryEntry.COLUMN_PHOTO
+            + " FROM " + InventoryEntry.TABLE_NAME
+            + " ORDER BY " + InventoryEntry._ID
+            + " LIMIT " + CatalogSnapshot.MAX_ROWS;
+
+    private final SQLiteOpenHelper mDbHelper;
+    private final File mFile;
+    private final Executor mExecutor;
+
+    // Whether a write is waiting to run
+    private final AtomicBoolean mPending = new AtomicBoolean();
+
+    private final Runnable mWrite = new Runnable() {
+        @Override
+        public void run() {
+            // Changes from here on need another write
+            mPending.set(false);
+            try {
+                write();
+            } catch (IOException | RuntimeException e) {
+                // The next launch shows an older snapshot, or none
+                Log.w(LOG_TAG, "Could not write the catalog snapshot", e);
+            }
+        }
+    };
+
+    CatalogSnapshotWriter(SQLiteOpenHelper dbHelper, File file) {
+        mDbHelper = dbHelper;
+        mFile = file;
+        mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "catalog-snapshot");
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Writes the snapshot again, as the items changed.
+     */
+    void requestWrite() {
+        if (mPending.compareAndSet(false, true)) {
+            mExecutor.execute(mWrite);
+        }
+    }
+
+    /**
+     * Writes the snapshot if there is none yet, e.g. on the first launch after an update.
+     */
+    void writeIfMissing() {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!mFile.exists()) {
+                    requestWrite();
+                }
+            }
+        });
+    }
+
+    private void write() throws IOException {
+        SQLiteDatabase database = mDbHelper.getReadableDatabase();
+        long[] ids = new long[CatalogSnapshot.MAX_ROWS];
+        String[] names = new String[CatalogSnapshot.MAX_ROWS];
+        int[] prices = new int[CatalogSnapshot.MAX_ROWS];
+        int[] quantities = new int[CatalogSnapshot.MAX_ROWS];
+        String[] photos = new String[CatalogSnapshot.MAX_ROWS];
+        int count = 0;
+        Cursor cursor = database.rawQuery(SQL_FIRST_PAGE, null);
+        try {
+            while (cursor.moveToNext()) {
+                ids[count] = cursor.getLong(0);
+                names[count] = cursor.getString(1);
+                prices[count] = cursor.getInt(2);
+                quantities[count] = cursor.getInt(3);
+                photos[count] = cursor.getString(4);
+                count++;
+            }
+        } finally {
+            cursor.close();
+        }
+        new CatalogSnapshot(count, ids, names, prices, quantities, photos).write(mFile);
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.android.inventory_project.data;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.example.android.inventory_project.data.InventoryContract.InventoryEntry;
+import static com.example.android.inventory_project.data.InventoryContract.PATH_LOCATION;
+
+/**
+ * Coalesces the change notifications of {@link InventoryProvider}. Changes are collected
+ * for a short window and then sent together, so a burst of writes leads to one refresh of
+ * the observers instead of one per write. Within a window every URI is only notified once,
+ * and item URIs are dropped when the whole table is notified anyway. The URIs of the
+ * locations are outside of the table and always notified on their own.
+ */
+class ChangeNotifier {
+
+    // How long changes are collected before the observers are notified
+    static final long WINDOW_MILLIS = 250;
+
+    // Beyond this many changed items, notify the table once instead of every item
+    private static final int MAX_ITEM_URIS = 20;
+
+    private final ContentResolver mContentResolver;
+    // Run after every window in which items changed
+    private final Runnable mItemsChangedListener;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    // URIs changed during the current window
+    private final Set<Uri> mPendingUris = new LinkedHashSet<>();
+    private boolean mFlushScheduled;
+
+    // Number of changes reported and number of notifications actually sent
+    private final AtomicLong mRequested = new AtomicLong();
+    private final AtomicLong mEmitted = new AtomicLong();
+
+    private final Runnable mFlush = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * @param itemsChangedListener run on the main thread once the observers have been told
+     *                             that items changed, at most once per window
+     */
+    ChangeNotifier(ContentResolver contentResolver, Runnable itemsChangedListener) {
+        mContentResolver = contentResolver;
+        mItemsChangedListener = itemsChangedListener;
+    }
+
+    /**
+     * Records that the data at the given URI changed. Observers are notified once the
+     * current window is over.
+     */
+    void notifyChange(Uri uri) {
+        mRequested.incrementAndGet();
+        synchronized (mPendingUris) {
+            mPendingUris.add(uri);
+            if (!mFlushScheduled) {
+                mFlushScheduled = true;
+                mHandler.postDelayed(mFlush, WINDOW_MILLIS);
+            }
+        }
+    }
+
+    /**
+     * Records a change that the provider held back itself, e.g. an operation of a batch that
+     * is notified once the whole batch is committed. Only counts towards the suppressed
+     * notifications, the observers hear about it from the notification of the batch.
+     */
+    void recordHeldBack() {
+        mRequested.incrementAndGet();
+    }
+
+    // Send the notifications collected during the window.
+    private void flush() {
+        List<Uri> uris = new ArrayList<>();
+        boolean itemsChanged = false;
+        synchronized (mPendingUris) {
+            mFlushScheduled = false;
+            if (mPendingUris.contains(InventoryEntry.CONTENT_URI) || mPendingUris.size() > MAX_ITEM_URIS) {
+                // Observers of the table also hear about its items, so one notification does it
+                uris.add(InventoryEntry.CONTENT_URI);
+                for (Uri uri : mPendingUris) {
+                    if (PATH_LOCATION.equals(uri.getPathSegments().get(0))) {
+                        uris.add(uri);
+                    }
+                }
+            } else {
+                uris.addAll(mPendingUris);
+            }
+            mPendingUris.clear();
+        }
+
+        for (Uri uri : uris) {
+            mContentResolver.notifyChange(uri, null);
+            if (!PATH_LOCATION.equals(uri.getPathSegments().get(0))) {
+                itemsChanged = true;
+            }
+        }
+        mEmitted.addAndGet(uris.size());
+        if (itemsChanged) {
+            mItemsChangedListener.run();
+        }
+    }
+
+    /**
+     * @return number of notifications sent to observers
+     */
+    long getEmittedCount() {
+        return mEmitted.get();
+    }
+
+    /**
+     * @return number of changes that were merged into another notification, here or in a
+     * batch of the provider
+     */
+    long getSuppressedCount() {
+        return mRequested.get() - mEmitted.get();
+    }
+}
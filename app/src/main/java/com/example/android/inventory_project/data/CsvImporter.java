@@ -0,0 +1,474 @@
+package com.example.android.inventory_project.data;
+
+import android.content.ContentProviderClient;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.RemoteException;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.example.android.inventory_project.data.InventoryContract.InventoryEntry;
+
+/**
+ * Imports items from a CSV file in the format of {@link InventoryCsv}. The name, price,
+ * quantity, supplier, SKU and barcode columns are looked up by the names in the first line,
+ * in any order. Other columns, such as the _id of an export, are ignored. Rows are upserted: a row
+ * with the SKU of an existing item updates it, any other row becomes a new item, so a file
+ * can be imported again without duplicating its items. Prices are read as decimals, so the
+ * whole-unit prices of exports from before prices were kept in cents still mean the same.
+ * <p>
+ * A background thread turns the rows into batches of ContentValues and inserts each batch in
+ * one transaction as soon as it is full, so the memory used is bounded whatever the size of
+ * the file. Parsing is a small part of the time next to the writes, too small for a second
+ * thread to parse ahead to pay off. Rows that fail the provider's validation are left out
+ * and reported instead of stopping the import.
+ * <p>
+ * Cancelling stops the import after the batch being written. Batches written before stay.
+ * <p>
+ * The import belongs to the process, not to the activity that started it: an activity that
+ * is recreated, e.g. on rotation, finds it again with {@link #getRunning()} and attaches its
+ * own listener. A report that finishes while no listener is attached waits for the next one.
+ */
+public final class CsvImporter {
+
+    // Tag for all log messages
+    public static final String LOG_TAG = CsvImporter.class.getSimpleName();
+
+    // Rows inserted in one transaction
+    private static final int BATCH_SIZE = 500;
+
+    // Rejected rows listed in the report, the ones after that are only counted
+    private static final int MAX_REPORTED_REJECTS = 100;
+
+    // Progress is reported at most this often
+    private static final long PROGRESS_INTERVAL_MILLIS = 250;
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Receives the progress and the result of an import on the main thread.
+     */
+    public interface Listener {
+        void onProgress(int imported, int rejected);
+
+        void onFinished(Report report);
+    }
+
+    // The import that is running, or that finished while no listener was attached.
+    // Only used on the main thread.
+    private static CsvImporter sRunning;
+
+    private final ContentResolver mContentResolver;
+    private final Uri mSource;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    // Only used on the main thread. The report is kept while there is no listener to take it.
+    private Listener mListener;
+    private Report mReport;
+
+    // Set when the import is cancelled or fails, to stop the import
+    private final AtomicBoolean mStopped = new AtomicBoolean();
+    private volatile boolean mCancelled;
+    private volatile String mError;
+
+    private final AtomicInteger mImported = new AtomicInteger();
+    private final AtomicInteger mRejected = new AtomicInteger();
+    // Guarded by itself
+    private final List<Reject> mRejects = new ArrayList<>();
+    private long mLastProgressMillis;
+
+    private CsvImporter(Context context, Uri source, Listener listener) {
+        mContentResolver = context.getApplicationContext().getContentResolver();
+        mSource = source;
+        mListener = listener;
+    }
+
+    /**
+     * Starts importing the file at the given URI in the background. Must be called on the
+     * main thread, and only while {@link #getRunning()} is null.
+     */
+    public static CsvImporter start(Context context, Uri source, Listener listener) {
+        final CsvImporter importer = new CsvImporter(context, source, listener);
+        sRunning = importer;
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                importer.run();
+            }
+        }, "csv-import").start();
+        return importer;
+    }
+
+    /**
+     * Returns the import that is running, or that finished without a listener to report to,
+     * or null if there is none. Must be called on the main thread.
+     */
+    public static CsvImporter getRunning() {
+        return sRunning;
+    }
+
+    /**
+     * Replaces the listener of the import, e.g. with the one of the activity that took over
+     * from a destroyed one. A null listener detaches the old one, so it doesn't keep its
+     * activity alive. If the import finished while it had no listener, the new one gets
+     * onFinished() right away. Must be called on the main thread.
+     */
+    public void setListener(Listener listener) {
+        mListener = listener;
+        if (mReport != null && listener != null) {
+            finish(mReport);
+        }
+    }
+
+    /**
+     * Stops the import after the batch being written. The listener still gets onFinished().
+     */
+    public void cancel() {
+        mCancelled = true;
+        mStopped.set(true);
+    }
+
+    // Runs on the import thread
+    private void run() {
+        ContentProviderClient client =
+                mContentResolver.acquireContentProviderClient(InventoryEntry.CONTENT_URI);
+        if (client == null) {
+            fail("Inventory provider not found", null);
+        } else {
+            try {
+                importFile(client);
+            } finally {
+                client.release();
+            }
+        }
+
+        final Report report;
+        synchronized (mRejects) {
+            report = new Report(mImported.get(), mRejected.get(), new ArrayList<>(mRejects),
+                    mCancelled, mError);
+        }
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                finish(report);
+            }
+        });
+    }
+
+    // Runs on the main thread: report to the listener, or keep the report until one is attached
+    private void finish(Report report) {
+        if (mListener == null) {
+            mReport = report;
+            return;
+        }
+        mReport = null;
+        if (sRunning == this) {
+            sRunning = null;
+        }
+        mListener.onFinished(report);
+    }
+
+    // Insert a batch in one transaction. A row that only fails in the db, e.g. on a
+    // constraint, fails the whole transaction, so then the rows are inserted one by one to
+    // keep the good ones.
+    private void insert(ContentProviderClient client, Batch batch) throws RemoteException {
+        try {
+            mImported.addAndGet(client.bulkInsert(InventoryEntry.UPSERT_URI, batch.values));
+            return;
+        } catch (RuntimeException e) {
+            Log.w(LOG_TAG, "Batch failed, inserting its rows one by one", e);
+        }
+
+        for (int i = 0; i < batch.values.length; i++) {
+            try {
+                if (client.insert(InventoryEntry.UPSERT_URI, batch.values[i]) != null) {
+                    mImported.incrementAndGet();
+                } else {
+                    reject(batch.rows[i], "Insert failed");
+                }
+            } catch (RuntimeException e) {
+                reject(batch.rows[i], e.getMessage());
+            }
+        }
+    }
+
+    // Read the file and insert its valid rows, a batch at a time.
+    private void importFile(ContentProviderClient client) {
+        BufferedReader reader = null;
+        try {
+            InputStream in = mContentResolver.openInputStream(mSource);
+            if (in == null) {
+                throw new FileNotFoundException("Cannot open " + mSource);
+            }
+            reader = new BufferedReader(new InputStreamReader(in, "UTF-8"), READ_BUFFER_SIZE);
+
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            if (!InventoryCsv.readRecord(reader, fields, field)) {
+                // Empty file
+                return;
+            }
+            int[] columns = findColumns(fields);
+
+            // The arrays are reused, the rows of a batch are written before the next is read
+            Batch batch = new Batch(new ContentValues[BATCH_SIZE], new int[BATCH_SIZE]);
+            int size = 0;
+            int row = 0;
+            while (!mStopped.get() && InventoryCsv.readRecord(reader, fields, field)) {
+                row++;
+                if (fields.size() == 1 && fields.get(0).isEmpty()) {
+                    // Blank line
+                    continue;
+                }
+
+                ContentValues item = toValues(fields, columns);
+                try {
+                    InventoryProvider.validateItem(item);
+                } catch (IllegalArgumentException e) {
+                    reject(row, e.getMessage());
+                    continue;
+                }
+
+                batch.values[size] = item;
+                batch.rows[size] = row;
+                size++;
+                if (size == BATCH_SIZE) {
+                    insert(client, batch);
+                    reportProgress();
+                    size = 0;
+                }
+            }
+            if (size != 0 && !mStopped.get()) {
+                insert(client, new Batch(Arrays.copyOf(batch.values, size), Arrays.copyOf(batch.rows, size)));
+            }
+        } catch (IOException e) {
+            fail("Cannot read " + mSource, e);
+        } catch (RemoteException e) {
+            fail("Inventory provider failed", e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    Log.w(LOG_TAG, "Failed to close " + mSource, e);
+                }
+            }
+        }
+    }
+
+    // Find the position of every column of the file in the header. Only the columns a new
+    // item needs are required.
+    private static int[] findColumns(List<String> header) throws IOException {
+        String[] names = {
+                InventoryEntry.COLUMN_PRODUCT_NAME,
+                InventoryEntry.COLUMN_PRODUCT_PRICE,
+                InventoryEntry.COLUMN_PRODUCT_QUANTITY,
+                InventoryEntry.COLUMN_SUPPLIER_NAME,
+                InventoryEntry.COLUMN_SUPPLIER_PHONE,
+                InventoryEntry.COLUMN_SKU,
+                InventoryEntry.COLUMN_BARCODE
+        };
+        int[] columns = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            columns[i] = -1;
+            for (int j = 0; j < header.size(); j++) {
+                // Skip the byte order mark some editors put at the start of the file
+                String name = header.get(j).replace("\uFEFF", "").trim();
+                if (name.equals(names[i])) {
+                    columns[i] = j;
+                }
+            }
+            // The supplier phone, the SKU and the barcode are optional
+            if (columns[i] == -1 && i < 4) {
+                throw new IOException("Missing column " + names[i]);
+            }
+        }
+        return columns;
+    }
+
+    // Turn the fields of a row into the values of a new item. Numbers that don't parse are
+    // left out, so the validation rejects the row.
+    private static ContentValues toValues(List<String> fields, int[] columns) {
+        ContentValues values = new ContentValues(7);
+        String name = getField(fields, columns[0]);
+        if (name != null) {
+            values.put(InventoryEntry.COLUMN_PRODUCT_NAME, name);
+        }
+        String price = getField(fields, columns[1]);
+        if (price != null) {
+            try {
+                values.put(InventoryEntry.COLUMN_PRODUCT_PRICE, Prices.parse(price));
+            } catch (NumberFormatException e) {
+                // Left out, so the row is rejected
+            }
+        }
+        putInteger(values, InventoryEntry.COLUMN_PRODUCT_QUANTITY, getField(fields, columns[2]));
+        String supplierName = getField(fields, columns[3]);
+        if (supplierName != null) {
+            values.put(InventoryEntry.COLUMN_SUPPLIER_NAME, supplierName);
+        }
+        String supplierPhone = getField(fields, columns[4]);
+        if (supplierPhone != null) {
+            try {
+                values.put(InventoryEntry.COLUMN_SUPPLIER_PHONE, Long.parseLong(supplierPhone));
+            } catch (NumberFormatException e) {
+                // The phone is optional, so a bad one is dropped rather than the row
+            }
+        }
+        String sku = getField(fields, columns[5]);
+        if (sku != null) {
+            values.put(InventoryEntry.COLUMN_SKU, sku);
+        }
+        String barcode = getField(fields, columns[6]);
+        if (barcode != null) {
+            values.put(InventoryEntry.COLUMN_BARCODE, barcode);
+        }
+        return values;
+    }
+
+    // Returns the trimmed field at the given position, or null if it is missing or empty.
+    private static String getField(List<String> fields, int column) {
+        if (column < 0 || column >= fields.size()) {
+            return null;
+        }
+        String field = fields.get(column).trim();
+        return field.isEmpty() ? null : field;
+    }
+
+    private static void putInteger(ContentValues values, String key, String field) {
+        if (field == null) {
+            return;
+        }
+        try {
+            values.put(key, Integer.parseInt(field));
+        } catch (NumberFormatException e) {
+            // Left out, so the row is rejected
+        }
+    }
+
+    private void reject(int row, String reason) {
+        mRejected.incrementAndGet();
+        synchronized (mRejects) {
+            if (mRejects.size() < MAX_REPORTED_REJECTS) {
+                mRejects.add(new Reject(row, reason));
+            }
+        }
+    }
+
+    private void fail(String message, Exception e) {
+        Log.e(LOG_TAG, message, e);
+        mError = message;
+        mStopped.set(true);
+    }
+
+    private void reportProgress() {
+        long now = SystemClock.uptimeMillis();
+        if (now - mLastProgressMillis < PROGRESS_INTERVAL_MILLIS) {
+            return;
+        }
+        mLastProgressMillis = now;
+        final int imported = mImported.get();
+        final int rejected = mRejected.get();
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mListener != null) {
+                    mListener.onProgress(imported, rejected);
+                }
+            }
+        });
+    }
+
+    // Rows parsed together, with their row numbers in the file for the reject report
+    private static class Batch {
+        final ContentValues[] values;
+        final int[] rows;
+
+        Batch(ContentValues[] values, int[] rows) {
+            this.values = values;
+            this.rows = rows;
+        }
+    }
+
+    /**
+     * A row of the file that was not imported. Rows are numbered from 1, after the header.
+     */
+    public static final class Reject {
+        private final int mRow;
+        private final String mReason;
+
+        Reject(int row, String reason) {
+            mRow = row;
+            mReason = reason;
+        }
+
+        public int getRow() {
+            return mRow;
+        }
+
+        public String getReason() {
+            return mReason;
+        }
+    }
+
+    /**
+     * Outcome of an import.
+     */
+    public static final class Report {
+        private final int mImported;
+        private final int mRejected;
+        private final List<Reject> mRejects;
+        private final boolean mCancelled;
+        private final String mError;
+
+        Report(int imported, int rejected, List<Reject> rejects, boolean cancelled, String error) {
+            mImported = imported;
+            mRejected = rejected;
+            mRejects = Collections.unmodifiableList(rejects);
+            mCancelled = cancelled;
+            mError = error;
+        }
+
+        public int getImportedCount() {
+            return mImported;
+        }
+
+        public int getRejectedCount() {
+            return mRejected;
+        }
+
+        /**
+         * The first rejected rows, up to a hundred. {@link #getRejectedCount()} counts all.
+         */
+        public List<Reject> getRejects() {
+            return mRejects;
+        }
+
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        /**
+         * @return why the import stopped early, or null if it read the whole file
+         */
+        public String getError() {
+            return mError;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.android.inventory_project.data;
+
+/**
+ * Connection settings of the inventory database, applied by {@link InventoryDbHelper} when
+ * the database is opened. Build one with {@link Builder}; {@link #DEFAULT} is what the app
+ * uses. The benchmark module compares the settings under a mixed read/write workload.
+ * <p>
+ * Only settings of the whole database, or that only writes need, belong here: pragmas
+ * reach the primary connection alone, the one every write goes through, while the pooled
+ * read connections of WAL mode keep SQLite's defaults.
+ */
+public final class DatabaseConfig {
+
+    // Values of the synchronous pragma: how often SQLite waits for writes to reach the disk.
+    // In WAL mode NORMAL only syncs at checkpoints, a power loss can then undo the last
+    // commits but never corrupts the database.
+    public static final String SYNCHRONOUS_OFF = "OFF";
+    public static final String SYNCHRONOUS_NORMAL = "NORMAL";
+    public static final String SYNCHRONOUS_FULL = "FULL";
+
+    /**
+     * WAL, so catalog reads don't wait on sales, with NORMAL sync.
+     */
+    public static final DatabaseConfig DEFAULT = new Builder().build();
+
+    private final boolean mWriteAheadLogging;
+    private final String mSynchronous;
+
+    private DatabaseConfig(Builder builder) {
+        mWriteAheadLogging = builder.mWriteAheadLogging;
+        mSynchronous = builder.mSynchronous;
+    }
+
+    public boolean isWriteAheadLogging() {
+        return mWriteAheadLogging;
+    }
+
+    public String getSynchronous() {
+        return mSynchronous;
+    }
+
+    public static final class Builder {
+        private boolean mWriteAheadLogging = true;
+        private String mSynchronous = SYNCHRONOUS_NORMAL;
+
+        /**
+         * Whether to use a write-ahead log instead of the rollback journal. With WAL, reads
+         * run on their own connections next to a write instead of waiting for it.
+         */
+        public Builder setWriteAheadLogging(boolean writeAheadLogging) {
+            mWriteAheadLogging = writeAheadLogging;
+            return this;
+        }
+
+        /**
+         * One of the SYNCHRONOUS_ values.
+         */
+        public Builder setSynchronous(String synchronous) {
+            if (!SYNCHRONOUS_OFF.equals(synchronous) && !SYNCHRONOUS_NORMAL.equals(synchronous) &&
+                    !SYNCHRONOUS_FULL.equals(synchronous)) {
+                throw new IllegalArgumentException("Unknown synchronous mode " + synchronous);
+            }
+            mSynchronous = synchronous;
+            return this;
+        }
+
+        public DatabaseConfig build() {
+            return new DatabaseConfig(this);
+        }
+    }
+}
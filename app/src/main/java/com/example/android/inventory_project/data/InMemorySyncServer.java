@@ -0,0 +1,160 @@
+package com.example.android.inventory_project.data;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A sync server in the same process, holding the central record in memory. Stands in for
+ * the real one in tests and benchmarks, and follows the rules it has to follow; see
+ * {@link SyncEngine} for how conflicts are resolved.
+ * <p>
+ * Every change the server commits gets the next version. Items are kept in version order,
+ * so a pull reads only the items changed since the version it asks for. Deleted items stay
+ * as tombstones, so devices that were away still hear of the deletion.
+ */
+public final class InMemorySyncServer implements SyncServer {
+
+    private final Map<String, Item> mItems = new HashMap<>();
+    // The items by the version of their last change
+    private final TreeMap<Long, Item> mItemsByVersion = new TreeMap<>();
+    // Change sequence number of the last push of every client, to recognize a push sent again
+    private final Map<String, Long> mPushedSeqs = new HashMap<>();
+    private long mVersion;
+
+    @Override
+    public synchronized byte[] push(byte[] batch) throws IOException {
+        SyncBatch push = SyncBatch.decode(batch);
+        String client = push.getClientId();
+        List<SyncChange> merged = new ArrayList<>();
+
+        Long pushedSeq = mPushedSeqs.get(client);
+        if (pushedSeq != null && push.getSeq() <= pushedSeq) {
+            // Applied already, the client didn't get the response. Send the items as they
+            // are now instead of what was merged then.
+            for (SyncChange change : push.getChanges()) {
+                Item item = mItems.get(change.getSyncId());
+                if (item != null) {
+                    merged.add(item.toChange());
+                }
+            }
+            return new SyncBatch(client, mVersion, push.getSeq(), false, merged).encode();
+        }
+
+        for (SyncChange change : push.getChanges()) {
+            Item item = mItems.get(change.getSyncId());
+            if (item == null) {
+                if (!change.isDeleted()) {
+                    item = new Item(change.getSyncId());
+                    apply(item, change);
+                    commit(item, client);
+                }
+            } else if (item.mDeleted) {
+                // Deletion wins over any change the client made meanwhile
+                if (!change.isDeleted()) {
+                    merged.add(item.toChange());
+                }
+            } else {
+                // Changed by another device since the client last pulled it, so the client
+                // only knows its own side
+                boolean stale = item.mVersion > push.getVersion() && !client.equals(item.mWriter);
+                if (change.isDeleted()) {
+                    item.mDeleted = true;
+                    item.mValues = null;
+                } else {
+                    apply(item, change);
+                    if (stale) {
+                        merged.add(item.toChange());
+                    }
+                }
+                commit(item, client);
+            }
+        }
+        mPushedSeqs.put(client, push.getSeq());
+        return new SyncBatch(client, mVersion, push.getSeq(), false, merged).encode();
+    }
+
+    @Override
+    public synchronized byte[] pull(byte[] request) throws IOException {
+        SyncBatch pull = SyncBatch.decode(request);
+        String client = pull.getClientId();
+        long limit = pull.getSeq();
+        List<SyncChange> changes = new ArrayList<>();
+
+        long version = pull.getVersion();
+        Iterator<Item> items = mItemsByVersion.tailMap(pull.getVersion(), false).values().iterator();
+        while (items.hasNext() && changes.size() < limit) {
+            Item item = items.next();
+            version = item.mVersion;
+            // The client made this change and has its result
+            if (!client.equals(item.mWriter)) {
+                changes.add(item.toChange());
+            }
+        }
+        boolean more = items.hasNext();
+        return new SyncBatch(client, more ? version : mVersion, 0, more, changes).encode();
+    }
+
+    /**
+     * Returns the number of items, not counting deleted ones.
+     */
+    public synchronized int getItemCount() {
+        int count = 0;
+        for (Item item : mItems.values()) {
+            if (!item.mDeleted) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public synchronized long getVersion() {
+        return mVersion;
+    }
+
+    private static void apply(Item item, SyncChange change) {
+        for (int column = 0; column < SyncChange.COLUMN_COUNT; column++) {
+            if (!change.hasColumn(column)) {
+                continue;
+            }
+            Object value = change.getValue(column);
+            if (column == SyncChange.QUANTITY && change.isQuantityDelta()) {
+                Object quantity = item.mValues[column];
+                value = (quantity == null ? 0 : (Long) quantity) + (value == null ? 0 : (Long) value);
+            }
+            item.mValues[column] = value;
+        }
+    }
+
+    private void commit(Item item, String client) {
+        if (item.mVersion != 0) {
+            mItemsByVersion.remove(item.mVersion);
+        }
+        item.mVersion = ++mVersion;
+        item.mWriter = client;
+        mItems.put(item.mSyncId, item);
+        mItemsByVersion.put(item.mVersion, item);
+    }
+
+    private static final class Item {
+        final String mSyncId;
+        Object[] mValues = new Object[SyncChange.COLUMN_COUNT];
+        boolean mDeleted;
+        long mVersion;
+        // Client that made the last change
+        String mWriter;
+
+        Item(String syncId) {
+            mSyncId = syncId;
+        }
+
+        SyncChange toChange() {
+            return mDeleted ? SyncChange.deletion(mSyncId)
+                    : SyncChange.update(mSyncId, SyncChange.ALL_COLUMNS, mValues.clone(), false);
+        }
+    }
+}
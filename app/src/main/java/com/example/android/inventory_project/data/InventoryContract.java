@@ -16,6 +16,136 @@ public final class InventoryContract {
     public final static Uri BASE_CONTENT_URI = Uri.parse("content://" + CONTENT_AUTHORITY);
     // PATH_TABLENAME is going to store the path for the table we want
     public final static String PATH_INVENTORY = "inventory";
+    // Path for full-text search over the inventory, below PATH_INVENTORY
+    public final static String PATH_SEARCH = "search";
+    // Path for the CSV export of the inventory, below PATH_INVENTORY
+    public final static String PATH_EXPORT = "export";
+    // Path for inserting or updating items by SKU, below PATH_INVENTORY
+    public final static String PATH_UPSERT = "upsert";
+    // Path for the aggregate figures of the inventory, below PATH_INVENTORY
+    public final static String PATH_STATS = "stats";
+    // Path for the figures per supplier, below PATH_STATS
+    public final static String PATH_SUPPLIER = "supplier";
+    // Path for the log of stock level changes, below PATH_INVENTORY
+    public final static String PATH_CHANGES = "changes";
+    // Path for the sales of one item, below the URI of the item
+    public final static String PATH_SALES = "sales";
+    // Path for the locations stock is kept at, e.g. the stores and the back warehouse
+    public final static String PATH_LOCATION = "location";
+    // Path for the stock of one item at every location, below the URI of the item
+    public final static String PATH_STOCK = "stock";
+
+    // Reorder level of items that don't set their own {@Link InventoryEntry#COLUMN_REORDER_LEVEL}.
+    // It is the column default in InventoryDbHelper, changing it takes a migration.
+    public final static int LOW_STOCK_THRESHOLD = 5;
+
+    // Query parameters for paging through {@Link InventoryEntry#CONTENT_URI}.
+    // LIMIT caps the number of rows returned, AFTER only returns rows with an _ID greater than
+    // the given one, ordered by _ID. Together they give keyset pagination, which stays as
+    // fast on the last page as on the first.
+    public final static String QUERY_PARAMETER_LIMIT = "limit";
+    public final static String QUERY_PARAMETER_AFTER = "after";
+
+    // Query parameters for a time range of {@Link SaleEntry#buildItemSalesUri}, in milliseconds
+    // since the epoch. FROM is inclusive, TO is exclusive; either can be left out.
+    public final static String QUERY_PARAMETER_FROM = "from";
+    public final static String QUERY_PARAMETER_TO = "to";
+
+    // Query parameter with the text to look for on {@Link InventoryEntry#SEARCH_URI}.
+    // Every word matches as a prefix of a word in the product or supplier name.
+    public final static String QUERY_PARAMETER_QUERY = "q";
+
+    // Query parameter of {@Link InventoryEntry#UPSERT_URI} choosing what happens to the
+    // quantity of an item that already exists: UPSERT_MODE_REPLACE (the default) sets it to
+    // the new quantity, UPSERT_MODE_ADD adds the new quantity to it, e.g. for a delivery.
+    public final static String QUERY_PARAMETER_MODE = "mode";
+    public final static String UPSERT_MODE_REPLACE = "replace";
+    public final static String UPSERT_MODE_ADD = "add";
+
+    // Provider method for selling stock, used with ContentResolver.call().
+    // The arg is the _ID of the item, the extras may hold EXTRA_COUNT (defaults to 1).
+    // Every sale is recorded in the ledger of {@Link SaleEntry}.
+    public final static String METHOD_SELL = "sell";
+    // Number of units to sell in one call.
+    public final static String EXTRA_COUNT = "count";
+    // Result of METHOD_SELL: true if the stock was decremented.
+    public final static String EXTRA_SOLD = "sold";
+    // Result of METHOD_SELL: quantity left in stock after the sale.
+    public final static String EXTRA_QUANTITY = "quantity";
+
+    // Provider method moving stock of an item from one location to another, used with
+    // ContentResolver.call(). The arg is the _ID of the item, the extras hold
+    // EXTRA_FROM_LOCATION_ID, EXTRA_TO_LOCATION_ID and EXTRA_COUNT (defaults to 1). Both
+    // quantities change in one transaction, so the stock is never counted at both locations
+    // or at neither, and the source can't go below zero.
+    public final static String METHOD_TRANSFER = "transfer";
+    public final static String EXTRA_FROM_LOCATION_ID = "fromLocationId";
+    public final static String EXTRA_TO_LOCATION_ID = "toLocationId";
+    // Result of METHOD_TRANSFER: true if the stock was moved, false if the source location
+    // didn't have enough of it.
+    public final static String EXTRA_TRANSFERRED = "transferred";
+    // Results of METHOD_TRANSFER: quantities at the two locations after the call.
+    public final static String EXTRA_FROM_QUANTITY = "fromQuantity";
+    public final static String EXTRA_TO_QUANTITY = "toQuantity";
+
+    // Provider method looking up an item by the barcode in the arg, see
+    // {@Link InventoryEntry#COLUMN_BARCODE}. Returns EXTRA_ITEM_ID, EXTRA_NAME, EXTRA_PRICE and
+    // EXTRA_QUANTITY of the item, or null if no item has the barcode. Cheaper than a query
+    // on the item: no selection to parse and no cursor to fill, and an item scanned before
+    // is found without reading the db.
+    public final static String METHOD_LOOKUP_BARCODE = "lookupBarcode";
+    // Provider method selling the item with the barcode in the arg, like METHOD_LOOKUP_BARCODE
+    // followed by METHOD_SELL in one call. Takes EXTRA_COUNT and returns the extras of both,
+    // EXTRA_QUANTITY being the quantity left after the sale, or the one found by the lookup if
+    // there wasn't enough stock. Null if no item has the barcode.
+    public final static String METHOD_SCAN_AND_SELL = "scanAndSell";
+    // Results of METHOD_LOOKUP_BARCODE: _ID, name and price in cents of the item.
+    public final static String EXTRA_ITEM_ID = "itemId";
+    public final static String EXTRA_NAME = "name";
+    public final static String EXTRA_PRICE = "price";
+
+    // Provider method syncing the items with the central record, see SyncEngine. Takes no
+    // arg, returns the EXTRA_SYNC_ figures. Runs on the calling thread until done and throws
+    // IllegalStateException if it fails, e.g. without a connection; calling it again resumes.
+    public final static String METHOD_SYNC = "sync";
+    // Results of METHOD_SYNC: number of changes pushed and pulled, and bytes sent and received.
+    public final static String EXTRA_SYNC_PUSHED = "syncPushed";
+    public final static String EXTRA_SYNC_PULLED = "syncPulled";
+    public final static String EXTRA_SYNC_BYTES_SENT = "syncBytesSent";
+    public final static String EXTRA_SYNC_BYTES_RECEIVED = "syncBytesReceived";
+
+    // Provider method returning how many change notifications were sent to observers
+    // (EXTRA_NOTIFICATIONS_EMITTED) and how many were merged into others
+    // (EXTRA_NOTIFICATIONS_SUPPRESSED).
+    public final static String METHOD_GET_NOTIFY_STATS = "getNotifyStats";
+    public final static String EXTRA_NOTIFICATIONS_EMITTED = "notificationsEmitted";
+    public final static String EXTRA_NOTIFICATIONS_SUPPRESSED = "notificationsSuppressed";
+
+    // Provider method returning how many sales were committed (EXTRA_SALES) and in how many
+    // transactions (EXTRA_SALE_COMMITS). Fewer commits than sales means group commit batched them.
+    public final static String METHOD_GET_SALE_STATS = "getSaleStats";
+    public final static String EXTRA_SALES = "sales";
+    public final static String EXTRA_SALE_COMMITS = "saleCommits";
+
+    // Provider method returning the latency histograms, row and notification counts of the
+    // provider operations per URI, and the log of slow operations with their query plans,
+    // as text in EXTRA_METRICS.
+    public final static String METHOD_DUMP_METRICS = "dumpMetrics";
+    public final static String EXTRA_METRICS = "metrics";
+    // Provider method setting the time from which operations are logged as slow to
+    // EXTRA_THRESHOLD_MILLIS.
+    public final static String METHOD_SET_SLOW_THRESHOLD = "setSlowThreshold";
+    public final static String EXTRA_THRESHOLD_MILLIS = "thresholdMillis";
+
+    // Provider method returning the hit, miss and eviction counts of the item cache that
+    // answers queries on a single item, and the hit and miss counts of the barcodes of
+    // METHOD_LOOKUP_BARCODE.
+    public final static String METHOD_GET_CACHE_STATS = "getCacheStats";
+    public final static String EXTRA_CACHE_HITS = "cacheHits";
+    public final static String EXTRA_CACHE_MISSES = "cacheMisses";
+    public final static String EXTRA_CACHE_EVICTIONS = "cacheEvictions";
+    public final static String EXTRA_BARCODE_CACHE_HITS = "barcodeCacheHits";
+    public final static String EXTRA_BARCODE_CACHE_MISSES = "barcodeCacheMisses";
 
     // Empty constructor to prevent accidental instantiation of the contract class.
     private InventoryContract() {
@@ -25,6 +155,19 @@ public final class InventoryContract {
 
         public final static Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_INVENTORY);
 
+        // Full-text search over product and supplier names, best matches first.
+        // Takes the QUERY_PARAMETER_QUERY and optionally the QUERY_PARAMETER_LIMIT parameter.
+        public final static Uri SEARCH_URI = Uri.withAppendedPath(CONTENT_URI, PATH_SEARCH);
+
+        // Every item as a CSV file, see InventoryCsv for the format. Open it with
+        // ContentResolver.openInputStream(); the rows are streamed as they are read.
+        public final static Uri EXPORT_URI = Uri.withAppendedPath(CONTENT_URI, PATH_EXPORT);
+
+        // Insert (or bulkInsert) here to update the item with the same COLUMN_SKU instead of
+        // adding a second one. Items without a SKU are always added. Takes the
+        // QUERY_PARAMETER_MODE parameter.
+        public final static Uri UPSERT_URI = Uri.withAppendedPath(CONTENT_URI, PATH_UPSERT);
+
         // The MIME type of the {@Link #CONTENT_URI} for a list of items.
         public final static String CONTENT_LIST_TYPE =
                 ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_INVENTORY;
@@ -36,6 +179,15 @@ public final class InventoryContract {
 
         public final static String TABLE_NAME = "inventory";
 
+        // Full-text index of the name columns, kept in sync with TABLE_NAME by triggers.
+        // The docid of each row is the _ID of the item.
+        public final static String FTS_TABLE_NAME = "inventory_fts";
+
+        // Photo files no longer used by any item, written by triggers when an item is deleted
+        // or its COLUMN_PHOTO changes, until PhotoStore deletes the files. Has the
+        // COLUMN_PHOTO column only.
+        public final static String PHOTO_TRASH_TABLE_NAME = "photo_trash";
+
         /**
          * Unique ID number for product in the DB.
          * <p>
@@ -55,7 +207,7 @@ public final class InventoryContract {
         public final static String COLUMN_PRODUCT_NAME = "name";
 
         /**
-         * Base Price of item
+         * Base Price of item, in cents. See {@Link Prices} to show and parse it.
          * <p>
          * Type:
          * INTEGER
@@ -87,5 +239,456 @@ public final class InventoryContract {
          * INTEGER
          */
         public final static String COLUMN_SUPPLIER_PHONE = "suppPhone";
+
+        /**
+         * Stock keeping unit of the item, as used by its supplier. Items that have one are
+         * matched by it on {@Link #UPSERT_URI}.
+         * <p>
+         * Type:
+         * TEXT
+         * UNIQUE
+         */
+        public final static String COLUMN_SKU = "sku";
+
+        /**
+         * Barcode printed on the item, e.g. its EAN-13, as read by a scanner. Items are
+         * looked up by it with {@Link InventoryContract#METHOD_LOOKUP_BARCODE}.
+         * <p>
+         * Type:
+         * TEXT
+         * UNIQUE
+         */
+        public final static String COLUMN_BARCODE = "barcode";
+
+        /**
+         * Items with fewer units than this in stock are low on stock and need reordering.
+         * Defaults to LOW_STOCK_THRESHOLD.
+         * <p>
+         * Type:
+         * INTEGER
+         * NON NULL
+         */
+        public final static String COLUMN_REORDER_LEVEL = "reorderLevel";
+
+        /**
+         * ID of the item shared by every device it is synced to, unlike the _ID. Given to
+         * new items by a trigger, see {@Link SyncEntry}.
+         * <p>
+         * Type:
+         * TEXT
+         * UNIQUE
+         */
+        public final static String COLUMN_SYNC_ID = "syncId";
+
+        /**
+         * File name of the photo of the item in the photo directory of the app, see
+         * PhotoStore, or null if the item has no photo. The photo is kept as a file, not in
+         * the database, and is not synced.
+         * <p>
+         * Type:
+         * TEXT
+         */
+        public final static String COLUMN_PHOTO = "photo";
+    }
+
+    public static final class QuantityChangeEntry implements BaseColumns {
+
+        // Items that went low on stock or were restocked, oldest first. Rows are written by
+        // triggers whenever an update moves the quantity of an item across its reorder level.
+        // Takes the QUERY_PARAMETER_AFTER and QUERY_PARAMETER_LIMIT parameters to read only
+        // the changes after the last one seen; deleting rows prunes the log. Changes to the
+        // log are not notified, observe {@Link InventoryEntry#CONTENT_URI} instead.
+        public final static Uri CONTENT_URI = Uri.withAppendedPath(InventoryEntry.CONTENT_URI, PATH_CHANGES);
+
+        // The MIME type of the {@Link #CONTENT_URI}.
+        public final static String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_CHANGES;
+
+        public final static String TABLE_NAME = "quantity_changes";
+
+        /**
+         * Position of the change in the log. Never reused, even after the log is pruned.
+         * <p>
+         * Type:
+         * INTEGER
+         * AUTO INCREMENT
+         */
+        public final static String _ID = BaseColumns._ID;
+
+        /**
+         * _ID of the item that changed.
+         * <p>
+         * Type:
+         * INTEGER
+         * NON NULL
+         */
+        public final static String COLUMN_ITEM_ID = "itemId";
+
+        /**
+         * Units in stock after the change.
+         * <p>
+         * Type:
+         * INTEGER
+         * NON NULL
+         */
+        public final static String COLUMN_QUANTITY = "quantity";
+
+        /**
+         * Reorder level of the item after the change. The item is low on stock if
+         * COLUMN_QUANTITY is below it.
+         * <p>
+         * Type:
+         * INTEGER
+         * NON NULL
+         */
+        public final static String COLUMN_REORDER_LEVEL = "reorderLevel";
+    }
+
+    public static final class SaleEntry implements BaseColumns {
+
+        // The MIME type of the sales of an item.
+        public final static String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SALES;
+
+        // Ledger of every sale, written in the same transaction as the decrement of the stock.
+        // Rows are only ever appended; they stay when the item is deleted.
+        public final static String TABLE_NAME = "sales";
+
+        /**
+         * Returns the URI of the sales of one item, oldest first. Takes the
+         * QUERY_PARAMETER_FROM, QUERY_PARAMETER_TO and QUERY_PARAMETER_LIMIT parameters.
+         * The URI is read-only.
+         */
+        public static Uri buildItemSalesUri(long itemId) {
+            return InventoryEntry.CONTENT_URI.buildUpon()
+                    .appendPath(String.valueOf(itemId))
+                    .appendPath(PATH_SALES)
+                    .build();
+        }
+
+        /**
+         * Unique ID number of the sale.
+         * <p>
+         * Type:
+         * INTEGER
+         */
+        public final static String _ID = BaseColumns._ID;
+
+        /**
+         * _ID of the item sold.
+         * <p>
+         * Type:
+         * INTEGER
+         * NON NULL
+         */
+        public final static String COLUMN_ITEM_ID = "itemId";
+
+        /**
+         * Time of the sale, in milliseconds since the epoch.
+         * <p>
+         * Type:
+         * INTEGER
+         * NON NULL
+         */
+        public final static String COLUMN_TIMESTAMP = "ts";
+
+        /**
+         * Units sold.
+         * <p>
+         * Type:
+         * INTEGER
+         * NON NULL
+         */
+        public final static String COLUMN_QUANTITY = "quantity";
+
+        /**
+         * Price of one unit at the time of the sale, in cents.
+         * <p>
+         * Type:
+         * INTEGER
+         */
+        public final static String COLUMN_PRICE = "price";
+    }
+
+    public static final class LocationEntry implements BaseColumns {
+
+        // Every location, e.g. the stores of a chain and their back warehouse. Insert here to
+        // add one, which returns its URI.
+        public final static Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_LOCATION);
+
+        // One row per location that has stock, ordered by _ID, with the COLUMN_ITEM_COUNT and
+        // COLUMN_TOTAL_UNITS of StatsEntry over its stock. The _ID is that of the location.
+        // Computed by a GROUP BY over a covering index of the stock table, which reads no row
+        // of the table itself.
+        public final static Uri STATS_URI = Uri.withAppendedPath(CONTENT_URI, PATH_STATS);
+
+        // The MIME type of the {@Link #CONTENT_URI} for a list of locations.
+        public final static String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_LOCATION;
+
+        // The MIME type of the {@Link #CONTENT_URI} for a single location.
+        public final static String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_LOCATION;
+
+        public final static String TABLE_NAME = "location";
+
+        /**
+         * Returns the URI of the catalog of one location: the items stocked there, with
+         * the columns of InventoryEntry, COLUMN_PRODUCT_QUANTITY being the stock at the
+         * location. Takes the QUERY_PARAMETER_AFTER and QUERY_PARAMETER_LIMIT parameters to
+         * page through it in _ID order, like InventoryEntry.CONTENT_URI.
+         * <p>
+         * Insert (or bulkInsert) the StockEntry.COLUMN_ITEM_ID and StockEntry.COLUMN_QUANTITY
+         * of an item here to set its stock at the location. Use METHOD_TRANSFER to move stock
+         * between locations.
+         */
+        public static Uri buildInventoryUri(long locationId) {
+            return CONTENT_URI.buildUpon()
+                    .appendPath(String.valueOf(locationId))
+                    .appendPath(PATH_INVENTORY)
+                    .build();
+        }
+
+        /**
+         * Unique ID number of the location.
+         * <p>
+         * Type:
+         * INTEGER
+         * AUTO INCREMENT
+         */
+        public final static String _ID = BaseColumns._ID;
+
+        /**
+         * Name of the location, e.g. the town of a store.
+         * <p>
+         * Type:
+         * TEXT
+         * NON NULL
+         */
+        public final static String COLUMN_LOCATION_NAME = "name";
+    }
+
+    public static final class StockEntry implements BaseColumns {
+
+        // The MIME type of the stock of an item.
+        public final static String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_STOCK;
+
+        // Units of every item at every location, one row per item and location that has
+        // had stock. Independent of InventoryEntry.COLUMN_PRODUCT_QUANTITY, which stays the
+        // stock that METHOD_SELL and the low stock alerts follow. Rows go with their item.
+        public final static String TABLE_NAME = "stock";
+
+        /**
+         * Returns the URI of the stock of one item at every location that has had some,
+         * ordered by location. The totals of the item across locations are the sums of
+         * its rows. The URI is read-only.
+         */
+        public static Uri buildItemStockUri(long itemId) {
+            return InventoryEntry.CONTENT_URI.buildUpon()
+                    .appendPath(String.valueOf(itemId))
+                    .appendPath(PATH_STOCK)
+                    .build();
+        }
+
+        /**
+         * Unique ID number of the row.
+         * <p>
+         * Type:
+         * INTEGER
+         */
+        public final static String _ID = BaseColumns._ID;
+
+        /**
+         * _ID of the location.
+         * <p>
+         * Type:
+         * INTEGER
+         * NON NULL
+         */
+        public final static String COLUMN_LOCATION_ID = "locationId";
+
+        /**
+         * _ID of the item.
+         * <p>
+         * Type:
+         * INTEGER
+         * NON NULL
+         */
+        public final static String COLUMN_ITEM_ID = "itemId";
+
+        /**
+         * Units of the item in stock at the location.
+         * <p>
+         * Type:
+         * INTEGER
+         * NON NULL
+         */
+        public final static String COLUMN_QUANTITY = "quantity";
+    }
+
+    public static final class StatsEntry {
+
+        // One row with the totals of the whole inventory. Read from a summary table kept up
+        // to date by triggers, so it costs the same whatever the number of items.
+        public final static Uri CONTENT_URI = Uri.withAppendedPath(InventoryEntry.CONTENT_URI, PATH_STATS);
+
+        // One row per supplier with the totals of its items, ordered by supplier name.
+        // Has the COLUMN_SUPPLIER_NAME column of InventoryEntry besides the ones below.
+        public final static Uri SUPPLIER_URI = Uri.withAppendedPath(CONTENT_URI, PATH_SUPPLIER);
+
+        // The MIME type of the {@Link #CONTENT_URI}.
+        public final static String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_STATS;
+
+        // The MIME type of the {@Link #SUPPLIER_URI}.
+        public final static String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_STATS;
+
+        // Summary table behind {@Link #CONTENT_URI}, it only ever has one row.
+        public final static String TOTALS_TABLE_NAME = "inventory_totals";
+
+        /**
+         * Number of items.
+         * <p>
+         * Type:
+         * INTEGER
+         */
+        public final static String COLUMN_ITEM_COUNT = "itemCount";
+
+        /**
+         * Units in stock over all items.
+         * <p>
+         * Type:
+         * INTEGER
+         */
+        public final static String COLUMN_TOTAL_UNITS = "totalUnits";
+
+        /**
+         * Value of the stock, the sum of price * quantity over all items, in cents.
+         * <p>
+         * Type:
+         * INTEGER
+         */
+        public final static String COLUMN_TOTAL_VALUE = "totalValue";
+
+        /**
+         * Number of items with fewer units in stock than their reorder level.
+         * <p>
+         * Type:
+         * INTEGER
+         */
+        public final static String COLUMN_LOW_STOCK_COUNT = "lowStockCount";
+    }
+
+    // Bookkeeping of the delta sync of the items with the central record, see SyncEngine.
+    // Triggers number every local change of an item from a change sequence, note which
+    // columns it changed and keep a tombstone of every deleted item, until the changes are
+    // pushed. Changes applied by sync itself are not recorded.
+    public static final class SyncEntry {
+
+        // The columns of InventoryEntry that are synced, in the order of the column numbers
+        // of SyncChange.
+        public final static String[] COLUMNS = {
+                InventoryEntry.COLUMN_PRODUCT_NAME,
+                InventoryEntry.COLUMN_PRODUCT_PRICE,
+                InventoryEntry.COLUMN_PRODUCT_QUANTITY,
+                InventoryEntry.COLUMN_SUPPLIER_NAME,
+                InventoryEntry.COLUMN_SUPPLIER_PHONE,
+                InventoryEntry.COLUMN_SKU,
+                InventoryEntry.COLUMN_BARCODE,
+                InventoryEntry.COLUMN_REORDER_LEVEL
+        };
+
+        // The sync IDs of the items deleted since the last push.
+        public final static String TOMBSTONE_TABLE_NAME = "sync_tombstone";
+
+        // One row with the state of sync on this device.
+        public final static String STATE_TABLE_NAME = "sync_state";
+
+        /**
+         * Change sequence number of the last change of the item or tombstone. Only changes
+         * with a number above COLUMN_PUSHED_SEQ are left to push.
+         * <p>
+         * Type:
+         * INTEGER
+         * NON NULL
+         */
+        public final static String COLUMN_CHANGE_SEQ = "changeSeq";
+
+        /**
+         * Bit mask of the synced columns of the item changed since it was last pushed, by
+         * SyncChange column number.
+         * <p>
+         * Type:
+         * INTEGER
+         * NON NULL
+         */
+        public final static String COLUMN_DIRTY_COLUMNS = "dirtyColumns";
+
+        /**
+         * Quantity of the item when it was last pushed or pulled, null if never. What a
+         * device sold or received since is the difference with the current quantity.
+         * <p>
+         * Type:
+         * INTEGER
+         */
+        public final static String COLUMN_SYNCED_QUANTITY = "syncedQuantity";
+
+        /**
+         * ID of this device at the server.
+         * <p>
+         * Type:
+         * TEXT
+         * NON NULL
+         */
+        public final static String COLUMN_CLIENT_ID = "clientId";
+
+        /**
+         * Change sequence number of the last change made before version 13 of the database.
+         * The triggers now take the next number from the changes themselves, and only use
+         * this one as a floor.
+         * <p>
+         * Type:
+         * INTEGER
+         * NON NULL
+         */
+        public final static String COLUMN_LAST_SEQ = "lastSeq";
+
+        /**
+         * Change sequence number of the last change pushed.
+         * <p>
+         * Type:
+         * INTEGER
+         * NON NULL
+         */
+        public final static String COLUMN_PUSHED_SEQ = "pushedSeq";
+
+        /**
+         * Version of the server the last pull brought this device up to.
+         * <p>
+         * Type:
+         * INTEGER
+         * NON NULL
+         */
+        public final static String COLUMN_PULLED_VERSION = "pulledVersion";
+
+        /**
+         * 1 while sync applies changes from the server, which the triggers then leave out.
+         * Only ever 1 inside the transaction that applies them.
+         * <p>
+         * Type:
+         * INTEGER
+         * NON NULL
+         */
+        public final static String COLUMN_APPLYING = "applying";
+
+        /**
+         * The encoded SyncBatch being pushed, until the server acknowledges it.
+         * <p>
+         * Type:
+         * BLOB
+         */
+        public final static String COLUMN_PENDING_PUSH = "pendingPush";
     }
 }
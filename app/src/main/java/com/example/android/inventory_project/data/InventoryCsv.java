@@ -0,0 +1,150 @@
+package com.example.android.inventory_project.data;
+
+import android.database.Cursor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+import static com.example.android.inventory_project.data.InventoryContract.InventoryEntry;
+
+/**
+ * CSV format of the inventory table, as written by the export of {@link InventoryProvider}
+ * and read by the {@link CsvImporter}. The first line holds the column names. Fields holding a comma, quote or line break are
+ * quoted, with quotes doubled (RFC 4180). Prices are written with two decimals, e.g. 19.99,
+ * rather than in the cents of the table.
+ */
+public final class InventoryCsv {
+
+    public static final String MIME_TYPE = "text/csv";
+
+    /**
+     * Columns of the CSV file, in order.
+     */
+    public static final String[] COLUMNS = {
+            InventoryEntry._ID,
+            InventoryEntry.COLUMN_PRODUCT_NAME,
+            InventoryEntry.COLUMN_PRODUCT_PRICE,
+            InventoryEntry.COLUMN_PRODUCT_QUANTITY,
+            InventoryEntry.COLUMN_SUPPLIER_NAME,
+            InventoryEntry.COLUMN_SUPPLIER_PHONE,
+            InventoryEntry.COLUMN_SKU,
+            InventoryEntry.COLUMN_BARCODE
+    };
+
+    // Position of the price in COLUMNS
+    private static final int PRICE_COLUMN = 2;
+
+    private InventoryCsv() {
+    }
+
+    /**
+     * Writes the line with the column names.
+     */
+    static void writeHeader(Writer writer) throws IOException {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write(COLUMNS[i]);
+        }
+        writer.write('\n');
+    }
+
+    /**
+     * Writes the row at the current position of a cursor that was queried with {@link #COLUMNS}.
+     */
+    static void writeRow(Writer writer, Cursor cursor) throws IOException {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            if (i == PRICE_COLUMN && !cursor.isNull(i)) {
+                writer.write(Prices.format(cursor.getLong(i)));
+                continue;
+            }
+            String value = cursor.getString(i);
+            if (value != null) {
+                writeField(writer, value);
+            }
+        }
+        writer.write('\n');
+    }
+
+    /**
+     * Reads the next record into fields, which is cleared first. A quoted field may hold line
+     * breaks, so a record can span several lines.
+     *
+     * @return false at the end of the input
+     */
+    static boolean readRecord(BufferedReader reader, List<String> fields, StringBuilder field)
+            throws IOException {
+        fields.clear();
+        field.setLength(0);
+        String line = reader.readLine();
+        if (line == null) {
+            return false;
+        }
+
+        boolean quoted = false;
+        int i = 0;
+        while (true) {
+            if (i == line.length()) {
+                String next = quoted ? reader.readLine() : null;
+                if (next == null) {
+                    // End of the record, or an unterminated quote at the end of the input
+                    fields.add(field.toString());
+                    return true;
+                }
+                // The quoted field goes on on the next line
+                field.append('\n');
+                line = next;
+                i = 0;
+                continue;
+            }
+
+            char c = line.charAt(i++);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i < line.length() && line.charAt(i) == '"') {
+                    // Doubled quote
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+    }
+
+    private static void writeField(Writer writer, String value) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            writer.write(value);
+            return;
+        }
+
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                writer.write('"');
+            }
+            writer.write(c);
+        }
+        writer.write('"');
+    }
+}
@@ -1,14 +1,28 @@
 package com.example.android.inventory_project.data;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
+import android.text.TextUtils;
 
 import static com.example.android.inventory_project.data.InventoryContract.InventoryEntry;
+import static com.example.android.inventory_project.data.InventoryContract.LOW_STOCK_THRESHOLD;
+import static com.example.android.inventory_project.data.InventoryContract.LocationEntry;
+import static com.example.android.inventory_project.data.InventoryContract.QuantityChangeEntry;
+import static com.example.android.inventory_project.data.InventoryContract.SaleEntry;
+import static com.example.android.inventory_project.data.InventoryContract.StatsEntry;
+import static com.example.android.inventory_project.data.InventoryContract.StockEntry;
+import static com.example.android.inventory_project.data.InventoryContract.SyncEntry;
 
 public class InventoryDbHelper extends SQLiteOpenHelper {
 
     public static final String LOG_TAG = InventoryDbHelper.class.getSimpleName();
+    // Whether an item is low on stock, as a term for totalsDelta(): against the fixed
+    // threshold of version 5, and against the reorder level of the item from version 6 on.
+    private static final String FIXED_LOW_STOCK_TERM = "(%1$s < " + LOW_STOCK_THRESHOLD + ")";
+    private static final String REORDER_LOW_STOCK_TERM = "(%1$s < %3$s)";
     public static final String SQL_CREATE_INVENTORY_TABLE = "CREATE TABLE " +
             InventoryEntry.TABLE_NAME + " (" +
             InventoryEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
@@ -18,38 +32,652 @@ public class InventoryDbHelper extends SQLiteOpenHelper {
             InventoryEntry.COLUMN_SUPPLIER_NAME + " TEXT NOT NULL, " +
             InventoryEntry.COLUMN_SUPPLIER_PHONE + " INTEGER);";
     public static final String SQL_DELETE_ENTRIES = "DROP TABLE IF EXISTS " + InventoryEntry.TABLE_NAME;
+    public static final String SQL_CREATE_NAME_INDEX = "CREATE INDEX IF NOT EXISTS " +
+            InventoryEntry.TABLE_NAME + "_name_idx ON " + InventoryEntry.TABLE_NAME +
+            " (" + InventoryEntry.COLUMN_PRODUCT_NAME + ")";
+    public static final String SQL_CREATE_SUPPLIER_INDEX = "CREATE INDEX IF NOT EXISTS " +
+            InventoryEntry.TABLE_NAME + "_supplier_idx ON " + InventoryEntry.TABLE_NAME +
+            " (" + InventoryEntry.COLUMN_SUPPLIER_NAME + ")";
+    public static final String SQL_CREATE_QUANTITY_INDEX = "CREATE INDEX IF NOT EXISTS " +
+            InventoryEntry.TABLE_NAME + "_quantity_idx ON " + InventoryEntry.TABLE_NAME +
+            " (" + InventoryEntry.COLUMN_PRODUCT_QUANTITY + ")";
+    public static final String SQL_CREATE_FTS_TABLE = "CREATE VIRTUAL TABLE " +
+            InventoryEntry.FTS_TABLE_NAME + " USING fts4(" +
+            InventoryEntry.COLUMN_PRODUCT_NAME + ", " +
+            InventoryEntry.COLUMN_SUPPLIER_NAME + ")";
+    public static final String SQL_FILL_FTS_TABLE = "INSERT INTO " + InventoryEntry.FTS_TABLE_NAME +
+            " (docid, " + InventoryEntry.COLUMN_PRODUCT_NAME + ", " + InventoryEntry.COLUMN_SUPPLIER_NAME +
+            ") SELECT " + InventoryEntry._ID + ", " + InventoryEntry.COLUMN_PRODUCT_NAME + ", " +
+            InventoryEntry.COLUMN_SUPPLIER_NAME + " FROM " + InventoryEntry.TABLE_NAME;
+    public static final String SQL_CREATE_FTS_INSERT_TRIGGER = "CREATE TRIGGER " +
+            InventoryEntry.FTS_TABLE_NAME + "_insert AFTER INSERT ON " + InventoryEntry.TABLE_NAME +
+            " BEGIN INSERT INTO " + InventoryEntry.FTS_TABLE_NAME + " (docid, " +
+            InventoryEntry.COLUMN_PRODUCT_NAME + ", " + InventoryEntry.COLUMN_SUPPLIER_NAME +
+            ") VALUES (new." + InventoryEntry._ID + ", new." + InventoryEntry.COLUMN_PRODUCT_NAME +
+            ", new." + InventoryEntry.COLUMN_SUPPLIER_NAME + "); END";
+    public static final String SQL_CREATE_FTS_UPDATE_TRIGGER = "CREATE TRIGGER " +
+            InventoryEntry.FTS_TABLE_NAME + "_update AFTER UPDATE OF " +
+            InventoryEntry.COLUMN_PRODUCT_NAME + ", " + InventoryEntry.COLUMN_SUPPLIER_NAME +
+            " ON " + InventoryEntry.TABLE_NAME + " BEGIN UPDATE " + InventoryEntry.FTS_TABLE_NAME +
+            " SET " + InventoryEntry.COLUMN_PRODUCT_NAME + " = new." + InventoryEntry.COLUMN_PRODUCT_NAME +
+            ", " + InventoryEntry.COLUMN_SUPPLIER_NAME + " = new." + InventoryEntry.COLUMN_SUPPLIER_NAME +
+            " WHERE docid = old." + InventoryEntry._ID + "; END";
+    public static final String SQL_CREATE_FTS_DELETE_TRIGGER = "CREATE TRIGGER " +
+            InventoryEntry.FTS_TABLE_NAME + "_delete AFTER DELETE ON " + InventoryEntry.TABLE_NAME +
+            " BEGIN DELETE FROM " + InventoryEntry.FTS_TABLE_NAME +
+            " WHERE docid = old." + InventoryEntry._ID + "; END";
+    public static final String SQL_ADD_SKU_COLUMN = "ALTER TABLE " + InventoryEntry.TABLE_NAME +
+            " ADD COLUMN " + InventoryEntry.COLUMN_SKU + " TEXT";
+    public static final String SQL_CREATE_SKU_INDEX = "CREATE UNIQUE INDEX IF NOT EXISTS " +
+            InventoryEntry.TABLE_NAME + "_sku_idx ON " + InventoryEntry.TABLE_NAME +
+            " (" + InventoryEntry.COLUMN_SKU + ")";
+    // Serves the supplier stats: the GROUP BY reads the index in supplier order and finds
+    // every column it sums there, without touching the table. Makes the supplier_idx of
+    // version 2 redundant.
+    public static final String SQL_CREATE_SUPPLIER_STOCK_INDEX = "CREATE INDEX IF NOT EXISTS " +
+            InventoryEntry.TABLE_NAME + "_supplier_stock_idx ON " + InventoryEntry.TABLE_NAME +
+            " (" + InventoryEntry.COLUMN_SUPPLIER_NAME + ", " + InventoryEntry.COLUMN_PRODUCT_QUANTITY +
+            ", " + InventoryEntry.COLUMN_PRODUCT_PRICE + ")";
+    public static final String SQL_DROP_SUPPLIER_INDEX = "DROP INDEX IF EXISTS " +
+            InventoryEntry.TABLE_NAME + "_supplier_idx";
+    public static final String SQL_CREATE_TOTALS_TABLE = "CREATE TABLE " + StatsEntry.TOTALS_TABLE_NAME +
+            " (" + StatsEntry.COLUMN_ITEM_COUNT + " INTEGER NOT NULL, " +
+            StatsEntry.COLUMN_TOTAL_UNITS + " INTEGER NOT NULL, " +
+            StatsEntry.COLUMN_TOTAL_VALUE + " INTEGER NOT NULL, " +
+            StatsEntry.COLUMN_LOW_STOCK_COUNT + " INTEGER NOT NULL)";
+    // The totals of a set of items. NULL quantities and prices count as 0, the same as in
+    // the triggers below.
+    public static final String SQL_SUM_ITEM_COUNT = "COUNT(*)";
+    public static final String SQL_SUM_TOTAL_UNITS = "ifnull(SUM(" + InventoryEntry.COLUMN_PRODUCT_QUANTITY + "), 0)";
+    public static final String SQL_SUM_TOTAL_VALUE = "ifnull(SUM(" + InventoryEntry.COLUMN_PRODUCT_PRICE +
+            " * " + InventoryEntry.COLUMN_PRODUCT_QUANTITY + "), 0)";
+    public static final String SQL_SUM_LOW_STOCK_COUNT = "ifnull(SUM(ifnull(" +
+            InventoryEntry.COLUMN_PRODUCT_QUANTITY + ", 0) < " + LOW_STOCK_THRESHOLD + "), 0)";
+    public static final String SQL_FILL_TOTALS_TABLE = "INSERT INTO " + StatsEntry.TOTALS_TABLE_NAME +
+            " SELECT " + SQL_SUM_ITEM_COUNT + ", " + SQL_SUM_TOTAL_UNITS + ", " + SQL_SUM_TOTAL_VALUE +
+            ", " + SQL_SUM_LOW_STOCK_COUNT + " FROM " + InventoryEntry.TABLE_NAME;
+    public static final String SQL_CREATE_TOTALS_INSERT_TRIGGER = "CREATE TRIGGER " +
+            StatsEntry.TOTALS_TABLE_NAME + "_insert AFTER INSERT ON " + InventoryEntry.TABLE_NAME +
+            " BEGIN UPDATE " + StatsEntry.TOTALS_TABLE_NAME + " SET " +
+            StatsEntry.COLUMN_ITEM_COUNT + " = " + StatsEntry.COLUMN_ITEM_COUNT + " + 1, " +
+            totalsChange(false, true, FIXED_LOW_STOCK_TERM) + "; END";
+    public static final String SQL_CREATE_TOTALS_DELETE_TRIGGER = "CREATE TRIGGER " +
+            StatsEntry.TOTALS_TABLE_NAME + "_delete AFTER DELETE ON " + InventoryEntry.TABLE_NAME +
+            " BEGIN UPDATE " + StatsEntry.TOTALS_TABLE_NAME + " SET " +
+            StatsEntry.COLUMN_ITEM_COUNT + " = " + StatsEntry.COLUMN_ITEM_COUNT + " - 1, " +
+            totalsChange(true, false, FIXED_LOW_STOCK_TERM) + "; END";
+    public static final String SQL_CREATE_TOTALS_UPDATE_TRIGGER = "CREATE TRIGGER " +
+            StatsEntry.TOTALS_TABLE_NAME + "_update AFTER UPDATE OF " +
+            InventoryEntry.COLUMN_PRODUCT_PRICE + ", " + InventoryEntry.COLUMN_PRODUCT_QUANTITY +
+            " ON " + InventoryEntry.TABLE_NAME + " BEGIN UPDATE " + StatsEntry.TOTALS_TABLE_NAME + " SET " +
+            totalsChange(true, true, FIXED_LOW_STOCK_TERM) + "; END";
+    public static final String SQL_ADD_REORDER_LEVEL_COLUMN = "ALTER TABLE " + InventoryEntry.TABLE_NAME +
+            " ADD COLUMN " + InventoryEntry.COLUMN_REORDER_LEVEL + " INTEGER NOT NULL DEFAULT " +
+            LOW_STOCK_THRESHOLD;
+    // Same as the supplier stock index, plus the reorder level the low stock count now
+    // compares against.
+    public static final String SQL_CREATE_SUPPLIER_REORDER_INDEX = "CREATE INDEX IF NOT EXISTS " +
+            InventoryEntry.TABLE_NAME + "_supplier_reorder_idx ON " + InventoryEntry.TABLE_NAME +
+            " (" + InventoryEntry.COLUMN_SUPPLIER_NAME + ", " + InventoryEntry.COLUMN_PRODUCT_QUANTITY +
+            ", " + InventoryEntry.COLUMN_PRODUCT_PRICE + ", " + InventoryEntry.COLUMN_REORDER_LEVEL + ")";
+    public static final String SQL_DROP_SUPPLIER_STOCK_INDEX = "DROP INDEX IF EXISTS " +
+            InventoryEntry.TABLE_NAME + "_supplier_stock_idx";
+    // Number of items below their own reorder level
+    public static final String SQL_SUM_BELOW_REORDER_LEVEL = "ifnull(SUM(ifnull(" +
+            InventoryEntry.COLUMN_PRODUCT_QUANTITY + ", 0) < " + InventoryEntry.COLUMN_REORDER_LEVEL + "), 0)";
+    public static final String SQL_DROP_TOTALS_INSERT_TRIGGER = "DROP TRIGGER IF EXISTS " +
+            StatsEntry.TOTALS_TABLE_NAME + "_insert";
+    public static final String SQL_DROP_TOTALS_DELETE_TRIGGER = "DROP TRIGGER IF EXISTS " +
+            StatsEntry.TOTALS_TABLE_NAME + "_delete";
+    public static final String SQL_DROP_TOTALS_UPDATE_TRIGGER = "DROP TRIGGER IF EXISTS " +
+            StatsEntry.TOTALS_TABLE_NAME + "_update";
+    // The totals triggers of version 5, counting low stock against the reorder level of
+    // each item instead of LOW_STOCK_THRESHOLD
+    public static final String SQL_CREATE_REORDER_TOTALS_INSERT_TRIGGER = "CREATE TRIGGER " +
+            StatsEntry.TOTALS_TABLE_NAME + "_insert AFTER INSERT ON " + InventoryEntry.TABLE_NAME +
+            " BEGIN UPDATE " + StatsEntry.TOTALS_TABLE_NAME + " SET " +
+            StatsEntry.COLUMN_ITEM_COUNT + " = " + StatsEntry.COLUMN_ITEM_COUNT + " + 1, " +
+            totalsChange(false, true, REORDER_LOW_STOCK_TERM) + "; END";
+    public static final String SQL_CREATE_REORDER_TOTALS_DELETE_TRIGGER = "CREATE TRIGGER " +
+            StatsEntry.TOTALS_TABLE_NAME + "_delete AFTER DELETE ON " + InventoryEntry.TABLE_NAME +
+            " BEGIN UPDATE " + StatsEntry.TOTALS_TABLE_NAME + " SET " +
+            StatsEntry.COLUMN_ITEM_COUNT + " = " + StatsEntry.COLUMN_ITEM_COUNT + " - 1, " +
+            totalsChange(true, false, REORDER_LOW_STOCK_TERM) + "; END";
+    public static final String SQL_CREATE_REORDER_TOTALS_UPDATE_TRIGGER = "CREATE TRIGGER " +
+            StatsEntry.TOTALS_TABLE_NAME + "_update AFTER UPDATE OF " +
+            InventoryEntry.COLUMN_PRODUCT_PRICE + ", " + InventoryEntry.COLUMN_PRODUCT_QUANTITY + ", " +
+            InventoryEntry.COLUMN_REORDER_LEVEL + " ON " + InventoryEntry.TABLE_NAME +
+            " BEGIN UPDATE " + StatsEntry.TOTALS_TABLE_NAME + " SET " +
+            totalsChange(true, true, REORDER_LOW_STOCK_TERM) + "; END";
+    public static final String SQL_CREATE_CHANGES_TABLE = "CREATE TABLE " + QuantityChangeEntry.TABLE_NAME +
+            " (" + QuantityChangeEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+            QuantityChangeEntry.COLUMN_ITEM_ID + " INTEGER NOT NULL, " +
+            QuantityChangeEntry.COLUMN_QUANTITY + " INTEGER NOT NULL, " +
+            QuantityChangeEntry.COLUMN_REORDER_LEVEL + " INTEGER NOT NULL)";
+    // Log new items that start out below their reorder level, and updates that move an
+    // item below its reorder level or back above it. Sales that leave an item on the same
+    // side of it are not logged, so the log only grows with what a low stock alert needs.
+    public static final String SQL_CREATE_CHANGES_INSERT_TRIGGER = "CREATE TRIGGER " +
+            QuantityChangeEntry.TABLE_NAME + "_insert AFTER INSERT ON " + InventoryEntry.TABLE_NAME +
+            " WHEN " + String.format(REORDER_LOW_STOCK_TERM, "ifnull(new." +
+            InventoryEntry.COLUMN_PRODUCT_QUANTITY + ", 0)", null, "new." + InventoryEntry.COLUMN_REORDER_LEVEL) +
+            changeLogInsert() + "; END";
+    public static final String SQL_CREATE_CHANGES_UPDATE_TRIGGER = "CREATE TRIGGER " +
+            QuantityChangeEntry.TABLE_NAME + "_update AFTER UPDATE OF " +
+            InventoryEntry.COLUMN_PRODUCT_QUANTITY + ", " + InventoryEntry.COLUMN_REORDER_LEVEL +
+            " ON " + InventoryEntry.TABLE_NAME + " WHEN " +
+            String.format(REORDER_LOW_STOCK_TERM, "ifnull(old." + InventoryEntry.COLUMN_PRODUCT_QUANTITY +
+                    ", 0)", null, "old." + InventoryEntry.COLUMN_REORDER_LEVEL) + " <> " +
+            String.format(REORDER_LOW_STOCK_TERM, "ifnull(new." + InventoryEntry.COLUMN_PRODUCT_QUANTITY +
+                    ", 0)", null, "new." + InventoryEntry.COLUMN_REORDER_LEVEL) +
+            changeLogInsert() + "; END";
+    // A plain rowid table rather than AUTOINCREMENT, which would cost a write to
+    // sqlite_sequence on every sale; the _IDs of an append-only table are never reused anyway.
+    public static final String SQL_CREATE_SALES_TABLE = "CREATE TABLE " + SaleEntry.TABLE_NAME + " (" +
+            SaleEntry._ID + " INTEGER PRIMARY KEY, " +
+            SaleEntry.COLUMN_ITEM_ID + " INTEGER NOT NULL, " +
+            SaleEntry.COLUMN_TIMESTAMP + " INTEGER NOT NULL, " +
+            SaleEntry.COLUMN_QUANTITY + " INTEGER NOT NULL, " +
+            SaleEntry.COLUMN_PRICE + " INTEGER)";
+    // Serves the time range queries on the sales of an item
+    public static final String SQL_CREATE_SALES_INDEX = "CREATE INDEX IF NOT EXISTS " +
+            SaleEntry.TABLE_NAME + "_item_ts_idx ON " + SaleEntry.TABLE_NAME +
+            " (" + SaleEntry.COLUMN_ITEM_ID + ", " + SaleEntry.COLUMN_TIMESTAMP + ")";
+    public static final String SQL_ADD_BARCODE_COLUMN = "ALTER TABLE " + InventoryEntry.TABLE_NAME +
+            " ADD COLUMN " + InventoryEntry.COLUMN_BARCODE + " TEXT";
+    // Serves the barcode lookups of the till; like the SKU index it allows any number of
+    // items without a barcode.
+    public static final String SQL_CREATE_BARCODE_INDEX = "CREATE UNIQUE INDEX IF NOT EXISTS " +
+            InventoryEntry.TABLE_NAME + "_barcode_idx ON " + InventoryEntry.TABLE_NAME +
+            " (" + InventoryEntry.COLUMN_BARCODE + ")";
+    // Prices were whole currency units up to version 8, and are cents from version 9 on
+    public static final String SQL_INVENTORY_PRICES_TO_CENTS = "UPDATE " + InventoryEntry.TABLE_NAME +
+            " SET " + InventoryEntry.COLUMN_PRODUCT_PRICE + " = " + InventoryEntry.COLUMN_PRODUCT_PRICE +
+            " * " + Prices.CENTS_PER_UNIT;
+    public static final String SQL_SALES_PRICES_TO_CENTS = "UPDATE " + SaleEntry.TABLE_NAME +
+            " SET " + SaleEntry.COLUMN_PRICE + " = " + SaleEntry.COLUMN_PRICE + " * " + Prices.CENTS_PER_UNIT;
+    public static final String SQL_CREATE_LOCATION_TABLE = "CREATE TABLE " + LocationEntry.TABLE_NAME + " (" +
+            LocationEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+            LocationEntry.COLUMN_LOCATION_NAME + " TEXT NOT NULL)";
+    // A plain rowid table like the sales, the indexes below hold every column anyway. SQLite
+    // only has WITHOUT ROWID tables, which would make the first of them the table, from
+    // 3.8.2, which Android ships from API 21.
+    public static final String SQL_CREATE_STOCK_TABLE = "CREATE TABLE " + StockEntry.TABLE_NAME + " (" +
+            StockEntry._ID + " INTEGER PRIMARY KEY, " +
+            StockEntry.COLUMN_LOCATION_ID + " INTEGER NOT NULL, " +
+            StockEntry.COLUMN_ITEM_ID + " INTEGER NOT NULL, " +
+            StockEntry.COLUMN_QUANTITY + " INTEGER NOT NULL)";
+    // One row per item and location, which the writes of the stock rely on
+    public static final String SQL_CREATE_STOCK_LOCATION_ITEM_INDEX = "CREATE UNIQUE INDEX IF NOT EXISTS " +
+            StockEntry.TABLE_NAME + "_location_item_idx ON " + StockEntry.TABLE_NAME +
+            " (" + StockEntry.COLUMN_LOCATION_ID + ", " + StockEntry.COLUMN_ITEM_ID + ")";
+    // Serve the catalog of a location, in item order for the keyset pages, and the totals
+    // per location, without reading the table
+    public static final String SQL_CREATE_STOCK_LOCATION_INDEX = "CREATE INDEX IF NOT EXISTS " +
+            StockEntry.TABLE_NAME + "_location_stock_idx ON " + StockEntry.TABLE_NAME +
+            " (" + StockEntry.COLUMN_LOCATION_ID + ", " + StockEntry.COLUMN_ITEM_ID + ", " +
+            StockEntry.COLUMN_QUANTITY + ")";
+    // Serves the stock of an item at every location, and the delete of its rows
+    public static final String SQL_CREATE_STOCK_ITEM_INDEX = "CREATE INDEX IF NOT EXISTS " +
+            StockEntry.TABLE_NAME + "_item_stock_idx ON " + StockEntry.TABLE_NAME +
+            " (" + StockEntry.COLUMN_ITEM_ID + ", " + StockEntry.COLUMN_LOCATION_ID + ", " +
+            StockEntry.COLUMN_QUANTITY + ")";
+    public static final String SQL_CREATE_STOCK_DELETE_TRIGGER = "CREATE TRIGGER " +
+            StockEntry.TABLE_NAME + "_delete AFTER DELETE ON " + InventoryEntry.TABLE_NAME +
+            " BEGIN DELETE FROM " + StockEntry.TABLE_NAME + " WHERE " + StockEntry.COLUMN_ITEM_ID +
+            " = old." + InventoryEntry._ID + "; END";
+    // Units in stock over a set of stock rows
+    public static final String SQL_SUM_STOCK_UNITS = "ifnull(SUM(" + StockEntry.TABLE_NAME + "." +
+            StockEntry.COLUMN_QUANTITY + "), 0)";
+    // A new random sync ID, 32 hex digits
+    public static final String SQL_NEW_SYNC_ID = "lower(hex(randomblob(16)))";
+    public static final String SQL_ADD_SYNC_ID_COLUMN = "ALTER TABLE " + InventoryEntry.TABLE_NAME +
+            " ADD COLUMN " + InventoryEntry.COLUMN_SYNC_ID + " TEXT";
+    public static final String SQL_ADD_CHANGE_SEQ_COLUMN = "ALTER TABLE " + InventoryEntry.TABLE_NAME +
+            " ADD COLUMN " + SyncEntry.COLUMN_CHANGE_SEQ + " INTEGER NOT NULL DEFAULT 0";
+    public static final String SQL_ADD_DIRTY_COLUMNS_COLUMN = "ALTER TABLE " + InventoryEntry.TABLE_NAME +
+            " ADD COLUMN " + SyncEntry.COLUMN_DIRTY_COLUMNS + " INTEGER NOT NULL DEFAULT 0";
+    public static final String SQL_ADD_SYNCED_QUANTITY_COLUMN = "ALTER TABLE " + InventoryEntry.TABLE_NAME +
+            " ADD COLUMN " + SyncEntry.COLUMN_SYNCED_QUANTITY + " INTEGER";
+    // Existing items have never been pushed, so all of them are changed, in _ID order
+    public static final String SQL_MARK_ITEMS_CHANGED = "UPDATE " + InventoryEntry.TABLE_NAME + " SET " +
+            InventoryEntry.COLUMN_SYNC_ID + " = " + SQL_NEW_SYNC_ID + ", " +
+            SyncEntry.COLUMN_CHANGE_SEQ + " = " + InventoryEntry._ID + ", " +
+            SyncEntry.COLUMN_DIRTY_COLUMNS + " = " + SyncChange.ALL_COLUMNS;
+    public static final String SQL_CREATE_SYNC_ID_INDEX = "CREATE UNIQUE INDEX IF NOT EXISTS " +
+            InventoryEntry.TABLE_NAME + "_sync_idx ON " + InventoryEntry.TABLE_NAME +
+            " (" + InventoryEntry.COLUMN_SYNC_ID + ")";
+    // Serves the reads of the changes to push, in change sequence order
+    public static final String SQL_CREATE_CHANGE_SEQ_INDEX = "CREATE INDEX IF NOT EXISTS " +
+            InventoryEntry.TABLE_NAME + "_change_idx ON " + InventoryEntry.TABLE_NAME +
+            " (" + SyncEntry.COLUMN_CHANGE_SEQ + ")";
+    public static final String SQL_CREATE_TOMBSTONE_TABLE = "CREATE TABLE " + SyncEntry.TOMBSTONE_TABLE_NAME +
+            " (" + InventoryEntry.COLUMN_SYNC_ID + " TEXT PRIMARY KEY, " +
+            SyncEntry.COLUMN_CHANGE_SEQ + " INTEGER NOT NULL)";
+    public static final String SQL_CREATE_TOMBSTONE_INDEX = "CREATE INDEX IF NOT EXISTS " +
+            SyncEntry.TOMBSTONE_TABLE_NAME + "_change_idx ON " + SyncEntry.TOMBSTONE_TABLE_NAME +
+            " (" + SyncEntry.COLUMN_CHANGE_SEQ + ")";
+    public static final String SQL_CREATE_SYNC_STATE_TABLE = "CREATE TABLE " + SyncEntry.STATE_TABLE_NAME +
+            " (" + SyncEntry.COLUMN_CLIENT_ID + " TEXT NOT NULL, " +
+            SyncEntry.COLUMN_LAST_SEQ + " INTEGER NOT NULL, " +
+            SyncEntry.COLUMN_PUSHED_SEQ + " INTEGER NOT NULL, " +
+            SyncEntry.COLUMN_PULLED_VERSION + " INTEGER NOT NULL, " +
+            SyncEntry.COLUMN_APPLYING + " INTEGER NOT NULL, " +
+            SyncEntry.COLUMN_PENDING_PUSH + " BLOB)";
+    public static final String SQL_FILL_SYNC_STATE_TABLE = "INSERT INTO " + SyncEntry.STATE_TABLE_NAME +
+            " SELECT " + SQL_NEW_SYNC_ID + ", ifnull(MAX(" + InventoryEntry._ID + "), 0), 0, 0, 0, NULL FROM " +
+            InventoryEntry.TABLE_NAME;
+    // Number the local changes of the items from the change sequence and record which columns
+    // they changed. Inserts and updates by sync itself are left alone.
+    public static final String SQL_CREATE_SYNC_INSERT_TRIGGER = "CREATE TRIGGER " +
+            InventoryEntry.TABLE_NAME + "_sync_insert AFTER INSERT ON " + InventoryEntry.TABLE_NAME +
+            " WHEN " + syncRecording() + " BEGIN " + nextChangeSeq() + "; UPDATE " +
+            InventoryEntry.TABLE_NAME + " SET " + InventoryEntry.COLUMN_SYNC_ID + " = ifnull(new." +
+            InventoryEntry.COLUMN_SYNC_ID + ", " + SQL_NEW_SYNC_ID + "), " + SyncEntry.COLUMN_CHANGE_SEQ +
+            " = " + lastChangeSeq() + ", " + SyncEntry.COLUMN_DIRTY_COLUMNS + " = " + SyncChange.ALL_COLUMNS +
+            " WHERE " + InventoryEntry._ID + " = new." + InventoryEntry._ID + "; END";
+    public static final String SQL_CREATE_SYNC_UPDATE_TRIGGER = "CREATE TRIGGER " +
+            InventoryEntry.TABLE_NAME + "_sync_update AFTER UPDATE OF " + TextUtils.join(", ", SyncEntry.COLUMNS) +
+            " ON " + InventoryEntry.TABLE_NAME + " WHEN " + syncRecording() + " AND " + changedColumns() +
+            " <> 0 BEGIN " + nextChangeSeq() + "; UPDATE " + InventoryEntry.TABLE_NAME + " SET " +
+            SyncEntry.COLUMN_CHANGE_SEQ + " = " + lastChangeSeq() + ", " + SyncEntry.COLUMN_DIRTY_COLUMNS +
+            " = " + SyncEntry.COLUMN_DIRTY_COLUMNS + " | " + changedColumns() + " WHERE " +
+            InventoryEntry._ID + " = new." + InventoryEntry._ID + "; END";
+    public static final String SQL_CREATE_SYNC_DELETE_TRIGGER = "CREATE TRIGGER " +
+            InventoryEntry.TABLE_NAME + "_sync_delete AFTER DELETE ON " + InventoryEntry.TABLE_NAME +
+            " WHEN " + syncRecording() + " BEGIN " + nextChangeSeq() + "; INSERT OR REPLACE INTO " +
+            SyncEntry.TOMBSTONE_TABLE_NAME + " (" + InventoryEntry.COLUMN_SYNC_ID + ", " +
+            SyncEntry.COLUMN_CHANGE_SEQ + ") VALUES (old." + InventoryEntry.COLUMN_SYNC_ID + ", " +
+            lastChangeSeq() + "); END";
+    public static final String SQL_ADD_PHOTO_COLUMN = "ALTER TABLE " + InventoryEntry.TABLE_NAME +
+            " ADD COLUMN " + InventoryEntry.COLUMN_PHOTO + " TEXT";
+    public static final String SQL_CREATE_PHOTO_TRASH_TABLE = "CREATE TABLE " +
+            InventoryEntry.PHOTO_TRASH_TABLE_NAME + " (" + InventoryEntry.COLUMN_PHOTO + " TEXT NOT NULL)";
+    // Put the photos that items stop using in the trash, in the same transaction as the change,
+    // so no file is deleted before the change is committed and none is forgotten.
+    public static final String SQL_CREATE_PHOTO_DELETE_TRIGGER = "CREATE TRIGGER " +
+            InventoryEntry.PHOTO_TRASH_TABLE_NAME + "_delete AFTER DELETE ON " + InventoryEntry.TABLE_NAME +
+            " WHEN old." + InventoryEntry.COLUMN_PHOTO + " IS NOT NULL BEGIN INSERT INTO " +
+            InventoryEntry.PHOTO_TRASH_TABLE_NAME + " VALUES (old." + InventoryEntry.COLUMN_PHOTO + "); END";
+    public static final String SQL_CREATE_PHOTO_UPDATE_TRIGGER = "CREATE TRIGGER " +
+            InventoryEntry.PHOTO_TRASH_TABLE_NAME + "_update AFTER UPDATE OF " + InventoryEntry.COLUMN_PHOTO +
+            " ON " + InventoryEntry.TABLE_NAME + " WHEN old." + InventoryEntry.COLUMN_PHOTO +
+            " IS NOT NULL AND old." + InventoryEntry.COLUMN_PHOTO + " IS NOT new." + InventoryEntry.COLUMN_PHOTO +
+            " BEGIN INSERT INTO " + InventoryEntry.PHOTO_TRASH_TABLE_NAME + " VALUES (old." +
+            InventoryEntry.COLUMN_PHOTO + "); END";
+    public static final String SQL_DROP_SYNC_INSERT_TRIGGER = "DROP TRIGGER IF EXISTS " +
+            InventoryEntry.TABLE_NAME + "_sync_insert";
+    public static final String SQL_DROP_SYNC_UPDATE_TRIGGER = "DROP TRIGGER IF EXISTS " +
+            InventoryEntry.TABLE_NAME + "_sync_update";
+    public static final String SQL_DROP_SYNC_DELETE_TRIGGER = "DROP TRIGGER IF EXISTS " +
+            InventoryEntry.TABLE_NAME + "_sync_delete";
+    // The sync triggers of version 11, with the next change sequence number derived from the
+    // changes themselves instead of a counter in the sync state, so a change is one row write
+    // less and changes don't all update the same row. An update that numbers its own change,
+    // as a sale does, is left alone.
+    public static final String SQL_CREATE_DERIVED_SYNC_INSERT_TRIGGER = "CREATE TRIGGER " +
+            InventoryEntry.TABLE_NAME + "_sync_insert AFTER INSERT ON " + InventoryEntry.TABLE_NAME +
+            " WHEN " + syncRecording() + " BEGIN UPDATE " + InventoryEntry.TABLE_NAME + " SET " +
+            InventoryEntry.COLUMN_SYNC_ID + " = ifnull(new." + InventoryEntry.COLUMN_SYNC_ID + ", " +
+            SQL_NEW_SYNC_ID + "), " + SyncEntry.COLUMN_CHANGE_SEQ + " = " + derivedChangeSeq() + ", " +
+            SyncEntry.COLUMN_DIRTY_COLUMNS + " = " + SyncChange.ALL_COLUMNS + " WHERE " +
+            InventoryEntry._ID + " = new." + InventoryEntry._ID + "; END";
+    public static final String SQL_CREATE_DERIVED_SYNC_UPDATE_TRIGGER = "CREATE TRIGGER " +
+            InventoryEntry.TABLE_NAME + "_sync_update AFTER UPDATE OF " + TextUtils.join(", ", SyncEntry.COLUMNS) +
+            " ON " + InventoryEntry.TABLE_NAME + " WHEN " + syncRecording() + " AND new." +
+            SyncEntry.COLUMN_CHANGE_SEQ + " = old." + SyncEntry.COLUMN_CHANGE_SEQ + " AND " +
+            changedColumns() + " <> 0 BEGIN UPDATE " + InventoryEntry.TABLE_NAME + " SET " +
+            SyncEntry.COLUMN_CHANGE_SEQ + " = " + derivedChangeSeq() + ", " + SyncEntry.COLUMN_DIRTY_COLUMNS +
+            " = " + SyncEntry.COLUMN_DIRTY_COLUMNS + " | " + changedColumns() + " WHERE " +
+            InventoryEntry._ID + " = new." + InventoryEntry._ID + "; END";
+    public static final String SQL_CREATE_DERIVED_SYNC_DELETE_TRIGGER = "CREATE TRIGGER " +
+            InventoryEntry.TABLE_NAME + "_sync_delete AFTER DELETE ON " + InventoryEntry.TABLE_NAME +
+            " WHEN " + syncRecording() + " BEGIN INSERT OR REPLACE INTO " + SyncEntry.TOMBSTONE_TABLE_NAME +
+            " (" + InventoryEntry.COLUMN_SYNC_ID + ", " + SyncEntry.COLUMN_CHANGE_SEQ + ") VALUES (old." +
+            InventoryEntry.COLUMN_SYNC_ID + ", " + derivedChangeSeq() + "); END";
     /**
      * Name of the database file
      */
     private static final String DATABASE_NAME = "inventory.db";
     /**
-     * Database version.  If the database schema is changed,
-     * then this value must increment
+     * Schema history. MIGRATIONS[i] upgrades a database from version i + 1 to version i + 2.
+     * To change the schema, append a new step here; never edit a step that has shipped.
      */
-    private static final int DATABASE_VERSION = 1;
+    private static final Migration[] MIGRATIONS = {
+            // Version 2: indexes for name lookups, supplier filters and stock level queries.
+            new Migration() {
+                @Override
+                public void migrate(SQLiteDatabase db) {
+                    db.execSQL(SQL_CREATE_NAME_INDEX);
+                    db.execSQL(SQL_CREATE_SUPPLIER_INDEX);
+                    db.execSQL(SQL_CREATE_QUANTITY_INDEX);
+                }
+            },
+            // Version 3: full-text index over product and supplier names.
+            new Migration() {
+                @Override
+                public void migrate(SQLiteDatabase db) {
+                    db.execSQL(SQL_CREATE_FTS_TABLE);
+                    db.execSQL(SQL_FILL_FTS_TABLE);
+                    db.execSQL(SQL_CREATE_FTS_INSERT_TRIGGER);
+                    db.execSQL(SQL_CREATE_FTS_UPDATE_TRIGGER);
+                    db.execSQL(SQL_CREATE_FTS_DELETE_TRIGGER);
+                }
+            },
+            // Version 4: SKU column for upserts. Existing items have no SKU; the unique index
+            // allows any number of those.
+            new Migration() {
+                @Override
+                public void migrate(SQLiteDatabase db) {
+                    db.execSQL(SQL_ADD_SKU_COLUMN);
+                    db.execSQL(SQL_CREATE_SKU_INDEX);
+                }
+            },
+            // Version 5: totals of the whole inventory, kept up to date by triggers, and a
+            // covering index for the totals per supplier.
+            new Migration() {
+                @Override
+                public void migrate(SQLiteDatabase db) {
+                    db.execSQL(SQL_CREATE_SUPPLIER_STOCK_INDEX);
+                    db.execSQL(SQL_DROP_SUPPLIER_INDEX);
+                    db.execSQL(SQL_CREATE_TOTALS_TABLE);
+                    db.execSQL(SQL_FILL_TOTALS_TABLE);
+                    db.execSQL(SQL_CREATE_TOTALS_INSERT_TRIGGER);
+                    db.execSQL(SQL_CREATE_TOTALS_DELETE_TRIGGER);
+                    db.execSQL(SQL_CREATE_TOTALS_UPDATE_TRIGGER);
+                }
+            },
+            // Version 6: a reorder level per item, which the low stock count follows, and a
+            // log of items going low on stock for the low stock alerts. Existing items get the
+            // old fixed threshold as their level, so the low stock count stays the same.
+            new Migration() {
+                @Override
+                public void migrate(SQLiteDatabase db) {
+                    db.execSQL(SQL_ADD_REORDER_LEVEL_COLUMN);
+                    db.execSQL(SQL_CREATE_SUPPLIER_REORDER_INDEX);
+                    db.execSQL(SQL_DROP_SUPPLIER_STOCK_INDEX);
+                    db.execSQL(SQL_DROP_TOTALS_INSERT_TRIGGER);
+                    db.execSQL(SQL_DROP_TOTALS_DELETE_TRIGGER);
+                    db.execSQL(SQL_DROP_TOTALS_UPDATE_TRIGGER);
+                    db.execSQL(SQL_CREATE_REORDER_TOTALS_INSERT_TRIGGER);
+                    db.execSQL(SQL_CREATE_REORDER_TOTALS_DELETE_TRIGGER);
+                    db.execSQL(SQL_CREATE_REORDER_TOTALS_UPDATE_TRIGGER);
+                    db.execSQL(SQL_CREATE_CHANGES_TABLE);
+                    db.execSQL(SQL_CREATE_CHANGES_INSERT_TRIGGER);
+                    db.execSQL(SQL_CREATE_CHANGES_UPDATE_TRIGGER);
+                }
+            },
+            // Version 7: ledger of sales. Sales made before the upgrade are not in it.
+            new Migration() {
+                @Override
+                public void migrate(SQLiteDatabase db) {
+                    db.execSQL(SQL_CREATE_SALES_TABLE);
+                    db.execSQL(SQL_CREATE_SALES_INDEX);
+                }
+            },
+            // Version 8: barcode column for the lookups of the till. Existing items have none.
+            new Migration() {
+                @Override
+                public void migrate(SQLiteDatabase db) {
+                    db.execSQL(SQL_ADD_BARCODE_COLUMN);
+                    db.execSQL(SQL_CREATE_BARCODE_INDEX);
+                }
+            },
+            // Version 9: prices in cents instead of whole units. The update trigger of the
+            // totals scales the stock value along with the prices.
+            new Migration() {
+                @Override
+                public void migrate(SQLiteDatabase db) {
+                    db.execSQL(SQL_INVENTORY_PRICES_TO_CENTS);
+                    db.execSQL(SQL_SALES_PRICES_TO_CENTS);
+                }
+            },
+            // Version 10: locations and the stock of every item at each of them. The quantity
+            // of the items stays as it is, no location has stock until some is set.
+            new Migration() {
+                @Override
+                public void migrate(SQLiteDatabase db) {
+                    db.execSQL(SQL_CREATE_LOCATION_TABLE);
+                    db.execSQL(SQL_CREATE_STOCK_TABLE);
+                    db.execSQL(SQL_CREATE_STOCK_LOCATION_ITEM_INDEX);
+                    db.execSQL(SQL_CREATE_STOCK_LOCATION_INDEX);
+                    db.execSQL(SQL_CREATE_STOCK_ITEM_INDEX);
+                    db.execSQL(SQL_CREATE_STOCK_DELETE_TRIGGER);
+                }
+            },
+            // Version 11: change tracking for delta sync. Every existing item counts as changed,
+            // so the first sync pushes them all.
+            new Migration() {
+                @Override
+                public void migrate(SQLiteDatabase db) {
+                    db.execSQL(SQL_ADD_SYNC_ID_COLUMN);
+                    db.execSQL(SQL_ADD_CHANGE_SEQ_COLUMN);
+                    db.execSQL(SQL_ADD_DIRTY_COLUMNS_COLUMN);
+                    db.execSQL(SQL_ADD_SYNCED_QUANTITY_COLUMN);
+                    db.execSQL(SQL_MARK_ITEMS_CHANGED);
+                    db.execSQL(SQL_CREATE_SYNC_ID_INDEX);
+                    db.execSQL(SQL_CREATE_CHANGE_SEQ_INDEX);
+                    db.execSQL(SQL_CREATE_TOMBSTONE_TABLE);
+                    db.execSQL(SQL_CREATE_TOMBSTONE_INDEX);
+                    db.execSQL(SQL_CREATE_SYNC_STATE_TABLE);
+                    db.execSQL(SQL_FILL_SYNC_STATE_TABLE);
+                    db.execSQL(SQL_CREATE_SYNC_INSERT_TRIGGER);
+                    db.execSQL(SQL_CREATE_SYNC_UPDATE_TRIGGER);
+                    db.execSQL(SQL_CREATE_SYNC_DELETE_TRIGGER);
+                }
+            },
+            // Version 12: photos of the items, kept as files
+            new Migration() {
+                @Override
+                public void migrate(SQLiteDatabase db) {
+                    db.execSQL(SQL_ADD_PHOTO_COLUMN);
+                    db.execSQL(SQL_CREATE_PHOTO_TRASH_TABLE);
+                    db.execSQL(SQL_CREATE_PHOTO_DELETE_TRIGGER);
+                    db.execSQL(SQL_CREATE_PHOTO_UPDATE_TRIGGER);
+                }
+            },
+            // Version 13: sync triggers that no longer count the changes in the sync state.
+            // The numbers of the changes made so far stay as they are.
+            new Migration() {
+                @Override
+                public void migrate(SQLiteDatabase db) {
+                    db.execSQL(SQL_DROP_SYNC_INSERT_TRIGGER);
+                    db.execSQL(SQL_DROP_SYNC_UPDATE_TRIGGER);
+                    db.execSQL(SQL_DROP_SYNC_DELETE_TRIGGER);
+                    db.execSQL(SQL_CREATE_DERIVED_SYNC_INSERT_TRIGGER);
+                    db.execSQL(SQL_CREATE_DERIVED_SYNC_UPDATE_TRIGGER);
+                    db.execSQL(SQL_CREATE_DERIVED_SYNC_DELETE_TRIGGER);
+                }
+            }
+    };
+    /**
+     * Database version. Follows from the number of migrations, so adding a migration
+     * is all it takes to upgrade existing databases.
+     */
+    private static final int DATABASE_VERSION = MIGRATIONS.length + 1;
 
     /**
-     * Constructs a new instance of {@link InventoryDbHelper}.
+     * Connection settings applied whenever the database is opened
+     */
+    private final DatabaseConfig mConfig;
+
+    /**
+     * Constructs a new instance of {@link InventoryDbHelper} with the default settings.
      *
      * @param context of the app
      */
     public InventoryDbHelper(Context context) {
+        this(context, DatabaseConfig.DEFAULT);
+    }
+
+    /**
+     * Constructs a new instance of {@link InventoryDbHelper}.
+     *
+     * @param context of the app
+     * @param config  connection settings of the database
+     */
+    public InventoryDbHelper(Context context, DatabaseConfig config) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        mConfig = config;
+    }
+
+    /**
+     * Method called when the connection is being configured, before the schema is created
+     * or upgraded. Applies the {@link DatabaseConfig}.
+     */
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        configure(db);
+    }
+
+    /**
+     * Method called once the database is open. Android 4.0.3 doesn't call onConfigure(),
+     * so the settings are applied here instead.
+     */
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            configure(db);
+        }
     }
 
     /**
-     * Method for the first time creation of the database
+     * Method for the first time creation of the database.
+     * Creates the version 1 schema and then runs every migration on it, so new and
+     * upgraded databases always end up with the same schema.
      */
     @Override
     public void onCreate(SQLiteDatabase db) {
         db.execSQL(SQL_CREATE_INVENTORY_TABLE);
+        migrate(db, 1, DATABASE_VERSION);
     }
 
     /**
      * Method to be called when the database is upgraded.
+     * Runs the migrations between the two versions in order, keeping the existing data.
      */
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        db.execSQL(SQL_DELETE_ENTRIES);
+        migrate(db, oldVersion, newVersion);
+    }
+
+    /**
+     * Runs the migration steps from fromVersion up to toVersion. SQLiteOpenHelper runs
+     * onCreate() and onUpgrade() in one transaction, together with setting the new version,
+     * so the steps all commit at once: if one fails, the ones before it roll back too and the
+     * database stays at fromVersion, to be upgraded again on the next open.
+     */
+    private static void migrate(SQLiteDatabase db, int fromVersion, int toVersion) {
+        for (int version = fromVersion; version < toVersion; version++) {
+            MIGRATIONS[version - 1].migrate(db);
+        }
+    }
+
+    /**
+     * Switches the journal mode and sets the synchronous pragma of the config. In WAL mode
+     * the SQLiteDatabase keeps a pool of connections, so queries don't wait for a transaction
+     * on another thread to end. The pragma only reaches the primary connection, which is the
+     * one every write goes through, so it is the only one it matters for.
+     */
+    private void configure(SQLiteDatabase db) {
+        if (mConfig.isWriteAheadLogging()) {
+            db.enableWriteAheadLogging();
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            // The journal mode is kept in the file, so a database once in WAL needs switching back
+            db.disableWriteAheadLogging();
+        }
+        setPragma(db, "synchronous = " + mConfig.getSynchronous());
+    }
+
+    // A pragma may return the new value as a row, which execSQL() refuses, so it runs as a
+    // query.
+    private static void setPragma(SQLiteDatabase db, String pragma) {
+        Cursor cursor = db.rawQuery("PRAGMA " + pragma, null);
+        try {
+            cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Returns the SET clause that removes the units, value and low stock flag of the old row
+     * from the totals and/or adds the ones of the new row.
+     */
+    private static String totalsChange(boolean removeOld, boolean addNew, String lowStockTerm) {
+        return StatsEntry.COLUMN_TOTAL_UNITS + " = " + StatsEntry.COLUMN_TOTAL_UNITS +
+                totalsDelta(removeOld, addNew, "%1$s") + ", " +
+                StatsEntry.COLUMN_TOTAL_VALUE + " = " + StatsEntry.COLUMN_TOTAL_VALUE +
+                totalsDelta(removeOld, addNew, "ifnull(%2$s, 0) * %1$s") + ", " +
+                StatsEntry.COLUMN_LOW_STOCK_COUNT + " = " + StatsEntry.COLUMN_LOW_STOCK_COUNT +
+                totalsDelta(removeOld, addNew, lowStockTerm);
+    }
+
+    // The change of one total, where the term is a format with the quantity as %1$s, the
+    // price column as %2$s and the reorder level column as %3$s.
+    private static String totalsDelta(boolean removeOld, boolean addNew, String term) {
+        String delta = "";
+        if (removeOld) {
+            delta += " - " + String.format(term, "ifnull(old." + InventoryEntry.COLUMN_PRODUCT_QUANTITY + ", 0)",
+                    "old." + InventoryEntry.COLUMN_PRODUCT_PRICE, "old." + InventoryEntry.COLUMN_REORDER_LEVEL);
+        }
+        if (addNew) {
+            delta += " + " + String.format(term, "ifnull(new." + InventoryEntry.COLUMN_PRODUCT_QUANTITY + ", 0)",
+                    "new." + InventoryEntry.COLUMN_PRODUCT_PRICE, "new." + InventoryEntry.COLUMN_REORDER_LEVEL);
+        }
+        return delta;
+    }
+
+    // The body of the change log triggers, logging the new quantity and reorder level of the item
+    private static String changeLogInsert() {
+        return " BEGIN INSERT INTO " + QuantityChangeEntry.TABLE_NAME + " (" +
+                QuantityChangeEntry.COLUMN_ITEM_ID + ", " + QuantityChangeEntry.COLUMN_QUANTITY + ", " +
+                QuantityChangeEntry.COLUMN_REORDER_LEVEL + ") VALUES (new." + InventoryEntry._ID +
+                ", ifnull(new." + InventoryEntry.COLUMN_PRODUCT_QUANTITY + ", 0), new." +
+                InventoryEntry.COLUMN_REORDER_LEVEL + ")";
+    }
+
+    // Condition of the sync triggers: the change is not one sync is applying
+    private static String syncRecording() {
+        return "(SELECT " + SyncEntry.COLUMN_APPLYING + " FROM " + SyncEntry.STATE_TABLE_NAME + ") = 0";
+    }
+
+    private static String nextChangeSeq() {
+        return "UPDATE " + SyncEntry.STATE_TABLE_NAME + " SET " + SyncEntry.COLUMN_LAST_SEQ + " = " +
+                SyncEntry.COLUMN_LAST_SEQ + " + 1";
+    }
+
+    private static String lastChangeSeq() {
+        return "(SELECT " + SyncEntry.COLUMN_LAST_SEQ + " FROM " + SyncEntry.STATE_TABLE_NAME + ")";
+    }
+
+    // The next change sequence number: one more than the last one of an item, a tombstone,
+    // a push or the counter of version 11, so it is never one a push already took. The
+    // maximums are read from the change sequence indexes.
+    private static String derivedChangeSeq() {
+        return "(max(ifnull((SELECT MAX(" + SyncEntry.COLUMN_CHANGE_SEQ + ") FROM " + InventoryEntry.TABLE_NAME +
+                "), 0), ifnull((SELECT MAX(" + SyncEntry.COLUMN_CHANGE_SEQ + ") FROM " +
+                SyncEntry.TOMBSTONE_TABLE_NAME + "), 0), (SELECT max(" + SyncEntry.COLUMN_LAST_SEQ + ", " +
+                SyncEntry.COLUMN_PUSHED_SEQ + ") FROM " + SyncEntry.STATE_TABLE_NAME + ")) + 1)";
+    }
+
+    // Bit mask of the synced columns an update changed, bit i for SyncEntry.COLUMNS[i]
+    private static String changedColumns() {
+        StringBuilder mask = new StringBuilder("(");
+        for (int i = 0; i < SyncEntry.COLUMNS.length; i++) {
+            if (i > 0) {
+                mask.append(" | ");
+            }
+            mask.append("((new.").append(SyncEntry.COLUMNS[i]).append(" IS NOT old.")
+                    .append(SyncEntry.COLUMNS[i]).append(") << ").append(i).append(")");
+        }
+        return mask.append(")").toString();
+    }
+
+    /**
+     * A single step in the schema history of the database.
+     */
+    private interface Migration {
+        void migrate(SQLiteDatabase db);
     }
 }
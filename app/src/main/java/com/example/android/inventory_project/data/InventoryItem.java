@@ -0,0 +1,173 @@
+package com.example.android.inventory_project.data;
+
+import android.database.Cursor;
+
+import static com.example.android.inventory_project.data.InventoryContract.InventoryEntry;
+
+/**
+ * Immutable copy of one row of the inventory table, as kept by the {@link ItemCache}.
+ */
+public final class InventoryItem {
+
+    /**
+     * The columns an item holds. A query can be answered from an item if it asks for a
+     * subset of these.
+     */
+    public static final String[] COLUMNS = {
+            InventoryEntry._ID,
+            InventoryEntry.COLUMN_PRODUCT_NAME,
+            InventoryEntry.COLUMN_PRODUCT_PRICE,
+            InventoryEntry.COLUMN_PRODUCT_QUANTITY,
+            InventoryEntry.COLUMN_SUPPLIER_NAME,
+            InventoryEntry.COLUMN_SUPPLIER_PHONE,
+            InventoryEntry.COLUMN_BARCODE,
+            InventoryEntry.COLUMN_REORDER_LEVEL,
+            InventoryEntry.COLUMN_PHOTO
+    };
+
+    private final long mId;
+    private final String mName;
+    private final int mPrice;
+    private final int mQuantity;
+    private final String mSupplierName;
+    private final long mSupplierPhone;
+    private final String mBarcode;
+    private final int mReorderLevel;
+    private final String mPhoto;
+
+    public InventoryItem(long id, String name, int price, int quantity, String supplierName,
+                         long supplierPhone, String barcode, int reorderLevel, String photo) {
+        mId = id;
+        mName = name;
+        mPrice = price;
+        mQuantity = quantity;
+        mSupplierName = supplierName;
+        mSupplierPhone = supplierPhone;
+        mBarcode = barcode;
+        mReorderLevel = reorderLevel;
+        mPhoto = photo;
+    }
+
+    /**
+     * Reads the item at the current position of a cursor holding all {@link #COLUMNS}.
+     */
+    public static InventoryItem fromCursor(Cursor cursor) {
+        return new InventoryItem(
+                cursor.getLong(cursor.getColumnIndexOrThrow(InventoryEntry._ID)),
+                cursor.getString(cursor.getColumnIndexOrThrow(InventoryEntry.COLUMN_PRODUCT_NAME)),
+                cursor.getInt(cursor.getColumnIndexOrThrow(InventoryEntry.COLUMN_PRODUCT_PRICE)),
+                cursor.getInt(cursor.getColumnIndexOrThrow(InventoryEntry.COLUMN_PRODUCT_QUANTITY)),
+                cursor.getString(cursor.getColumnIndexOrThrow(InventoryEntry.COLUMN_SUPPLIER_NAME)),
+                cursor.getLong(cursor.getColumnIndexOrThrow(InventoryEntry.COLUMN_SUPPLIER_PHONE)),
+                cursor.getString(cursor.getColumnIndexOrThrow(InventoryEntry.COLUMN_BARCODE)),
+                cursor.getInt(cursor.getColumnIndexOrThrow(InventoryEntry.COLUMN_REORDER_LEVEL)),
+                cursor.getString(cursor.getColumnIndexOrThrow(InventoryEntry.COLUMN_PHOTO)));
+    }
+
+    /**
+     * @return true if every column of the projection is held by an item
+     */
+    public static boolean hasColumns(String[] projection) {
+        if (projection == null) {
+            return false;
+        }
+        for (String column : projection) {
+            if (indexOf(column) == -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(String column) {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (COLUMNS[i].equals(column)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the values of the given columns, in the same order, e.g. for a MatrixCursor row.
+     */
+    public Object[] getValues(String[] projection) {
+        Object[] values = new Object[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            switch (indexOf(projection[i])) {
+                case 0:
+                    values[i] = mId;
+                    break;
+                case 1:
+                    values[i] = mName;
+                    break;
+                case 2:
+                    values[i] = mPrice;
+                    break;
+                case 3:
+                    values[i] = mQuantity;
+                    break;
+                case 4:
+                    values[i] = mSupplierName;
+                    break;
+                case 5:
+                    values[i] = mSupplierPhone;
+                    break;
+                case 6:
+                    values[i] = mBarcode;
+                    break;
+                case 7:
+                    values[i] = mReorderLevel;
+                    break;
+                case 8:
+                    values[i] = mPhoto;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown column " + projection[i]);
+            }
+        }
+        return values;
+    }
+
+    public long getId() {
+        return mId;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public int getPrice() {
+        return mPrice;
+    }
+
+    public int getQuantity() {
+        return mQuantity;
+    }
+
+    public String getSupplierName() {
+        return mSupplierName;
+    }
+
+    public long getSupplierPhone() {
+        return mSupplierPhone;
+    }
+
+    /**
+     * @return the barcode of the item, or null if it has none
+     */
+    public String getBarcode() {
+        return mBarcode;
+    }
+
+    public int getReorderLevel() {
+        return mReorderLevel;
+    }
+
+    /**
+     * @return the name of the photo of the item, see {@link PhotoStore}, or null if it has none
+     */
+    public String getPhoto() {
+        return mPhoto;
+    }
+}
@@ -1,17 +1,107 @@
 package com.example.android.inventory_project.data;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.database.DatabaseUtils;
+import android.database.MatrixCursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Bundle;
+import android.os.Build;
+import android.os.Looper;
+import android.os.Process;
+import android.os.ParcelFileDescriptor;
+import android.provider.OpenableColumns;
 import android.util.Log;
 
+import java.io.BufferedWriter;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.example.android.inventory_project.data.InventoryContract.BASE_CONTENT_URI;
 import static com.example.android.inventory_project.data.InventoryContract.CONTENT_AUTHORITY;
+import static com.example.android.inventory_project.data.InventoryContract.EXTRA_BARCODE_CACHE_HITS;
+import static com.example.android.inventory_project.data.InventoryContract.EXTRA_BARCODE_CACHE_MISSES;
+import static com.example.android.inventory_project.data.InventoryContract.EXTRA_CACHE_EVICTIONS;
+import static com.example.android.inventory_project.data.InventoryContract.EXTRA_CACHE_HITS;
+import static com.example.android.inventory_project.data.InventoryContract.EXTRA_CACHE_MISSES;
+import static com.example.android.inventory_project.data.InventoryContract.EXTRA_COUNT;
+import static com.example.android.inventory_project.data.InventoryContract.EXTRA_FROM_LOCATION_ID;
+import static com.example.android.inventory_project.data.InventoryContract.EXTRA_FROM_QUANTITY;
+import static com.example.android.inventory_project.data.InventoryContract.EXTRA_ITEM_ID;
+import static com.example.android.inventory_project.data.InventoryContract.EXTRA_METRICS;
+import static com.example.android.inventory_project.data.InventoryContract.EXTRA_NAME;
+import static com.example.android.inventory_project.data.InventoryContract.EXTRA_NOTIFICATIONS_EMITTED;
+import static com.example.android.inventory_project.data.InventoryContract.EXTRA_NOTIFICATIONS_SUPPRESSED;
+import static com.example.android.inventory_project.data.InventoryContract.EXTRA_PRICE;
+import static com.example.android.inventory_project.data.InventoryContract.EXTRA_QUANTITY;
+import static com.example.android.inventory_project.data.InventoryContract.EXTRA_SALES;
+import static com.example.android.inventory_project.data.InventoryContract.EXTRA_SALE_COMMITS;
+import static com.example.android.inventory_project.data.InventoryContract.EXTRA_SOLD;
+import static com.example.android.inventory_project.data.InventoryContract.EXTRA_SYNC_BYTES_RECEIVED;
+import static com.example.android.inventory_project.data.InventoryContract.EXTRA_SYNC_BYTES_SENT;
+import static com.example.android.inventory_project.data.InventoryContract.EXTRA_SYNC_PULLED;
+import static com.example.android.inventory_project.data.InventoryContract.EXTRA_SYNC_PUSHED;
+import static com.example.android.inventory_project.data.InventoryContract.EXTRA_THRESHOLD_MILLIS;
+import static com.example.android.inventory_project.data.InventoryContract.EXTRA_TO_LOCATION_ID;
+import static com.example.android.inventory_project.data.InventoryContract.EXTRA_TO_QUANTITY;
+import static com.example.android.inventory_project.data.InventoryContract.EXTRA_TRANSFERRED;
 import static com.example.android.inventory_project.data.InventoryContract.InventoryEntry;
+import static com.example.android.inventory_project.data.InventoryContract.LOW_STOCK_THRESHOLD;
+import static com.example.android.inventory_project.data.InventoryContract.LocationEntry;
+import static com.example.android.inventory_project.data.InventoryContract.METHOD_DUMP_METRICS;
+import static com.example.android.inventory_project.data.InventoryContract.METHOD_GET_CACHE_STATS;
+import static com.example.android.inventory_project.data.InventoryContract.METHOD_GET_NOTIFY_STATS;
+import static com.example.android.inventory_project.data.InventoryContract.METHOD_GET_SALE_STATS;
+import static com.example.android.inventory_project.data.InventoryContract.METHOD_LOOKUP_BARCODE;
+import static com.example.android.inventory_project.data.InventoryContract.METHOD_SCAN_AND_SELL;
+import static com.example.android.inventory_project.data.InventoryContract.METHOD_SELL;
+import static com.example.android.inventory_project.data.InventoryContract.METHOD_SET_SLOW_THRESHOLD;
+import static com.example.android.inventory_project.data.InventoryContract.METHOD_SYNC;
+import static com.example.android.inventory_project.data.InventoryContract.METHOD_TRANSFER;
+import static com.example.android.inventory_project.data.InventoryContract.PATH_CHANGES;
+import static com.example.android.inventory_project.data.InventoryContract.PATH_EXPORT;
 import static com.example.android.inventory_project.data.InventoryContract.PATH_INVENTORY;
+import static com.example.android.inventory_project.data.InventoryContract.PATH_LOCATION;
+import static com.example.android.inventory_project.data.InventoryContract.PATH_SALES;
+import static com.example.android.inventory_project.data.InventoryContract.PATH_SEARCH;
+import static com.example.android.inventory_project.data.InventoryContract.PATH_STATS;
+import static com.example.android.inventory_project.data.InventoryContract.PATH_STOCK;
+import static com.example.android.inventory_project.data.InventoryContract.PATH_SUPPLIER;
+import static com.example.android.inventory_project.data.InventoryContract.PATH_UPSERT;
+import static com.example.android.inventory_project.data.InventoryContract.QUERY_PARAMETER_AFTER;
+import static com.example.android.inventory_project.data.InventoryContract.QUERY_PARAMETER_FROM;
+import static com.example.android.inventory_project.data.InventoryContract.QUERY_PARAMETER_LIMIT;
+import static com.example.android.inventory_project.data.InventoryContract.QUERY_PARAMETER_MODE;
+import static com.example.android.inventory_project.data.InventoryContract.QUERY_PARAMETER_QUERY;
+import static com.example.android.inventory_project.data.InventoryContract.QUERY_PARAMETER_TO;
+import static com.example.android.inventory_project.data.InventoryContract.QuantityChangeEntry;
+import static com.example.android.inventory_project.data.InventoryContract.SaleEntry;
+import static com.example.android.inventory_project.data.InventoryContract.StatsEntry;
+import static com.example.android.inventory_project.data.InventoryContract.StockEntry;
+import static com.example.android.inventory_project.data.InventoryContract.UPSERT_MODE_ADD;
+import static com.example.android.inventory_project.data.InventoryContract.UPSERT_MODE_REPLACE;
 
 public class InventoryProvider extends ContentProvider {
 
@@ -24,6 +114,60 @@ public class InventoryProvider extends ContentProvider {
     // URI matcher code for the content URI for a single item in the items table
     private static final int ITEM_ID = 101;
 
+    // URI matcher code for the full-text search URI of the items table
+    private static final int SEARCH = 102;
+
+    // URI matcher code for the CSV export of the items table
+    private static final int EXPORT = 103;
+
+    // URI matcher code for inserting or updating items by SKU
+    private static final int UPSERT = 104;
+
+    // URI matcher code for the totals of the whole inventory
+    private static final int STATS = 105;
+
+    // URI matcher code for the totals per supplier
+    private static final int SUPPLIER_STATS = 106;
+
+    // URI matcher code for the log of items going low on stock
+    private static final int CHANGES = 107;
+
+    // URI matcher code for the sales of a single item
+    private static final int ITEM_SALES = 108;
+
+    // URI matcher code for the locations table
+    private static final int LOCATIONS = 109;
+
+    // URI matcher code for a single location
+    private static final int LOCATION_ID = 110;
+
+    // URI matcher code for the catalog of a single location
+    private static final int LOCATION_INVENTORY = 111;
+
+    // URI matcher code for the totals per location
+    private static final int LOCATION_STATS = 112;
+
+    // URI matcher code for the stock of a single item at every location
+    private static final int ITEM_STOCK = 113;
+
+    // Names of the URI codes above, from ITEMS on, in the metrics dump
+    private static final String[] URI_NAMES = {
+            "items", "item", "search", "export", "upsert", "stats", "supplierStats", "changes", "itemSales",
+            "locations", "location", "locationInventory", "locationStats", "itemStock"};
+
+    // Number of search results returned when the URI doesn't ask for a limit
+    private static final int DEFAULT_SEARCH_LIMIT = 100;
+
+    // Rows read from the db at once by the export. Bounds the memory of the export, whatever
+    // the size of the table.
+    private static final int EXPORT_CHUNK_SIZE = 1000;
+
+    // Size of the buffer between the export and the pipe
+    private static final int EXPORT_BUFFER_SIZE = 64 * 1024;
+
+    // Name of the export file, as shown by apps it is shared with
+    private static final String EXPORT_FILE_NAME = "inventory.csv";
+
     // UriMatcher object to match a content URI to a corresponding code.
     // The input passed into the constructor represents the code to return for the root URI.
     // It's common to use NO_MATCH as the input for this case.
@@ -36,42 +180,390 @@ public class InventoryProvider extends ContentProvider {
         // when a match is found.
         sUriMatcher.addURI(CONTENT_AUTHORITY, PATH_INVENTORY, ITEMS);
         sUriMatcher.addURI(CONTENT_AUTHORITY, PATH_INVENTORY + "/#", ITEM_ID);
+        sUriMatcher.addURI(CONTENT_AUTHORITY, PATH_INVENTORY + "/" + PATH_SEARCH, SEARCH);
+        sUriMatcher.addURI(CONTENT_AUTHORITY, PATH_INVENTORY + "/" + PATH_EXPORT, EXPORT);
+        sUriMatcher.addURI(CONTENT_AUTHORITY, PATH_INVENTORY + "/" + PATH_UPSERT, UPSERT);
+        sUriMatcher.addURI(CONTENT_AUTHORITY, PATH_INVENTORY + "/" + PATH_STATS, STATS);
+        sUriMatcher.addURI(CONTENT_AUTHORITY, PATH_INVENTORY + "/" + PATH_STATS + "/" + PATH_SUPPLIER,
+                SUPPLIER_STATS);
+        sUriMatcher.addURI(CONTENT_AUTHORITY, PATH_INVENTORY + "/" + PATH_CHANGES, CHANGES);
+        sUriMatcher.addURI(CONTENT_AUTHORITY, PATH_INVENTORY + "/#/" + PATH_SALES, ITEM_SALES);
+        sUriMatcher.addURI(CONTENT_AUTHORITY, PATH_LOCATION, LOCATIONS);
+        sUriMatcher.addURI(CONTENT_AUTHORITY, PATH_LOCATION + "/#", LOCATION_ID);
+        sUriMatcher.addURI(CONTENT_AUTHORITY, PATH_LOCATION + "/#/" + PATH_INVENTORY, LOCATION_INVENTORY);
+        sUriMatcher.addURI(CONTENT_AUTHORITY, PATH_LOCATION + "/" + PATH_STATS, LOCATION_STATS);
+        sUriMatcher.addURI(CONTENT_AUTHORITY, PATH_INVENTORY + "/#/" + PATH_STOCK, ITEM_STOCK);
+    }
+
+    // Columns of the supplier stats, computed by a GROUP BY over the supplier reorder index
+    private static final Map<String, String> sSupplierStatsProjection = new HashMap<>();
+
+    static {
+        sSupplierStatsProjection.put(InventoryEntry.COLUMN_SUPPLIER_NAME, InventoryEntry.COLUMN_SUPPLIER_NAME);
+        sSupplierStatsProjection.put(StatsEntry.COLUMN_ITEM_COUNT,
+                InventoryDbHelper.SQL_SUM_ITEM_COUNT + " AS " + StatsEntry.COLUMN_ITEM_COUNT);
+        sSupplierStatsProjection.put(StatsEntry.COLUMN_TOTAL_UNITS,
+                InventoryDbHelper.SQL_SUM_TOTAL_UNITS + " AS " + StatsEntry.COLUMN_TOTAL_UNITS);
+        sSupplierStatsProjection.put(StatsEntry.COLUMN_TOTAL_VALUE,
+                InventoryDbHelper.SQL_SUM_TOTAL_VALUE + " AS " + StatsEntry.COLUMN_TOTAL_VALUE);
+        sSupplierStatsProjection.put(StatsEntry.COLUMN_LOW_STOCK_COUNT,
+                InventoryDbHelper.SQL_SUM_BELOW_REORDER_LEVEL + " AS " + StatsEntry.COLUMN_LOW_STOCK_COUNT);
     }
 
+    // Tables of the catalog of a location: its stock rows, each joined with its item by _ID
+    private static final String LOCATION_INVENTORY_TABLES = StockEntry.TABLE_NAME + " JOIN " +
+            InventoryEntry.TABLE_NAME + " ON " + InventoryEntry.TABLE_NAME + "." + InventoryEntry._ID +
+            " = " + StockEntry.TABLE_NAME + "." + StockEntry.COLUMN_ITEM_ID;
+
+    // Columns of the catalog of a location: those of the items, with the stock at the
+    // location as their quantity
+    private static final Map<String, String> sLocationInventoryProjection = new HashMap<>();
+
+    static {
+        String[] itemColumns = {InventoryEntry._ID, InventoryEntry.COLUMN_PRODUCT_NAME,
+                InventoryEntry.COLUMN_PRODUCT_PRICE, InventoryEntry.COLUMN_SUPPLIER_NAME,
+                InventoryEntry.COLUMN_SUPPLIER_PHONE, InventoryEntry.COLUMN_SKU, InventoryEntry.COLUMN_BARCODE,
+                InventoryEntry.COLUMN_REORDER_LEVEL};
+        for (String column : itemColumns) {
+            sLocationInventoryProjection.put(column, InventoryEntry.TABLE_NAME + "." + column + " AS " + column);
+        }
+        sLocationInventoryProjection.put(InventoryEntry.COLUMN_PRODUCT_QUANTITY, StockEntry.TABLE_NAME + "." +
+                StockEntry.COLUMN_QUANTITY + " AS " + InventoryEntry.COLUMN_PRODUCT_QUANTITY);
+    }
+
+    // Columns of the totals per location, computed by a GROUP BY over the location stock index
+    private static final Map<String, String> sLocationStatsProjection = new HashMap<>();
+
+    static {
+        sLocationStatsProjection.put(LocationEntry._ID,
+                StockEntry.COLUMN_LOCATION_ID + " AS " + LocationEntry._ID);
+        sLocationStatsProjection.put(StatsEntry.COLUMN_ITEM_COUNT,
+                InventoryDbHelper.SQL_SUM_ITEM_COUNT + " AS " + StatsEntry.COLUMN_ITEM_COUNT);
+        sLocationStatsProjection.put(StatsEntry.COLUMN_TOTAL_UNITS,
+                InventoryDbHelper.SQL_SUM_STOCK_UNITS + " AS " + StatsEntry.COLUMN_TOTAL_UNITS);
+    }
+
+    // Statement used by bulkInsert() so that the SQL is only compiled once per batch.
+    // The args are bound by bindItem(), a NULL reorder level gets the column default.
+    private static final String SQL_INSERT_ITEM = "INSERT INTO " + InventoryEntry.TABLE_NAME + " (" +
+            InventoryEntry.COLUMN_PRODUCT_NAME + ", " +
+            InventoryEntry.COLUMN_PRODUCT_PRICE + ", " +
+            InventoryEntry.COLUMN_PRODUCT_QUANTITY + ", " +
+            InventoryEntry.COLUMN_SUPPLIER_NAME + ", " +
+            InventoryEntry.COLUMN_SUPPLIER_PHONE + ", " +
+            InventoryEntry.COLUMN_SKU + ", " +
+            InventoryEntry.COLUMN_REORDER_LEVEL + ", " +
+            InventoryEntry.COLUMN_BARCODE + ", " +
+            InventoryEntry.COLUMN_PHOTO + ") VALUES (?, ?, ?, ?, ?, ?, ifnull(?, " +
+            LOW_STOCK_THRESHOLD + "), ?, ?)";
+
+    // The columns an item can be written with, the ones bindItem() binds. validateItem()
+    // rejects any other key, which bindItem() would otherwise drop without a word.
+    private static final Set<String> ITEM_COLUMNS = new HashSet<>(Arrays.asList(
+            InventoryEntry.COLUMN_PRODUCT_NAME,
+            InventoryEntry.COLUMN_PRODUCT_PRICE,
+            InventoryEntry.COLUMN_PRODUCT_QUANTITY,
+            InventoryEntry.COLUMN_SUPPLIER_NAME,
+            InventoryEntry.COLUMN_SUPPLIER_PHONE,
+            InventoryEntry.COLUMN_SKU,
+            InventoryEntry.COLUMN_REORDER_LEVEL,
+            InventoryEntry.COLUMN_BARCODE,
+            InventoryEntry.COLUMN_PHOTO));
+
+    // First half of an upsert: update the item with the SKU, if there is one. The args are
+    // bound by bindItem(), in the same order as for SQL_INSERT_ITEM, and the second half
+    // is that insert. SQLite only has INSERT ... ON CONFLICT DO UPDATE from 3.24, which
+    // Android ships from API 30, so the two statements stand in for it.
+    // The args are numbered, as the SKU comes before the reorder level in bindItem() but
+    // after it in the statement. A NULL reorder level, barcode or photo keeps the one of the item.
+    private static final String SQL_UPSERT_REPLACE = "UPDATE " + InventoryEntry.TABLE_NAME + " SET " +
+            InventoryEntry.COLUMN_PRODUCT_NAME + " = ?1, " +
+            InventoryEntry.COLUMN_PRODUCT_PRICE + " = ?2, " +
+            InventoryEntry.COLUMN_PRODUCT_QUANTITY + " = ?3, " +
+            InventoryEntry.COLUMN_SUPPLIER_NAME + " = ?4, " +
+            InventoryEntry.COLUMN_SUPPLIER_PHONE + " = ?5, " +
+            InventoryEntry.COLUMN_REORDER_LEVEL + " = ifnull(?7, " + InventoryEntry.COLUMN_REORDER_LEVEL + "), " +
+            InventoryEntry.COLUMN_BARCODE + " = ifnull(?8, " + InventoryEntry.COLUMN_BARCODE + "), " +
+            InventoryEntry.COLUMN_PHOTO + " = ifnull(?9, " + InventoryEntry.COLUMN_PHOTO +
+            ") WHERE " + InventoryEntry.COLUMN_SKU + " = ?6";
+
+    // Same as SQL_UPSERT_REPLACE, but adds the quantity to the stock of the item
+    private static final String SQL_UPSERT_ADD = "UPDATE " + InventoryEntry.TABLE_NAME + " SET " +
+            InventoryEntry.COLUMN_PRODUCT_NAME + " = ?1, " +
+            InventoryEntry.COLUMN_PRODUCT_PRICE + " = ?2, " +
+            InventoryEntry.COLUMN_PRODUCT_QUANTITY + " = " + InventoryEntry.COLUMN_PRODUCT_QUANTITY + " + ?3, " +
+            InventoryEntry.COLUMN_SUPPLIER_NAME + " = ?4, " +
+            InventoryEntry.COLUMN_SUPPLIER_PHONE + " = ?5, " +
+            InventoryEntry.COLUMN_REORDER_LEVEL + " = ifnull(?7, " + InventoryEntry.COLUMN_REORDER_LEVEL + "), " +
+            InventoryEntry.COLUMN_BARCODE + " = ifnull(?8, " + InventoryEntry.COLUMN_BARCODE + "), " +
+            InventoryEntry.COLUMN_PHOTO + " = ifnull(?9, " + InventoryEntry.COLUMN_PHOTO +
+            ") WHERE " + InventoryEntry.COLUMN_SKU + " = ?6";
+
+    private static final String SQL_ITEM_ID_BY_SKU = "SELECT " + InventoryEntry._ID + " FROM " +
+            InventoryEntry.TABLE_NAME + " WHERE " + InventoryEntry.COLUMN_SKU + " = ?";
+
+    // Statement behind METHOD_LOOKUP_BARCODE, a search of the unique barcode index
+    private static final String SQL_ITEM_ID_BY_BARCODE = "SELECT " + InventoryEntry._ID + " FROM " +
+            InventoryEntry.TABLE_NAME + " WHERE " + InventoryEntry.COLUMN_BARCODE + " = ?";
+
+    // Statement behind inserts on the catalog of a location, setting the stock of an item
+    // there. Inserts nothing if the item or the location doesn't exist.
+    private static final String SQL_SET_STOCK = "INSERT OR REPLACE INTO " + StockEntry.TABLE_NAME + " (" +
+            StockEntry.COLUMN_LOCATION_ID + ", " + StockEntry.COLUMN_ITEM_ID + ", " + StockEntry.COLUMN_QUANTITY +
+            ") SELECT ?1, " + InventoryEntry._ID + ", ?3 FROM " + InventoryEntry.TABLE_NAME + " WHERE " +
+            InventoryEntry._ID + " = ?2 AND EXISTS (SELECT 1 FROM " + LocationEntry.TABLE_NAME + " WHERE " +
+            LocationEntry._ID + " = ?1)";
+
+    // First half of a transfer: take the units from the source, only if it has enough of them.
+    // The stock check and the decrement are one statement, like those of a sale.
+    private static final String SQL_TAKE_STOCK = "UPDATE " + StockEntry.TABLE_NAME + " SET " +
+            StockEntry.COLUMN_QUANTITY + " = " + StockEntry.COLUMN_QUANTITY + " - ?1 WHERE " +
+            StockEntry.COLUMN_LOCATION_ID + " = ?2 AND " + StockEntry.COLUMN_ITEM_ID + " = ?3 AND " +
+            StockEntry.COLUMN_QUANTITY + " >= ?1";
+
+    // Second half: add them to the destination, which may not have had the item before
+    private static final String SQL_GIVE_STOCK = "INSERT OR REPLACE INTO " + StockEntry.TABLE_NAME + " (" +
+            StockEntry.COLUMN_LOCATION_ID + ", " + StockEntry.COLUMN_ITEM_ID + ", " + StockEntry.COLUMN_QUANTITY +
+            ") VALUES (?2, ?3, ifnull((SELECT " + StockEntry.COLUMN_QUANTITY + " FROM " + StockEntry.TABLE_NAME +
+            " WHERE " + StockEntry.COLUMN_LOCATION_ID + " = ?2 AND " + StockEntry.COLUMN_ITEM_ID + " = ?3), 0) + ?1)";
+
+    private static final String SQL_STOCK_QUANTITY = "SELECT " + StockEntry.COLUMN_QUANTITY + " FROM " +
+            StockEntry.TABLE_NAME + " WHERE " + StockEntry.COLUMN_LOCATION_ID + " = ? AND " +
+            StockEntry.COLUMN_ITEM_ID + " = ?";
+
+    private static final String SQL_COUNT_LOCATION = "SELECT COUNT(*) FROM " + LocationEntry.TABLE_NAME +
+            " WHERE " + LocationEntry._ID + " = ?";
+
+    // The queries of the first screen of the catalog, as SQLiteDatabase.query() builds them
+    // for the page loader of CatalogPager and the totals loader of CatalogActivity. Compiled
+    // on the pre-warm thread, so the first queries find them in the statement cache of
+    // the connection.
+    private static final String[] PREWARM_STATEMENTS = {
+            SQLiteQueryBuilder.buildQueryString(false, InventoryEntry.TABLE_NAME,
+                    new String[]{InventoryEntry._ID, InventoryEntry.COLUMN_PRODUCT_NAME,
+                            InventoryEntry.COLUMN_PRODUCT_PRICE, InventoryEntry.COLUMN_PRODUCT_QUANTITY,
+                            InventoryEntry.COLUMN_PHOTO},
+                    InventoryEntry._ID + " > ?", null, null, InventoryEntry._ID,
+                    String.valueOf(CatalogSnapshot.MAX_ROWS)),
+            SQLiteQueryBuilder.buildQueryString(false, StatsEntry.TOTALS_TABLE_NAME,
+                    new String[]{StatsEntry.COLUMN_ITEM_COUNT, StatsEntry.COLUMN_TOTAL_UNITS,
+                            StatsEntry.COLUMN_TOTAL_VALUE, StatsEntry.COLUMN_LOW_STOCK_COUNT},
+                    null, null, null, null, null)
+    };
+
+    // Server of METHOD_SYNC, see setSyncServer()
+    private static volatile SyncServer sSyncServer;
+
     private InventoryDbHelper mDbHelper;
 
+    // Changes to push and changes pulled by METHOD_SYNC. Guards itself, one sync at a time.
+    private InventorySyncStore mSyncStore;
+
+    // Commits the sales of METHOD_SELL, along with their ledger rows
+    private SaleWriter mSaleWriter;
+
+    // Sends the change notifications of this provider
+    private ChangeNotifier mChangeNotifier;
+
+    // Keeps the snapshot of the first rows that a cold start shows, see CatalogSnapshot
+    private CatalogSnapshotWriter mSnapshotWriter;
+
+    // Deletes the photo files that items stopped using
+    private PhotoStore mPhotoStore;
+
+    // Set until the first query, which is traced as part of the startup
+    private final AtomicBoolean mFirstQuery = new AtomicBoolean(true);
+
+    // Recently read items, for queries on a single item
+    private ItemCache mItemCache;
+
+    // Recently scanned barcodes, for METHOD_LOOKUP_BARCODE
+    private BarcodeCache mBarcodeCache;
+
+    // SQL_ITEM_ID_BY_BARCODE, compiled on the first lookup that misses the BarcodeCache and
+    // kept for the next ones. Guards itself, as its bindings are shared.
+    private SQLiteStatement mBarcodeStatement;
+
+    // Timings of every operation, see METHOD_DUMP_METRICS
+    private final ProviderMetrics mMetrics = new ProviderMetrics(ITEMS, URI_NAMES);
+
+    // Set while applyBatch() runs on the current thread, so the individual operations
+    // hold back their change notifications until the whole batch has been committed.
+    private final ThreadLocal<Boolean> mInBatch = new ThreadLocal<Boolean>() {
+        @Override
+        protected Boolean initialValue() {
+            return false;
+        }
+    };
+
+    // Records whether any operation of the running batch changed the data.
+    private final ThreadLocal<Boolean> mBatchChanged = new ThreadLocal<Boolean>() {
+        @Override
+        protected Boolean initialValue() {
+            return false;
+        }
+    };
+
+    // Same for the locations and their stock, which are outside of the items URI
+    private final ThreadLocal<Boolean> mBatchLocationsChanged = new ThreadLocal<Boolean>() {
+        @Override
+        protected Boolean initialValue() {
+            return false;
+        }
+    };
+
     @Override
     public boolean onCreate() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            // Uptime and System.nanoTime() are both the monotonic clock
+            StartupTimeline.get().setOrigin(Process.getStartUptimeMillis() * 1000000L);
+        }
+        long start = StartupTrace.begin(StartupTimeline.PHASE_PROVIDER_CREATE);
         // Ensure global scope, so it can be referenced from other ContentProvider methods.
         mDbHelper = new InventoryDbHelper(getContext());
+        prewarm();
+        mSaleWriter = new SaleWriter(mDbHelper);
+        mSyncStore = new InventorySyncStore(mDbHelper);
+        mSnapshotWriter = new CatalogSnapshotWriter(mDbHelper,
+                CatalogSnapshot.getFile(getContext().getCacheDir()));
+        mPhotoStore = new PhotoStore(mDbHelper, PhotoStore.getDirectory(getContext()));
+        mChangeNotifier = new ChangeNotifier(getContext().getContentResolver(), new Runnable() {
+            @Override
+            public void run() {
+                mSnapshotWriter.requestWrite();
+                mPhotoStore.requestPurge();
+            }
+        });
+        mSnapshotWriter.writeIfMissing();
+        // Photos of items deleted while the app was last running, e.g. right before it was killed
+        mPhotoStore.requestPurge();
+        mItemCache = new ItemCache(ItemCache.MAX_SIZE);
+        mBarcodeCache = new BarcodeCache(BarcodeCache.MAX_SIZE);
+        StartupTrace.end(StartupTimeline.PHASE_PROVIDER_CREATE, start);
         return true;
     }
 
-    // Perform the query for the given URI.
+    // Open the database and compile the statements of the first screen on a thread of their
+    // own, starting as early as possible. The provider is created before any activity, so
+    // this runs while the activity is created, and the first query finds the database open,
+    // or waits in getReadableDatabase() for the open that is under way.
+    private void prewarm() {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    long start = StartupTrace.begin(StartupTimeline.PHASE_PREWARM_OPEN);
+                    SQLiteDatabase database;
+                    try {
+                        database = mDbHelper.getReadableDatabase();
+                    } finally {
+                        StartupTrace.end(StartupTimeline.PHASE_PREWARM_OPEN, start);
+                    }
+                    start = StartupTrace.begin(StartupTimeline.PHASE_PREWARM_COMPILE);
+                    try {
+                        for (String sql : PREWARM_STATEMENTS) {
+                            database.compileStatement(sql).close();
+                        }
+                    } finally {
+                        StartupTrace.end(StartupTimeline.PHASE_PREWARM_COMPILE, start);
+                    }
+                } catch (SQLiteException e) {
+                    // The first query opens the database again and reports the error
+                    Log.w(LOG_TAG, "Could not pre-warm the database", e);
+                }
+            }
+        }, "inventory-prewarm");
+        // Left at normal priority, as the first screen waits for it
+        thread.start();
+    }
+
+    // Perform the query for the given URI. Only the sampled queries are timed, and their
+    // cursor is recorded once first read, see MeteredCursor, so the time recorded includes
+    // running the query without counting the rows here.
     @Override
     public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        if (mFirstQuery.compareAndSet(true, false)) {
+            return traceFirstQuery(uri, projection, selection, selectionArgs, sortOrder);
+        }
+        // Figure out if the URI matcher can match the URI to a specfic code
+        int match = sUriMatcher.match(uri);
+        if (!mMetrics.sampleQuery(match)) {
+            return doQuery(match, uri, projection, selection, selectionArgs, sortOrder);
+        }
+        long start = System.nanoTime();
+        Cursor cursor = doQuery(match, uri, projection, selection, selectionArgs, sortOrder);
+        return new MeteredCursor(cursor, match, uri, start, selection, selectionArgs, sortOrder);
+    }
+
+    // Run the first query of the process as a phase of the startup, along with the open of
+    // the database it waits for.
+    private Cursor traceFirstQuery(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                                   String sortOrder) {
+        long start = StartupTrace.begin(StartupTimeline.PHASE_FIRST_QUERY);
+        try {
+            long openStart = StartupTrace.begin(StartupTimeline.PHASE_FIRST_QUERY_OPEN);
+            try {
+                mDbHelper.getReadableDatabase();
+            } finally {
+                StartupTrace.end(StartupTimeline.PHASE_FIRST_QUERY_OPEN, openStart);
+            }
+            Cursor cursor = query(uri, projection, selection, selectionArgs, sortOrder);
+            // Counted here so the phase includes running the query, only for this first one
+            cursor.getCount();
+            return cursor;
+        } finally {
+            StartupTrace.end(StartupTimeline.PHASE_FIRST_QUERY, start);
+        }
+    }
+
+    private Cursor doQuery(int match, Uri uri, String[] projection, String selection, String[] selectionArgs,
+                           String sortOrder) {
         // Grab a readable database
         SQLiteDatabase database = mDbHelper.getReadableDatabase();
 
         // This cursor will hold the result of the query
         Cursor cursor;
 
-        // Figure out if the URI matcher can match the URI to a specfic code
-        int match = sUriMatcher.match(uri);
         switch (match) {
             case ITEMS:
                 // For the ITEMS code, query the item table directly with the given
                 // projection, selection, selection args, and sort order. The cursor
                 // could contain multiple rows of the items table.
+                // If the URI asks for a page, only rows after the given _ID are returned,
+                // in _ID order, up to the limit.
+                String limit = uri.getQueryParameter(QUERY_PARAMETER_LIMIT);
+                if (limit != null) {
+                    limit = String.valueOf(Integer.parseInt(limit));
+                }
+                String after = uri.getQueryParameter(QUERY_PARAMETER_AFTER);
+                if (after != null) {
+                    String afterSelection = InventoryEntry._ID + " > ?";
+                    if (selection == null) {
+                        selection = afterSelection;
+                        selectionArgs = new String[]{String.valueOf(Long.parseLong(after))};
+                    } else {
+                        selection = "(" + selection + ") AND " + afterSelection;
+                        selectionArgs = appendSelectionArg(selectionArgs, String.valueOf(Long.parseLong(after)));
+                    }
+                    sortOrder = InventoryEntry._ID;
+                }
                 cursor = database.query(InventoryEntry.TABLE_NAME,
                         projection,
                         selection,
                         selectionArgs,
                         null,
                         null,
-                        sortOrder);
+                        sortOrder,
+                        limit);
                 break;
             case ITEM_ID:
+                // Single items are answered from the item cache, as long as the projection
+                // only asks for columns the cache holds.
+                if (InventoryItem.hasColumns(projection)) {
+                    cursor = queryItem(database, ContentUris.parseId(uri), projection);
+                    break;
+                }
+
                 // For the ITEM_ID code, extract out the ID from the URI.
                 // For an example URI such as 'content://com.example.android.inventory/item/2',
                 // the selection will be '_id=?' and the selection argument will be a
@@ -88,6 +580,63 @@ public class InventoryProvider extends ContentProvider {
                 cursor = database.query(InventoryEntry.TABLE_NAME, projection, selection, selectionArgs,
                         null, null, sortOrder);
                 break;
+            case SEARCH:
+                cursor = search(database, uri, projection, selection, selectionArgs);
+                // Results can change whenever any item changes
+                cursor.setNotificationUri(getContext().getContentResolver(), InventoryEntry.CONTENT_URI);
+                return cursor;
+            case EXPORT:
+                // Apps the export is shared with ask for its name and size
+                return queryExport(projection);
+            case STATS:
+                // A single row, maintained by triggers on every write to the items table
+                cursor = database.query(StatsEntry.TOTALS_TABLE_NAME, projection, null, null,
+                        null, null, null);
+                // The totals change whenever any item changes
+                cursor.setNotificationUri(getContext().getContentResolver(), InventoryEntry.CONTENT_URI);
+                return cursor;
+            case SUPPLIER_STATS:
+                SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+                builder.setTables(InventoryEntry.TABLE_NAME);
+                builder.setProjectionMap(sSupplierStatsProjection);
+                cursor = builder.query(database, projection, selection, selectionArgs,
+                        InventoryEntry.COLUMN_SUPPLIER_NAME, null, InventoryEntry.COLUMN_SUPPLIER_NAME);
+                cursor.setNotificationUri(getContext().getContentResolver(), InventoryEntry.CONTENT_URI);
+                return cursor;
+            case CHANGES:
+                return queryChanges(database, uri, projection);
+            case ITEM_SALES:
+                // Notified along with the item, as the observers of a URI also hear of
+                // changes to its parent
+                cursor = querySales(database, uri, projection);
+                break;
+            case LOCATIONS:
+                cursor = database.query(LocationEntry.TABLE_NAME, projection, selection, selectionArgs,
+                        null, null, sortOrder);
+                break;
+            case LOCATION_ID:
+                selection = LocationEntry._ID + "=?";
+                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
+                cursor = database.query(LocationEntry.TABLE_NAME, projection, selection, selectionArgs,
+                        null, null, sortOrder);
+                break;
+            case LOCATION_INVENTORY:
+                cursor = queryLocationInventory(database, uri, projection, selection, selectionArgs, sortOrder);
+                // Joins the items and their stock, so changes to either reload it
+                cursor.setNotificationUri(getContext().getContentResolver(), BASE_CONTENT_URI);
+                return cursor;
+            case LOCATION_STATS:
+                cursor = queryLocationStats(database, projection, selection, selectionArgs);
+                // Writes of the stock notify the catalogs of the locations, all below this URI
+                cursor.setNotificationUri(getContext().getContentResolver(), LocationEntry.CONTENT_URI);
+                return cursor;
+            case ITEM_STOCK:
+                // Read from the item stock index alone
+                cursor = database.query(StockEntry.TABLE_NAME, projection, StockEntry.COLUMN_ITEM_ID + " = ?",
+                        new String[]{String.valueOf(Long.parseLong(uri.getPathSegments().get(1)))},
+                        null, null, StockEntry.COLUMN_LOCATION_ID);
+                cursor.setNotificationUri(getContext().getContentResolver(), LocationEntry.CONTENT_URI);
+                return cursor;
             default:
                 throw new IllegalArgumentException("Cannot query unknown URI " + uri);
         }
@@ -99,9 +648,555 @@ public class InventoryProvider extends ContentProvider {
         return cursor;
     }
 
+    // Read the change log in order, only the changes after the one in the AFTER parameter,
+    // so a reader that keeps the last _ID it saw never reads a change twice. The cursor has
+    // no notification URI: the log is written along with the items, whose URI is notified.
+    private static Cursor queryChanges(SQLiteDatabase database, Uri uri, String[] projection) {
+        String selection = null;
+        String[] selectionArgs = null;
+        String after = uri.getQueryParameter(QUERY_PARAMETER_AFTER);
+        if (after != null) {
+            selection = QuantityChangeEntry._ID + " > ?";
+            selectionArgs = new String[]{String.valueOf(Long.parseLong(after))};
+        }
+        String limit = uri.getQueryParameter(QUERY_PARAMETER_LIMIT);
+        if (limit != null) {
+            limit = String.valueOf(Integer.parseInt(limit));
+        }
+        return database.query(QuantityChangeEntry.TABLE_NAME, projection, selection, selectionArgs,
+                null, null, QuantityChangeEntry._ID, limit);
+    }
+
+    // Read the sales of one item in a time range, oldest first, from the (itemId, ts) index.
+    private static Cursor querySales(SQLiteDatabase database, Uri uri, String[] projection) {
+        String selection = SaleEntry.COLUMN_ITEM_ID + " = ?";
+        String[] selectionArgs = {uri.getPathSegments().get(1)};
+        String from = uri.getQueryParameter(QUERY_PARAMETER_FROM);
+        if (from != null) {
+            selection += " AND " + SaleEntry.COLUMN_TIMESTAMP + " >= ?";
+            selectionArgs = appendSelectionArg(selectionArgs, String.valueOf(Long.parseLong(from)));
+        }
+        String to = uri.getQueryParameter(QUERY_PARAMETER_TO);
+        if (to != null) {
+            selection += " AND " + SaleEntry.COLUMN_TIMESTAMP + " < ?";
+            selectionArgs = appendSelectionArg(selectionArgs, String.valueOf(Long.parseLong(to)));
+        }
+        String limit = uri.getQueryParameter(QUERY_PARAMETER_LIMIT);
+        if (limit != null) {
+            limit = String.valueOf(Integer.parseInt(limit));
+        }
+        return database.query(SaleEntry.TABLE_NAME, projection, selection, selectionArgs,
+                null, null, SaleEntry.COLUMN_TIMESTAMP + ", " + SaleEntry._ID, limit);
+    }
+
+    // Read the catalog of a location: its stock rows in item order from the location stock
+    // index, each joined with its item by _ID, in pages like the items URI. A selection has
+    // to qualify the columns both tables have, the _ID and the quantity, with their table.
+    private static Cursor queryLocationInventory(SQLiteDatabase database, Uri uri, String[] projection,
+                                                 String selection, String[] selectionArgs, String sortOrder) {
+        String locationSelection = StockEntry.TABLE_NAME + "." + StockEntry.COLUMN_LOCATION_ID + " = ?";
+        String[] args = {String.valueOf(Long.parseLong(uri.getPathSegments().get(1)))};
+        String after = uri.getQueryParameter(QUERY_PARAMETER_AFTER);
+        if (after != null) {
+            locationSelection += " AND " + StockEntry.TABLE_NAME + "." + StockEntry.COLUMN_ITEM_ID + " > ?";
+            args = appendSelectionArg(args, String.valueOf(Long.parseLong(after)));
+            sortOrder = StockEntry.TABLE_NAME + "." + StockEntry.COLUMN_ITEM_ID;
+        }
+        if (selection != null) {
+            locationSelection += " AND (" + selection + ")";
+            if (selectionArgs != null) {
+                for (String arg : selectionArgs) {
+                    args = appendSelectionArg(args, arg);
+                }
+            }
+        }
+        String limit = uri.getQueryParameter(QUERY_PARAMETER_LIMIT);
+        if (limit != null) {
+            limit = String.valueOf(Integer.parseInt(limit));
+        }
+
+        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables(LOCATION_INVENTORY_TABLES);
+        builder.setProjectionMap(sLocationInventoryProjection);
+        return builder.query(database, projection, locationSelection, args, null, null, sortOrder, limit);
+    }
+
+    // Compute the units and items in stock at each location with a GROUP BY over the location
+    // stock index, which has every column it needs in location order.
+    private static Cursor queryLocationStats(SQLiteDatabase database, String[] projection, String selection,
+                                             String[] selectionArgs) {
+        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables(StockEntry.TABLE_NAME);
+        builder.setProjectionMap(sLocationStatsProjection);
+        return builder.query(database, projection, selection, selectionArgs,
+                StockEntry.COLUMN_LOCATION_ID, null, StockEntry.COLUMN_LOCATION_ID);
+    }
+
+    // Answer a query for a single item from the item cache.
+    private Cursor queryItem(SQLiteDatabase database, long id, String[] projection) {
+        InventoryItem item = getItem(database, id);
+        MatrixCursor cursor = new MatrixCursor(projection, 1);
+        if (item != null) {
+            cursor.addRow(item.getValues(projection));
+        }
+        return cursor;
+    }
+
+    // Returns the item with the given _ID from the item cache, or null if there is none. On a
+    // miss the whole item is read from the db and cached, so the next read doesn't touch the db.
+    private InventoryItem getItem(SQLiteDatabase database, long id) {
+        InventoryItem item = mItemCache.get(id);
+        if (item == null) {
+            long generation = mItemCache.getGeneration();
+            Cursor itemCursor = database.query(InventoryEntry.TABLE_NAME, InventoryItem.COLUMNS,
+                    InventoryEntry._ID + "=?", new String[]{String.valueOf(id)}, null, null, null);
+            try {
+                if (itemCursor.moveToFirst()) {
+                    item = InventoryItem.fromCursor(itemCursor);
+                    mItemCache.put(item, generation);
+                }
+            } finally {
+                itemCursor.close();
+            }
+        }
+        return item;
+    }
+
+    // Describe the export file with the OpenableColumns. Its size isn't known before the
+    // export has run, so it is left null.
+    private static Cursor queryExport(String[] projection) {
+        if (projection == null) {
+            projection = new String[]{OpenableColumns.DISPLAY_NAME, OpenableColumns.SIZE};
+        }
+        Object[] row = new Object[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            if (OpenableColumns.DISPLAY_NAME.equals(projection[i])) {
+                row[i] = EXPORT_FILE_NAME;
+            }
+        }
+        MatrixCursor cursor = new MatrixCursor(projection, 1);
+        cursor.addRow(row);
+        return cursor;
+    }
+
+    // Look up items through the full-text index. Each word of the query matches as a prefix,
+    // and all words have to match. Rows with more matching words come first.
+    private Cursor search(SQLiteDatabase database, Uri uri, String[] projection,
+                          String selection, String[] selectionArgs) {
+        String matchQuery = buildMatchQuery(uri.getQueryParameter(QUERY_PARAMETER_QUERY));
+        if (matchQuery == null) {
+            // Nothing to look for, so nothing is found
+            return new MatrixCursor(projection != null ? projection : new String[]{InventoryEntry._ID});
+        }
+
+        String limit = uri.getQueryParameter(QUERY_PARAMETER_LIMIT);
+        limit = String.valueOf(limit == null ? DEFAULT_SEARCH_LIMIT : Integer.parseInt(limit));
+
+        // The offsets() text grows with every matching word, which makes its length a cheap rank.
+        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables(InventoryEntry.TABLE_NAME + " JOIN (SELECT docid, length(offsets(" +
+                InventoryEntry.FTS_TABLE_NAME + ")) AS rank FROM " + InventoryEntry.FTS_TABLE_NAME +
+                " WHERE " + InventoryEntry.FTS_TABLE_NAME + " MATCH ?) AS hits ON " +
+                InventoryEntry._ID + " = hits.docid");
+
+        // The MATCH arg comes first in the statement, ahead of the selection args
+        String[] args;
+        if (selectionArgs == null) {
+            args = new String[]{matchQuery};
+        } else {
+            args = new String[selectionArgs.length + 1];
+            args[0] = matchQuery;
+            System.arraycopy(selectionArgs, 0, args, 1, selectionArgs.length);
+        }
+        return builder.query(database, projection, selection, args, null, null,
+                "hits.rank DESC, " + InventoryEntry.COLUMN_PRODUCT_NAME, limit);
+    }
+
+    // Turn the text typed by the user into an FTS query, e.g. "kra raz" into "kra* raz*".
+    // Returns null if there is no word to look for.
+    private static String buildMatchQuery(String query) {
+        if (query == null) {
+            return null;
+        }
+        StringBuilder matchQuery = new StringBuilder();
+        for (String word : query.split("[^\\p{L}\\p{N}]+")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            if (matchQuery.length() > 0) {
+                matchQuery.append(' ');
+            }
+            matchQuery.append(word).append('*');
+        }
+        return matchQuery.length() == 0 ? null : matchQuery.toString();
+    }
+
+    // Returns a copy of the selection args with one more arg at the end.
+    private static String[] appendSelectionArg(String[] selectionArgs, String arg) {
+        if (selectionArgs == null) {
+            return new String[]{arg};
+        }
+        String[] args = new String[selectionArgs.length + 1];
+        System.arraycopy(selectionArgs, 0, args, 0, selectionArgs.length);
+        args[selectionArgs.length] = arg;
+        return args;
+    }
+
     // CRUD Methods
     @Override
     public Uri insert(Uri uri, ContentValues values) {
+        long start = System.nanoTime();
+        int match = sUriMatcher.match(uri);
+        Uri itemUri = doInsert(match, uri, values);
+        recordOperation(ProviderMetrics.OP_INSERT, match, uri, start, itemUri == null ? 0 : 1,
+                null, null, null);
+        return itemUri;
+    }
+
+    private Uri doInsert(int match, Uri uri, ContentValues values) {
+        checkNotOnMainThread();
+        if (match == UPSERT) {
+            return upsertItem(uri, values);
+        }
+        if (match == LOCATIONS) {
+            return insertLocation(uri, values);
+        }
+        if (match == LOCATION_INVENTORY) {
+            if (setStock(uri, new ContentValues[]{values}) == 0) {
+                Log.e(LOG_TAG, "Failed to set stock for " + uri);
+                return null;
+            }
+            return StockEntry.buildItemStockUri(values.getAsLong(StockEntry.COLUMN_ITEM_ID));
+        }
+        validateItem(values);
+
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+
+        // Insert the item
+        long id = database.insert(InventoryEntry.TABLE_NAME, null, values);
+
+        // Check to ensure that the entry was good.
+        if (id == -1) {
+            Log.e(LOG_TAG, "Failed to insert row for " + uri);
+            return null;
+        }
+
+        // Notify all listeners that the data has changed for the new item's content URI
+        // uri: content:// com.example.android.inventory/inventory/id
+        notifyChange(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id));
+
+        // Once we know the ID of the row in the table,
+        // return the new URI with the ID appended to the end of it
+        return ContentUris.withAppendedId(uri, id);
+    }
+
+    // Insert many items at once. Every row goes through the same validation as insert(),
+    // but the whole set is written inside a single transaction with one precompiled
+    // statement, and listeners are only notified once at the end.
+    @Override
+    public int bulkInsert(Uri uri, ContentValues[] values) {
+        long start = System.nanoTime();
+        int match = sUriMatcher.match(uri);
+        int rows = doBulkInsert(match, uri, values);
+        recordOperation(ProviderMetrics.OP_BULK_INSERT, match, uri, start, rows, null, null, null);
+        return rows;
+    }
+
+    private int doBulkInsert(int match, Uri uri, ContentValues[] values) {
+        checkNotOnMainThread();
+        if (match == UPSERT) {
+            return upsertItems(uri, values);
+        }
+        if (match == LOCATION_INVENTORY) {
+            return setStock(uri, values);
+        }
+        if (match != ITEMS) {
+            throw new IllegalArgumentException("Bulk insert is not supported for " + uri);
+        }
+
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        int rowsInserted = 0;
+        database.beginTransaction();
+        try {
+            SQLiteStatement statement = database.compileStatement(SQL_INSERT_ITEM);
+            try {
+                for (ContentValues value : values) {
+                    validateItem(value);
+                    bindItem(statement, value);
+                    if (statement.executeInsert() == -1) {
+                        Log.e(LOG_TAG, "Failed to insert row for " + uri);
+                    } else {
+                        rowsInserted++;
+                    }
+                }
+            } finally {
+                statement.close();
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        if (rowsInserted != 0) {
+            notifyChange(InventoryEntry.CONTENT_URI);
+        }
+        return rowsInserted;
+    }
+
+    // Add a location, see LocationEntry.CONTENT_URI.
+    private Uri insertLocation(Uri uri, ContentValues values) {
+        if (values.getAsString(LocationEntry.COLUMN_LOCATION_NAME) == null) {
+            throw new IllegalArgumentException("Location requires a name");
+        }
+
+        long id = mDbHelper.getWritableDatabase().insert(LocationEntry.TABLE_NAME, null, values);
+        if (id == -1) {
+            Log.e(LOG_TAG, "Failed to insert row for " + uri);
+            return null;
+        }
+        notifyChange(LocationEntry.CONTENT_URI);
+        return ContentUris.withAppendedId(LocationEntry.CONTENT_URI, id);
+    }
+
+    // Set the stock of items at the location of the URI, in one transaction with the
+    // statement compiled once. Items that don't exist, or a location that doesn't, are
+    // skipped. Returns the number of items whose stock was set.
+    private int setStock(Uri uri, ContentValues[] values) {
+        long locationId = Long.parseLong(uri.getPathSegments().get(1));
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        int rowsSet = 0;
+        database.beginTransaction();
+        try {
+            SQLiteStatement statement = database.compileStatement(SQL_SET_STOCK);
+            try {
+                for (ContentValues value : values) {
+                    Long itemId = value.getAsLong(StockEntry.COLUMN_ITEM_ID);
+                    Integer quantity = value.getAsInteger(StockEntry.COLUMN_QUANTITY);
+                    if (itemId == null) {
+                        throw new IllegalArgumentException("Stock requires an item");
+                    }
+                    if (quantity == null || quantity < 0) {
+                        throw new IllegalArgumentException("Stock requires a valid quantity");
+                    }
+                    statement.bindLong(1, locationId);
+                    statement.bindLong(2, itemId);
+                    statement.bindLong(3, quantity);
+                    if (statement.executeInsert() != -1) {
+                        rowsSet++;
+                    }
+                }
+            } finally {
+                statement.close();
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        if (rowsSet != 0) {
+            notifyChange(LocationEntry.buildInventoryUri(locationId));
+        }
+        return rowsSet;
+    }
+
+    // Bind the values of a validated item to SQL_INSERT_ITEM or one of the SQL_UPSERT_
+    // statements, which take the same args in the same order.
+    private static void bindItem(SQLiteStatement statement, ContentValues values) {
+        statement.clearBindings();
+        statement.bindString(1, values.getAsString(InventoryEntry.COLUMN_PRODUCT_NAME));
+        statement.bindLong(2, values.getAsInteger(InventoryEntry.COLUMN_PRODUCT_PRICE));
+        statement.bindLong(3, values.getAsInteger(InventoryEntry.COLUMN_PRODUCT_QUANTITY));
+        statement.bindString(4, values.getAsString(InventoryEntry.COLUMN_SUPPLIER_NAME));
+        Long supplierPhone = values.getAsLong(InventoryEntry.COLUMN_SUPPLIER_PHONE);
+        if (supplierPhone == null) {
+            statement.bindNull(5);
+        } else {
+            statement.bindLong(5, supplierPhone);
+        }
+        String sku = values.getAsString(InventoryEntry.COLUMN_SKU);
+        if (sku == null) {
+            statement.bindNull(6);
+        } else {
+            statement.bindString(6, sku);
+        }
+        Integer reorderLevel = values.getAsInteger(InventoryEntry.COLUMN_REORDER_LEVEL);
+        if (reorderLevel == null) {
+            statement.bindNull(7);
+        } else {
+            statement.bindLong(7, reorderLevel);
+        }
+        String barcode = values.getAsString(InventoryEntry.COLUMN_BARCODE);
+        if (barcode == null) {
+            statement.bindNull(8);
+        } else {
+            statement.bindString(8, barcode);
+        }
+        String photo = values.getAsString(InventoryEntry.COLUMN_PHOTO);
+        if (photo == null) {
+            statement.bindNull(9);
+        } else {
+            statement.bindString(9, photo);
+        }
+    }
+
+    // Insert or update one item by SKU, see InventoryEntry.UPSERT_URI. Returns the URI of
+    // the item either way.
+    private Uri upsertItem(Uri uri, ContentValues values) {
+        validateItem(values);
+        String updateSql = getUpsertSql(uri);
+
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        long id;
+        database.beginTransaction();
+        try {
+            SQLiteStatement update = database.compileStatement(updateSql);
+            SQLiteStatement insert = database.compileStatement(SQL_INSERT_ITEM);
+            try {
+                id = upsert(update, insert, values);
+                if (id == 0) {
+                    // Updated, look up which item that was
+                    id = DatabaseUtils.longForQuery(database, SQL_ITEM_ID_BY_SKU,
+                            new String[]{values.getAsString(InventoryEntry.COLUMN_SKU)});
+                }
+            } finally {
+                update.close();
+                insert.close();
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        if (id == -1) {
+            Log.e(LOG_TAG, "Failed to upsert row for " + uri);
+            return null;
+        }
+        notifyChange(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id));
+        return ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id);
+    }
+
+    // Insert or update many items by SKU in one transaction, with the statements compiled
+    // once for the whole batch. Returns the number of items inserted or updated.
+    private int upsertItems(Uri uri, ContentValues[] values) {
+        String updateSql = getUpsertSql(uri);
+
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        int rowsUpserted = 0;
+        database.beginTransaction();
+        try {
+            SQLiteStatement update = database.compileStatement(updateSql);
+            SQLiteStatement insert = database.compileStatement(SQL_INSERT_ITEM);
+            try {
+                for (ContentValues value : values) {
+                    validateItem(value);
+                    if (upsert(update, insert, value) == -1) {
+                        Log.e(LOG_TAG, "Failed to upsert row for " + uri);
+                    } else {
+                        rowsUpserted++;
+                    }
+                }
+            } finally {
+                update.close();
+                insert.close();
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        if (rowsUpserted != 0) {
+            notifyChange(InventoryEntry.CONTENT_URI);
+        }
+        return rowsUpserted;
+    }
+
+    // Update the item with the SKU of the values, or insert it if there is none. Items
+    // without a SKU are always inserted. Must run inside a transaction, so no other write
+    // can come between the two statements.
+    // Returns the _ID of an inserted item, 0 if an item was updated, or -1 on failure.
+    private static long upsert(SQLiteStatement update, SQLiteStatement insert, ContentValues values) {
+        if (values.getAsString(InventoryEntry.COLUMN_SKU) != null) {
+            bindItem(update, values);
+            if (update.executeUpdateDelete() != 0) {
+                return 0;
+            }
+        }
+        bindItem(insert, values);
+        return insert.executeInsert();
+    }
+
+    // Returns the update statement for the mode asked for by an upsert URI.
+    private static String getUpsertSql(Uri uri) {
+        String mode = uri.getQueryParameter(QUERY_PARAMETER_MODE);
+        if (mode == null || UPSERT_MODE_REPLACE.equals(mode)) {
+            return SQL_UPSERT_REPLACE;
+        }
+        if (UPSERT_MODE_ADD.equals(mode)) {
+            return SQL_UPSERT_ADD;
+        }
+        throw new IllegalArgumentException("Unknown upsert mode " + mode);
+    }
+
+    // Apply a batch of operations inside one transaction. If any operation fails, none of
+    // them are committed. Listeners are notified once after the batch instead of once per
+    // operation.
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        long start = System.nanoTime();
+        ContentProviderResult[] results = doApplyBatch(operations);
+        // Every operation of the batch is recorded on its own as well
+        recordOperation(ProviderMetrics.OP_APPLY_BATCH, UriMatcher.NO_MATCH, null, start, results.length,
+                null, null, null);
+        return results;
+    }
+
+    private ContentProviderResult[] doApplyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        checkNotOnMainThread();
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        boolean committed = false;
+        mInBatch.set(true);
+        mBatchChanged.set(false);
+        mBatchLocationsChanged.set(false);
+        database.beginTransaction();
+        try {
+            ContentProviderResult[] results = super.applyBatch(operations);
+            database.setTransactionSuccessful();
+            committed = true;
+            return results;
+        } finally {
+            database.endTransaction();
+            mInBatch.set(false);
+            if (committed && mBatchChanged.get()) {
+                notifyChange(InventoryEntry.CONTENT_URI);
+            }
+            if (committed && mBatchLocationsChanged.get()) {
+                notifyChange(LocationEntry.CONTENT_URI);
+            }
+            mBatchChanged.set(false);
+            mBatchLocationsChanged.set(false);
+        }
+    }
+
+    // Writes can take long on a big database, so they must never block the UI thread and
+    // should go through InventoryRepository. Release builds fail fast too when one doesn't,
+    // rather than freeze the screen on the devices with the biggest databases.
+    private static void checkNotOnMainThread() {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            throw new IllegalStateException("Inventory writes must not run on the main thread");
+        }
+    }
+
+    // Check that the values hold everything a new item needs, and no column it can't be
+    // written with. Shared by insert() and bulkInsert() so both paths accept exactly the
+    // same rows, and by the CsvImporter to reject bad rows before they reach a batch.
+    static void validateItem(ContentValues values) {
+        for (String key : values.keySet()) {
+            if (!ITEM_COLUMNS.contains(key)) {
+                throw new IllegalArgumentException("Item has no column " + key);
+            }
+        }
 
         String name = values.getAsString(InventoryEntry.COLUMN_PRODUCT_NAME);
         if (name == null) {
@@ -123,40 +1218,54 @@ public class InventoryProvider extends ContentProvider {
             throw new IllegalArgumentException("Item requires a valid supplier name");
         }
 
-        SQLiteDatabase database = mDbHelper.getWritableDatabase();
-
-        // Insert the item
-        long id = database.insert(InventoryEntry.TABLE_NAME, null, values);
-
-        // Check to ensure that the entry was good.
-        if (id == -1) {
-            Log.e(LOG_TAG, "Failed to insert row for " + uri);
-            return null;
+        // The SKU is optional, but an empty one would clash with every other empty one
+        if (values.containsKey(InventoryEntry.COLUMN_SKU)) {
+            String sku = values.getAsString(InventoryEntry.COLUMN_SKU);
+            if (sku != null && sku.isEmpty()) {
+                throw new IllegalArgumentException("Item SKU can't be empty");
+            }
         }
 
-        // Notify all listeners that the data has changed for the item content URI
-        // uri: content:// com.example.android.inventory/inventory
-        getContext().getContentResolver().notifyChange(uri, null);
+        // Same for the barcode
+        if (values.containsKey(InventoryEntry.COLUMN_BARCODE)) {
+            String barcode = values.getAsString(InventoryEntry.COLUMN_BARCODE);
+            if (barcode != null && barcode.isEmpty()) {
+                throw new IllegalArgumentException("Item barcode can't be empty");
+            }
+        }
 
-        // Once we know the ID of the row in the table,
-        // return the new URI with the ID appended to the end of it
-        return ContentUris.withAppendedId(uri, id);
+        // The reorder level is optional too, it defaults to LOW_STOCK_THRESHOLD
+        if (values.containsKey(InventoryEntry.COLUMN_REORDER_LEVEL)) {
+            Integer reorderLevel = values.getAsInteger(InventoryEntry.COLUMN_REORDER_LEVEL);
+            if (reorderLevel == null || reorderLevel < 0) {
+                throw new IllegalArgumentException("Item requires a valid reorder level");
+            }
+        }
     }
 
 
     @Override
     public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
-        final int match = sUriMatcher.match(uri);
+        long start = System.nanoTime();
+        int match = sUriMatcher.match(uri);
+        int rows = doUpdate(match, uri, values, selection, selectionArgs);
+        recordOperation(ProviderMetrics.OP_UPDATE, match, uri, start, rows, selection, selectionArgs, null);
+        return rows;
+    }
+
+    private int doUpdate(int match, Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        checkNotOnMainThread();
         switch (match) {
             case ITEMS:
-                return updateInventory(uri, values, selection, selectionArgs);
+                return updateInventory(InventoryEntry.CONTENT_URI, values, selection, selectionArgs);
             case ITEM_ID:
                 // For the ITEM_ID code, extract out the ID from the URI,
                 // so we know which row to update. Selection will bee "_id=?" amd selection
                 // arguments will be a String arrray containing the actual ID.
                 selection = InventoryEntry._ID + "=?";
                 selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
-                return updateInventory(uri, values, selection, selectionArgs);
+                return updateInventory(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI,
+                        ContentUris.parseId(uri)), values, selection, selectionArgs);
             default:
                 throw new IllegalArgumentException("Update is not supported for " + uri);
         }
@@ -164,6 +1273,7 @@ public class InventoryProvider extends ContentProvider {
 
     // Update items in the db with the given content values. Apply the changes to the rows
     // specified in the selection and selection args (which could be 0 or 1 or more items).
+    // Listeners of the given URI are notified of the change.
     // Return the number of rows that were updated.
     private int updateInventory(Uri uri, ContentValues values, String selection, String[] selectionsArgs) {
 
@@ -201,6 +1311,13 @@ public class InventoryProvider extends ContentProvider {
             }
 
         }
+        // A blank {@Link InventoryEntry#COLUMN_REORDER_LEVEL} goes back to the default.
+        if (values.containsKey(InventoryEntry.COLUMN_REORDER_LEVEL)) {
+            Integer reorderLevel = values.getAsInteger(InventoryEntry.COLUMN_REORDER_LEVEL);
+            if (reorderLevel == null || reorderLevel < 0) {
+                values.put(InventoryEntry.COLUMN_REORDER_LEVEL, LOW_STOCK_THRESHOLD);
+            }
+        }
         if (values.containsKey(InventoryEntry.COLUMN_SUPPLIER_PHONE)) {
             Integer supplierPhone = values.getAsInteger(InventoryEntry.COLUMN_SUPPLIER_PHONE);
             if (supplierPhone == null || supplierPhone < 0) {
@@ -223,31 +1340,45 @@ public class InventoryProvider extends ContentProvider {
         // If 1 or more rows were updated, then notify all listeners that the data at the given
         // URI has changed.
         if (rowsupdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
         return rowsupdated;
     }
 
     @Override
     public int delete(Uri uri, String selection, String[] selectionArgs) {
+        long start = System.nanoTime();
+        int match = sUriMatcher.match(uri);
+        int rows = doDelete(match, uri, selection, selectionArgs);
+        recordOperation(ProviderMetrics.OP_DELETE, match, uri, start, rows, selection, selectionArgs, null);
+        return rows;
+    }
+
+    private int doDelete(int match, Uri uri, String selection, String[] selectionArgs) {
+        checkNotOnMainThread();
 
         // Grab writable db
         SQLiteDatabase database = mDbHelper.getWritableDatabase();
 
-        final int match = sUriMatcher.match(uri);
         int rowsDeleted;
+        Uri changedUri;
         switch (match) {
             // Delete all rows that match the selection and selection args
             // For case ITEMS
             case ITEMS:
                 rowsDeleted = database.delete(InventoryEntry.TABLE_NAME, selection, selectionArgs);
+                changedUri = InventoryEntry.CONTENT_URI;
                 break;
             case ITEM_ID:
                 // Delete a single row given the ID in the URI
                 selection = InventoryEntry._ID + "=?";
                 selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
                 rowsDeleted = database.delete(InventoryEntry.TABLE_NAME, selection, selectionArgs);
+                changedUri = ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, ContentUris.parseId(uri));
                 break;
+            case CHANGES:
+                // Pruning the change log leaves the items as they are, nobody to notify
+                return database.delete(QuantityChangeEntry.TABLE_NAME, selection, selectionArgs);
             default:
                 throw new IllegalArgumentException("Deletion is not supported for " + uri);
         }
@@ -255,20 +1386,554 @@ public class InventoryProvider extends ContentProvider {
         // If 1 or more rows were deleted, then notify all listeners that the data at the
         // given URI has changed.
         if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(changedUri);
         }
         return rowsDeleted;
     }
 
+    // Open the CSV export for reading. The rows are written into a pipe by a background
+    // thread while the caller reads the other end, so the export is never held in memory.
+    @Override
+    public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+        if (sUriMatcher.match(uri) != EXPORT) {
+            throw new FileNotFoundException("No file for " + uri);
+        }
+        if (!"r".equals(mode)) {
+            throw new FileNotFoundException("The export can only be read: " + uri);
+        }
+        return openPipeHelper(uri, InventoryCsv.MIME_TYPE, null, null, new PipeDataWriter<Object>() {
+            @Override
+            public void writeDataToPipe(ParcelFileDescriptor output, Uri uri, String mimeType,
+                                        Bundle opts, Object args) {
+                Writer writer = null;
+                try {
+                    writer = new BufferedWriter(new OutputStreamWriter(
+                            new FileOutputStream(output.getFileDescriptor()), "UTF-8"), EXPORT_BUFFER_SIZE);
+                    exportCsv(writer);
+                    writer.flush();
+                } catch (IOException e) {
+                    // Most likely the reader closed the pipe before the end
+                    Log.w(LOG_TAG, "Export of " + uri + " stopped", e);
+                } finally {
+                    closeQuietly(writer);
+                }
+            }
+        });
+    }
+
+    // Write every item as CSV. The table is read in chunks of EXPORT_CHUNK_SIZE rows in _ID
+    // order, each starting after the last _ID of the previous one, so no cursor ever holds
+    // more than one chunk and no read keeps the db locked for the whole export.
+    private void exportCsv(Writer writer) throws IOException {
+        SQLiteDatabase database = mDbHelper.getReadableDatabase();
+        String selection = InventoryEntry._ID + " > ?";
+        String[] selectionArgs = new String[1];
+        String limit = String.valueOf(EXPORT_CHUNK_SIZE);
+
+        InventoryCsv.writeHeader(writer);
+        long lastId = 0;
+        while (true) {
+            selectionArgs[0] = String.valueOf(lastId);
+            Cursor cursor = database.query(InventoryEntry.TABLE_NAME, InventoryCsv.COLUMNS,
+                    selection, selectionArgs, null, null, InventoryEntry._ID, limit);
+            try {
+                if (!cursor.moveToFirst()) {
+                    return;
+                }
+                do {
+                    InventoryCsv.writeRow(writer, cursor);
+                } while (cursor.moveToNext());
+                cursor.moveToLast();
+                lastId = cursor.getLong(0);
+            } finally {
+                cursor.close();
+            }
+        }
+    }
+
+    private static void closeQuietly(Writer writer) {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Failed to close the export", e);
+            }
+        }
+    }
+
+    // Provider methods that don't fit the CRUD calls, see the METHOD_ constants in InventoryContract.
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        long start = System.nanoTime();
+        Bundle result = doCall(method, arg, extras);
+        recordOperation(ProviderMetrics.OP_CALL, UriMatcher.NO_MATCH, null, start, 0, null, null, null);
+        return result;
+    }
+
+    private Bundle doCall(String method, String arg, Bundle extras) {
+        if (METHOD_SELL.equals(method)) {
+            int count = extras == null ? 1 : extras.getInt(EXTRA_COUNT, 1);
+            return sellItem(Long.parseLong(arg), count);
+        }
+        if (METHOD_TRANSFER.equals(method)) {
+            if (extras == null || !extras.containsKey(EXTRA_FROM_LOCATION_ID) ||
+                    !extras.containsKey(EXTRA_TO_LOCATION_ID)) {
+                throw new IllegalArgumentException("Transfer requires two locations");
+            }
+            return transferStock(Long.parseLong(arg), extras.getLong(EXTRA_FROM_LOCATION_ID),
+                    extras.getLong(EXTRA_TO_LOCATION_ID), extras.getInt(EXTRA_COUNT, 1));
+        }
+        if (METHOD_LOOKUP_BARCODE.equals(method)) {
+            InventoryItem item = lookupBarcode(arg);
+            return item == null ? null : putItem(new Bundle(), item);
+        }
+        if (METHOD_SCAN_AND_SELL.equals(method)) {
+            InventoryItem item = lookupBarcode(arg);
+            if (item == null) {
+                return null;
+            }
+            int count = extras == null ? 1 : extras.getInt(EXTRA_COUNT, 1);
+            // The quantity of the sale replaces the one before it
+            Bundle result = putItem(new Bundle(), item);
+            result.putAll(sellItem(item.getId(), count));
+            return result;
+        }
+        if (METHOD_GET_CACHE_STATS.equals(method)) {
+            Bundle result = new Bundle();
+            result.putLong(EXTRA_CACHE_HITS, mItemCache.getHitCount());
+            result.putLong(EXTRA_CACHE_MISSES, mItemCache.getMissCount());
+            result.putLong(EXTRA_CACHE_EVICTIONS, mItemCache.getEvictionCount());
+            result.putLong(EXTRA_BARCODE_CACHE_HITS, mBarcodeCache.getHitCount());
+            result.putLong(EXTRA_BARCODE_CACHE_MISSES, mBarcodeCache.getMissCount());
+            return result;
+        }
+        if (METHOD_DUMP_METRICS.equals(method)) {
+            Bundle result = new Bundle();
+            result.putString(EXTRA_METRICS, mMetrics.dump());
+            return result;
+        }
+        if (METHOD_SET_SLOW_THRESHOLD.equals(method)) {
+            mMetrics.setSlowThresholdMillis(extras == null ? ProviderMetrics.DEFAULT_SLOW_THRESHOLD_MILLIS
+                    : extras.getLong(EXTRA_THRESHOLD_MILLIS, ProviderMetrics.DEFAULT_SLOW_THRESHOLD_MILLIS));
+            return null;
+        }
+        if (METHOD_GET_SALE_STATS.equals(method)) {
+            Bundle result = new Bundle();
+            result.putLong(EXTRA_SALES, mSaleWriter.getSaleCount());
+            result.putLong(EXTRA_SALE_COMMITS, mSaleWriter.getCommitCount());
+            return result;
+        }
+        if (METHOD_SYNC.equals(method)) {
+            return sync();
+        }
+        if (METHOD_GET_NOTIFY_STATS.equals(method)) {
+            Bundle result = new Bundle();
+            result.putLong(EXTRA_NOTIFICATIONS_EMITTED, mChangeNotifier.getEmittedCount());
+            result.putLong(EXTRA_NOTIFICATIONS_SUPPRESSED, mChangeNotifier.getSuppressedCount());
+            return result;
+        }
+        return super.call(method, arg, extras);
+    }
+
+    /**
+     * Sets the server METHOD_SYNC syncs with, for the whole process.
+     */
+    public static void setSyncServer(SyncServer server) {
+        sSyncServer = server;
+    }
+
+    // Push the local changes and pull those of the other devices, see METHOD_SYNC. Pulled
+    // changes are written by the InventorySyncStore, not by update(), so the cached items are
+    // dropped and observers notified here, also when the sync fails after pulling some.
+    private Bundle sync() {
+        SyncServer server = sSyncServer;
+        if (server == null) {
+            throw new IllegalStateException("No sync server set");
+        }
+        SyncEngine engine = new SyncEngine(mSyncStore, server);
+        synchronized (mSyncStore) {
+            try {
+                engine.sync();
+            } catch (IOException e) {
+                throw new IllegalStateException("Sync failed", e);
+            } finally {
+                if (engine.getPulledCount() > 0) {
+                    notifyChange(InventoryEntry.CONTENT_URI);
+                }
+            }
+        }
+        Bundle result = new Bundle();
+        result.putInt(EXTRA_SYNC_PUSHED, engine.getPushedCount());
+        result.putInt(EXTRA_SYNC_PULLED, engine.getPulledCount());
+        result.putLong(EXTRA_SYNC_BYTES_SENT, engine.getBytesSent());
+        result.putLong(EXTRA_SYNC_BYTES_RECEIVED, engine.getBytesReceived());
+        return result;
+    }
+
+    // Find the item with the barcode, or null if there is none. A barcode scanned before is
+    // found in the BarcodeCache and its item in the ItemCache, without touching the db. Other
+    // barcodes are searched in the barcode index with a statement compiled once.
+    private InventoryItem lookupBarcode(String barcode) {
+        if (barcode == null || barcode.isEmpty()) {
+            throw new IllegalArgumentException("Lookup requires a barcode");
+        }
+        SQLiteDatabase database = mDbHelper.getReadableDatabase();
+        long id = mBarcodeCache.get(barcode);
+        if (id != -1) {
+            InventoryItem item = getItem(database, id);
+            if (item != null && barcode.equals(item.getBarcode())) {
+                return item;
+            }
+            // The item was deleted or its barcode changed since
+            mBarcodeCache.remove(barcode);
+        }
+
+        try {
+            id = queryItemIdByBarcode(database, barcode);
+        } catch (SQLiteDoneException e) {
+            // No row
+            return null;
+        }
+        InventoryItem item = getItem(database, id);
+        if (item == null || !barcode.equals(item.getBarcode())) {
+            // Changed between the two reads
+            return null;
+        }
+        mBarcodeCache.put(barcode, id);
+        return item;
+    }
+
+    private long queryItemIdByBarcode(SQLiteDatabase database, String barcode) {
+        synchronized (this) {
+            if (mBarcodeStatement == null) {
+                mBarcodeStatement = database.compileStatement(SQL_ITEM_ID_BY_BARCODE);
+            }
+        }
+        synchronized (mBarcodeStatement) {
+            mBarcodeStatement.bindString(1, barcode);
+            return mBarcodeStatement.simpleQueryForLong();
+        }
+    }
+
+    // Put the _ID, name, price and quantity of an item, the result of METHOD_LOOKUP_BARCODE.
+    private static Bundle putItem(Bundle result, InventoryItem item) {
+        result.putLong(EXTRA_ITEM_ID, item.getId());
+        result.putString(EXTRA_NAME, item.getName());
+        result.putInt(EXTRA_PRICE, item.getPrice());
+        result.putInt(EXTRA_QUANTITY, item.getQuantity());
+        return result;
+    }
+
+    // Sell count units of the item. The decrement and the stock check happen in one UPDATE,
+    // so concurrent sales of the same item can never lose a decrement or oversell it. The
+    // SaleWriter records the sale in the ledger in the same transaction, which it may share
+    // with sales made on other threads at the same time.
+    private Bundle sellItem(long id, int count) {
+        checkNotOnMainThread();
+        if (count <= 0) {
+            throw new IllegalArgumentException("Sale requires a positive count");
+        }
+
+        SaleWriter.Sale sale = mSaleWriter.sell(id, count, System.currentTimeMillis());
+        Bundle result = new Bundle();
+        result.putBoolean(EXTRA_SOLD, sale.isSold());
+        if (sale.isSold()) {
+            result.putInt(EXTRA_QUANTITY, sale.getQuantity());
+            notifyChange(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id));
+        }
+        return result;
+    }
+
+    // Move count units of the item from one location to another, see METHOD_TRANSFER. The
+    // source loses them and the destination gains them in one transaction, so a transfer
+    // that fails halfway leaves both as they were, and concurrent transfers out of the same
+    // location can never take more units than it has.
+    private Bundle transferStock(long itemId, long fromLocationId, long toLocationId, int count) {
+        checkNotOnMainThread();
+        if (count <= 0) {
+            throw new IllegalArgumentException("Transfer requires a positive count");
+        }
+        if (fromLocationId == toLocationId) {
+            throw new IllegalArgumentException("Transfer requires two different locations");
+        }
+
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        boolean transferred;
+        int fromQuantity;
+        int toQuantity;
+        database.beginTransaction();
+        try {
+            // The source can only have stock of an existing item at an existing location,
+            // the destination has to be checked
+            if (DatabaseUtils.longForQuery(database, SQL_COUNT_LOCATION,
+                    new String[]{String.valueOf(toLocationId)}) == 0) {
+                throw new IllegalArgumentException("Unknown location " + toLocationId);
+            }
+            SQLiteStatement take = database.compileStatement(SQL_TAKE_STOCK);
+            SQLiteStatement give = database.compileStatement(SQL_GIVE_STOCK);
+            try {
+                take.bindLong(1, count);
+                take.bindLong(2, fromLocationId);
+                take.bindLong(3, itemId);
+                transferred = take.executeUpdateDelete() != 0;
+                if (transferred) {
+                    give.bindLong(1, count);
+                    give.bindLong(2, toLocationId);
+                    give.bindLong(3, itemId);
+                    give.executeInsert();
+                }
+            } finally {
+                take.close();
+                give.close();
+            }
+            fromQuantity = queryStock(database, fromLocationId, itemId);
+            toQuantity = queryStock(database, toLocationId, itemId);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        Bundle result = new Bundle();
+        result.putBoolean(EXTRA_TRANSFERRED, transferred);
+        result.putInt(EXTRA_FROM_QUANTITY, fromQuantity);
+        result.putInt(EXTRA_TO_QUANTITY, toQuantity);
+        if (transferred) {
+            notifyChange(LocationEntry.buildInventoryUri(fromLocationId));
+            notifyChange(LocationEntry.buildInventoryUri(toLocationId));
+        }
+        return result;
+    }
+
+    // Returns the units of the item at the location, 0 if it never had any.
+    private static int queryStock(SQLiteDatabase database, long locationId, long itemId) {
+        try {
+            return (int) DatabaseUtils.longForQuery(database, SQL_STOCK_QUANTITY,
+                    new String[]{String.valueOf(locationId), String.valueOf(itemId)});
+        } catch (SQLiteDoneException e) {
+            // No row
+            return 0;
+        }
+    }
+
+    // Notify listeners that the data at the given URI has changed. Changes to a single item
+    // use the item URI, so observers can tell which row changed. Notifications are coalesced
+    // by the ChangeNotifier, and while a batch is being applied they are held back and sent
+    // once the batch has been committed.
+    // Every write ends up here once it is committed, so this is also where the cached copies
+    // of the changed items are dropped.
+    private void notifyChange(Uri uri) {
+        int match = sUriMatcher.match(uri);
+        boolean locations = match == LOCATIONS || match == LOCATION_INVENTORY;
+        if (match == ITEM_ID) {
+            mItemCache.invalidate(ContentUris.parseId(uri));
+        } else if (!locations) {
+            // The locations and their stock aren't cached
+            mItemCache.invalidateAll();
+        }
+
+        if (mInBatch.get()) {
+            if (locations) {
+                mBatchLocationsChanged.set(true);
+            } else {
+                mBatchChanged.set(true);
+            }
+            mChangeNotifier.recordHeldBack();
+            return;
+        }
+        mMetrics.recordNotify(match);
+        mChangeNotifier.notifyChange(uri);
+    }
+
+    // Record an operation that started at the given System.nanoTime(). A slow one is logged
+    // along with its query plan. Failed operations are not recorded.
+    private void recordOperation(int operation, int match, Uri uri, long start, int rows,
+                                 String selection, String[] selectionArgs, String sortOrder) {
+        long nanos = System.nanoTime() - start;
+        if (mMetrics.record(operation, match, nanos, rows)) {
+            mMetrics.logSlow(operation, uri == null ? null : uri.toString(), selection, nanos, rows,
+                    explain(match, uri, selection, selectionArgs, sortOrder));
+            Log.w(LOG_TAG, "Slow " + ProviderMetrics.getOperationName(operation) + " on " + uri + ": " +
+                    nanos / 1000000 + "ms");
+        }
+    }
+
+    // The cursor of a sampled query, recorded the first time it is counted or moved, which
+    // runs the query: right away through a ContentResolver, which counts every cursor. One
+    // that is closed unread isn't recorded.
+    private final class MeteredCursor extends CursorWrapper {
+        private final int mMatch;
+        private final Uri mUri;
+        private final long mStart;
+        private final String mSelection;
+        private final String[] mSelectionArgs;
+        private final String mSortOrder;
+        private boolean mRecorded;
+
+        MeteredCursor(Cursor cursor, int match, Uri uri, long start, String selection,
+                      String[] selectionArgs, String sortOrder) {
+            super(cursor);
+            mMatch = match;
+            mUri = uri;
+            mStart = start;
+            mSelection = selection;
+            mSelectionArgs = selectionArgs;
+            mSortOrder = sortOrder;
+        }
+
+        @Override
+        public int getCount() {
+            int count = super.getCount();
+            if (!mRecorded) {
+                mRecorded = true;
+                recordOperation(ProviderMetrics.OP_QUERY, mMatch, mUri, mStart, count,
+                        mSelection, mSelectionArgs, mSortOrder);
+            }
+            return count;
+        }
+
+        @Override
+        public boolean move(int offset) {
+            getCount();
+            return super.move(offset);
+        }
+
+        @Override
+        public boolean moveToPosition(int position) {
+            getCount();
+            return super.moveToPosition(position);
+        }
+
+        @Override
+        public boolean moveToFirst() {
+            getCount();
+            return super.moveToFirst();
+        }
+
+        @Override
+        public boolean moveToLast() {
+            getCount();
+            return super.moveToLast();
+        }
+
+        @Override
+        public boolean moveToNext() {
+            getCount();
+            return super.moveToNext();
+        }
+
+        @Override
+        public boolean moveToPrevious() {
+            getCount();
+            return super.moveToPrevious();
+        }
+    }
+
+    // Returns the query plan of an operation on a table: the plan of a SELECT on the same
+    // table with the same WHERE and ORDER BY, which shows how the rows were found. Null for
+    // the URIs that don't read or write a table with the selection.
+    private String explain(int match, Uri uri, String selection, String[] selectionArgs, String sortOrder) {
+        String table;
+        switch (match) {
+            case ITEMS:
+                table = InventoryEntry.TABLE_NAME;
+                String after = uri.getQueryParameter(QUERY_PARAMETER_AFTER);
+                if (after != null) {
+                    selection = DatabaseUtils.concatenateWhere(selection,
+                            InventoryEntry._ID + " > " + Long.parseLong(after));
+                    sortOrder = InventoryEntry._ID;
+                }
+                break;
+            case ITEM_ID:
+                // The selection of the caller is replaced by the _ID of the URI
+                table = InventoryEntry.TABLE_NAME;
+                selection = InventoryEntry._ID + " = " + ContentUris.parseId(uri);
+                selectionArgs = null;
+                break;
+            case CHANGES:
+                table = QuantityChangeEntry.TABLE_NAME;
+                break;
+            case ITEM_SALES:
+                table = SaleEntry.TABLE_NAME;
+                selection = SaleEntry.COLUMN_ITEM_ID + " = " + Long.parseLong(uri.getPathSegments().get(1));
+                selectionArgs = null;
+                sortOrder = SaleEntry.COLUMN_TIMESTAMP;
+                break;
+            case LOCATION_INVENTORY:
+                // The location and the page go in as literals, leaving the args to the selection
+                table = LOCATION_INVENTORY_TABLES;
+                String locationSelection = StockEntry.TABLE_NAME + "." + StockEntry.COLUMN_LOCATION_ID + " = " +
+                        Long.parseLong(uri.getPathSegments().get(1));
+                String afterItem = uri.getQueryParameter(QUERY_PARAMETER_AFTER);
+                if (afterItem != null) {
+                    locationSelection += " AND " + StockEntry.TABLE_NAME + "." + StockEntry.COLUMN_ITEM_ID +
+                            " > " + Long.parseLong(afterItem);
+                    sortOrder = StockEntry.TABLE_NAME + "." + StockEntry.COLUMN_ITEM_ID;
+                }
+                selection = DatabaseUtils.concatenateWhere(locationSelection, selection);
+                break;
+            case ITEM_STOCK:
+                table = StockEntry.TABLE_NAME;
+                selection = StockEntry.COLUMN_ITEM_ID + " = " + Long.parseLong(uri.getPathSegments().get(1));
+                selectionArgs = null;
+                sortOrder = StockEntry.COLUMN_LOCATION_ID;
+                break;
+            default:
+                return null;
+        }
+
+        String sql = SQLiteQueryBuilder.buildQueryString(false, table, null, selection,
+                null, null, sortOrder, null);
+        StringBuilder plan = new StringBuilder();
+        try {
+            Cursor cursor = mDbHelper.getReadableDatabase().rawQuery("EXPLAIN QUERY PLAN " + sql, selectionArgs);
+            try {
+                int detail = cursor.getColumnIndexOrThrow("detail");
+                while (cursor.moveToNext()) {
+                    if (plan.length() != 0) {
+                        plan.append("; ");
+                    }
+                    plan.append(cursor.getString(detail));
+                }
+            } finally {
+                cursor.close();
+            }
+        } catch (SQLiteException | IllegalArgumentException e) {
+            return "not available: " + e.getMessage();
+        }
+        return plan.toString();
+    }
+
     // Returns the MIME type of data for the content URI
     @Override
     public String getType(Uri uri) {
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case ITEMS:
+            case SEARCH:
+            case UPSERT:
                 return InventoryEntry.CONTENT_LIST_TYPE;
             case ITEM_ID:
                 return InventoryEntry.CONTENT_ITEM_TYPE;
+            case EXPORT:
+                return InventoryCsv.MIME_TYPE;
+            case STATS:
+                return StatsEntry.CONTENT_ITEM_TYPE;
+            case SUPPLIER_STATS:
+                return StatsEntry.CONTENT_LIST_TYPE;
+            case CHANGES:
+                return QuantityChangeEntry.CONTENT_LIST_TYPE;
+            case ITEM_SALES:
+                return SaleEntry.CONTENT_LIST_TYPE;
+            case LOCATIONS:
+                return LocationEntry.CONTENT_LIST_TYPE;
+            case LOCATION_ID:
+                return LocationEntry.CONTENT_ITEM_TYPE;
+            case LOCATION_INVENTORY:
+                return InventoryEntry.CONTENT_LIST_TYPE;
+            case LOCATION_STATS:
+                return StatsEntry.CONTENT_LIST_TYPE;
+            case ITEM_STOCK:
+                return StockEntry.CONTENT_LIST_TYPE;
             default:
                 throw new IllegalStateException("Unknown URI " + uri + "with match " + match);
         }
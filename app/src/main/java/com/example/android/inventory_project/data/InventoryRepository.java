@@ -0,0 +1,214 @@
+package com.example.android.inventory_project.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.example.android.inventory_project.data.InventoryContract.EXTRA_COUNT;
+import static com.example.android.inventory_project.data.InventoryContract.InventoryEntry;
+import static com.example.android.inventory_project.data.InventoryContract.METHOD_SELL;
+
+/**
+ * Entry point for all writes to the inventory. Every write runs on one background thread,
+ * so the UI thread never waits on the database, and writes are applied in the order they
+ * were made. Sales are the exception: they run on a few threads of their own, so sales made
+ * faster than they commit reach the provider together and share a commit, see
+ * {@link SaleWriter}. Results are delivered back on the main thread.
+ */
+public class InventoryRepository {
+
+    // Tag for all log messages
+    public static final String LOG_TAG = InventoryRepository.class.getSimpleName();
+
+    // Threads selling at once. The SaleWriter commits the sales queued behind the one being
+    // committed together, so a few are enough to group the sales of quick taps.
+    private static final int SALE_THREADS = 4;
+
+    /**
+     * Receives the result of a write on the main thread.
+     */
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+
+    private static InventoryRepository sInstance;
+
+    private final ContentResolver mContentResolver;
+    private final File mPhotoDirectory;
+    private final Executor mWriteExecutor;
+    private final Executor mSaleExecutor;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private InventoryRepository(Context context) {
+        mContentResolver = context.getContentResolver();
+        mPhotoDirectory = PhotoStore.getDirectory(context);
+        mWriteExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "inventory-writer");
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            }
+        });
+        mSaleExecutor = Executors.newFixedThreadPool(SALE_THREADS, new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "inventory-seller-" + mCount.incrementAndGet());
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            }
+        });
+    }
+
+    public static synchronized InventoryRepository getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new InventoryRepository(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Inserts a new item. The callback receives the URI of the new item, or null on failure.
+     */
+    public void insert(final ContentValues values, Callback<Uri> callback) {
+        execute(new Write<Uri>(callback) {
+            @Override
+            Uri write() {
+                return mContentResolver.insert(InventoryEntry.CONTENT_URI, values);
+            }
+        });
+    }
+
+    /**
+     * Updates the items at the given URI. The callback receives the number of rows updated.
+     */
+    public void update(final Uri uri, final ContentValues values, Callback<Integer> callback) {
+        execute(new Write<Integer>(callback) {
+            @Override
+            Integer write() {
+                return mContentResolver.update(uri, values, null, null);
+            }
+        });
+    }
+
+    /**
+     * Deletes the items at the given URI. The callback receives the number of rows deleted.
+     */
+    public void delete(final Uri uri, Callback<Integer> callback) {
+        execute(new Write<Integer>(callback) {
+            @Override
+            Integer write() {
+                return mContentResolver.delete(uri, null, null);
+            }
+        });
+    }
+
+    /**
+     * Sells count units of an item, see {@link InventoryContract#METHOD_SELL}. The callback
+     * receives the result bundle of the sale, or null on failure.
+     * <p>
+     * Sales don't wait for the other writes made before them, nor for each other. The stock
+     * check and decrement of a sale are one statement, so they never lose a decrement or
+     * oversell, but a sale made right after an update of the quantity of the item may be
+     * applied before it.
+     */
+    public void sell(final long id, final int count, Callback<Bundle> callback) {
+        mSaleExecutor.execute(new Write<Bundle>(callback) {
+            @Override
+            Bundle write() {
+                Bundle extras = new Bundle();
+                extras.putInt(EXTRA_COUNT, count);
+                return mContentResolver.call(InventoryEntry.CONTENT_URI, METHOD_SELL,
+                        String.valueOf(id), extras);
+            }
+        });
+    }
+
+    /**
+     * Copies an image, e.g. one picked from the gallery, into the photos of the items, see
+     * {@link PhotoStore}. The callback receives the name of the photo to store in
+     * InventoryEntry.COLUMN_PHOTO, or null on failure. An item saved after this call refers
+     * to a photo that is already there, as the writes run in order.
+     */
+    public void savePhoto(final Uri image, Callback<String> callback) {
+        execute(new Write<String>(callback) {
+            @Override
+            String write() {
+                try (InputStream in = mContentResolver.openInputStream(image)) {
+                    return in == null ? null : PhotoStore.save(mPhotoDirectory, in);
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Could not save the photo " + image, e);
+                    return null;
+                }
+            }
+        });
+    }
+
+    /**
+     * Deletes a photo saved by {@link #savePhoto} that no item refers to, e.g. when the
+     * editor is left without saving. Photos of items are deleted along with the items.
+     */
+    public void deletePhoto(final String photo) {
+        execute(new Write<Void>(null) {
+            @Override
+            Void write() {
+                PhotoStore.getFile(mPhotoDirectory, photo).delete();
+                return null;
+            }
+        });
+    }
+
+    private void execute(Write<?> write) {
+        mWriteExecutor.execute(write);
+    }
+
+    /**
+     * A write that runs on the writer thread, or a seller thread, and posts its result to the
+     * main thread.
+     * A failed write is logged and reported with a null result.
+     */
+    private abstract class Write<T> implements Runnable {
+        private final Callback<T> mCallback;
+
+        Write(Callback<T> callback) {
+            mCallback = callback;
+        }
+
+        abstract T write();
+
+        @Override
+        public void run() {
+            T result = null;
+            try {
+                result = write();
+            } catch (RuntimeException e) {
+                Log.e(LOG_TAG, "Write to the inventory failed", e);
+            }
+            if (mCallback == null) {
+                return;
+            }
+            final T delivered = result;
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    mCallback.onResult(delivered);
+                }
+            });
+        }
+    }
+}
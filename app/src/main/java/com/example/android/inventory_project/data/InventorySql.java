@@ -0,0 +1,227 @@
+package com.example.android.inventory_project.data;
+
+/**
+ * SQL of the data layer that the benchmark module runs too, on a plain JVM. Written out with
+ * the table and column names of InventoryContract, as the contract can't be compiled without
+ * Android, so both modules share this one copy.
+ * <p>
+ * The app runs the sale and sync statements itself. It builds its schema through the
+ * migrations of InventoryDbHelper instead, and DatabaseUpgradeTest checks that a database
+ * created from {@link #SCHEMA} has the same tables, indexes and triggers as one it creates.
+ * A new migration goes at the end of SCHEMA as well.
+ */
+public final class InventorySql {
+
+    // The columns of SyncEntry.COLUMNS, in order
+    public static final String SYNC_COLUMNS =
+            "name, price, quantity, suppName, suppPhone, sku, barcode, reorderLevel";
+
+    // The next change sequence number, as in the sync triggers of InventoryDbHelper
+    private static final String SQL_NEXT_CHANGE_SEQ = "(max(ifnull((SELECT MAX(changeSeq) FROM inventory), 0), " +
+            "ifnull((SELECT MAX(changeSeq) FROM sync_tombstone), 0), " +
+            "(SELECT max(lastSeq, pushedSeq) FROM sync_state)) + 1)";
+
+    // Decrement the stock of one item in a single statement, only if enough units are left.
+    // The sale numbers its change and marks the quantity dirty itself, in the same write,
+    // which the sync update trigger then leaves alone.
+    public static final String SQL_SELL_ITEM = "UPDATE inventory SET quantity = quantity - ?, " +
+            "changeSeq = " + SQL_NEXT_CHANGE_SEQ + ", dirtyColumns = dirtyColumns | 4 " +
+            "WHERE _id = ? AND quantity >= ?";
+
+    public static final String SQL_ITEM_QUANTITY = "SELECT quantity FROM inventory WHERE _id = ?";
+
+    // Append a sale of the item to the ledger, at its current price
+    public static final String SQL_INSERT_SALE = "INSERT INTO sales (itemId, ts, quantity, price) " +
+            "SELECT _id, ?, ?, price FROM inventory WHERE _id = ?";
+
+    public static final String SQL_SYNC_STATE =
+            "SELECT clientId, pushedSeq, pulledVersion, pendingPush FROM sync_state";
+
+    // The synced columns start at the fifth column of the item queries
+    public static final String SQL_CHANGED_ITEMS = "SELECT syncId, changeSeq, dirtyColumns, syncedQuantity, " +
+            SYNC_COLUMNS + " FROM inventory WHERE changeSeq > ? ORDER BY changeSeq LIMIT ?";
+    public static final String SQL_CHANGED_TOMBSTONES =
+            "SELECT syncId, changeSeq FROM sync_tombstone WHERE changeSeq > ? ORDER BY changeSeq LIMIT ?";
+    public static final String SQL_ITEM_BY_SYNC_ID = "SELECT _id, syncId, dirtyColumns, syncedQuantity, " +
+            SYNC_COLUMNS + " FROM inventory WHERE syncId = ?";
+
+    // Once taken into a push, the changes count as synced: the quantity pushed is the new
+    // base of the next quantity change
+    public static final String SQL_MARK_ITEMS_PUSHED = "UPDATE inventory SET dirtyColumns = 0, " +
+            "syncedQuantity = ifnull(quantity, 0) WHERE changeSeq > ? AND changeSeq <= ?";
+    public static final String SQL_DELETE_PUSHED_TOMBSTONES = "DELETE FROM sync_tombstone WHERE changeSeq <= ?";
+    public static final String SQL_SET_PENDING_PUSH = "UPDATE sync_state SET pushedSeq = ?, pendingPush = ?";
+    public static final String SQL_SET_APPLYING = "UPDATE sync_state SET applying = ?";
+    public static final String SQL_COUNT_TOMBSTONE = "SELECT COUNT(*) FROM sync_tombstone WHERE syncId = ?";
+
+    // Bit mask of the synced columns an update changed, as in the sync triggers of InventoryDbHelper
+    private static final String SQL_CHANGED_COLUMNS = "(((new.name IS NOT old.name) << 0) | " +
+            "((new.price IS NOT old.price) << 1) | ((new.quantity IS NOT old.quantity) << 2) | " +
+            "((new.suppName IS NOT old.suppName) << 3) | ((new.suppPhone IS NOT old.suppPhone) << 4) | " +
+            "((new.sku IS NOT old.sku) << 5) | ((new.barcode IS NOT old.barcode) << 6) | " +
+            "((new.reorderLevel IS NOT old.reorderLevel) << 7))";
+
+    /**
+     * The schema of a new database at the current version, as the migrations of
+     * InventoryDbHelper build it, for databases not opened through it.
+     */
+    public static final String[] SCHEMA = {
+            "CREATE TABLE inventory (_id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT NOT NULL, " +
+                    "price INTEGER, quantity INTEGER DEFAULT 0, suppName TEXT NOT NULL, suppPhone INTEGER)",
+            // Version 2
+            "CREATE INDEX inventory_name_idx ON inventory (name)",
+            "CREATE INDEX inventory_supplier_idx ON inventory (suppName)",
+            "CREATE INDEX inventory_quantity_idx ON inventory (quantity)",
+            // Version 3
+            "CREATE VIRTUAL TABLE inventory_fts USING fts4(name, suppName)",
+            "CREATE TRIGGER inventory_fts_insert AFTER INSERT ON inventory BEGIN " +
+                    "INSERT INTO inventory_fts (docid, name, suppName) " +
+                    "VALUES (new._id, new.name, new.suppName); END",
+            "CREATE TRIGGER inventory_fts_update AFTER UPDATE OF name, suppName ON inventory BEGIN " +
+                    "UPDATE inventory_fts SET name = new.name, suppName = new.suppName " +
+                    "WHERE docid = old._id; END",
+            "CREATE TRIGGER inventory_fts_delete AFTER DELETE ON inventory BEGIN " +
+                    "DELETE FROM inventory_fts WHERE docid = old._id; END",
+            // Version 4
+            "ALTER TABLE inventory ADD COLUMN sku TEXT",
+            "CREATE UNIQUE INDEX inventory_sku_idx ON inventory (sku)",
+            // Version 5
+            "CREATE INDEX inventory_supplier_stock_idx ON inventory (suppName, quantity, price)",
+            "DROP INDEX inventory_supplier_idx",
+            "CREATE TABLE inventory_totals (itemCount INTEGER NOT NULL, totalUnits INTEGER NOT NULL, " +
+                    "totalValue INTEGER NOT NULL, lowStockCount INTEGER NOT NULL)",
+            "INSERT INTO inventory_totals VALUES (0, 0, 0, 0)",
+            "CREATE TRIGGER inventory_totals_insert AFTER INSERT ON inventory BEGIN " +
+                    "UPDATE inventory_totals SET itemCount = itemCount + 1, " +
+                    "totalUnits = totalUnits + ifnull(new.quantity, 0), " +
+                    "totalValue = totalValue + ifnull(new.price, 0) * ifnull(new.quantity, 0), " +
+                    "lowStockCount = lowStockCount + (ifnull(new.quantity, 0) < 5); END",
+            "CREATE TRIGGER inventory_totals_delete AFTER DELETE ON inventory BEGIN " +
+                    "UPDATE inventory_totals SET itemCount = itemCount - 1, " +
+                    "totalUnits = totalUnits - ifnull(old.quantity, 0), " +
+                    "totalValue = totalValue - ifnull(old.price, 0) * ifnull(old.quantity, 0), " +
+                    "lowStockCount = lowStockCount - (ifnull(old.quantity, 0) < 5); END",
+            "CREATE TRIGGER inventory_totals_update AFTER UPDATE OF price, quantity ON inventory BEGIN " +
+                    "UPDATE inventory_totals SET " +
+                    "totalUnits = totalUnits - ifnull(old.quantity, 0) + ifnull(new.quantity, 0), " +
+                    "totalValue = totalValue - ifnull(old.price, 0) * ifnull(old.quantity, 0) " +
+                    "+ ifnull(new.price, 0) * ifnull(new.quantity, 0), " +
+                    "lowStockCount = lowStockCount - (ifnull(old.quantity, 0) < 5) " +
+                    "+ (ifnull(new.quantity, 0) < 5); END",
+            // Version 6
+            "ALTER TABLE inventory ADD COLUMN reorderLevel INTEGER NOT NULL DEFAULT 5",
+            "CREATE INDEX inventory_supplier_reorder_idx ON inventory (suppName, quantity, price, reorderLevel)",
+            "DROP INDEX inventory_supplier_stock_idx",
+            "DROP TRIGGER inventory_totals_insert",
+            "DROP TRIGGER inventory_totals_delete",
+            "DROP TRIGGER inventory_totals_update",
+            "CREATE TRIGGER inventory_totals_insert AFTER INSERT ON inventory BEGIN " +
+                    "UPDATE inventory_totals SET itemCount = itemCount + 1, " +
+                    "totalUnits = totalUnits + ifnull(new.quantity, 0), " +
+                    "totalValue = totalValue + ifnull(new.price, 0) * ifnull(new.quantity, 0), " +
+                    "lowStockCount = lowStockCount + (ifnull(new.quantity, 0) < new.reorderLevel); END",
+            "CREATE TRIGGER inventory_totals_delete AFTER DELETE ON inventory BEGIN " +
+                    "UPDATE inventory_totals SET itemCount = itemCount - 1, " +
+                    "totalUnits = totalUnits - ifnull(old.quantity, 0), " +
+                    "totalValue = totalValue - ifnull(old.price, 0) * ifnull(old.quantity, 0), " +
+                    "lowStockCount = lowStockCount - (ifnull(old.quantity, 0) < old.reorderLevel); END",
+            "CREATE TRIGGER inventory_totals_update AFTER UPDATE OF price, quantity, reorderLevel ON inventory " +
+                    "BEGIN UPDATE inventory_totals SET " +
+                    "totalUnits = totalUnits - ifnull(old.quantity, 0) + ifnull(new.quantity, 0), " +
+                    "totalValue = totalValue - ifnull(old.price, 0) * ifnull(old.quantity, 0) " +
+                    "+ ifnull(new.price, 0) * ifnull(new.quantity, 0), " +
+                    "lowStockCount = lowStockCount - (ifnull(old.quantity, 0) < old.reorderLevel) " +
+                    "+ (ifnull(new.quantity, 0) < new.reorderLevel); END",
+            "CREATE TABLE quantity_changes (_id INTEGER PRIMARY KEY AUTOINCREMENT, itemId INTEGER NOT NULL, " +
+                    "quantity INTEGER NOT NULL, reorderLevel INTEGER NOT NULL)",
+            "CREATE TRIGGER quantity_changes_insert AFTER INSERT ON inventory " +
+                    "WHEN (ifnull(new.quantity, 0) < new.reorderLevel) BEGIN " +
+                    "INSERT INTO quantity_changes (itemId, quantity, reorderLevel) " +
+                    "VALUES (new._id, ifnull(new.quantity, 0), new.reorderLevel); END",
+            "CREATE TRIGGER quantity_changes_update AFTER UPDATE OF quantity, reorderLevel ON inventory " +
+                    "WHEN (ifnull(old.quantity, 0) < old.reorderLevel) <> " +
+                    "(ifnull(new.quantity, 0) < new.reorderLevel) BEGIN " +
+                    "INSERT INTO quantity_changes (itemId, quantity, reorderLevel) " +
+                    "VALUES (new._id, ifnull(new.quantity, 0), new.reorderLevel); END",
+            // Version 7
+            "CREATE TABLE sales (_id INTEGER PRIMARY KEY, itemId INTEGER NOT NULL, ts INTEGER NOT NULL, " +
+                    "quantity INTEGER NOT NULL, price INTEGER)",
+            "CREATE INDEX sales_item_ts_idx ON sales (itemId, ts)",
+            // Version 8
+            "ALTER TABLE inventory ADD COLUMN barcode TEXT",
+            "CREATE UNIQUE INDEX inventory_barcode_idx ON inventory (barcode)",
+            // Version 9
+            "UPDATE inventory SET price = price * 100",
+            "UPDATE sales SET price = price * 100",
+            // Version 10
+            "CREATE TABLE location (_id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT NOT NULL)",
+            "CREATE TABLE stock (_id INTEGER PRIMARY KEY, locationId INTEGER NOT NULL, itemId INTEGER NOT NULL, " +
+                    "quantity INTEGER NOT NULL)",
+            "CREATE UNIQUE INDEX stock_location_item_idx ON stock (locationId, itemId)",
+            "CREATE INDEX stock_location_stock_idx ON stock (locationId, itemId, quantity)",
+            "CREATE INDEX stock_item_stock_idx ON stock (itemId, locationId, quantity)",
+            "CREATE TRIGGER stock_delete AFTER DELETE ON inventory BEGIN " +
+                    "DELETE FROM stock WHERE itemId = old._id; END",
+            // Version 11
+            "ALTER TABLE inventory ADD COLUMN syncId TEXT",
+            "ALTER TABLE inventory ADD COLUMN changeSeq INTEGER NOT NULL DEFAULT 0",
+            "ALTER TABLE inventory ADD COLUMN dirtyColumns INTEGER NOT NULL DEFAULT 0",
+            "ALTER TABLE inventory ADD COLUMN syncedQuantity INTEGER",
+            "UPDATE inventory SET syncId = lower(hex(randomblob(16))), changeSeq = _id, dirtyColumns = 255",
+            "CREATE UNIQUE INDEX inventory_sync_idx ON inventory (syncId)",
+            "CREATE INDEX inventory_change_idx ON inventory (changeSeq)",
+            "CREATE TABLE sync_tombstone (syncId TEXT PRIMARY KEY, changeSeq INTEGER NOT NULL)",
+            "CREATE INDEX sync_tombstone_change_idx ON sync_tombstone (changeSeq)",
+            "CREATE TABLE sync_state (clientId TEXT NOT NULL, lastSeq INTEGER NOT NULL, " +
+                    "pushedSeq INTEGER NOT NULL, pulledVersion INTEGER NOT NULL, applying INTEGER NOT NULL, " +
+                    "pendingPush BLOB)",
+            "INSERT INTO sync_state SELECT lower(hex(randomblob(16))), ifnull(MAX(_id), 0), 0, 0, 0, NULL " +
+                    "FROM inventory",
+            "CREATE TRIGGER inventory_sync_insert AFTER INSERT ON inventory " +
+                    "WHEN (SELECT applying FROM sync_state) = 0 BEGIN " +
+                    "UPDATE sync_state SET lastSeq = lastSeq + 1; " +
+                    "UPDATE inventory SET syncId = ifnull(new.syncId, lower(hex(randomblob(16)))), " +
+                    "changeSeq = (SELECT lastSeq FROM sync_state), dirtyColumns = 255 " +
+                    "WHERE _id = new._id; END",
+            "CREATE TRIGGER inventory_sync_update AFTER UPDATE OF name, price, quantity, suppName, suppPhone, " +
+                    "sku, barcode, reorderLevel ON inventory " +
+                    "WHEN (SELECT applying FROM sync_state) = 0 AND " + SQL_CHANGED_COLUMNS + " <> 0 BEGIN " +
+                    "UPDATE sync_state SET lastSeq = lastSeq + 1; " +
+                    "UPDATE inventory SET changeSeq = (SELECT lastSeq FROM sync_state), " +
+                    "dirtyColumns = dirtyColumns | " + SQL_CHANGED_COLUMNS + " WHERE _id = new._id; END",
+            "CREATE TRIGGER inventory_sync_delete AFTER DELETE ON inventory " +
+                    "WHEN (SELECT applying FROM sync_state) = 0 BEGIN " +
+                    "UPDATE sync_state SET lastSeq = lastSeq + 1; " +
+                    "INSERT OR REPLACE INTO sync_tombstone (syncId, changeSeq) " +
+                    "VALUES (old.syncId, (SELECT lastSeq FROM sync_state)); END",
+            // Version 12
+            "ALTER TABLE inventory ADD COLUMN photo TEXT",
+            "CREATE TABLE photo_trash (photo TEXT NOT NULL)",
+            "CREATE TRIGGER photo_trash_delete AFTER DELETE ON inventory WHEN old.photo IS NOT NULL BEGIN " +
+                    "INSERT INTO photo_trash VALUES (old.photo); END",
+            "CREATE TRIGGER photo_trash_update AFTER UPDATE OF photo ON inventory " +
+                    "WHEN old.photo IS NOT NULL AND old.photo IS NOT new.photo BEGIN " +
+                    "INSERT INTO photo_trash VALUES (old.photo); END",
+            // Version 13
+            "DROP TRIGGER inventory_sync_insert",
+            "DROP TRIGGER inventory_sync_update",
+            "DROP TRIGGER inventory_sync_delete",
+            "CREATE TRIGGER inventory_sync_insert AFTER INSERT ON inventory " +
+                    "WHEN (SELECT applying FROM sync_state) = 0 BEGIN " +
+                    "UPDATE inventory SET syncId = ifnull(new.syncId, lower(hex(randomblob(16)))), " +
+                    "changeSeq = " + SQL_NEXT_CHANGE_SEQ + ", dirtyColumns = 255 WHERE _id = new._id; END",
+            "CREATE TRIGGER inventory_sync_update AFTER UPDATE OF name, price, quantity, suppName, suppPhone, " +
+                    "sku, barcode, reorderLevel ON inventory " +
+                    "WHEN (SELECT applying FROM sync_state) = 0 AND new.changeSeq = old.changeSeq AND " +
+                    SQL_CHANGED_COLUMNS + " <> 0 BEGIN " +
+                    "UPDATE inventory SET changeSeq = " + SQL_NEXT_CHANGE_SEQ + ", " +
+                    "dirtyColumns = dirtyColumns | " + SQL_CHANGED_COLUMNS + " WHERE _id = new._id; END",
+            "CREATE TRIGGER inventory_sync_delete AFTER DELETE ON inventory " +
+                    "WHEN (SELECT applying FROM sync_state) = 0 BEGIN " +
+                    "INSERT OR REPLACE INTO sync_tombstone (syncId, changeSeq) " +
+                    "VALUES (old.syncId, " + SQL_NEXT_CHANGE_SEQ + "); END"
+    };
+
+    private InventorySql() {
+    }
+}
@@ -0,0 +1,262 @@
+package com.example.android.inventory_project.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.example.android.inventory_project.data.InventoryContract.InventoryEntry;
+import static com.example.android.inventory_project.data.InventoryContract.SyncEntry;
+import static com.example.android.inventory_project.data.InventorySql.SQL_CHANGED_ITEMS;
+import static com.example.android.inventory_project.data.InventorySql.SQL_CHANGED_TOMBSTONES;
+import static com.example.android.inventory_project.data.InventorySql.SQL_COUNT_TOMBSTONE;
+import static com.example.android.inventory_project.data.InventorySql.SQL_DELETE_PUSHED_TOMBSTONES;
+import static com.example.android.inventory_project.data.InventorySql.SQL_ITEM_BY_SYNC_ID;
+import static com.example.android.inventory_project.data.InventorySql.SQL_MARK_ITEMS_PUSHED;
+import static com.example.android.inventory_project.data.InventorySql.SQL_SET_APPLYING;
+import static com.example.android.inventory_project.data.InventorySql.SQL_SET_PENDING_PUSH;
+import static com.example.android.inventory_project.data.InventorySql.SQL_SYNC_STATE;
+
+/**
+ * The {@link SyncStore} of the inventory database. The changes to push are the items and
+ * tombstones the sync triggers of InventoryDbHelper numbered after the pushed sequence
+ * number, read in change sequence order through its indexes. Changes from the server are
+ * applied with the applying flag set, so the triggers don't record them as local changes.
+ * <p>
+ * Writes go straight to the database, so the caller has to drop its cached items and
+ * notify observers once changes were applied.
+ */
+class InventorySyncStore implements SyncStore {
+
+    // The synced columns start at column SYNC_COLUMNS_START of the item queries
+    private static final int SYNC_COLUMNS_START = 4;
+
+    private final SQLiteOpenHelper mDbHelper;
+
+    InventorySyncStore(SQLiteOpenHelper dbHelper) {
+        mDbHelper = dbHelper;
+    }
+
+    @Override
+    public String getClientId() {
+        return DatabaseUtils.stringForQuery(mDbHelper.getReadableDatabase(), "SELECT " +
+                SyncEntry.COLUMN_CLIENT_ID + " FROM " + SyncEntry.STATE_TABLE_NAME, null);
+    }
+
+    @Override
+    public long getPulledVersion() {
+        return DatabaseUtils.longForQuery(mDbHelper.getReadableDatabase(), "SELECT " +
+                SyncEntry.COLUMN_PULLED_VERSION + " FROM " + SyncEntry.STATE_TABLE_NAME, null);
+    }
+
+    @Override
+    public SyncBatch takeChanges(int limit) {
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        database.beginTransaction();
+        try {
+            String clientId;
+            long pushedSeq;
+            long pulledVersion;
+            Cursor state = database.rawQuery(SQL_SYNC_STATE, null);
+            try {
+                state.moveToFirst();
+                if (!state.isNull(3)) {
+                    return decode(state.getBlob(3));
+                }
+                clientId = state.getString(0);
+                pushedSeq = state.getLong(1);
+                pulledVersion = state.getLong(2);
+            } finally {
+                state.close();
+            }
+
+            // Items and tombstones each in change sequence order, merged
+            String[] args = {String.valueOf(pushedSeq), String.valueOf(limit)};
+            List<SyncChange> changes = new ArrayList<>();
+            long seq = pushedSeq;
+            Cursor items = database.rawQuery(SQL_CHANGED_ITEMS, args);
+            Cursor tombstones = database.rawQuery(SQL_CHANGED_TOMBSTONES, args);
+            try {
+                boolean item = items.moveToNext();
+                boolean tombstone = tombstones.moveToNext();
+                while ((item || tombstone) && changes.size() < limit) {
+                    if (item && (!tombstone || items.getLong(1) < tombstones.getLong(1))) {
+                        seq = items.getLong(1);
+                        changes.add(readChange(items));
+                        item = items.moveToNext();
+                    } else {
+                        seq = tombstones.getLong(1);
+                        changes.add(SyncChange.deletion(tombstones.getString(0)));
+                        tombstone = tombstones.moveToNext();
+                    }
+                }
+            } finally {
+                items.close();
+                tombstones.close();
+            }
+            SyncBatch batch = new SyncBatch(clientId, pulledVersion, seq, false, changes);
+            if (changes.isEmpty()) {
+                return batch;
+            }
+
+            database.execSQL(SQL_MARK_ITEMS_PUSHED, new Object[]{pushedSeq, seq});
+            database.execSQL(SQL_DELETE_PUSHED_TOMBSTONES, new Object[]{seq});
+            database.execSQL(SQL_SET_PENDING_PUSH, new Object[]{seq, encode(batch)});
+            database.setTransactionSuccessful();
+            return batch;
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    @Override
+    public void acknowledge(SyncBatch response) {
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        database.beginTransaction();
+        try {
+            apply(database, response.getChanges());
+            ContentValues values = new ContentValues();
+            values.putNull(SyncEntry.COLUMN_PENDING_PUSH);
+            database.update(SyncEntry.STATE_TABLE_NAME, values, null, null);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    @Override
+    public void applyPulled(SyncBatch response) {
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        database.beginTransaction();
+        try {
+            apply(database, response.getChanges());
+            ContentValues values = new ContentValues();
+            values.put(SyncEntry.COLUMN_PULLED_VERSION, response.getVersion());
+            database.update(SyncEntry.STATE_TABLE_NAME, values, null, null);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    // Apply changes from the server inside the current transaction. The applying flag is
+    // only ever set inside it, other connections never see it.
+    private static void apply(SQLiteDatabase database, List<SyncChange> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        database.execSQL(SQL_SET_APPLYING, new Object[]{1});
+        for (SyncChange change : changes) {
+            String[] syncId = {change.getSyncId()};
+            Cursor item = database.rawQuery(SQL_ITEM_BY_SYNC_ID, syncId);
+            try {
+                if (!item.moveToFirst()) {
+                    // Deleted here and not pushed yet, the deletion wins
+                    if (!change.isDeleted() &&
+                            DatabaseUtils.longForQuery(database, SQL_COUNT_TOMBSTONE, syncId) == 0) {
+                        insert(database, change);
+                    }
+                } else if (change.isDeleted()) {
+                    database.delete(InventoryEntry.TABLE_NAME, InventoryEntry._ID + " = " + item.getLong(0), null);
+                } else {
+                    Long syncedQuantity = item.isNull(3) ? null : item.getLong(3);
+                    Object[] local = readValues(item);
+                    Object[] merged = SyncEngine.merge(local, item.getInt(2), syncedQuantity, change);
+                    // Only the columns that change, so the triggers and indexes of the others
+                    // aren't touched, e.g. the full-text index on a change of the quantity
+                    ContentValues values = toContentValues(merged, SyncEngine.changedColumns(local, merged));
+                    if (change.hasColumn(SyncChange.QUANTITY)) {
+                        putLong(values, SyncEntry.COLUMN_SYNCED_QUANTITY, change.getValue(SyncChange.QUANTITY));
+                    }
+                    if (values.size() > 0) {
+                        database.update(InventoryEntry.TABLE_NAME, values,
+                                InventoryEntry._ID + " = " + item.getLong(0), null);
+                    }
+                }
+            } finally {
+                item.close();
+            }
+        }
+        database.execSQL(SQL_SET_APPLYING, new Object[]{0});
+    }
+
+    private static void insert(SQLiteDatabase database, SyncChange change) {
+        // Columns the change doesn't have take their defaults
+        ContentValues values = toContentValues(change.getValues(), change.getColumns());
+        values.put(InventoryEntry.COLUMN_SYNC_ID, change.getSyncId());
+        if (change.hasColumn(SyncChange.QUANTITY)) {
+            putLong(values, SyncEntry.COLUMN_SYNCED_QUANTITY, change.getValue(SyncChange.QUANTITY));
+        }
+        database.insertOrThrow(InventoryEntry.TABLE_NAME, null, values);
+    }
+
+    // The change to push of a row of SQL_CHANGED_ITEMS: the changed columns, with the
+    // quantity as the units added or removed since it was last synced
+    private static SyncChange readChange(Cursor items) {
+        Object[] values = readValues(items);
+        boolean quantityDelta = !items.isNull(3);
+        if (quantityDelta) {
+            Long quantity = (Long) values[SyncChange.QUANTITY];
+            values[SyncChange.QUANTITY] = (quantity == null ? 0 : quantity) - items.getLong(3);
+        }
+        return SyncChange.update(items.getString(0), items.getInt(2), values, quantityDelta);
+    }
+
+    private static Object[] readValues(Cursor cursor) {
+        Object[] values = new Object[SyncChange.COLUMN_COUNT];
+        for (int column = 0; column < SyncChange.COLUMN_COUNT; column++) {
+            int index = SYNC_COLUMNS_START + column;
+            if (cursor.isNull(index)) {
+                continue;
+            }
+            values[column] = SyncChange.isText(column) ? cursor.getString(index) : (Object) cursor.getLong(index);
+        }
+        return values;
+    }
+
+    private static ContentValues toContentValues(Object[] values, int columns) {
+        ContentValues contentValues = new ContentValues();
+        for (int column = 0; column < SyncChange.COLUMN_COUNT; column++) {
+            if (!SyncChange.has(columns, column)) {
+                continue;
+            }
+            String name = SyncEntry.COLUMNS[column];
+            if (SyncChange.isText(column)) {
+                contentValues.put(name, (String) values[column]);
+            } else {
+                putLong(contentValues, name, values[column]);
+            }
+        }
+        return contentValues;
+    }
+
+    private static void putLong(ContentValues values, String name, Object value) {
+        if (value == null) {
+            values.putNull(name);
+        } else {
+            values.put(name, (Long) value);
+        }
+    }
+
+    private static SyncBatch decode(byte[] batch) {
+        try {
+            return SyncBatch.decode(batch);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unreadable pending push", e);
+        }
+    }
+
+    private static byte[] encode(SyncBatch batch) {
+        try {
+            return batch.encode();
+        } catch (IOException e) {
+            // Only written to memory
+            throw new IllegalStateException(e);
+        }
+    }
+}
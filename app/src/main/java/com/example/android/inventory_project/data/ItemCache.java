@@ -0,0 +1,159 @@
+package com.example.android.inventory_project.data;
+
+import android.support.v4.util.LongSparseArray;
+
+/**
+ * Least recently used cache of {@link InventoryItem}s, keyed by _ID. The keys are kept as
+ * primitives, and the number of items is bounded, so the memory use is too.
+ * <p>
+ * Writers must invalidate the items they change after committing. A read that started
+ * before an invalidation can't put its (possibly stale) item into the cache.
+ */
+class ItemCache {
+
+    // Max number of items kept in memory
+    static final int MAX_SIZE = 512;
+
+    private final int mMaxSize;
+    private final LongSparseArray<Node> mNodes = new LongSparseArray<>();
+
+    // Doubly linked list of the cached items, most recently used first
+    private Node mHead;
+    private Node mTail;
+
+    // Counts every invalidation, so reads can tell if one happened while they ran
+    private long mGeneration;
+
+    private long mHits;
+    private long mMisses;
+    private long mEvictions;
+
+    ItemCache(int maxSize) {
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Returns the cached item with the given _ID, or null if it isn't cached.
+     */
+    synchronized InventoryItem get(long id) {
+        Node node = mNodes.get(id);
+        if (node == null) {
+            mMisses++;
+            return null;
+        }
+        mHits++;
+        moveToFront(node);
+        return node.item;
+    }
+
+    /**
+     * Returns a token to pass to {@link #put} for an item read after this call.
+     */
+    synchronized long getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Caches an item read from the database, unless the cache has been invalidated since
+     * the given generation was taken.
+     */
+    synchronized void put(InventoryItem item, long generation) {
+        if (generation != mGeneration) {
+            return;
+        }
+        Node node = mNodes.get(item.getId());
+        if (node != null) {
+            node.item = item;
+            moveToFront(node);
+            return;
+        }
+
+        node = new Node(item);
+        mNodes.put(item.getId(), node);
+        linkFirst(node);
+        if (mNodes.size() > mMaxSize) {
+            Node eldest = mTail;
+            unlink(eldest);
+            mNodes.remove(eldest.item.getId());
+            mEvictions++;
+        }
+    }
+
+    /**
+     * Drops the item with the given _ID.
+     */
+    synchronized void invalidate(long id) {
+        mGeneration++;
+        Node node = mNodes.get(id);
+        if (node != null) {
+            unlink(node);
+            mNodes.remove(id);
+        }
+    }
+
+    /**
+     * Drops all items.
+     */
+    synchronized void invalidateAll() {
+        mGeneration++;
+        mNodes.clear();
+        mHead = null;
+        mTail = null;
+    }
+
+    synchronized long getHitCount() {
+        return mHits;
+    }
+
+    synchronized long getMissCount() {
+        return mMisses;
+    }
+
+    synchronized long getEvictionCount() {
+        return mEvictions;
+    }
+
+    private void moveToFront(Node node) {
+        if (node != mHead) {
+            unlink(node);
+            linkFirst(node);
+        }
+    }
+
+    private void linkFirst(Node node) {
+        node.previous = null;
+        node.next = mHead;
+        if (mHead != null) {
+            mHead.previous = node;
+        }
+        mHead = node;
+        if (mTail == null) {
+            mTail = node;
+        }
+    }
+
+    private void unlink(Node node) {
+        if (node.previous != null) {
+            node.previous.next = node.next;
+        } else {
+            mHead = node.next;
+        }
+        if (node.next != null) {
+            node.next.previous = node.previous;
+        } else {
+            mTail = node.previous;
+        }
+        node.previous = null;
+        node.next = null;
+    }
+
+    private static class Node {
+        InventoryItem item;
+        Node previous;
+        Node next;
+
+        Node(InventoryItem item) {
+            this.item = item;
+        }
+    }
+}
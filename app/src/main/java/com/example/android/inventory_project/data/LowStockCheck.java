@@ -0,0 +1,152 @@
+package com.example.android.inventory_project.data;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Works through the change log of {@link InventoryContract.QuantityChangeEntry} and raises
+ * an alert for every item that went low on stock. Only the changes after the last checkpoint
+ * are read, so a run costs as much as the changes since the previous one, whatever the size
+ * of the inventory; the inventory table itself is never scanned.
+ * <p>
+ * The checkpoint is saved after the alerts of each chunk of changes, and only then is the
+ * chunk pruned from the log. If the process dies in between, the next run starts again from
+ * the last checkpoint: no change is lost, but the alerts of the unfinished chunk may be
+ * raised a second time, so alerts must be idempotent.
+ * <p>
+ * Plain Java, the log, the checkpoint and the alerts are behind the interfaces below.
+ */
+public final class LowStockCheck {
+
+    // Changes read from the log at once
+    static final int CHUNK_SIZE = 500;
+
+    /**
+     * The change log, read in _ID order.
+     */
+    public interface ChangeLog {
+        /**
+         * @return up to limit changes with an _ID greater than afterId, oldest first
+         */
+        List<Change> read(long afterId, int limit);
+
+        /**
+         * Drops the changes up to and including upToId, they have been handled.
+         */
+        void prune(long upToId);
+    }
+
+    /**
+     * Where the _ID of the last change handled is kept. Must survive the process.
+     */
+    public interface CheckpointStore {
+        /**
+         * @return the saved checkpoint, or 0 if there is none
+         */
+        long load();
+
+        void save(long lastId);
+    }
+
+    /**
+     * Receives the state each changed item ended up in.
+     */
+    public interface Alerter {
+        void onLowStock(long itemId, int quantity, int reorderLevel);
+
+        void onRestocked(long itemId);
+    }
+
+    /**
+     * One row of the change log.
+     */
+    public static final class Change {
+        private final long mId;
+        private final long mItemId;
+        private final int mQuantity;
+        private final int mReorderLevel;
+
+        public Change(long id, long itemId, int quantity, int reorderLevel) {
+            mId = id;
+            mItemId = itemId;
+            mQuantity = quantity;
+            mReorderLevel = reorderLevel;
+        }
+
+        public long getId() {
+            return mId;
+        }
+
+        public long getItemId() {
+            return mItemId;
+        }
+
+        public int getQuantity() {
+            return mQuantity;
+        }
+
+        public int getReorderLevel() {
+            return mReorderLevel;
+        }
+
+        public boolean isLowStock() {
+            return mQuantity < mReorderLevel;
+        }
+    }
+
+    private final ChangeLog mLog;
+    private final CheckpointStore mCheckpointStore;
+    private final Alerter mAlerter;
+    private final int mChunkSize;
+
+    public LowStockCheck(ChangeLog log, CheckpointStore checkpointStore, Alerter alerter) {
+        this(log, checkpointStore, alerter, CHUNK_SIZE);
+    }
+
+    LowStockCheck(ChangeLog log, CheckpointStore checkpointStore, Alerter alerter, int chunkSize) {
+        mLog = log;
+        mCheckpointStore = checkpointStore;
+        mAlerter = alerter;
+        mChunkSize = chunkSize;
+    }
+
+    /**
+     * Handles every change logged since the last checkpoint. Runs on a background thread.
+     *
+     * @return the number of changes handled
+     */
+    public int run() {
+        long checkpoint = mCheckpointStore.load();
+        int handled = 0;
+        while (true) {
+            List<Change> changes = mLog.read(checkpoint, mChunkSize);
+            if (changes.isEmpty()) {
+                return handled;
+            }
+
+            // An item that went low and was restocked within the chunk only needs its
+            // last state
+            Map<Long, Change> latest = new LinkedHashMap<>();
+            for (Change change : changes) {
+                latest.remove(change.getItemId());
+                latest.put(change.getItemId(), change);
+            }
+            for (Change change : latest.values()) {
+                if (change.isLowStock()) {
+                    mAlerter.onLowStock(change.getItemId(), change.getQuantity(), change.getReorderLevel());
+                } else {
+                    mAlerter.onRestocked(change.getItemId());
+                }
+            }
+
+            checkpoint = changes.get(changes.size() - 1).getId();
+            mCheckpointStore.save(checkpoint);
+            mLog.prune(checkpoint);
+            handled += changes.size();
+            if (changes.size() < mChunkSize) {
+                return handled;
+            }
+        }
+    }
+}
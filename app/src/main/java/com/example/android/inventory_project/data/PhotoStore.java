@@ -0,0 +1,146 @@
+package com.example.android.inventory_project.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.example.android.inventory_project.data.InventoryContract.InventoryEntry;
+
+/**
+ * The photo files of the items, in a directory of the app. The database only holds their
+ * names, see InventoryEntry.COLUMN_PHOTO, which keeps the rows small and the photos out of
+ * every cursor window.
+ * <p>
+ * A photo is saved under a new random name before the item refers to it, and is never
+ * written again. The files of the photos that items stop using are deleted on a background
+ * thread, after the change is committed, from the trash that triggers fill.
+ */
+public final class PhotoStore {
+
+    private static final String LOG_TAG = PhotoStore.class.getSimpleName();
+
+    public static final String DIRECTORY_NAME = "photos";
+
+    private static final String SQL_TRASH = "SELECT rowid, " + InventoryEntry.COLUMN_PHOTO +
+            " FROM " + InventoryEntry.PHOTO_TRASH_TABLE_NAME + " ORDER BY rowid";
+
+    private final SQLiteOpenHelper mDbHelper;
+    private final File mDirectory;
+    private final Executor mExecutor;
+
+    // Whether a purge is waiting to run
+    private final AtomicBoolean mPending = new AtomicBoolean();
+
+    private final Runnable mPurge = new Runnable() {
+        @Override
+        public void run() {
+            // Changes from here on need another purge
+            mPending.set(false);
+            try {
+                purge();
+            } catch (SQLiteException e) {
+                // The files stay until the next purge
+                Log.w(LOG_TAG, "Could not delete the unused photos", e);
+            }
+        }
+    };
+
+    PhotoStore(SQLiteOpenHelper dbHelper, File directory) {
+        mDbHelper = dbHelper;
+        mDirectory = directory;
+        mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "photo-purge");
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Returns the directory of the photos.
+     */
+    public static File getDirectory(Context context) {
+        return new File(context.getFilesDir(), DIRECTORY_NAME);
+    }
+
+    /**
+     * Returns the file of a photo, by its name in InventoryEntry.COLUMN_PHOTO.
+     */
+    public static File getFile(File directory, String photo) {
+        return new File(directory, photo);
+    }
+
+    /**
+     * Copies an image into the directory under a new name. Reads and writes files, so it
+     * must not be called on the main thread.
+     *
+     * @return the name to store in InventoryEntry.COLUMN_PHOTO
+     */
+    public static String save(File directory, InputStream image) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        String photo = UUID.randomUUID().toString() + ".jpg";
+        File file = getFile(directory, photo);
+        boolean saved = false;
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            byte[] buffer = new byte[16 * 1024];
+            int count;
+            while ((count = image.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            saved = true;
+        } finally {
+            if (!saved) {
+                file.delete();
+            }
+        }
+        return photo;
+    }
+
+    /**
+     * Deletes the files of the photos in the trash, as items stopped using them. Requests
+     * made while a purge is waiting to run are served by that purge.
+     */
+    void requestPurge() {
+        if (mPending.compareAndSet(false, true)) {
+            mExecutor.execute(mPurge);
+        }
+    }
+
+    private void purge() {
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        long lastRowId = -1;
+        Cursor cursor = database.rawQuery(SQL_TRASH, null);
+        try {
+            while (cursor.moveToNext()) {
+                lastRowId = cursor.getLong(0);
+                // Names are never reused, so no item can refer to the file again. Thumbnails
+                // of the photo are left to age out of the ThumbnailCache.
+                getFile(mDirectory, cursor.getString(1)).delete();
+            }
+        } finally {
+            cursor.close();
+        }
+        if (lastRowId != -1) {
+            // Only the rows read, others may have come in since
+            database.delete(InventoryEntry.PHOTO_TRASH_TABLE_NAME, "rowid <= ?",
+                    new String[]{String.valueOf(lastRowId)});
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.android.inventory_project.data;
+
+/**
+ * Conversions of prices between the integer cents they are stored as and the decimal text
+ * they are shown and typed as, e.g. 1999 and "19.99". No currency symbol or grouping, the
+ * layouts add the symbol.
+ */
+public final class Prices {
+
+    public static final int CENTS_PER_UNIT = 100;
+
+    private Prices() {
+    }
+
+    /**
+     * Returns the price as text with two decimals, e.g. "19.99" or "0.05".
+     */
+    public static String format(long cents) {
+        StringBuilder text = new StringBuilder(12);
+        if (cents < 0) {
+            text.append('-');
+            cents = -cents;
+        }
+        long fraction = cents % CENTS_PER_UNIT;
+        text.append(cents / CENTS_PER_UNIT).append('.');
+        if (fraction < 10) {
+            text.append('0');
+        }
+        return text.append(fraction).toString();
+    }
+
+    /**
+     * Parses a price typed as a whole number or with up to two decimals, e.g. "19", "19.9"
+     * or "19.99", into cents.
+     *
+     * @throws NumberFormatException if the text is not such a price, or is too large
+     */
+    public static int parse(String text) {
+        int point = text.indexOf('.');
+        String units = point == -1 ? text : text.substring(0, point);
+        String fraction = point == -1 ? "" : text.substring(point + 1);
+        if ((units.isEmpty() && fraction.isEmpty()) || fraction.length() > 2 ||
+                !isDigits(units) || !isDigits(fraction)) {
+            throw new NumberFormatException("Not a price: " + text);
+        }
+
+        long cents = units.isEmpty() ? 0 : Long.parseLong(units) * CENTS_PER_UNIT;
+        if (!fraction.isEmpty()) {
+            cents += Integer.parseInt(fraction) * (fraction.length() == 1 ? 10 : 1);
+        }
+        if (cents > Integer.MAX_VALUE) {
+            throw new NumberFormatException("Price too large: " + text);
+        }
+        return (int) cents;
+    }
+
+    // Only ASCII digits, so no sign and no digits of other scripts. Empty is fine.
+    private static boolean isDigits(String text) {
+        // Longer would overflow the cents
+        if (text.length() > 10) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,291 @@
+package com.example.android.inventory_project.data;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency, row and notification counts of the operations of {@link InventoryProvider}, per
+ * operation and URI code, and a log of the slowest ones.
+ * <p>
+ * Recording an operation only adds to fixed arrays of counters, so it never allocates or
+ * takes a lock, and costs a few atomic adds. Latencies are kept as a histogram of
+ * power-of-two buckets, from under 4us to over a second, from which the percentiles are
+ * estimated to within a factor of two. Only operations over the slow threshold cost more:
+ * they go to a ring buffer with their selection and query plan, the oldest dropped first.
+ * <p>
+ * Queries are counted one by one but only one in QUERY_SAMPLE_INTERVAL is timed and
+ * recorded, see {@link #sampleQuery}: the two clock reads that time an operation cost more
+ * than recording it, and next to a query of one item they would come to over 1%.
+ * <p>
+ * Plain Java, so the benchmark module measures this very class.
+ */
+public final class ProviderMetrics {
+
+    public static final int OP_QUERY = 0;
+    public static final int OP_INSERT = 1;
+    public static final int OP_BULK_INSERT = 2;
+    public static final int OP_UPDATE = 3;
+    public static final int OP_DELETE = 4;
+    public static final int OP_APPLY_BATCH = 5;
+    public static final int OP_CALL = 6;
+
+    private static final String[] OP_NAMES = {
+            "query", "insert", "bulkInsert", "update", "delete", "applyBatch", "call"};
+
+    // Bucket i holds the latencies below FIRST_BUCKET_NANOS << i, the last bucket all the rest
+    static final int BUCKET_COUNT = 20;
+    private static final int FIRST_BUCKET_SHIFT = 12;
+    private static final long FIRST_BUCKET_NANOS = 1L << FIRST_BUCKET_SHIFT;
+
+    // Operations slower than this are logged, unless set otherwise
+    public static final long DEFAULT_SLOW_THRESHOLD_MILLIS = 50;
+
+    // One query in this many is timed, a power of two
+    static final int QUERY_SAMPLE_INTERVAL = 8;
+
+    // Number of slow operations kept
+    static final int SLOW_LOG_SIZE = 32;
+
+    // Totals kept per slot, after the histogram
+    private static final int TOTAL_NANOS = 0;
+    private static final int TOTAL_ROWS = 1;
+    private static final int MAX_NANOS = 2;
+    private static final int TOTAL_COUNT = 3;
+
+    private final int mFirstCode;
+    private final String[] mUriNames;
+    // One slot per operation and URI code, the last code for URIs that didn't match
+    private final int mCodeCount;
+
+    private final AtomicLongArray mHistograms;
+    private final AtomicLongArray mTotals;
+    private final AtomicLongArray mNotifies;
+    private final AtomicLongArray mQueries;
+    // Racy on purpose: a tick lost to another thread only moves the next sample
+    private int mQueryTicks;
+
+    private volatile long mSlowThresholdNanos;
+
+    // Ring buffer of the slow operations, guarded by itself
+    private final SlowOperation[] mSlowLog = new SlowOperation[SLOW_LOG_SIZE];
+    private long mSlowCount;
+
+    /**
+     * @param firstCode the lowest URI matcher code of the provider
+     * @param uriNames  names of the URI codes, from firstCode on, for the dump
+     */
+    public ProviderMetrics(int firstCode, String[] uriNames) {
+        mFirstCode = firstCode;
+        mUriNames = uriNames;
+        mCodeCount = uriNames.length + 1;
+        int slots = OP_NAMES.length * mCodeCount;
+        mHistograms = new AtomicLongArray(slots * BUCKET_COUNT);
+        mTotals = new AtomicLongArray(slots * TOTAL_COUNT);
+        mNotifies = new AtomicLongArray(mCodeCount);
+        mQueries = new AtomicLongArray(mCodeCount);
+        setSlowThresholdMillis(DEFAULT_SLOW_THRESHOLD_MILLIS);
+    }
+
+    public static String getOperationName(int op) {
+        return OP_NAMES[op];
+    }
+
+    public void setSlowThresholdMillis(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Slow threshold can't be negative");
+        }
+        mSlowThresholdNanos = millis * 1000000;
+    }
+
+    /**
+     * Records one operation on a URI.
+     *
+     * @param code  URI matcher code of the URI, or anything else if it didn't match
+     * @param nanos time the operation took
+     * @param rows  rows the operation returned or changed
+     * @return true if the operation was slow, and should be passed to {@link #logSlow}
+     */
+    public boolean record(int op, int code, long nanos, int rows) {
+        int slot = op * mCodeCount + codeIndex(code);
+        mHistograms.incrementAndGet(slot * BUCKET_COUNT + bucket(nanos));
+        int totals = slot * TOTAL_COUNT;
+        mTotals.addAndGet(totals + TOTAL_NANOS, nanos);
+        mTotals.addAndGet(totals + TOTAL_ROWS, rows);
+        // Only written when there is a new max, which is rare once the counts settle
+        long max;
+        while (nanos > (max = mTotals.get(totals + MAX_NANOS))) {
+            if (mTotals.compareAndSet(totals + MAX_NANOS, max, nanos)) {
+                break;
+            }
+        }
+        return nanos >= mSlowThresholdNanos;
+    }
+
+    /**
+     * Counts a query on a URI, and tells whether it is one of those to time and pass to
+     * {@link #record}. A query that is slow every time is logged within a few runs, one that
+     * is slow once may not be.
+     *
+     * @param code URI matcher code of the URI, or anything else if it didn't match
+     */
+    public boolean sampleQuery(int code) {
+        mQueries.incrementAndGet(codeIndex(code));
+        return (++mQueryTicks & (QUERY_SAMPLE_INTERVAL - 1)) == 0;
+    }
+
+    /**
+     * Records a change notification sent for a URI.
+     */
+    public void recordNotify(int code) {
+        mNotifies.incrementAndGet(codeIndex(code));
+    }
+
+    /**
+     * Adds a slow operation to the log, replacing the oldest one once the log is full.
+     *
+     * @param plan query plan of the operation, or null if it has none
+     */
+    public void logSlow(int op, String uri, String selection, long nanos, int rows, String plan) {
+        SlowOperation operation = new SlowOperation(System.currentTimeMillis(), op, uri, selection,
+                nanos, rows, plan);
+        synchronized (mSlowLog) {
+            mSlowLog[(int) (mSlowCount % SLOW_LOG_SIZE)] = operation;
+            mSlowCount++;
+        }
+    }
+
+    /**
+     * Returns the metrics as text: a line per operation and URI that has been used, with
+     * its histogram, then the queries and notifications per URI and the slow operations,
+     * newest first.
+     */
+    public String dump() {
+        StringBuilder dump = new StringBuilder();
+        for (int op = 0; op < OP_NAMES.length; op++) {
+            for (int code = 0; code < mCodeCount; code++) {
+                dumpSlot(dump, op, code);
+            }
+        }
+
+        for (int code = 0; code < mCodeCount; code++) {
+            long queries = mQueries.get(code);
+            if (queries != 0) {
+                dump.append("queries ").append(uriName(code)).append(": ").append(queries)
+                        .append(", 1 in ").append(QUERY_SAMPLE_INTERVAL).append(" timed\n");
+            }
+        }
+        for (int code = 0; code < mCodeCount; code++) {
+            long notifies = mNotifies.get(code);
+            if (notifies != 0) {
+                dump.append("notify ").append(uriName(code)).append(": ").append(notifies).append('\n');
+            }
+        }
+
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.US);
+        synchronized (mSlowLog) {
+            dump.append(String.format(Locale.US, "slow operations over %.1fms: %d\n",
+                    mSlowThresholdNanos / 1e6, mSlowCount));
+            long oldest = Math.max(0, mSlowCount - SLOW_LOG_SIZE);
+            for (long i = mSlowCount - 1; i >= oldest; i--) {
+                SlowOperation operation = mSlowLog[(int) (i % SLOW_LOG_SIZE)];
+                dump.append(String.format(Locale.US, "  %s %s %s %.3fms rows=%d\n",
+                        format.format(new Date(operation.timestamp)), OP_NAMES[operation.op],
+                        operation.uri, operation.nanos / 1e6, operation.rows));
+                if (operation.selection != null) {
+                    dump.append("    selection: ").append(operation.selection).append('\n');
+                }
+                if (operation.plan != null) {
+                    dump.append("    plan: ").append(operation.plan).append('\n');
+                }
+            }
+        }
+        return dump.toString();
+    }
+
+    private void dumpSlot(StringBuilder dump, int op, int code) {
+        int slot = op * mCodeCount + code;
+        long[] histogram = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            histogram[bucket] = mHistograms.get(slot * BUCKET_COUNT + bucket);
+            count += histogram[bucket];
+        }
+        if (count == 0) {
+            return;
+        }
+        int totals = slot * TOTAL_COUNT;
+        dump.append(String.format(Locale.US,
+                "%s %s: count=%d rows=%d mean=%.3fms p50<%s p99<%s max=%.3fms\n",
+                OP_NAMES[op], uriName(code), count, mTotals.get(totals + TOTAL_ROWS),
+                mTotals.get(totals + TOTAL_NANOS) / 1e6 / count,
+                bucketLimit(percentileBucket(histogram, count, 0.50)),
+                bucketLimit(percentileBucket(histogram, count, 0.99)),
+                mTotals.get(totals + MAX_NANOS) / 1e6));
+        dump.append("   ");
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            if (histogram[bucket] != 0) {
+                dump.append(" <").append(bucketLimit(bucket)).append(':').append(histogram[bucket]);
+            }
+        }
+        dump.append('\n');
+    }
+
+    private int codeIndex(int code) {
+        int index = code - mFirstCode;
+        return index >= 0 && index < mCodeCount - 1 ? index : mCodeCount - 1;
+    }
+
+    private String uriName(int codeIndex) {
+        return codeIndex < mUriNames.length ? mUriNames[codeIndex] : "other";
+    }
+
+    // Index of the bucket of a latency, without a loop or a branch per bucket
+    static int bucket(long nanos) {
+        int bucket = 64 - Long.numberOfLeadingZeros(nanos >>> FIRST_BUCKET_SHIFT);
+        return Math.min(bucket, BUCKET_COUNT - 1);
+    }
+
+    private static int percentileBucket(long[] histogram, long count, double percentile) {
+        long rank = (long) Math.ceil(percentile * count);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            seen += histogram[bucket];
+            if (seen >= rank) {
+                return bucket;
+            }
+        }
+        return BUCKET_COUNT - 1;
+    }
+
+    // Upper limit of a bucket, "inf" for the last one
+    private static String bucketLimit(int bucket) {
+        if (bucket == BUCKET_COUNT - 1) {
+            return "inf";
+        }
+        long nanos = FIRST_BUCKET_NANOS << bucket;
+        return nanos < 1000000 ? (nanos / 1000) + "us" : String.format(Locale.US, "%.1fms", nanos / 1e6);
+    }
+
+    private static final class SlowOperation {
+        final long timestamp;
+        final int op;
+        final String uri;
+        final String selection;
+        final long nanos;
+        final int rows;
+        final String plan;
+
+        SlowOperation(long timestamp, int op, String uri, String selection, long nanos, int rows,
+                      String plan) {
+            this.timestamp = timestamp;
+            this.op = op;
+            this.uri = uri;
+            this.selection = selection;
+            this.nanos = nanos;
+            this.rows = rows;
+            this.plan = plan;
+        }
+    }
+}
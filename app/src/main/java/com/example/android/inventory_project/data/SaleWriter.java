@@ -0,0 +1,212 @@
+package com.example.android.inventory_project.data;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.example.android.inventory_project.data.InventorySql.SQL_INSERT_SALE;
+import static com.example.android.inventory_project.data.InventorySql.SQL_ITEM_QUANTITY;
+import static com.example.android.inventory_project.data.InventorySql.SQL_SELL_ITEM;
+
+/**
+ * Writes sales with group commit: decrements the stock and appends the sale to the ledger,
+ * for several sales in one transaction. The first caller to find no commit running commits
+ * every sale waiting at that point, its own included, and the sales that arrive meanwhile
+ * wait for the next commit, which one of them runs. A sale on its own is committed at once,
+ * so batching only happens, and only saves commits, when sales come in faster than they
+ * can be committed one by one.
+ * <p>
+ * Every sale still gets its own stock check, and its ledger row is in the same transaction
+ * as its decrement. If the transaction fails, every sale in it fails with the same exception.
+ */
+class SaleWriter {
+
+    // Max number of sales committed in one transaction, bounds how long a commit holds
+    // back the sales queued behind it
+    static final int MAX_BATCH_SIZE = 64;
+
+    private final SQLiteOpenHelper mDbHelper;
+
+    // Guards the fields below
+    private final Object mLock = new Object();
+    private List<Sale> mPending = new ArrayList<>();
+    private boolean mCommitting;
+    private long mSaleCount;
+    private long mCommitCount;
+
+    SaleWriter(SQLiteOpenHelper dbHelper) {
+        mDbHelper = dbHelper;
+    }
+
+    /**
+     * Sells count units of an item, and returns once the sale is committed.
+     *
+     * @param timestamp time of the sale for the ledger, in milliseconds since the epoch
+     */
+    Sale sell(long itemId, int count, long timestamp) {
+        Sale sale = new Sale(itemId, count, timestamp);
+        boolean interrupted = false;
+        synchronized (mLock) {
+            mPending.add(sale);
+        }
+        while (true) {
+            List<Sale> batch;
+            synchronized (mLock) {
+                while (!sale.mDone && mCommitting) {
+                    try {
+                        mLock.wait();
+                    } catch (InterruptedException e) {
+                        // The sale is queued and can't be taken back, so wait for its outcome
+                        interrupted = true;
+                    }
+                }
+                if (sale.mDone) {
+                    break;
+                }
+                mCommitting = true;
+                batch = takeBatch();
+            }
+
+            RuntimeException error = null;
+            try {
+                commit(batch);
+            } catch (RuntimeException e) {
+                error = e;
+            }
+
+            synchronized (mLock) {
+                for (Sale done : batch) {
+                    if (error != null) {
+                        // Rolled back
+                        done.mSold = false;
+                        done.mError = error;
+                    }
+                    done.mDone = true;
+                }
+                mSaleCount += batch.size();
+                mCommitCount++;
+                mCommitting = false;
+                mLock.notifyAll();
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (sale.mError != null) {
+            throw sale.mError;
+        }
+        return sale;
+    }
+
+    /**
+     * @return the number of sales committed so far, successful or not
+     */
+    long getSaleCount() {
+        synchronized (mLock) {
+            return mSaleCount;
+        }
+    }
+
+    /**
+     * @return the number of transactions the sales were committed in
+     */
+    long getCommitCount() {
+        synchronized (mLock) {
+            return mCommitCount;
+        }
+    }
+
+    // Takes the oldest pending sales off the queue, up to MAX_BATCH_SIZE
+    private List<Sale> takeBatch() {
+        List<Sale> batch;
+        if (mPending.size() <= MAX_BATCH_SIZE) {
+            batch = mPending;
+            mPending = new ArrayList<>();
+        } else {
+            List<Sale> head = mPending.subList(0, MAX_BATCH_SIZE);
+            batch = new ArrayList<>(head);
+            head.clear();
+        }
+        return batch;
+    }
+
+    private void commit(List<Sale> batch) {
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        database.beginTransaction();
+        try {
+            SQLiteStatement sell = database.compileStatement(SQL_SELL_ITEM);
+            SQLiteStatement quantity = database.compileStatement(SQL_ITEM_QUANTITY);
+            SQLiteStatement insertSale = database.compileStatement(SQL_INSERT_SALE);
+            try {
+                for (Sale sale : batch) {
+                    sell.bindLong(1, sale.mCount);
+                    sell.bindLong(2, sale.mItemId);
+                    sell.bindLong(3, sale.mCount);
+                    sale.mSold = sell.executeUpdateDelete() != 0;
+                    if (!sale.mSold) {
+                        continue;
+                    }
+
+                    quantity.bindLong(1, sale.mItemId);
+                    sale.mQuantity = (int) quantity.simpleQueryForLong();
+
+                    insertSale.bindLong(1, sale.mTimestamp);
+                    insertSale.bindLong(2, sale.mCount);
+                    insertSale.bindLong(3, sale.mItemId);
+                    insertSale.executeInsert();
+                }
+            } finally {
+                sell.close();
+                quantity.close();
+                insertSale.close();
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    /**
+     * One sale and, once it is committed, its outcome.
+     */
+    static final class Sale {
+        private final long mItemId;
+        private final int mCount;
+        private final long mTimestamp;
+
+        // Written by the committing thread before it sets mDone under the lock of the
+        // SaleWriter, so the selling thread can read them once it has seen mDone
+        private boolean mSold;
+        private int mQuantity;
+        private RuntimeException mError;
+        private boolean mDone;
+
+        private Sale(long itemId, int count, long timestamp) {
+            mItemId = itemId;
+            mCount = count;
+            mTimestamp = timestamp;
+        }
+
+        long getItemId() {
+            return mItemId;
+        }
+
+        /**
+         * @return true if there was enough stock and the sale was made
+         */
+        boolean isSold() {
+            return mSold;
+        }
+
+        /**
+         * @return the units left in stock after the sale, if it was made
+         */
+        int getQuantity() {
+            return mQuantity;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.android.inventory_project.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The phases of a cold start, from the creation of the provider to the first rows shown,
+ * with when each started and how long it took. Each phase is recorded once per process:
+ * later runs of the same code, e.g. when the catalog is opened again, are not startup.
+ * <p>
+ * Times are System.nanoTime() values. They are shown relative to the origin, the start of
+ * the process where it is known, and otherwise the first phase.
+ */
+public final class StartupTimeline {
+
+    // InventoryProvider.onCreate(), which runs before any activity
+    public static final String PHASE_PROVIDER_CREATE = "providerCreate";
+    // Opening the database on the pre-warm thread, including the version check
+    public static final String PHASE_PREWARM_OPEN = "prewarmOpen";
+    // Compiling the statements of the first screen on the pre-warm thread
+    public static final String PHASE_PREWARM_COMPILE = "prewarmCompile";
+    // getReadableDatabase() of the first query, waiting for the pre-warm thread if it is still at it
+    public static final String PHASE_FIRST_QUERY_OPEN = "firstQueryOpen";
+    // The whole first query of the provider
+    public static final String PHASE_FIRST_QUERY = "firstQuery";
+    // CatalogActivity.onCreate()
+    public static final String PHASE_ACTIVITY_CREATE = "activityCreate";
+    // From the start of CatalogActivity.onCreate() to the rows of the CatalogSnapshot shown
+    public static final String PHASE_SNAPSHOT_SHOWN = "snapshotShown";
+    // From the start of CatalogActivity.onCreate() to the first page of the catalog loaded
+    public static final String PHASE_FIRST_DATA = "firstData";
+
+    // Longest the first data may take on a mid-range device before startup is too slow
+    public static final long FIRST_DATA_BUDGET_MILLIS = 500;
+
+    private static final StartupTimeline sInstance = new StartupTimeline();
+
+    private final Map<String, Phase> mPhases = new LinkedHashMap<>();
+    // Start of the process, or 0 if not known
+    private long mOriginNanos;
+
+    /**
+     * Creates an empty timeline. The app records into {@link #get()}.
+     */
+    public StartupTimeline() {
+    }
+
+    /**
+     * Returns the timeline of this process.
+     */
+    public static StartupTimeline get() {
+        return sInstance;
+    }
+
+    /**
+     * Sets the start of the process, that the phases are shown relative to.
+     */
+    public synchronized void setOrigin(long nanos) {
+        mOriginNanos = nanos;
+    }
+
+    /**
+     * Records a phase, unless it was recorded before.
+     *
+     * @return whether the phase was recorded
+     */
+    public synchronized boolean record(String name, long startNanos, long endNanos) {
+        if (mPhases.containsKey(name)) {
+            return false;
+        }
+        mPhases.put(name, new Phase(name, Thread.currentThread().getName(), startNanos, endNanos));
+        return true;
+    }
+
+    public synchronized boolean has(String name) {
+        return mPhases.containsKey(name);
+    }
+
+    /**
+     * Returns when the phase started, or -1 if it wasn't recorded yet.
+     */
+    public synchronized long getStartNanos(String name) {
+        Phase phase = mPhases.get(name);
+        return phase == null ? -1 : phase.startNanos;
+    }
+
+    /**
+     * Returns the duration of the phase in nanoseconds, or -1 if it wasn't recorded yet.
+     */
+    public synchronized long getDurationNanos(String name) {
+        Phase phase = mPhases.get(name);
+        return phase == null ? -1 : phase.endNanos - phase.startNanos;
+    }
+
+    /**
+     * Returns whether the first data took longer than {@link #FIRST_DATA_BUDGET_MILLIS}.
+     */
+    public boolean isOverBudget() {
+        return getDurationNanos(PHASE_FIRST_DATA) > FIRST_DATA_BUDGET_MILLIS * 1000000;
+    }
+
+    /**
+     * Returns the phases in the order they started, one per line: when the phase started
+     * after the origin, how long it took, its name and the thread it ran on.
+     */
+    public synchronized String format() {
+        List<Phase> phases = new ArrayList<>(mPhases.values());
+        Collections.sort(phases, new Comparator<Phase>() {
+            @Override
+            public int compare(Phase a, Phase b) {
+                return a.startNanos < b.startNanos ? -1 : a.startNanos == b.startNanos ? 0 : 1;
+            }
+        });
+        long origin = mOriginNanos;
+        if (origin == 0 && !phases.isEmpty()) {
+            origin = phases.get(0).startNanos;
+        }
+
+        StringBuilder text = new StringBuilder();
+        for (Phase phase : phases) {
+            text.append(String.format(Locale.US, "%+9.1fms %8.1fms  %s [%s]%n",
+                    (phase.startNanos - origin) / 1e6, (phase.endNanos - phase.startNanos) / 1e6,
+                    phase.name, phase.thread));
+        }
+        return text.toString();
+    }
+
+    private static final class Phase {
+        final String name;
+        final String thread;
+        final long startNanos;
+        final long endNanos;
+
+        Phase(String name, String thread, long startNanos, long endNanos) {
+            this.name = name;
+            this.thread = thread;
+            this.startNanos = startNanos;
+            this.endNanos = endNanos;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.android.inventory_project.data;
+
+import android.os.Build;
+import android.os.Trace;
+
+/**
+ * Marks the phases of a cold start as sections of a systrace or Perfetto trace, where the
+ * platform supports them (API 18), and records them into the {@link StartupTimeline}.
+ * A section must end on the thread it began on, after the sections begun inside it.
+ */
+public final class StartupTrace {
+
+    private StartupTrace() {
+    }
+
+    /**
+     * Begins a phase.
+     *
+     * @return the start of the phase, to pass to {@link #end}
+     */
+    public static long begin(String phase) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.beginSection(phase);
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Ends the phase begun last on this thread.
+     */
+    public static void end(String phase, long start) {
+        long end = System.nanoTime();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.endSection();
+        }
+        StartupTimeline.get().record(phase, start, end);
+    }
+}
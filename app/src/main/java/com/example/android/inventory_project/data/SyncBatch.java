@@ -0,0 +1,160 @@
+package com.example.android.inventory_project.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A message between a device and the sync server: a header and a list of changes, sent
+ * gzipped. The meaning of the header depends on the message:
+ * <ul>
+ * <li>push: the client, the server version it last pulled up to, and the change sequence
+ * number of the last change in the batch</li>
+ * <li>push response: the changes the server merged with those pushed, for the client to
+ * apply in their place</li>
+ * <li>pull: the client, the server version to pull from, and the most changes wanted</li>
+ * <li>pull response: the changes, the server version they bring the client up to, and
+ * whether there are more</li>
+ * </ul>
+ */
+public final class SyncBatch {
+
+    // Version of the encoding, the first byte of every message
+    private static final int FORMAT = 1;
+    private static final int FLAG_DELETED = 1;
+    private static final int FLAG_QUANTITY_DELTA = 2;
+
+    private final String mClientId;
+    private final long mVersion;
+    private final long mSeq;
+    private final boolean mMore;
+    private final List<SyncChange> mChanges;
+
+    public SyncBatch(String clientId, long version, long seq, boolean more, List<SyncChange> changes) {
+        mClientId = clientId == null ? "" : clientId;
+        mVersion = version;
+        mSeq = seq;
+        mMore = more;
+        mChanges = Collections.unmodifiableList(changes);
+    }
+
+    public String getClientId() {
+        return mClientId;
+    }
+
+    public long getVersion() {
+        return mVersion;
+    }
+
+    public long getSeq() {
+        return mSeq;
+    }
+
+    public boolean hasMore() {
+        return mMore;
+    }
+
+    public List<SyncChange> getChanges() {
+        return mChanges;
+    }
+
+    public boolean isEmpty() {
+        return mChanges.isEmpty();
+    }
+
+    /**
+     * Returns the message as sent, gzipped.
+     */
+    public byte[] encode() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 + 64 * mChanges.size());
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes, 8192))) {
+            out.writeByte(FORMAT);
+            out.writeUTF(mClientId);
+            out.writeLong(mVersion);
+            out.writeLong(mSeq);
+            out.writeBoolean(mMore);
+            out.writeInt(mChanges.size());
+            for (SyncChange change : mChanges) {
+                writeChange(out, change);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads a message written by {@link #encode()}.
+     *
+     * @throws IOException if the bytes are not such a message
+     */
+    public static SyncBatch decode(byte[] message) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new GZIPInputStream(new ByteArrayInputStream(message), 8192))) {
+            int format = in.readUnsignedByte();
+            if (format != FORMAT) {
+                throw new IOException("Unknown sync format " + format);
+            }
+            String clientId = in.readUTF();
+            long version = in.readLong();
+            long seq = in.readLong();
+            boolean more = in.readBoolean();
+            int count = in.readInt();
+            if (count < 0) {
+                throw new IOException("Bad change count " + count);
+            }
+            List<SyncChange> changes = new ArrayList<>(Math.min(count, 4096));
+            for (int i = 0; i < count; i++) {
+                changes.add(readChange(in));
+            }
+            return new SyncBatch(clientId, version, seq, more, changes);
+        }
+    }
+
+    private static void writeChange(DataOutputStream out, SyncChange change) throws IOException {
+        out.writeUTF(change.getSyncId());
+        out.writeByte((change.isDeleted() ? FLAG_DELETED : 0) |
+                (change.isQuantityDelta() ? FLAG_QUANTITY_DELTA : 0));
+        if (change.isDeleted()) {
+            return;
+        }
+        out.writeByte(change.getColumns());
+        for (int column = 0; column < SyncChange.COLUMN_COUNT; column++) {
+            if (!change.hasColumn(column)) {
+                continue;
+            }
+            Object value = change.getValue(column);
+            out.writeBoolean(value != null);
+            if (value == null) {
+                continue;
+            }
+            if (SyncChange.isText(column)) {
+                out.writeUTF((String) value);
+            } else {
+                out.writeLong(((Number) value).longValue());
+            }
+        }
+    }
+
+    private static SyncChange readChange(DataInputStream in) throws IOException {
+        String syncId = in.readUTF();
+        int flags = in.readUnsignedByte();
+        if ((flags & FLAG_DELETED) != 0) {
+            return SyncChange.deletion(syncId);
+        }
+        int columns = in.readUnsignedByte();
+        Object[] values = new Object[SyncChange.COLUMN_COUNT];
+        for (int column = 0; column < SyncChange.COLUMN_COUNT; column++) {
+            if (!SyncChange.has(columns, column) || !in.readBoolean()) {
+                continue;
+            }
+            values[column] = SyncChange.isText(column) ? in.readUTF() : (Object) in.readLong();
+        }
+        return SyncChange.update(syncId, columns, values, (flags & FLAG_QUANTITY_DELTA) != 0);
+    }
+}
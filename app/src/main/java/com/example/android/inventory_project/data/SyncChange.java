@@ -0,0 +1,105 @@
+package com.example.android.inventory_project.data;
+
+/**
+ * A change of one item exchanged by sync: either its deletion, or the new values of some of
+ * its columns. Items are identified by their sync ID, which is the same on every device,
+ * unlike their _ID.
+ * <p>
+ * Columns are numbered, and a change carries a bit mask of the columns it sets. Text
+ * columns hold Strings, the others Longs; either can be null. The quantity can be sent as
+ * the number of units added or removed since the last sync instead of the new quantity, so
+ * that sales made on two devices add up rather than one replacing the other.
+ */
+public final class SyncChange {
+
+    // Column numbers, in the order of InventoryContract.SyncEntry.COLUMNS
+    public static final int NAME = 0;
+    public static final int PRICE = 1;
+    public static final int QUANTITY = 2;
+    public static final int SUPPLIER_NAME = 3;
+    public static final int SUPPLIER_PHONE = 4;
+    public static final int SKU = 5;
+    public static final int BARCODE = 6;
+    public static final int REORDER_LEVEL = 7;
+    public static final int COLUMN_COUNT = 8;
+    public static final int ALL_COLUMNS = (1 << COLUMN_COUNT) - 1;
+
+    private static final int TEXT_COLUMNS = 1 << NAME | 1 << SUPPLIER_NAME | 1 << SKU | 1 << BARCODE;
+
+    private final String mSyncId;
+    private final boolean mDeleted;
+    private final int mColumns;
+    private final Object[] mValues;
+    private final boolean mQuantityDelta;
+
+    private SyncChange(String syncId, boolean deleted, int columns, Object[] values, boolean quantityDelta) {
+        if (syncId == null) {
+            throw new IllegalArgumentException("Change requires a sync ID");
+        }
+        mSyncId = syncId;
+        mDeleted = deleted;
+        mColumns = columns;
+        mValues = values;
+        mQuantityDelta = quantityDelta;
+    }
+
+    /**
+     * Returns the deletion of the item.
+     */
+    public static SyncChange deletion(String syncId) {
+        return new SyncChange(syncId, true, 0, new Object[COLUMN_COUNT], false);
+    }
+
+    /**
+     * Returns a change setting the columns in the mask to their values.
+     *
+     * @param values        of every column, by column number; those not in the mask are ignored
+     * @param quantityDelta whether the QUANTITY value is a change of the quantity rather than
+     *                      the new quantity
+     */
+    public static SyncChange update(String syncId, int columns, Object[] values, boolean quantityDelta) {
+        if (values.length != COLUMN_COUNT || (columns & ~ALL_COLUMNS) != 0) {
+            throw new IllegalArgumentException("Not a change of the sync columns");
+        }
+        return new SyncChange(syncId, false, columns, values, quantityDelta && has(columns, QUANTITY));
+    }
+
+    public static boolean isText(int column) {
+        return has(TEXT_COLUMNS, column);
+    }
+
+    public static boolean has(int columns, int column) {
+        return (columns & (1 << column)) != 0;
+    }
+
+    public String getSyncId() {
+        return mSyncId;
+    }
+
+    public boolean isDeleted() {
+        return mDeleted;
+    }
+
+    public int getColumns() {
+        return mColumns;
+    }
+
+    public boolean hasColumn(int column) {
+        return has(mColumns, column);
+    }
+
+    public Object getValue(int column) {
+        return mValues[column];
+    }
+
+    /**
+     * Returns the values of every column, by column number. Not a copy.
+     */
+    Object[] getValues() {
+        return mValues;
+    }
+
+    public boolean isQuantityDelta() {
+        return mQuantityDelta;
+    }
+}
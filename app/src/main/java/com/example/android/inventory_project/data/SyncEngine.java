@@ -0,0 +1,151 @@
+package com.example.android.inventory_project.data;
+
+import java.io.IOException;
+import java.util.Collections;
+
+/**
+ * Syncs a {@link SyncStore} with a {@link SyncServer}, moving only what changed since the
+ * last sync: first the local changes are pushed, then the changes of other devices pulled,
+ * both in batches of at most the batch size.
+ * <p>
+ * Conflicts are resolved per column. A device only sends the columns it changed, so edits
+ * of different columns of an item on two devices both survive. When two devices change the
+ * same column, the last one to push wins, except for the quantity: each device sends the
+ * units it added or removed, and the server adds them up. A deletion wins over any change.
+ * <p>
+ * A sync that fails, e.g. when the connection drops, throws and can simply be run again:
+ * it resumes from the batches the store and server committed, and sends again the push that
+ * may not have arrived.
+ */
+public final class SyncEngine {
+
+    // Changes per push or pull, a few tens of KB gzipped
+    public static final int BATCH_SIZE = 500;
+
+    private final SyncStore mStore;
+    private final SyncServer mServer;
+    private final int mBatchSize;
+
+    // Figures of the last sync
+    private long mBytesSent;
+    private long mBytesReceived;
+    private int mPushedCount;
+    private int mPulledCount;
+
+    public SyncEngine(SyncStore store, SyncServer server) {
+        this(store, server, BATCH_SIZE);
+    }
+
+    public SyncEngine(SyncStore store, SyncServer server, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        mStore = store;
+        mServer = server;
+        mBatchSize = batchSize;
+    }
+
+    /**
+     * Pushes every local change, then pulls every change of the other devices.
+     *
+     * @throws IOException if the server can't be reached; what was synced until then stays synced
+     */
+    public void sync() throws IOException {
+        mBytesSent = 0;
+        mBytesReceived = 0;
+        mPushedCount = 0;
+        mPulledCount = 0;
+
+        // Pushing first means the pull doesn't bring back items that are about to change
+        while (true) {
+            SyncBatch batch = mStore.takeChanges(mBatchSize);
+            if (batch.isEmpty()) {
+                break;
+            }
+            SyncBatch merged = SyncBatch.decode(send(batch, true));
+            mStore.acknowledge(merged);
+            mPushedCount += batch.getChanges().size();
+            mPulledCount += merged.getChanges().size();
+        }
+
+        while (true) {
+            SyncBatch request = new SyncBatch(mStore.getClientId(), mStore.getPulledVersion(), mBatchSize,
+                    false, Collections.<SyncChange>emptyList());
+            SyncBatch pulled = SyncBatch.decode(send(request, false));
+            mStore.applyPulled(pulled);
+            mPulledCount += pulled.getChanges().size();
+            if (!pulled.hasMore()) {
+                break;
+            }
+        }
+    }
+
+    private byte[] send(SyncBatch batch, boolean push) throws IOException {
+        byte[] request = batch.encode();
+        mBytesSent += request.length;
+        byte[] response = push ? mServer.push(request) : mServer.pull(request);
+        mBytesReceived += response.length;
+        return response;
+    }
+
+    /**
+     * Returns the values an item ends up with when a change from the server reaches a
+     * device that may have changed it too. Columns changed on the device keep the local
+     * value, except the quantity, which gets the local sales and deliveries applied on top
+     * of the quantity of the server. Other columns of the change replace the local ones.
+     *
+     * @param local          values of every column of the item on the device, by column number
+     * @param dirtyColumns   mask of the columns changed on the device since they were synced
+     * @param syncedQuantity quantity of the item when it was last synced, null if never
+     * @param remote         the change from the server
+     */
+    public static Object[] merge(Object[] local, int dirtyColumns, Long syncedQuantity, SyncChange remote) {
+        Object[] merged = local.clone();
+        for (int column = 0; column < SyncChange.COLUMN_COUNT; column++) {
+            if (!remote.hasColumn(column)) {
+                continue;
+            }
+            if (!SyncChange.has(dirtyColumns, column)) {
+                merged[column] = remote.getValue(column);
+            } else if (column == SyncChange.QUANTITY && syncedQuantity != null) {
+                long localChange = toLong(local[column]) - syncedQuantity;
+                merged[column] = toLong(remote.getValue(column)) + localChange;
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Returns the mask of the columns whose values differ between the two.
+     */
+    public static int changedColumns(Object[] before, Object[] after) {
+        int columns = 0;
+        for (int column = 0; column < SyncChange.COLUMN_COUNT; column++) {
+            Object value = before[column];
+            if (value == null ? after[column] != null : !value.equals(after[column])) {
+                columns |= 1 << column;
+            }
+        }
+        return columns;
+    }
+
+    private static long toLong(Object value) {
+        return value == null ? 0 : ((Number) value).longValue();
+    }
+
+    public long getBytesSent() {
+        return mBytesSent;
+    }
+
+    public long getBytesReceived() {
+        return mBytesReceived;
+    }
+
+    public int getPushedCount() {
+        return mPushedCount;
+    }
+
+    public int getPulledCount() {
+        return mPulledCount;
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.android.inventory_project.data;
+
+import java.io.IOException;
+
+/**
+ * The central record the devices sync with. Requests and responses are encoded
+ * {@link SyncBatch}es, so a transport only has to move bytes.
+ */
+public interface SyncServer {
+
+    /**
+     * Applies the changes of a push and returns the changes the client has to apply in
+     * their place, where the server merged them with changes from other devices. Pushing a
+     * batch again, e.g. after the response was lost, doesn't apply it twice.
+     */
+    byte[] push(byte[] batch) throws IOException;
+
+    /**
+     * Returns the changes made by other devices since the version of the request.
+     */
+    byte[] pull(byte[] request) throws IOException;
+}
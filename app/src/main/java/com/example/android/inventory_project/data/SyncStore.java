@@ -0,0 +1,38 @@
+package com.example.android.inventory_project.data;
+
+/**
+ * The local side of sync: the changes made on this device and not pushed yet, and the
+ * watermarks that let a sync pick up where the last one stopped. Every method is one
+ * transaction, so an interrupted sync leaves the store consistent.
+ */
+public interface SyncStore {
+
+    /**
+     * Returns the ID of this device, the same for every sync.
+     */
+    String getClientId();
+
+    /**
+     * Returns the server version the last pull brought this device up to.
+     */
+    long getPulledVersion();
+
+    /**
+     * Returns the next batch of local changes to push, at most limit of them, or an empty
+     * batch if there are none. The batch is taken out of the local changes, and kept until
+     * {@link #acknowledge} as the one returned by every call, so a batch whose push may or
+     * may not have reached the server is sent again as it was.
+     */
+    SyncBatch takeChanges(int limit);
+
+    /**
+     * Drops the batch returned by {@link #takeChanges} and applies the response of the
+     * server to it.
+     */
+    void acknowledge(SyncBatch response);
+
+    /**
+     * Applies the changes of a pull and moves the pulled version up to the one of the response.
+     */
+    void applyPulled(SyncBatch response);
+}
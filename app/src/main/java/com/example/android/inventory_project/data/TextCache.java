@@ -0,0 +1,80 @@
+package com.example.android.inventory_project.data;
+
+/**
+ * Cache of the text of numbers, such as prices and quantities, so that binding a row that
+ * was shown before allocates no string. Direct mapped: each value has one slot, picked from
+ * its bits, and replaces whatever value was there. A lookup is an array read and a compare,
+ * with no boxing, and memory is bounded by the size.
+ * <p>
+ * Not thread safe, it is meant for the adapter of one list on the main thread.
+ */
+public final class TextCache {
+
+    private final boolean mPrices;
+    private final long[] mValues;
+    private final String[] mTexts;
+    private final int mMask;
+
+    private long mHits;
+    private long mMisses;
+
+    private TextCache(int size, boolean prices) {
+        if (size <= 0 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("Size must be a power of two");
+        }
+        mPrices = prices;
+        mValues = new long[size];
+        mTexts = new String[size];
+        mMask = size - 1;
+    }
+
+    /**
+     * Creates a cache of prices in cents, as formatted by {@link Prices#format}.
+     *
+     * @param size number of texts kept, a power of two
+     */
+    public static TextCache forPrices(int size) {
+        return new TextCache(size, true);
+    }
+
+    /**
+     * Creates a cache of whole numbers, as formatted by {@link Long#toString(long)}.
+     *
+     * @param size number of texts kept, a power of two
+     */
+    public static TextCache forNumbers(int size) {
+        return new TextCache(size, false);
+    }
+
+    /**
+     * Returns the text of the value, formatting it only if it isn't cached.
+     */
+    public String get(long value) {
+        int slot = slot(value);
+        String text = mTexts[slot];
+        if (text != null && mValues[slot] == value) {
+            mHits++;
+            return text;
+        }
+        mMisses++;
+        text = mPrices ? Prices.format(value) : Long.toString(value);
+        mValues[slot] = value;
+        mTexts[slot] = text;
+        return text;
+    }
+
+    public long getHitCount() {
+        return mHits;
+    }
+
+    public long getMissCount() {
+        return mMisses;
+    }
+
+    // Mixes the high bits into the low ones, so prices that differ in the cents or only in
+    // the units both spread over the slots
+    private int slot(long value) {
+        long hash = value * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & mMask;
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.android.inventory_project.data;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The thumbnails of the photos, as files in a directory of their own, so a photo that was
+ * shown before is read back at the size of the view instead of decoded again from the full
+ * photo. Keeps the directory under a maximum size by deleting the least recently used
+ * thumbnails, which also disposes of the thumbnails of deleted photos in time.
+ * <p>
+ * The order of use survives restarts through the modification times of the files. Every
+ * method reads or writes files, so none may be called on the main thread.
+ */
+public final class ThumbnailCache {
+
+    private final File mDirectory;
+    private final long mMaxBytes;
+
+    // Size of the file of every thumbnail, least recently used first
+    private final LinkedHashMap<String, Long> mSizes = new LinkedHashMap<>(64, 0.75f, true);
+    private long mSize;
+    // Whether mSizes holds the files in the directory yet
+    private boolean mLoaded;
+
+    /**
+     * @param directory of the thumbnails, created if it doesn't exist
+     * @param maxBytes  size of all the thumbnails together to keep the directory under
+     */
+    public ThumbnailCache(File directory, long maxBytes) {
+        mDirectory = directory;
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the key of the thumbnail of a photo at a size. Photos at more than one size,
+     * e.g. in the list and in the editor, have a thumbnail for each.
+     */
+    public static String getKey(String photo, int width, int height) {
+        return photo + "@" + width + "x" + height;
+    }
+
+    /**
+     * Returns the factor to downsample an image by to fit the size of a view: the largest
+     * power of two that leaves the image at least as large as the view in both directions,
+     * as BitmapFactory.Options.inSampleSize wants it.
+     */
+    public static int sampleSize(int width, int height, int targetWidth, int targetHeight) {
+        int sampleSize = 1;
+        while (width / (sampleSize * 2) >= targetWidth && height / (sampleSize * 2) >= targetHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Returns the file of a thumbnail and marks it as used.
+     *
+     * @return the file, or null if there is no thumbnail of this key
+     */
+    public synchronized File get(String key) {
+        load();
+        // Moves the thumbnail to the most recently used end
+        Long size = mSizes.get(key);
+        if (size == null) {
+            return null;
+        }
+        File file = new File(mDirectory, key);
+        if (!file.setLastModified(System.currentTimeMillis()) && !file.exists()) {
+            // Deleted behind the back of the cache
+            mSizes.remove(key);
+            mSize -= size;
+            return null;
+        }
+        return file;
+    }
+
+    /**
+     * Stores a thumbnail, replacing the one of the same key, and deletes the least recently
+     * used ones if the directory grew over its maximum size.
+     */
+    public synchronized void put(String key, byte[] thumbnail) throws IOException {
+        load();
+        File file = new File(mDirectory, key);
+        File temp = new File(mDirectory, key + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(thumbnail);
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Could not write " + file);
+        }
+
+        Long oldSize = mSizes.put(key, (long) thumbnail.length);
+        mSize += thumbnail.length - (oldSize == null ? 0 : oldSize);
+        trim();
+    }
+
+    /**
+     * Returns the size of all the thumbnails together, in bytes.
+     */
+    public synchronized long getSize() {
+        load();
+        return mSize;
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<String, Long>> eldest = mSizes.entrySet().iterator();
+        while (mSize > mMaxBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            new File(mDirectory, entry.getKey()).delete();
+            mSize -= entry.getValue();
+            eldest.remove();
+        }
+    }
+
+    // Read the thumbnails in the directory on the first use, oldest first
+    private void load() {
+        if (mLoaded) {
+            return;
+        }
+        mLoaded = true;
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            return;
+        }
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        final long[] modified = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            // Read once, the comparator would otherwise stat every file many times over
+            modified[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return modified[a] < modified[b] ? -1 : modified[a] == modified[b] ? 0 : 1;
+            }
+        });
+        for (int i : order) {
+            File file = files[i];
+            if (file.getName().endsWith(".tmp")) {
+                // Left by a write that didn't finish
+                file.delete();
+                continue;
+            }
+            mSizes.put(file.getName(), file.length());
+            mSize += file.length();
+        }
+        trim();
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.android.inventory_project.data;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests of {@link CatalogSnapshot}, the file the first rows of a cold start are read from.
+ */
+public class CatalogSnapshotTest {
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void read_returnsRowsWritten() throws IOException {
+        File file = CatalogSnapshot.getFile(mFolder.getRoot());
+        new CatalogSnapshot(3, new long[]{4, 9, 12, 0}, new String[]{"Kraken V2", null, "Caf\u00e9 cr\u00e8me", "x"},
+                new int[]{2000, 150, 99999, 0}, new int[]{1, 0, -2, 0},
+                new String[]{"3f2a.jpg", "9c1e.jpg", null, "x"}).write(file);
+
+        CatalogSnapshot snapshot = CatalogSnapshot.read(file);
+
+        assertEquals(3, snapshot.getCount());
+        assertEquals(4, snapshot.getId(0));
+        assertEquals("Kraken V2", snapshot.getName(0));
+        assertEquals(2000, snapshot.getPrice(0));
+        assertEquals(1, snapshot.getQuantity(0));
+        assertEquals("3f2a.jpg", snapshot.getPhoto(0));
+        assertNull(snapshot.getName(1));
+        assertEquals(9, snapshot.getId(1));
+        assertEquals("9c1e.jpg", snapshot.getPhoto(1));
+        assertEquals("Caf\u00e9 cr\u00e8me", snapshot.getName(2));
+        assertEquals(99999, snapshot.getPrice(2));
+        assertEquals(-2, snapshot.getQuantity(2));
+        assertNull(snapshot.getPhoto(2));
+    }
+
+    @Test
+    public void write_replacesSnapshot() throws IOException {
+        File file = CatalogSnapshot.getFile(mFolder.getRoot());
+        new CatalogSnapshot(1, new long[]{1}, new String[]{"Old"}, new int[]{1}, new int[]{1},
+                new String[]{"old.jpg"}).write(file);
+        new CatalogSnapshot(0, new long[0], new String[0], new int[0], new int[0], new String[0]).write(file);
+
+        assertEquals(0, CatalogSnapshot.read(file).getCount());
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void read_missingFile_returnsNull() {
+        assertNull(CatalogSnapshot.read(CatalogSnapshot.getFile(mFolder.getRoot())));
+    }
+
+    @Test
+    public void read_truncatedFile_returnsNull() throws IOException {
+        File file = CatalogSnapshot.getFile(mFolder.getRoot());
+        new CatalogSnapshot(2, new long[]{1, 2}, new String[]{"Tea", "Coffee"}, new int[]{1, 2},
+                new int[]{3, 4}, new String[]{null, "coffee.jpg"}).write(file);
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.setLength(out.length() - 4);
+        }
+
+        assertNull(CatalogSnapshot.read(file));
+    }
+
+    @Test
+    public void read_otherFile_returnsNull() throws IOException {
+        File file = CatalogSnapshot.getFile(mFolder.getRoot());
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write("_id,name\n1,Tea\n".getBytes("UTF-8"));
+        }
+
+        assertNull(CatalogSnapshot.read(file));
+    }
+}
@@ -0,0 +1,208 @@
+package com.example.android.inventory_project.data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of {@link LowStockCheck}, with the change log, the checkpoint and the alerts in memory.
+ * The log and the checkpoint store outlive a check, the way the database and the shared
+ * preferences outlive the process.
+ */
+public class LowStockCheckTest {
+
+    private final FakeChangeLog mLog = new FakeChangeLog();
+    private final FakeCheckpointStore mStore = new FakeCheckpointStore();
+    private final RecordingAlerter mAlerter = new RecordingAlerter();
+
+    @Test
+    public void run_alertsLowStockAndRestock() {
+        mLog.add(1, 3, 5);
+        mLog.add(2, 10, 5);
+
+        assertEquals(2, new LowStockCheck(mLog, mStore, mAlerter, 10).run());
+
+        assertEquals(Arrays.asList("low 1", "restocked 2"), mAlerter.events);
+        assertEquals(2, mStore.checkpoint);
+    }
+
+    @Test
+    public void run_onlyAlertsLastStateOfItemInChunk() {
+        mLog.add(1, 3, 5);
+        mLog.add(1, 8, 5);
+        mLog.add(2, 0, 5);
+        mLog.add(1, 4, 5);
+
+        new LowStockCheck(mLog, mStore, mAlerter, 10).run();
+
+        assertEquals(Arrays.asList("low 2", "low 1"), mAlerter.events);
+    }
+
+    @Test
+    public void run_readsOnlyChangesAfterCheckpoint() {
+        mLog.add(1, 3, 5);
+        new LowStockCheck(mLog, mStore, mAlerter, 10).run();
+        mLog.add(2, 4, 5);
+        mLog.add(3, 4, 5);
+        mAlerter.events.clear();
+
+        assertEquals(2, new LowStockCheck(mLog, mStore, mAlerter, 10).run());
+
+        assertEquals(Arrays.asList("low 2", "low 3"), mAlerter.events);
+        assertEquals(Arrays.asList(0L, 1L), mLog.readsAfter);
+    }
+
+    @Test
+    public void run_prunesHandledChanges() {
+        for (int i = 1; i <= 7; i++) {
+            mLog.add(i, 0, 5);
+        }
+
+        assertEquals(7, new LowStockCheck(mLog, mStore, mAlerter, 3).run());
+
+        assertEquals(0, mLog.changes.size());
+        assertEquals(7, mStore.checkpoint);
+    }
+
+    @Test
+    public void run_resumesFromCheckpointAfterKill() {
+        for (int i = 1; i <= 7; i++) {
+            mLog.add(i, 0, 5);
+        }
+        // The process dies while alerting the second chunk
+        mAlerter.killAfter = 4;
+        try {
+            new LowStockCheck(mLog, mStore, mAlerter, 3).run();
+            fail("Expected the check to be killed");
+        } catch (ProcessKilled expected) {
+            // Nothing after the kill runs
+        }
+        assertEquals(3, mStore.checkpoint);
+        assertEquals(4, mLog.changes.size());
+
+        // The next process starts a new check on the same log and checkpoint
+        mAlerter.killAfter = -1;
+        mAlerter.events.clear();
+        assertEquals(4, new LowStockCheck(mLog, mStore, mAlerter, 3).run());
+
+        // The first chunk is not alerted again, the unfinished one is alerted in full
+        assertEquals(Arrays.asList("low 4", "low 5", "low 6", "low 7"), mAlerter.events);
+        assertEquals(7, mStore.checkpoint);
+        assertEquals(0, mLog.changes.size());
+    }
+
+    @Test
+    public void run_keepsCheckpointIfKilledBeforePrune() {
+        for (int i = 1; i <= 3; i++) {
+            mLog.add(i, 0, 5);
+        }
+        // The checkpoint is saved, but the process dies before the log is pruned
+        mLog.killOnPrune = true;
+        try {
+            new LowStockCheck(mLog, mStore, mAlerter, 10).run();
+            fail("Expected the check to be killed");
+        } catch (ProcessKilled expected) {
+            // Nothing after the kill runs
+        }
+        assertEquals(3, mLog.changes.size());
+
+        mLog.killOnPrune = false;
+        mAlerter.events.clear();
+        assertEquals(0, new LowStockCheck(mLog, mStore, mAlerter, 10).run());
+
+        // The changes still in the log are behind the checkpoint, so they are not read again
+        assertEquals(Collections.<String>emptyList(), mAlerter.events);
+    }
+
+    @Test
+    public void run_withEmptyLog_doesNothing() {
+        mStore.checkpoint = 42;
+
+        assertEquals(0, new LowStockCheck(mLog, mStore, mAlerter, 10).run());
+
+        assertEquals(Collections.<String>emptyList(), mAlerter.events);
+        assertEquals(42, mStore.checkpoint);
+    }
+
+    private static final class ProcessKilled extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+    }
+
+    private static final class FakeChangeLog implements LowStockCheck.ChangeLog {
+        final List<LowStockCheck.Change> changes = new ArrayList<>();
+        final List<Long> readsAfter = new ArrayList<>();
+        boolean killOnPrune;
+        private long mNextId = 1;
+
+        void add(long itemId, int quantity, int reorderLevel) {
+            changes.add(new LowStockCheck.Change(mNextId++, itemId, quantity, reorderLevel));
+        }
+
+        @Override
+        public List<LowStockCheck.Change> read(long afterId, int limit) {
+            readsAfter.add(afterId);
+            List<LowStockCheck.Change> result = new ArrayList<>();
+            for (LowStockCheck.Change change : changes) {
+                if (change.getId() > afterId && result.size() < limit) {
+                    result.add(change);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public void prune(long upToId) {
+            if (killOnPrune) {
+                throw new ProcessKilled();
+            }
+            for (int i = changes.size() - 1; i >= 0; i--) {
+                if (changes.get(i).getId() <= upToId) {
+                    changes.remove(i);
+                }
+            }
+        }
+    }
+
+    private static final class FakeCheckpointStore implements LowStockCheck.CheckpointStore {
+        long checkpoint;
+
+        @Override
+        public long load() {
+            return checkpoint;
+        }
+
+        @Override
+        public void save(long lastId) {
+            checkpoint = lastId;
+        }
+    }
+
+    private static final class RecordingAlerter implements LowStockCheck.Alerter {
+        final List<String> events = new ArrayList<>();
+        int killAfter = -1;
+        private int mCount;
+
+        @Override
+        public void onLowStock(long itemId, int quantity, int reorderLevel) {
+            record("low " + itemId);
+        }
+
+        @Override
+        public void onRestocked(long itemId) {
+            record("restocked " + itemId);
+        }
+
+        private void record(String event) {
+            if (mCount++ == killAfter) {
+                throw new ProcessKilled();
+            }
+            events.add(event);
+        }
+    }
+}
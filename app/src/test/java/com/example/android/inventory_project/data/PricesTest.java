@@ -0,0 +1,53 @@
+package com.example.android.inventory_project.data;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of {@link Prices}, the conversions between cents and the text shown, typed and
+ * written to CSV.
+ */
+public class PricesTest {
+
+    @Test
+    public void format_writesTwoDecimals() {
+        assertEquals("19.99", Prices.format(1999));
+        assertEquals("0.05", Prices.format(5));
+        assertEquals("0.00", Prices.format(0));
+        assertEquals("20.00", Prices.format(2000));
+        assertEquals("-1.50", Prices.format(-150));
+    }
+
+    @Test
+    public void parse_readsWholeUnitsAndDecimals() {
+        assertEquals(1900, Prices.parse("19"));
+        assertEquals(1990, Prices.parse("19.9"));
+        assertEquals(1999, Prices.parse("19.99"));
+        assertEquals(1900, Prices.parse("19."));
+        assertEquals(50, Prices.parse(".5"));
+        assertEquals(Integer.MAX_VALUE, Prices.parse("21474836.47"));
+    }
+
+    @Test
+    public void parse_readsWhatFormatWrites() {
+        for (int cents : new int[]{0, 1, 10, 99, 100, 1999, 123456789}) {
+            assertEquals(cents, Prices.parse(Prices.format(cents)));
+        }
+    }
+
+    @Test
+    public void parse_rejectsWhatIsNotAPrice() {
+        String[] texts = {"", ".", "19.999", "-1", "+1", "1,5", "1.2.3", "abc", " 1", "\u0661\u0662",
+                "21474836.48", "99999999999"};
+        for (String text : texts) {
+            try {
+                Prices.parse(text);
+                fail("Parsed " + text);
+            } catch (NumberFormatException expected) {
+                // Rejected
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.android.inventory_project.data;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StartupTimelineTest {
+
+    private static final long MILLIS = 1000000;
+
+    @Test
+    public void record_keepsFirstRecordOfPhase() {
+        StartupTimeline timeline = new StartupTimeline();
+
+        assertTrue(timeline.record(StartupTimeline.PHASE_FIRST_QUERY, 10 * MILLIS, 15 * MILLIS));
+        assertFalse(timeline.record(StartupTimeline.PHASE_FIRST_QUERY, 20 * MILLIS, 40 * MILLIS));
+
+        assertEquals(10 * MILLIS, timeline.getStartNanos(StartupTimeline.PHASE_FIRST_QUERY));
+        assertEquals(5 * MILLIS, timeline.getDurationNanos(StartupTimeline.PHASE_FIRST_QUERY));
+        assertEquals(-1, timeline.getStartNanos(StartupTimeline.PHASE_FIRST_DATA));
+        assertEquals(-1, timeline.getDurationNanos(StartupTimeline.PHASE_FIRST_DATA));
+    }
+
+    @Test
+    public void isOverBudget_comparesFirstData() {
+        StartupTimeline fast = new StartupTimeline();
+        fast.record(StartupTimeline.PHASE_FIRST_DATA, 0, StartupTimeline.FIRST_DATA_BUDGET_MILLIS * MILLIS);
+        StartupTimeline slow = new StartupTimeline();
+        slow.record(StartupTimeline.PHASE_FIRST_DATA, 0, StartupTimeline.FIRST_DATA_BUDGET_MILLIS * MILLIS + 1);
+
+        assertFalse(new StartupTimeline().isOverBudget());
+        assertFalse(fast.isOverBudget());
+        assertTrue(slow.isOverBudget());
+    }
+
+    @Test
+    public void format_listsPhasesInStartOrderFromOrigin() {
+        StartupTimeline timeline = new StartupTimeline();
+        timeline.setOrigin(100 * MILLIS);
+        timeline.record(StartupTimeline.PHASE_FIRST_DATA, 150 * MILLIS, 400 * MILLIS);
+        timeline.record(StartupTimeline.PHASE_PROVIDER_CREATE, 120 * MILLIS, 122 * MILLIS);
+
+        String[] lines = timeline.format().split("\\r?\\n");
+
+        assertEquals(2, lines.length);
+        assertTrue(lines[0], lines[0].matches(" +\\+20\\.0ms +2\\.0ms  providerCreate \\[.*]"));
+        assertTrue(lines[1], lines[1].matches(" +\\+50\\.0ms +250\\.0ms  firstData \\[.*]"));
+    }
+}
@@ -0,0 +1,427 @@
+package com.example.android.inventory_project.data;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of {@link SyncEngine} with devices that keep their items in memory, tracking their
+ * changes the way the sync triggers of InventoryDbHelper do, against an {@link InMemorySyncServer}.
+ */
+public class SyncEngineTest {
+
+    private final InMemorySyncServer mServer = new InMemorySyncServer();
+
+    @Test
+    public void batch_encodesAndDecodes() throws IOException {
+        Object[] values = new Object[SyncChange.COLUMN_COUNT];
+        values[SyncChange.NAME] = "Tea \u00e9";
+        values[SyncChange.QUANTITY] = -3L;
+        List<SyncChange> changes = Arrays.asList(
+                SyncChange.update("a", 1 << SyncChange.NAME | 1 << SyncChange.QUANTITY | 1 << SyncChange.SKU,
+                        values, true),
+                SyncChange.deletion("b"));
+
+        SyncBatch batch = SyncBatch.decode(new SyncBatch("client", 7, 9, true, changes).encode());
+
+        assertEquals("client", batch.getClientId());
+        assertEquals(7, batch.getVersion());
+        assertEquals(9, batch.getSeq());
+        assertTrue(batch.hasMore());
+        SyncChange update = batch.getChanges().get(0);
+        assertEquals("Tea \u00e9", update.getValue(SyncChange.NAME));
+        assertEquals(-3L, update.getValue(SyncChange.QUANTITY));
+        assertTrue(update.isQuantityDelta());
+        assertTrue(update.hasColumn(SyncChange.SKU));
+        assertNull(update.getValue(SyncChange.SKU));
+        assertFalse(update.hasColumn(SyncChange.PRICE));
+        assertTrue(batch.getChanges().get(1).isDeleted());
+    }
+
+    @Test
+    public void sync_copiesItemsToOtherDevice() throws IOException {
+        Device first = new Device("first");
+        Device second = new Device("second");
+        first.insert("a", "Tea", 250, 10);
+        first.insert("b", "Coffee", 400, 3);
+
+        sync(first);
+        sync(second);
+
+        assertEquals(first.items(), second.items());
+        assertEquals(2, mServer.getItemCount());
+    }
+
+    @Test
+    public void sync_pullsOnlyWhatChanged() throws IOException {
+        Device first = new Device("first");
+        Device second = new Device("second");
+        for (int i = 0; i < 100; i++) {
+            first.insert("item" + i, "Item " + i, 100, 10);
+        }
+        sync(first);
+        sync(second);
+
+        first.set("item42", SyncChange.PRICE, 120L);
+        SyncEngine firstEngine = sync(first);
+        SyncEngine secondEngine = sync(second);
+
+        assertEquals(1, firstEngine.getPushedCount());
+        assertEquals(1, secondEngine.getPulledCount());
+        assertEquals(120L, second.get("item42", SyncChange.PRICE));
+    }
+
+    @Test
+    public void sync_addsUpQuantityChangesOfBothDevices() throws IOException {
+        Device first = new Device("first");
+        Device second = new Device("second");
+        first.insert("a", "Tea", 250, 10);
+        sync(first);
+        sync(second);
+
+        first.addQuantity("a", -2);
+        second.addQuantity("a", -3);
+        second.addQuantity("a", 20);
+        sync(first);
+        sync(second);
+        sync(first);
+
+        assertEquals(25L, first.get("a", SyncChange.QUANTITY));
+        assertEquals(25L, second.get("a", SyncChange.QUANTITY));
+    }
+
+    @Test
+    public void sync_keepsChangesOfDifferentColumns() throws IOException {
+        Device first = new Device("first");
+        Device second = new Device("second");
+        first.insert("a", "Tea", 250, 10);
+        sync(first);
+        sync(second);
+
+        first.set("a", SyncChange.PRICE, 300L);
+        second.set("a", SyncChange.NAME, "Green tea");
+        sync(first);
+        sync(second);
+        sync(first);
+
+        assertEquals(first.items(), second.items());
+        assertEquals("Green tea", first.get("a", SyncChange.NAME));
+        assertEquals(300L, first.get("a", SyncChange.PRICE));
+    }
+
+    @Test
+    public void sync_lastPushWinsOnSameColumn() throws IOException {
+        Device first = new Device("first");
+        Device second = new Device("second");
+        first.insert("a", "Tea", 250, 10);
+        sync(first);
+        sync(second);
+
+        first.set("a", SyncChange.PRICE, 300L);
+        second.set("a", SyncChange.PRICE, 350L);
+        sync(first);
+        sync(second);
+        sync(first);
+
+        assertEquals(350L, first.get("a", SyncChange.PRICE));
+        assertEquals(350L, second.get("a", SyncChange.PRICE));
+    }
+
+    @Test
+    public void sync_deletionWinsOverChange() throws IOException {
+        Device first = new Device("first");
+        Device second = new Device("second");
+        first.insert("a", "Tea", 250, 10);
+        sync(first);
+        sync(second);
+
+        first.delete("a");
+        second.set("a", SyncChange.PRICE, 300L);
+        second.addQuantity("a", -1);
+        sync(first);
+        sync(second);
+        sync(first);
+
+        assertFalse(first.items().containsKey("a"));
+        assertFalse(second.items().containsKey("a"));
+        assertEquals(0, mServer.getItemCount());
+    }
+
+    @Test
+    public void sync_resumesAfterLostResponseWithoutApplyingTwice() throws IOException {
+        Device first = new Device("first");
+        Device second = new Device("second");
+        first.insert("a", "Tea", 250, 10);
+        sync(first);
+        sync(second);
+        first.addQuantity("a", -4);
+
+        // The server applies the push, but the response never arrives
+        SyncServer dropping = new SyncServer() {
+            @Override
+            public byte[] push(byte[] batch) throws IOException {
+                mServer.push(batch);
+                throw new IOException("Connection reset");
+            }
+
+            @Override
+            public byte[] pull(byte[] request) throws IOException {
+                return mServer.pull(request);
+            }
+        };
+        try {
+            new SyncEngine(first, dropping).sync();
+            fail("Sync should have failed");
+        } catch (IOException expected) {
+        }
+        // Sold meanwhile, a change after the lost push
+        first.addQuantity("a", -1);
+        sync(first);
+        sync(second);
+
+        assertEquals(5L, first.get("a", SyncChange.QUANTITY));
+        assertEquals(5L, second.get("a", SyncChange.QUANTITY));
+    }
+
+    @Test
+    public void sync_resumesPullFromLastBatch() throws IOException {
+        Device first = new Device("first");
+        Device second = new Device("second");
+        for (int i = 0; i < 10; i++) {
+            first.insert("item" + i, "Item " + i, 100, i);
+        }
+        sync(first);
+
+        // Fails on the third pull
+        SyncServer failing = new SyncServer() {
+            private int mPulls;
+
+            @Override
+            public byte[] push(byte[] batch) throws IOException {
+                return mServer.push(batch);
+            }
+
+            @Override
+            public byte[] pull(byte[] request) throws IOException {
+                if (++mPulls == 3) {
+                    throw new IOException("Connection reset");
+                }
+                return mServer.pull(request);
+            }
+        };
+        try {
+            new SyncEngine(second, failing, 3).sync();
+            fail("Sync should have failed");
+        } catch (IOException expected) {
+        }
+        assertEquals(6, second.items().size());
+
+        SyncEngine engine = new SyncEngine(second, mServer, 3);
+        engine.sync();
+
+        assertEquals(4, engine.getPulledCount());
+        assertEquals(first.items(), second.items());
+    }
+
+    @Test
+    public void merge_rebasesLocalQuantityChangeOnServerQuantity() {
+        Object[] local = new Object[SyncChange.COLUMN_COUNT];
+        local[SyncChange.NAME] = "Local";
+        local[SyncChange.QUANTITY] = 7L;
+        Object[] remote = new Object[SyncChange.COLUMN_COUNT];
+        remote[SyncChange.NAME] = "Remote";
+        remote[SyncChange.QUANTITY] = 20L;
+        int dirty = 1 << SyncChange.QUANTITY;
+
+        Object[] merged = SyncEngine.merge(local, dirty, 10L,
+                SyncChange.update("a", SyncChange.ALL_COLUMNS, remote, false));
+
+        assertEquals("Remote", merged[SyncChange.NAME]);
+        assertEquals(17L, merged[SyncChange.QUANTITY]);
+        assertArrayEquals(new Object[]{"Local", null, 7L, null, null, null, null, null}, local);
+    }
+
+    private SyncEngine sync(Device device) throws IOException {
+        SyncEngine engine = new SyncEngine(device, mServer, 4);
+        engine.sync();
+        return engine;
+    }
+
+    /**
+     * A device with its items in memory, doing what the sync triggers and InventorySyncStore
+     * do in the database.
+     */
+    private static final class Device implements SyncStore {
+
+        private final String mClientId;
+        private final Map<String, Row> mRows = new LinkedHashMap<>();
+        // Sync ID to change sequence number
+        private final Map<String, Long> mTombstones = new LinkedHashMap<>();
+        private long mLastSeq;
+        private long mPushedSeq;
+        private long mPulledVersion;
+        private byte[] mPendingPush;
+
+        Device(String clientId) {
+            mClientId = clientId;
+        }
+
+        void insert(String syncId, String name, long price, long quantity) {
+            Row row = new Row();
+            row.mValues[SyncChange.NAME] = name;
+            row.mValues[SyncChange.PRICE] = price;
+            row.mValues[SyncChange.QUANTITY] = quantity;
+            row.mValues[SyncChange.SUPPLIER_NAME] = "Supplier";
+            row.mValues[SyncChange.REORDER_LEVEL] = 5L;
+            row.mChangeSeq = ++mLastSeq;
+            row.mDirty = SyncChange.ALL_COLUMNS;
+            mRows.put(syncId, row);
+        }
+
+        void set(String syncId, int column, Object value) {
+            Row row = mRows.get(syncId);
+            row.mValues[column] = value;
+            row.mChangeSeq = ++mLastSeq;
+            row.mDirty |= 1 << column;
+        }
+
+        void addQuantity(String syncId, long units) {
+            set(syncId, SyncChange.QUANTITY, (Long) get(syncId, SyncChange.QUANTITY) + units);
+        }
+
+        void delete(String syncId) {
+            mRows.remove(syncId);
+            mTombstones.put(syncId, ++mLastSeq);
+        }
+
+        Object get(String syncId, int column) {
+            return mRows.get(syncId).mValues[column];
+        }
+
+        Map<String, List<Object>> items() {
+            Map<String, List<Object>> items = new TreeMap<>();
+            for (Map.Entry<String, Row> row : mRows.entrySet()) {
+                items.put(row.getKey(), Arrays.asList(row.getValue().mValues));
+            }
+            return items;
+        }
+
+        @Override
+        public String getClientId() {
+            return mClientId;
+        }
+
+        @Override
+        public long getPulledVersion() {
+            return mPulledVersion;
+        }
+
+        @Override
+        public SyncBatch takeChanges(int limit) {
+            try {
+                if (mPendingPush != null) {
+                    return SyncBatch.decode(mPendingPush);
+                }
+                // Items and tombstones in change sequence order
+                Map<Long, SyncChange> changed = new TreeMap<>();
+                for (Map.Entry<String, Row> entry : mRows.entrySet()) {
+                    Row row = entry.getValue();
+                    if (row.mChangeSeq > mPushedSeq) {
+                        Object[] values = row.mValues.clone();
+                        boolean delta = row.mSyncedQuantity != null;
+                        if (delta) {
+                            values[SyncChange.QUANTITY] = (Long) values[SyncChange.QUANTITY] - row.mSyncedQuantity;
+                        }
+                        changed.put(row.mChangeSeq, SyncChange.update(entry.getKey(), row.mDirty, values, delta));
+                    }
+                }
+                for (Map.Entry<String, Long> tombstone : mTombstones.entrySet()) {
+                    if (tombstone.getValue() > mPushedSeq) {
+                        changed.put(tombstone.getValue(), SyncChange.deletion(tombstone.getKey()));
+                    }
+                }
+                List<SyncChange> changes = new ArrayList<>();
+                long seq = mPushedSeq;
+                for (Map.Entry<Long, SyncChange> change : changed.entrySet()) {
+                    if (changes.size() == limit) {
+                        break;
+                    }
+                    seq = change.getKey();
+                    changes.add(change.getValue());
+                }
+                SyncBatch batch = new SyncBatch(mClientId, mPulledVersion, seq, false, changes);
+                if (changes.isEmpty()) {
+                    return batch;
+                }
+
+                for (Row row : mRows.values()) {
+                    if (row.mChangeSeq > mPushedSeq && row.mChangeSeq <= seq) {
+                        row.mDirty = 0;
+                        row.mSyncedQuantity = (Long) row.mValues[SyncChange.QUANTITY];
+                    }
+                }
+                for (SyncChange change : changes) {
+                    if (change.isDeleted()) {
+                        mTombstones.remove(change.getSyncId());
+                    }
+                }
+                mPushedSeq = seq;
+                mPendingPush = batch.encode();
+                return batch;
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void acknowledge(SyncBatch response) {
+            apply(response.getChanges());
+            mPendingPush = null;
+        }
+
+        @Override
+        public void applyPulled(SyncBatch response) {
+            apply(response.getChanges());
+            mPulledVersion = response.getVersion();
+        }
+
+        private void apply(List<SyncChange> changes) {
+            for (SyncChange change : changes) {
+                Row row = mRows.get(change.getSyncId());
+                if (row == null) {
+                    if (!change.isDeleted() && !mTombstones.containsKey(change.getSyncId())) {
+                        row = new Row();
+                        row.mValues = change.getValues().clone();
+                        row.mSyncedQuantity = (Long) change.getValue(SyncChange.QUANTITY);
+                        mRows.put(change.getSyncId(), row);
+                    }
+                } else if (change.isDeleted()) {
+                    mRows.remove(change.getSyncId());
+                } else {
+                    row.mValues = SyncEngine.merge(row.mValues, row.mDirty, row.mSyncedQuantity, change);
+                    row.mSyncedQuantity = (Long) change.getValue(SyncChange.QUANTITY);
+                }
+            }
+        }
+    }
+
+    private static final class Row {
+        Object[] mValues = new Object[SyncChange.COLUMN_COUNT];
+        long mChangeSeq;
+        int mDirty;
+        Long mSyncedQuantity;
+    }
+}
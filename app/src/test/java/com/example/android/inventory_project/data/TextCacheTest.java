@@ -0,0 +1,107 @@
+package com.example.android.inventory_project.data;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Tests of {@link TextCache}, including that binding rows that were shown before, the way
+ * InventoryCursorAdapter does while scrolling, allocates nothing.
+ */
+public class TextCacheTest {
+
+    // A screen of rows, the typed values of an adapter snapshot
+    private static final int ROWS = 20;
+
+    @Test
+    public void get_formatsOnceAndThenHits() {
+        TextCache cache = TextCache.forPrices(16);
+
+        String text = cache.get(1999);
+
+        assertEquals("19.99", text);
+        assertSame(text, cache.get(1999));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void get_formatsNumbersAndPrices() {
+        assertEquals("42", TextCache.forNumbers(16).get(42));
+        assertEquals("0.42", TextCache.forPrices(16).get(42));
+    }
+
+    @Test
+    public void get_replacesValueInSameSlot() {
+        TextCache cache = TextCache.forNumbers(1);
+
+        assertEquals("1", cache.get(1));
+        assertEquals("2", cache.get(2));
+        assertEquals("1", cache.get(1));
+        assertEquals(3, cache.getMissCount());
+    }
+
+    @Test
+    public void get_cachesZero() {
+        TextCache cache = TextCache.forNumbers(16);
+
+        assertEquals("0", cache.get(0));
+        assertEquals("0", cache.get(0));
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void create_rejectsSizeNotPowerOfTwo() {
+        TextCache.forPrices(100);
+    }
+
+    @Test
+    public void get_rebindingShownRowsAllocatesNothing() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        int[] prices = new int[ROWS];
+        int[] quantities = new int[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            prices[i] = 199 + i * 1250;
+            quantities[i] = i * 7;
+        }
+        TextCache priceTexts = TextCache.forPrices(256);
+        TextCache quantityTexts = TextCache.forNumbers(256);
+        // Show the rows once, and warm up the loop so it isn't measured while interpreted
+        int length = bind(prices, quantities, priceTexts, quantityTexts, 20000);
+        long misses = priceTexts.getMissCount() + quantityTexts.getMissCount();
+
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        length += bind(prices, quantities, priceTexts, quantityTexts, 1000);
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+        assertEquals(0, allocated);
+        assertEquals(misses, priceTexts.getMissCount() + quantityTexts.getMissCount());
+        assertTrue(length > 0);
+    }
+
+    // Binds every row times times, returning the length of the texts so the lookups
+    // aren't optimized away
+    private static int bind(int[] prices, int[] quantities, TextCache priceTexts,
+                            TextCache quantityTexts, int times) {
+        int length = 0;
+        for (int i = 0; i < times; i++) {
+            for (int row = 0; row < prices.length; row++) {
+                length += priceTexts.get(prices[row]).length();
+                length += quantityTexts.get(quantities[row]).length();
+            }
+        }
+        return length;
+    }
+}
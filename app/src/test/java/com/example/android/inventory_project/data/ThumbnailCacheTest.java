@@ -0,0 +1,87 @@
+package com.example.android.inventory_project.data;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests of {@link ThumbnailCache}, the thumbnails of the photos on disk.
+ */
+public class ThumbnailCacheTest {
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void get_returnsThumbnailPut() throws IOException {
+        ThumbnailCache cache = new ThumbnailCache(mFolder.getRoot(), 100);
+        String key = ThumbnailCache.getKey("3f2a.jpg", 168, 168);
+        cache.put(key, new byte[10]);
+
+        File file = cache.get(key);
+
+        assertNotNull(file);
+        assertEquals(10, file.length());
+        assertNull(cache.get(ThumbnailCache.getKey("3f2a.jpg", 288, 288)));
+    }
+
+    @Test
+    public void put_overMaxSize_deletesLeastRecentlyUsed() throws IOException {
+        ThumbnailCache cache = new ThumbnailCache(mFolder.getRoot(), 30);
+        cache.put("a", new byte[10]);
+        cache.put("b", new byte[10]);
+        cache.put("c", new byte[10]);
+        // Used, so b is now the least recently used
+        cache.get("a");
+
+        cache.put("d", new byte[10]);
+
+        assertNull(cache.get("b"));
+        assertFalse(new File(mFolder.getRoot(), "b").exists());
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("c"));
+        assertNotNull(cache.get("d"));
+        assertEquals(30, cache.getSize());
+    }
+
+    @Test
+    public void newCache_readsThumbnailsOnDisk() throws IOException {
+        ThumbnailCache cache = new ThumbnailCache(mFolder.getRoot(), 100);
+        cache.put("a", new byte[10]);
+        cache.put("b", new byte[20]);
+        new File(mFolder.getRoot(), "c.tmp").createNewFile();
+
+        ThumbnailCache reopened = new ThumbnailCache(mFolder.getRoot(), 100);
+
+        assertEquals(30, reopened.getSize());
+        assertNotNull(reopened.get("b"));
+        assertFalse(new File(mFolder.getRoot(), "c.tmp").exists());
+    }
+
+    @Test
+    public void get_fileDeleted_returnsNull() throws IOException {
+        ThumbnailCache cache = new ThumbnailCache(mFolder.getRoot(), 100);
+        cache.put("a", new byte[10]);
+        new File(mFolder.getRoot(), "a").delete();
+
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void sampleSize_keepsImageAtLeastTargetSize() {
+        // A 12 MP photo into a 56dp row at xxhdpi
+        assertEquals(16, ThumbnailCache.sampleSize(4000, 3000, 168, 168));
+        assertEquals(1, ThumbnailCache.sampleSize(300, 300, 168, 168));
+        assertEquals(1, ThumbnailCache.sampleSize(100, 100, 168, 168));
+        assertEquals(2, ThumbnailCache.sampleSize(336, 400, 168, 168));
+    }
+}
@@ -0,0 +1,1204 @@
+package com.example.android.inventory_project.benchmark;
+
+import com.example.android.inventory_project.data.CatalogSnapshot;
+import com.example.android.inventory_project.data.InventorySql;
+import com.example.android.inventory_project.data.Prices;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The inventory database as InventoryDbHelper creates it, opened through JDBC so the data
+ * layer can be measured on a plain JVM. The operations run the same SQL as InventoryProvider.
+ * <p>
+ * The schema and the sale statements are the ones of InventorySql, shared with the app. The
+ * other statements here mirror InventoryProvider. Keep them in step when it changes, or the
+ * numbers stop meaning anything.
+ */
+final class BenchmarkDatabase implements AutoCloseable {
+
+    private static final String SQL_INSERT_ITEM =
+            "INSERT INTO inventory (name, price, quantity, suppName, suppPhone) VALUES (?, ?, ?, ?, ?)";
+    // Same as the read of InventoryProvider's item cache on a miss
+    private static final String SQL_QUERY_ITEM = "SELECT _id, name, price, quantity, suppName, suppPhone, " +
+            "barcode, reorderLevel, photo FROM inventory WHERE _id = ?";
+    // Same as InventoryProvider's SQL_ITEM_ID_BY_BARCODE
+    private static final String SQL_ITEM_ID_BY_BARCODE = "SELECT _id FROM inventory WHERE barcode = ?";
+    // What a query on the items URI with a barcode selection runs
+    private static final String SQL_QUERY_ITEM_BY_BARCODE =
+            "SELECT _id, name, price, quantity, suppName, suppPhone, barcode FROM inventory WHERE barcode=?";
+    private static final String SQL_QUERY_CATALOG =
+            "SELECT _id, name, price, quantity, photo FROM inventory";
+    // What a page of CatalogPager runs, the rows after a key in _ID order
+    private static final String SQL_CATALOG_PAGE =
+            "SELECT _id, name, price, quantity, photo FROM inventory WHERE _id > ? ORDER BY _id LIMIT ?";
+    // The same page found by its position instead of a key
+    private static final String SQL_CATALOG_PAGE_AT =
+            "SELECT _id, name, price, quantity, photo FROM inventory ORDER BY _id LIMIT ? OFFSET ?";
+    // Same as a query on InventoryProvider's search URI with the catalog projection
+    private static final String SQL_SEARCH = "SELECT _id, name, price, quantity, photo FROM inventory " +
+            "JOIN (SELECT docid, length(offsets(inventory_fts)) AS rank FROM inventory_fts " +
+            "WHERE inventory_fts MATCH ?) AS hits ON _id = hits.docid ORDER BY hits.rank DESC, name LIMIT ?";
+    // Same as CatalogSnapshotWriter's SQL_FIRST_PAGE, the first page CatalogPager loads
+    private static final String SQL_FIRST_PAGE =
+            "SELECT _id, name, price, quantity, photo FROM inventory ORDER BY _id LIMIT " + CatalogSnapshot.MAX_ROWS;
+    private static final String SQL_ITEM_SALES = "SELECT _id, itemId, ts, quantity, price FROM sales " +
+            "WHERE itemId = ? AND ts >= ? AND ts < ? ORDER BY ts, _id";
+    private static final String SQL_INSERT_ITEM_WITH_SKU =
+            "INSERT INTO inventory (name, price, quantity, suppName, suppPhone, sku) VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String SQL_UPSERT_REPLACE =
+            "UPDATE inventory SET name = ?1, price = ?2, quantity = ?3, suppName = ?4, suppPhone = ?5, " +
+                    "reorderLevel = ifnull(?7, reorderLevel) WHERE sku = ?6";
+    private static final String SQL_UPSERT_ADD =
+            "UPDATE inventory SET name = ?1, price = ?2, quantity = quantity + ?3, suppName = ?4, " +
+                    "suppPhone = ?5, reorderLevel = ifnull(?7, reorderLevel) WHERE sku = ?6";
+    // What callers had to do before the upsert: look the item up, then update or insert it
+    private static final String SQL_ITEM_ID_BY_SKU = "SELECT _id FROM inventory WHERE sku = ?";
+    private static final String SQL_UPDATE_ITEM =
+            "UPDATE inventory SET name = ?, price = ?, quantity = ?, suppName = ?, suppPhone = ? WHERE _id = ?";
+    private static final String SQL_STATS_TOTALS =
+            "SELECT itemCount, totalUnits, totalValue, lowStockCount FROM inventory_totals";
+    // What the totals would cost without the summary table
+    private static final String SQL_STATS_SCAN = "SELECT COUNT(*), ifnull(SUM(quantity), 0), " +
+            "ifnull(SUM(price * quantity), 0), ifnull(SUM(ifnull(quantity, 0) < reorderLevel), 0) FROM inventory";
+    private static final String SQL_STATS_BY_SUPPLIER = "SELECT suppName, COUNT(*), " +
+            "ifnull(SUM(quantity), 0), ifnull(SUM(price * quantity), 0), " +
+            "ifnull(SUM(ifnull(quantity, 0) < reorderLevel), 0) FROM inventory GROUP BY suppName ORDER BY suppName";
+    private static final String SQL_EXPORT_CHUNK =
+            "SELECT _id, name, price, quantity, suppName, suppPhone, sku, barcode FROM inventory " +
+                    "WHERE _id > ? ORDER BY _id LIMIT ?";
+
+    // Same as InventoryProvider's EXPORT_CHUNK_SIZE
+    private static final int EXPORT_CHUNK_SIZE = 1000;
+
+    private static final String SQL_CHANGES_CHUNK = "SELECT _id, itemId, quantity, reorderLevel " +
+            "FROM quantity_changes WHERE _id > ? ORDER BY _id LIMIT ?";
+    private static final String SQL_PRUNE_CHANGES = "DELETE FROM quantity_changes WHERE _id <= ?";
+    // Move an item across its reorder level, down to nothing or back up
+    private static final String SQL_TOGGLE_STOCK = "UPDATE inventory SET quantity = " +
+            "CASE WHEN ifnull(quantity, 0) < reorderLevel THEN 100 ELSE 0 END WHERE _id = ?";
+    // What finding the items low on stock costs without the change log
+    private static final String SQL_LOW_STOCK_SCAN = "SELECT _id, quantity, reorderLevel FROM inventory " +
+            "WHERE ifnull(quantity, 0) < reorderLevel";
+
+    private static final String SQL_INSERT_LOCATION = "INSERT INTO location (name) VALUES (?)";
+    // Every item at every location, with random stock
+    private static final String SQL_FILL_STOCK = "INSERT INTO stock (locationId, itemId, quantity) " +
+            "SELECT location._id, inventory._id, abs(random() % 1000) FROM inventory, location " +
+            "ORDER BY inventory._id, location._id";
+    // What a page of LocationEntry.buildInventoryUri() runs with the projection of the catalog
+    private static final String SQL_LOCATION_PAGE = "SELECT inventory._id AS _id, inventory.name AS name, " +
+            "inventory.price AS price, stock.quantity AS quantity FROM stock JOIN inventory " +
+            "ON inventory._id = stock.itemId WHERE stock.locationId = ? AND stock.itemId > ? " +
+            "ORDER BY stock.itemId LIMIT ?";
+    private static final String SQL_LOCATION_STATS = "SELECT locationId AS _id, COUNT(*) AS itemCount, " +
+            "ifnull(SUM(stock.quantity), 0) AS totalUnits FROM stock GROUP BY locationId ORDER BY locationId";
+    private static final String SQL_ITEM_STOCK =
+            "SELECT _id, locationId, itemId, quantity FROM stock WHERE itemId = ? ORDER BY locationId";
+    // Same as InventoryProvider's transfer statements
+    private static final String SQL_COUNT_LOCATION = "SELECT COUNT(*) FROM location WHERE _id = ?";
+    private static final String SQL_TAKE_STOCK = "UPDATE stock SET quantity = quantity - ?1 " +
+            "WHERE locationId = ?2 AND itemId = ?3 AND quantity >= ?1";
+    private static final String SQL_GIVE_STOCK = "INSERT OR REPLACE INTO stock (locationId, itemId, quantity) " +
+            "VALUES (?2, ?3, ifnull((SELECT quantity FROM stock WHERE locationId = ?2 AND itemId = ?3), 0) + ?1)";
+    private static final String SQL_STOCK_QUANTITY = "SELECT quantity FROM stock WHERE locationId = ? AND itemId = ?";
+    // InventorySql.SQL_SELL_ITEM before version 13, which left the sync tracking to the triggers
+    private static final String SQL_SELL_ITEM_UNTRACKED =
+            "UPDATE inventory SET quantity = quantity - ? WHERE _id = ? AND quantity >= ?";
+    private static final String SYNC_TRIGGER_PREFIX = "CREATE TRIGGER inventory_sync_";
+    private static final String[] SYNC_TRIGGERS = {"inventory_sync_insert", "inventory_sync_update",
+            "inventory_sync_delete"};
+
+    // Same as LowStockCheck.CHUNK_SIZE
+    private static final int CHANGES_CHUNK_SIZE = 500;
+
+    private static final String[] SUPPLIERS = {
+            "Razer", "Logitech", "Sennheiser", "Sony", "Bose", "HyperX", "SteelSeries", "Corsair",
+            "Audio-Technica", "Beyerdynamic", "JBL", "Philips", "Plantronics", "Jabra", "Skullcandy"
+    };
+    private static final String[] WORDS = {
+            "Kraken", "Pro", "Wireless", "Studio", "Gaming", "Elite", "Sport", "Noise", "Cancelling",
+            "Bass", "Open", "Closed", "Classic", "Mini", "Max", "Air", "Ultra", "Lite"
+    };
+
+    private final File mFile;
+    private final PragmaConfig mConfig;
+    private final Connection mConnection;
+    private final Random mRandom = new Random(42);
+
+    private final PreparedStatement mInsertItem;
+    private final PreparedStatement mQueryItem;
+    private final PreparedStatement mItemIdByBarcode;
+    private final PreparedStatement mCatalogPage;
+    private final PreparedStatement mCatalogPageAt;
+    private final PreparedStatement mSearch;
+    // The LIKE searches, by number of words
+    private final Map<Integer, PreparedStatement> mSearchLike = new HashMap<>();
+    private PreparedStatement mSellItem;
+    private final PreparedStatement mItemQuantity;
+    private final PreparedStatement mInsertSale;
+    private final PreparedStatement mItemSales;
+    private final PreparedStatement mExportChunk;
+    private final PreparedStatement mInsertItemWithSku;
+    private final PreparedStatement mUpsertReplace;
+    private final PreparedStatement mUpsertAdd;
+    private final PreparedStatement mItemIdBySku;
+    private final PreparedStatement mUpdateItem;
+    private final PreparedStatement mChangesChunk;
+    private final PreparedStatement mPruneChanges;
+    private final PreparedStatement mToggleStock;
+    private final PreparedStatement mLocationPage;
+    private final PreparedStatement mItemStock;
+    private final PreparedStatement mCountLocation;
+    private final PreparedStatement mTakeStock;
+    private final PreparedStatement mGiveStock;
+    private final PreparedStatement mStockQuantity;
+
+    private BenchmarkDatabase(File file, PragmaConfig config) throws SQLException {
+        mFile = file;
+        mConfig = config;
+        mConnection = openConnection();
+        try (Statement statement = mConnection.createStatement()) {
+            for (String sql : InventorySql.SCHEMA) {
+                statement.execute(sql);
+            }
+        }
+        mInsertItem = mConnection.prepareStatement(SQL_INSERT_ITEM);
+        mQueryItem = mConnection.prepareStatement(SQL_QUERY_ITEM);
+        mItemIdByBarcode = mConnection.prepareStatement(SQL_ITEM_ID_BY_BARCODE);
+        mCatalogPage = mConnection.prepareStatement(SQL_CATALOG_PAGE);
+        mCatalogPageAt = mConnection.prepareStatement(SQL_CATALOG_PAGE_AT);
+        mSearch = mConnection.prepareStatement(SQL_SEARCH);
+        mSellItem = mConnection.prepareStatement(InventorySql.SQL_SELL_ITEM);
+        mItemQuantity = mConnection.prepareStatement(InventorySql.SQL_ITEM_QUANTITY);
+        mInsertSale = mConnection.prepareStatement(InventorySql.SQL_INSERT_SALE);
+        mItemSales = mConnection.prepareStatement(SQL_ITEM_SALES);
+        mExportChunk = mConnection.prepareStatement(SQL_EXPORT_CHUNK);
+        mInsertItemWithSku = mConnection.prepareStatement(SQL_INSERT_ITEM_WITH_SKU);
+        mUpsertReplace = mConnection.prepareStatement(SQL_UPSERT_REPLACE);
+        mUpsertAdd = mConnection.prepareStatement(SQL_UPSERT_ADD);
+        mItemIdBySku = mConnection.prepareStatement(SQL_ITEM_ID_BY_SKU);
+        mUpdateItem = mConnection.prepareStatement(SQL_UPDATE_ITEM);
+        mChangesChunk = mConnection.prepareStatement(SQL_CHANGES_CHUNK);
+        mPruneChanges = mConnection.prepareStatement(SQL_PRUNE_CHANGES);
+        mToggleStock = mConnection.prepareStatement(SQL_TOGGLE_STOCK);
+        mLocationPage = mConnection.prepareStatement(SQL_LOCATION_PAGE);
+        mItemStock = mConnection.prepareStatement(SQL_ITEM_STOCK);
+        mCountLocation = mConnection.prepareStatement(SQL_COUNT_LOCATION);
+        mTakeStock = mConnection.prepareStatement(SQL_TAKE_STOCK);
+        mGiveStock = mConnection.prepareStatement(SQL_GIVE_STOCK);
+        mStockQuantity = mConnection.prepareStatement(SQL_STOCK_QUANTITY);
+    }
+
+    /**
+     * Creates an empty database in a new temporary file, which is deleted on close, with the
+     * settings the app uses.
+     */
+    static BenchmarkDatabase create() throws Exception {
+        return create(PragmaConfig.APP);
+    }
+
+    /**
+     * Creates an empty database in a new temporary file with the given settings.
+     */
+    static BenchmarkDatabase create(PragmaConfig config) throws Exception {
+        File file = File.createTempFile("inventory-benchmark", ".db");
+        file.delete();
+        return new BenchmarkDatabase(file, config);
+    }
+
+    /**
+     * Opens another connection to the database with the same settings, for another thread.
+     * Like a connection of Android's connection pool, it sees the committed data only.
+     */
+    Connection openConnection() throws SQLException {
+        Connection connection = DriverManager.getConnection("jdbc:sqlite:" + mFile.getAbsolutePath());
+        mConfig.apply(connection);
+        return connection;
+    }
+
+    Connection getConnection() {
+        return mConnection;
+    }
+
+    /**
+     * Inserts one item in its own transaction, like InventoryProvider.insert().
+     */
+    long insert() throws SQLException {
+        bindRandomItem(mInsertItem);
+        mInsertItem.executeUpdate();
+        try (ResultSet keys = mInsertItem.getGeneratedKeys()) {
+            return keys.next() ? keys.getLong(1) : -1;
+        }
+    }
+
+    /**
+     * Inserts count items in one transaction, like InventoryProvider.bulkInsert().
+     */
+    int bulkInsert(int count) throws SQLException {
+        mConnection.setAutoCommit(false);
+        try {
+            for (int i = 0; i < count; i++) {
+                bindRandomItem(mInsertItem);
+                mInsertItem.executeUpdate();
+            }
+            mConnection.commit();
+        } finally {
+            mConnection.setAutoCommit(true);
+        }
+        return count;
+    }
+
+    /**
+     * Inserts count items in one transaction like InventoryProvider.applyBatch() with an
+     * insert operation per item: every insert goes through SQLiteDatabase.insert(), which
+     * compiles its INSERT again, where bulkInsert() compiles it once. On a device the
+     * statement cache of the connection saves most of these compiles.
+     */
+    int applyBatch(int count) throws SQLException {
+        mConnection.setAutoCommit(false);
+        try {
+            for (int i = 0; i < count; i++) {
+                try (PreparedStatement insert = mConnection.prepareStatement(SQL_INSERT_ITEM)) {
+                    bindRandomItem(insert);
+                    insert.executeUpdate();
+                }
+            }
+            mConnection.commit();
+        } finally {
+            mConnection.setAutoCommit(true);
+        }
+        return count;
+    }
+
+    /**
+     * Fills the table with rows items, in large transactions.
+     */
+    void fill(int rows) throws SQLException {
+        int batch = 10000;
+        for (int inserted = 0; inserted < rows; inserted += batch) {
+            bulkInsert(Math.min(batch, rows - inserted));
+        }
+    }
+
+    /**
+     * Reads all columns of one item, like a query on an item URI.
+     */
+    boolean queryItem(long id) throws SQLException {
+        mQueryItem.setLong(1, id);
+        try (ResultSet item = mQueryItem.executeQuery()) {
+            if (!item.next()) {
+                return false;
+            }
+            item.getLong(1);
+            item.getString(2);
+            item.getInt(3);
+            item.getInt(4);
+            item.getString(5);
+            item.getLong(6);
+            item.getString(7);
+            item.getInt(8);
+            item.getString(9);
+            return true;
+        }
+    }
+
+    /**
+     * Reads all columns of one item, like InventoryProvider's item cache on a miss.
+     *
+     * @return the columns of SQL_QUERY_ITEM, or null if there is no such item
+     */
+    Object[] readItem(long id) throws SQLException {
+        mQueryItem.setLong(1, id);
+        try (ResultSet item = mQueryItem.executeQuery()) {
+            if (!item.next()) {
+                return null;
+            }
+            return new Object[]{item.getLong(1), item.getString(2), item.getInt(3), item.getInt(4),
+                    item.getString(5), item.getLong(6), item.getString(7), item.getInt(8), item.getString(9)};
+        }
+    }
+
+    /**
+     * Gives every item a barcode made from its _ID, see barcodeOf().
+     */
+    void assignBarcodes() throws SQLException {
+        try (Statement statement = mConnection.createStatement()) {
+            statement.executeUpdate("UPDATE inventory SET barcode = CAST(4000000000000 + _id AS TEXT)");
+        }
+    }
+
+    /**
+     * @return the barcode assignBarcodes() gives the item with the _ID, 13 digits like an EAN-13
+     */
+    static String barcodeOf(long id) {
+        return String.valueOf(4000000000000L + id);
+    }
+
+    /**
+     * Finds the _ID of the item with a barcode with a statement compiled once, like
+     * InventoryProvider's METHOD_LOOKUP_BARCODE when the barcode isn't cached.
+     *
+     * @return the _ID, or -1 if no item has the barcode
+     */
+    long lookupBarcode(String barcode) throws SQLException {
+        mItemIdByBarcode.setString(1, barcode);
+        try (ResultSet result = mItemIdByBarcode.executeQuery()) {
+            return result.next() ? result.getLong(1) : -1;
+        }
+    }
+
+    /**
+     * Reads the item with a barcode the way a query on the items URI with a barcode selection
+     * does: the statement is compiled for the query and the whole row is read.
+     */
+    boolean queryByBarcode(String barcode) throws SQLException {
+        try (PreparedStatement query = mConnection.prepareStatement(SQL_QUERY_ITEM_BY_BARCODE)) {
+            query.setString(1, barcode);
+            try (ResultSet item = query.executeQuery()) {
+                if (!item.next()) {
+                    return false;
+                }
+                for (int column = 1; column <= 7; column++) {
+                    item.getObject(column);
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Opens a connection the way the first query of a cold start does: a new connection with
+     * the settings of the app, which reads the schema, and the version check of
+     * SQLiteOpenHelper.
+     */
+    Connection openCold() throws SQLException {
+        Connection connection = openConnection();
+        try (Statement statement = connection.createStatement();
+             ResultSet version = statement.executeQuery("PRAGMA user_version")) {
+            version.next();
+        }
+        return connection;
+    }
+
+    /**
+     * Reads the first page of the catalog over the given connection into a snapshot, like
+     * CatalogSnapshotWriter.
+     */
+    static CatalogSnapshot readFirstPage(Connection connection) throws SQLException {
+        long[] ids = new long[CatalogSnapshot.MAX_ROWS];
+        String[] names = new String[CatalogSnapshot.MAX_ROWS];
+        int[] prices = new int[CatalogSnapshot.MAX_ROWS];
+        int[] quantities = new int[CatalogSnapshot.MAX_ROWS];
+        String[] photos = new String[CatalogSnapshot.MAX_ROWS];
+        int count = 0;
+        try (Statement statement = connection.createStatement();
+             ResultSet page = statement.executeQuery(SQL_FIRST_PAGE)) {
+            while (page.next()) {
+                ids[count] = page.getLong(1);
+                names[count] = page.getString(2);
+                prices[count] = page.getInt(3);
+                quantities[count] = page.getInt(4);
+                photos[count] = page.getString(5);
+                count++;
+            }
+        }
+        return new CatalogSnapshot(count, ids, names, prices, quantities, photos);
+    }
+
+    /**
+     * Reads every row of the catalog projection, like an unpaged catalog query.
+     */
+    int scanCatalog() throws SQLException {
+        int rows = 0;
+        try (Statement statement = mConnection.createStatement();
+             ResultSet catalog = statement.executeQuery(SQL_QUERY_CATALOG)) {
+            while (catalog.next()) {
+                catalog.getLong(1);
+                catalog.getString(2);
+                catalog.getInt(3);
+                catalog.getInt(4);
+                catalog.getString(5);
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Reads the page of the catalog after the given _ID, like a page of CatalogPager, and
+     * keeps its rows as the cursor of the page does.
+     */
+    Object[][] queryCatalogPage(long afterId, int limit) throws SQLException {
+        mCatalogPage.setLong(1, afterId);
+        mCatalogPage.setInt(2, limit);
+        try (ResultSet page = mCatalogPage.executeQuery()) {
+            return readCatalogRows(page);
+        }
+    }
+
+    /**
+     * Reads the page of the catalog at the given row offset, skipping every row before it.
+     */
+    Object[][] queryCatalogPageAt(int offset, int limit) throws SQLException {
+        mCatalogPageAt.setInt(1, limit);
+        mCatalogPageAt.setInt(2, offset);
+        try (ResultSet page = mCatalogPageAt.executeQuery()) {
+            return readCatalogRows(page);
+        }
+    }
+
+    /**
+     * Reads and keeps every row of the catalog, like the one cursor the catalog was loaded
+     * in before it was paged.
+     */
+    Object[][] loadCatalog() throws SQLException {
+        try (Statement statement = mConnection.createStatement();
+             ResultSet catalog = statement.executeQuery(SQL_QUERY_CATALOG)) {
+            return readCatalogRows(catalog);
+        }
+    }
+
+    /**
+     * Searches the items through the full-text index, like InventoryProvider's search URI.
+     *
+     * @param matchQuery the FTS query, e.g. "kra* raz*" for "kra raz"
+     * @return the number of items found, at most limit
+     */
+    int search(String matchQuery, int limit) throws SQLException {
+        mSearch.setString(1, matchQuery);
+        mSearch.setInt(2, limit);
+        try (ResultSet result = mSearch.executeQuery()) {
+            return readCatalogRows(result).length;
+        }
+    }
+
+    /**
+     * The same search without the full-text index: every word has to be in the name or the
+     * supplier of an item, which only LIKE '%word%' on every row can find. The items come in
+     * name order, as without the index there is nothing to rank them by.
+     *
+     * @return the number of items found, at most limit
+     */
+    int searchLike(String[] words, int limit) throws SQLException {
+        PreparedStatement search = mSearchLike.get(words.length);
+        if (search == null) {
+            StringBuilder sql = new StringBuilder("SELECT _id, name, price, quantity, photo FROM inventory WHERE ");
+            for (int i = 0; i < words.length; i++) {
+                sql.append(i == 0 ? "" : " AND ").append("(name LIKE ?").append(i + 1)
+                        .append(" OR suppName LIKE ?").append(i + 1).append(')');
+            }
+            sql.append(" ORDER BY name LIMIT ?").append(words.length + 1);
+            search = mConnection.prepareStatement(sql.toString());
+            mSearchLike.put(words.length, search);
+        }
+        for (int i = 0; i < words.length; i++) {
+            search.setString(i + 1, "%" + words[i] + "%");
+        }
+        search.setInt(words.length + 1, limit);
+        try (ResultSet result = search.executeQuery()) {
+            return readCatalogRows(result).length;
+        }
+    }
+
+    // Rows of the catalog projection: _ID, name, price, quantity and photo
+    private static Object[][] readCatalogRows(ResultSet result) throws SQLException {
+        List<Object[]> rows = new ArrayList<>();
+        while (result.next()) {
+            rows.add(new Object[]{result.getLong(1), result.getString(2), result.getInt(3),
+                    result.getInt(4), result.getString(5)});
+        }
+        return rows.toArray(new Object[rows.size()][]);
+    }
+
+    /**
+     * Replaces the sync tracking of the schema, for comparing what it costs the sales: with
+     * counter, by the sync triggers of version 11, which count every change in sync_state,
+     * otherwise by none. Either way the sales stop numbering their own changes.
+     */
+    void replaceSyncTracking(boolean counter) throws SQLException {
+        try (Statement statement = mConnection.createStatement()) {
+            for (String trigger : SYNC_TRIGGERS) {
+                statement.execute("DROP TRIGGER " + trigger);
+            }
+            if (counter) {
+                // The first sync triggers of the schema are those of version 11
+                int created = 0;
+                for (String sql : InventorySql.SCHEMA) {
+                    if (created < SYNC_TRIGGERS.length && sql.startsWith(SYNC_TRIGGER_PREFIX)) {
+                        statement.execute(sql);
+                        created++;
+                    }
+                }
+            }
+        }
+        mSellItem.close();
+        mSellItem = mConnection.prepareStatement(SQL_SELL_ITEM_UNTRACKED);
+    }
+
+    /**
+     * Sells count units of an item, like InventoryProvider's METHOD_SELL call when no other
+     * sale shares its commit, and records it in the ledger.
+     *
+     * @return the quantity left, or -1 if there was not enough stock
+     */
+    int sell(long id, int count) throws SQLException {
+        mConnection.setAutoCommit(false);
+        try {
+            int quantity = sellInTransaction(id, count, System.currentTimeMillis(), true);
+            mConnection.commit();
+            return quantity;
+        } finally {
+            mConnection.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * The statements of one sale, like SaleWriter runs them, on the main connection inside a
+     * transaction the caller started.
+     *
+     * @param ledger whether to record the sale in the ledger
+     * @return the quantity left, or -1 if there was not enough stock
+     */
+    int sellInTransaction(long id, int count, long timestamp, boolean ledger) throws SQLException {
+        mSellItem.setInt(1, count);
+        mSellItem.setLong(2, id);
+        mSellItem.setInt(3, count);
+        if (mSellItem.executeUpdate() == 0) {
+            return -1;
+        }
+        int quantity;
+        mItemQuantity.setLong(1, id);
+        try (ResultSet result = mItemQuantity.executeQuery()) {
+            result.next();
+            quantity = result.getInt(1);
+        }
+        if (ledger) {
+            mInsertSale.setLong(1, timestamp);
+            mInsertSale.setInt(2, count);
+            mInsertSale.setLong(3, id);
+            mInsertSale.executeUpdate();
+        }
+        return quantity;
+    }
+
+    /**
+     * Reads the sales of an item in a time range, like a query on SaleEntry.buildItemSalesUri().
+     *
+     * @return the number of sales
+     */
+    int querySales(long itemId, long from, long to) throws SQLException {
+        mItemSales.setLong(1, itemId);
+        mItemSales.setLong(2, from);
+        mItemSales.setLong(3, to);
+        int sales = 0;
+        try (ResultSet result = mItemSales.executeQuery()) {
+            while (result.next()) {
+                result.getLong(1);
+                result.getLong(2);
+                result.getLong(3);
+                result.getInt(4);
+                result.getInt(5);
+                sales++;
+            }
+        }
+        return sales;
+    }
+
+    /**
+     * Sells count units of an item with SQL_SELL_ITEM alone, in auto-commit, on a connection
+     * of the caller's. Only the locking of SQLite keeps it apart from sales on other
+     * connections.
+     *
+     * @return true if there was enough stock
+     */
+    static boolean sell(Connection connection, long id, int count) throws SQLException {
+        try (PreparedStatement sell = connection.prepareStatement(InventorySql.SQL_SELL_ITEM)) {
+            sell.setInt(1, count);
+            sell.setLong(2, id);
+            sell.setInt(3, count);
+            return sell.executeUpdate() != 0;
+        }
+    }
+
+    /**
+     * Sets the stock of the items with _ID 1 to items to quantity, and empties the ledger.
+     */
+    void stock(int items, int quantity) throws SQLException {
+        try (PreparedStatement statement = mConnection.prepareStatement(
+                "UPDATE inventory SET quantity = ? WHERE _id <= ?");
+             Statement sales = mConnection.createStatement()) {
+            statement.setInt(1, quantity);
+            statement.setInt(2, items);
+            statement.executeUpdate();
+            sales.executeUpdate("DELETE FROM sales");
+        }
+    }
+
+    /**
+     * @return the quantity of an item
+     */
+    int queryQuantity(long id) throws SQLException {
+        mItemQuantity.setLong(1, id);
+        try (ResultSet result = mItemQuantity.executeQuery()) {
+            return result.next() ? result.getInt(1) : -1;
+        }
+    }
+
+    /**
+     * @return the units of an item sold according to the ledger
+     */
+    long queryUnitsSold(long id) throws SQLException {
+        try (PreparedStatement statement = mConnection.prepareStatement(
+                "SELECT ifnull(SUM(quantity), 0) FROM sales WHERE itemId = ?")) {
+            statement.setLong(1, id);
+            try (ResultSet result = statement.executeQuery()) {
+                return result.next() ? result.getLong(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * Gives every item enough stock that the sales of a benchmark never run out.
+     */
+    void restock() throws SQLException {
+        try (Statement statement = mConnection.createStatement()) {
+            statement.executeUpdate("UPDATE inventory SET quantity = 1000000000");
+        }
+    }
+
+    /**
+     * Inserts parsed CSV rows (name, price, quantity, suppName, suppPhone) in one
+     * transaction, like InventoryProvider.bulkInsert() called by CsvImporter.
+     */
+    int insertRows(Object[][] rows, int count) throws SQLException {
+        mConnection.setAutoCommit(false);
+        try {
+            for (int i = 0; i < count; i++) {
+                Object[] row = rows[i];
+                mInsertItem.setString(1, (String) row[0]);
+                mInsertItem.setInt(2, (Integer) row[1]);
+                mInsertItem.setInt(3, (Integer) row[2]);
+                mInsertItem.setString(4, (String) row[3]);
+                if (row[4] == null) {
+                    mInsertItem.setNull(5, Types.INTEGER);
+                } else {
+                    mInsertItem.setLong(5, (Long) row[4]);
+                }
+                mInsertItem.executeUpdate();
+            }
+            mConnection.commit();
+        } finally {
+            mConnection.setAutoCommit(true);
+        }
+        return count;
+    }
+
+    /**
+     * Writes a CSV file of rows random items in the export format, where about one row in
+     * a hundred has a negative quantity and must be rejected by an import.
+     */
+    void writeCsv(File file, int rows) throws IOException {
+        try (Writer writer = new BufferedWriter(new FileWriter(file), 64 * 1024)) {
+            writer.write("_id,name,price,quantity,suppName,suppPhone\n");
+            for (int i = 1; i <= rows; i++) {
+                writer.write(i + ",\"" + WORDS[mRandom.nextInt(WORDS.length)] + ", " +
+                        WORDS[mRandom.nextInt(WORDS.length)] + " " + mRandom.nextInt(100000) + "\"," +
+                        Prices.format(mRandom.nextInt(5000000)) + "," +
+                        (mRandom.nextInt(100) == 0 ? -1 : mRandom.nextInt(1000)) + "," +
+                        SUPPLIERS[mRandom.nextInt(SUPPLIERS.length)] + "," +
+                        (5550000000L + mRandom.nextInt(10000000)) + "\n");
+            }
+        }
+    }
+
+    /**
+     * Reads the totals from the summary table, like a query on StatsEntry.CONTENT_URI.
+     *
+     * @return itemCount, totalUnits, totalValue and lowStockCount
+     */
+    long[] queryTotals() throws SQLException {
+        return queryStats(SQL_STATS_TOTALS);
+    }
+
+    /**
+     * Computes the totals over the whole table, which the summary table saves.
+     */
+    long[] scanTotals() throws SQLException {
+        return queryStats(SQL_STATS_SCAN);
+    }
+
+    private long[] queryStats(String sql) throws SQLException {
+        try (Statement statement = mConnection.createStatement();
+             ResultSet result = statement.executeQuery(sql)) {
+            result.next();
+            return new long[]{result.getLong(1), result.getLong(2), result.getLong(3), result.getLong(4)};
+        }
+    }
+
+    /**
+     * Reads the totals per supplier, like a query on StatsEntry.SUPPLIER_URI.
+     *
+     * @return the number of suppliers
+     */
+    int queryTotalsBySupplier() throws SQLException {
+        int suppliers = 0;
+        try (Statement statement = mConnection.createStatement();
+             ResultSet result = statement.executeQuery(SQL_STATS_BY_SUPPLIER)) {
+            while (result.next()) {
+                result.getString(1);
+                result.getLong(2);
+                result.getLong(3);
+                result.getLong(4);
+                result.getLong(5);
+                suppliers++;
+            }
+        }
+        return suppliers;
+    }
+
+    /**
+     * Gives every item the SKU "SKU-" + _id.
+     */
+    void assignSkus() throws SQLException {
+        try (Statement statement = mConnection.createStatement()) {
+            statement.executeUpdate("UPDATE inventory SET sku = 'SKU-' || _id");
+        }
+    }
+
+    /**
+     * Upserts the items with the given SKUs, with random values, like a bulkInsert() on
+     * InventoryEntry.UPSERT_URI: update by SKU, insert if nothing was updated, all in one
+     * transaction.
+     *
+     * @param add whether to add to the quantity instead of replacing it
+     */
+    int upsert(String[] skus, boolean add) throws SQLException {
+        PreparedStatement update = add ? mUpsertAdd : mUpsertReplace;
+        mConnection.setAutoCommit(false);
+        try {
+            for (String sku : skus) {
+                bindRandomItem(update);
+                update.setString(6, sku);
+                update.setNull(7, Types.INTEGER);
+                if (update.executeUpdate() == 0) {
+                    bindRandomItem(mInsertItemWithSku);
+                    mInsertItemWithSku.setString(6, sku);
+                    mInsertItemWithSku.executeUpdate();
+                }
+            }
+            mConnection.commit();
+        } finally {
+            mConnection.setAutoCommit(true);
+        }
+        return skus.length;
+    }
+
+    /**
+     * Writes the items with the given SKUs the way callers had to before the upsert: query
+     * the _ID by SKU, then update that item or insert a new one. All in one transaction,
+     * so the difference to upsert() is only in the statements.
+     */
+    int queryThenWrite(String[] skus) throws SQLException {
+        mConnection.setAutoCommit(false);
+        try {
+            for (String sku : skus) {
+                long id = -1;
+                mItemIdBySku.setString(1, sku);
+                try (ResultSet result = mItemIdBySku.executeQuery()) {
+                    if (result.next()) {
+                        id = result.getLong(1);
+                    }
+                }
+                if (id != -1) {
+                    bindRandomItem(mUpdateItem);
+                    mUpdateItem.setLong(6, id);
+                    mUpdateItem.executeUpdate();
+                } else {
+                    bindRandomItem(mInsertItemWithSku);
+                    mInsertItemWithSku.setString(6, sku);
+                    mInsertItemWithSku.executeUpdate();
+                }
+            }
+            mConnection.commit();
+        } finally {
+            mConnection.setAutoCommit(true);
+        }
+        return skus.length;
+    }
+
+    /**
+     * Moves count random items across their reorder level in one transaction, each of which
+     * logs one change.
+     */
+    int toggleStock(int count) throws SQLException {
+        long maxId = getMaxId();
+        mConnection.setAutoCommit(false);
+        try {
+            for (int i = 0; i < count; i++) {
+                mToggleStock.setLong(1, 1 + (long) mRandom.nextInt((int) maxId));
+                mToggleStock.executeUpdate();
+            }
+            mConnection.commit();
+        } finally {
+            mConnection.setAutoCommit(true);
+        }
+        return count;
+    }
+
+    /**
+     * Handles the changes logged after the checkpoint like LowStockCheck.run(): read a chunk,
+     * keep the last change of each item, then prune the chunk.
+     *
+     * @return the new checkpoint
+     */
+    long checkLowStock(long checkpoint) throws SQLException {
+        while (true) {
+            Map<Long, Boolean> latest = new LinkedHashMap<>();
+            int chunkRows = 0;
+            mChangesChunk.setLong(1, checkpoint);
+            mChangesChunk.setInt(2, CHANGES_CHUNK_SIZE);
+            try (ResultSet chunk = mChangesChunk.executeQuery()) {
+                while (chunk.next()) {
+                    checkpoint = chunk.getLong(1);
+                    long itemId = chunk.getLong(2);
+                    latest.remove(itemId);
+                    latest.put(itemId, chunk.getInt(3) < chunk.getInt(4));
+                    chunkRows++;
+                }
+            }
+            if (chunkRows == 0) {
+                return checkpoint;
+            }
+            mPruneChanges.setLong(1, checkpoint);
+            mPruneChanges.executeUpdate();
+            if (chunkRows < CHANGES_CHUNK_SIZE) {
+                return checkpoint;
+            }
+        }
+    }
+
+    /**
+     * Finds the items low on stock by reading the table, as polling from the catalog would.
+     *
+     * @return the number of items low on stock
+     */
+    int scanLowStock() throws SQLException {
+        int items = 0;
+        try (Statement statement = mConnection.createStatement();
+             ResultSet result = statement.executeQuery(SQL_LOW_STOCK_SCAN)) {
+            while (result.next()) {
+                result.getLong(1);
+                result.getInt(2);
+                result.getInt(3);
+                items++;
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Adds count locations and stocks every item at each of them, in one transaction.
+     *
+     * @return the _IDs of the locations
+     */
+    long[] fillStock(int count) throws SQLException {
+        long[] locations = new long[count];
+        mConnection.setAutoCommit(false);
+        try (PreparedStatement insert = mConnection.prepareStatement(SQL_INSERT_LOCATION);
+             Statement statement = mConnection.createStatement()) {
+            for (int i = 0; i < count; i++) {
+                insert.setString(1, i == 0 ? "Warehouse" : "Store " + i);
+                insert.executeUpdate();
+                try (ResultSet keys = insert.getGeneratedKeys()) {
+                    keys.next();
+                    locations[i] = keys.getLong(1);
+                }
+            }
+            statement.executeUpdate(SQL_FILL_STOCK);
+            mConnection.commit();
+        } finally {
+            mConnection.setAutoCommit(true);
+        }
+        return locations;
+    }
+
+    /**
+     * Reads up to limit items of the catalog of a location after the given _ID, like a
+     * query on LocationEntry.buildInventoryUri() with the AFTER and LIMIT parameters.
+     *
+     * @return the number of rows read
+     */
+    int queryLocationPage(long locationId, long afterId, int limit) throws SQLException {
+        mLocationPage.setLong(1, locationId);
+        mLocationPage.setLong(2, afterId);
+        mLocationPage.setInt(3, limit);
+        int rows = 0;
+        try (ResultSet page = mLocationPage.executeQuery()) {
+            while (page.next()) {
+                page.getLong(1);
+                page.getString(2);
+                page.getInt(3);
+                page.getInt(4);
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Reads the totals per location, like a query on LocationEntry.STATS_URI.
+     *
+     * @return the units in stock over all locations
+     */
+    long queryLocationTotals() throws SQLException {
+        long units = 0;
+        try (Statement statement = mConnection.createStatement();
+             ResultSet result = statement.executeQuery(SQL_LOCATION_STATS)) {
+            while (result.next()) {
+                result.getLong(1);
+                result.getLong(2);
+                units += result.getLong(3);
+            }
+        }
+        return units;
+    }
+
+    /**
+     * Reads the stock of an item at every location, like a query on
+     * StockEntry.buildItemStockUri().
+     *
+     * @return the units of the item over all locations
+     */
+    long queryItemStock(long itemId) throws SQLException {
+        mItemStock.setLong(1, itemId);
+        long units = 0;
+        try (ResultSet stock = mItemStock.executeQuery()) {
+            while (stock.next()) {
+                stock.getLong(1);
+                stock.getLong(2);
+                stock.getLong(3);
+                units += stock.getInt(4);
+            }
+        }
+        return units;
+    }
+
+    /**
+     * Moves count units of an item between two locations in one transaction, like
+     * InventoryProvider's METHOD_TRANSFER call.
+     *
+     * @return the quantity left at the source, or -1 if it didn't have enough
+     */
+    int transfer(long itemId, long fromLocationId, long toLocationId, int count) throws SQLException {
+        mConnection.setAutoCommit(false);
+        try {
+            mCountLocation.setLong(1, toLocationId);
+            try (ResultSet result = mCountLocation.executeQuery()) {
+                if (!result.next() || result.getLong(1) == 0) {
+                    throw new IllegalArgumentException("Unknown location " + toLocationId);
+                }
+            }
+            mTakeStock.setInt(1, count);
+            mTakeStock.setLong(2, fromLocationId);
+            mTakeStock.setLong(3, itemId);
+            boolean transferred = mTakeStock.executeUpdate() != 0;
+            if (transferred) {
+                mGiveStock.setInt(1, count);
+                mGiveStock.setLong(2, toLocationId);
+                mGiveStock.setLong(3, itemId);
+                mGiveStock.executeUpdate();
+            }
+            int fromQuantity = queryStock(fromLocationId, itemId);
+            queryStock(toLocationId, itemId);
+            mConnection.commit();
+            return transferred ? fromQuantity : -1;
+        } catch (SQLException | RuntimeException e) {
+            mConnection.rollback();
+            throw e;
+        } finally {
+            mConnection.setAutoCommit(true);
+        }
+    }
+
+    private int queryStock(long locationId, long itemId) throws SQLException {
+        mStockQuantity.setLong(1, locationId);
+        mStockQuantity.setLong(2, itemId);
+        try (ResultSet result = mStockQuantity.executeQuery()) {
+            return result.next() ? result.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * @return the units in stock over all items and locations, read from the table
+     */
+    long sumStock() throws SQLException {
+        try (Statement statement = mConnection.createStatement();
+             ResultSet result = statement.executeQuery("SELECT ifnull(SUM(quantity), 0) FROM stock NOT INDEXED")) {
+            return result.next() ? result.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * Returns the query plans of the reads of the stock, the steps of each separated by "; ".
+     */
+    Map<String, String> explainStockQueries() throws SQLException {
+        Map<String, String> plans = new LinkedHashMap<>();
+        plans.put("locationPage", explain(SQL_LOCATION_PAGE));
+        plans.put("locationTotals", explain(SQL_LOCATION_STATS));
+        plans.put("itemStock", explain(SQL_ITEM_STOCK));
+        return plans;
+    }
+
+    private String explain(String sql) throws SQLException {
+        StringBuilder plan = new StringBuilder();
+        try (PreparedStatement statement = mConnection.prepareStatement("EXPLAIN QUERY PLAN " + sql)) {
+            // The plan doesn't depend on the values, only on their being bound
+            for (int i = 1; i <= statement.getParameterMetaData().getParameterCount(); i++) {
+                statement.setLong(i, 1);
+            }
+            try (ResultSet steps = statement.executeQuery()) {
+                while (steps.next()) {
+                    if (plan.length() != 0) {
+                        plan.append("; ");
+                    }
+                    plan.append(steps.getString("detail"));
+                }
+            }
+        }
+        return plan.toString();
+    }
+
+    /**
+     * Writes every item as CSV in chunks of _ID ranges, like InventoryProvider's export.
+     * Fields are written as they come, without the quoting of InventoryCsv, which the
+     * generated names never need. Prices are formatted with two decimals, as InventoryCsv does.
+     *
+     * @return the number of rows written
+     */
+    int exportCsv(Writer writer) throws SQLException, IOException {
+        writer.write("_id,name,price,quantity,suppName,suppPhone,sku,barcode\n");
+        int rows = 0;
+        long lastId = 0;
+        while (true) {
+            mExportChunk.setLong(1, lastId);
+            mExportChunk.setInt(2, EXPORT_CHUNK_SIZE);
+            int chunkRows = 0;
+            try (ResultSet chunk = mExportChunk.executeQuery()) {
+                while (chunk.next()) {
+                    for (int column = 1; column <= 8; column++) {
+                        if (column > 1) {
+                            writer.write(',');
+                        }
+                        String value = chunk.getString(column);
+                        if (column == 3 && value != null) {
+                            writer.write(Prices.format(chunk.getLong(column)));
+                        } else if (value != null) {
+                            writer.write(value);
+                        }
+                    }
+                    writer.write('\n');
+                    lastId = chunk.getLong(1);
+                    chunkRows++;
+                }
+            }
+            if (chunkRows == 0) {
+                return rows;
+            }
+            rows += chunkRows;
+        }
+    }
+
+    /**
+     * Makes count random changes of the items in one transaction, like the sales, edits and
+     * deliveries of a day on one device: mostly quantity changes, then price changes,
+     * deletions and new items, in the proportions 16:2:1:1.
+     */
+    void churn(int count) throws SQLException {
+        long maxId = getMaxId();
+        mConnection.setAutoCommit(false);
+        try (PreparedStatement quantity = mConnection.prepareStatement(
+                "UPDATE inventory SET quantity = max(0, quantity + ?) WHERE _id = ?");
+             PreparedStatement price = mConnection.prepareStatement("UPDATE inventory SET price = ? WHERE _id = ?");
+             PreparedStatement delete = mConnection.prepareStatement("DELETE FROM inventory WHERE _id = ?")) {
+            for (int i = 0; i < count; i++) {
+                long id = 1 + mRandom.nextInt((int) maxId);
+                int kind = mRandom.nextInt(20);
+                if (kind < 16) {
+                    quantity.setInt(1, mRandom.nextBoolean() ? -1 - mRandom.nextInt(5) : 1 + mRandom.nextInt(20));
+                    quantity.setLong(2, id);
+                    quantity.executeUpdate();
+                } else if (kind < 18) {
+                    price.setInt(1, mRandom.nextInt(5000000));
+                    price.setLong(2, id);
+                    price.executeUpdate();
+                } else if (kind < 19) {
+                    delete.setLong(1, id);
+                    delete.executeUpdate();
+                } else {
+                    bindRandomItem(mInsertItem);
+                    mInsertItem.executeUpdate();
+                }
+            }
+            mConnection.commit();
+        } finally {
+            mConnection.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Deletes every item, like a delete on the table URI without a selection.
+     */
+    int deleteAll() throws SQLException {
+        try (Statement statement = mConnection.createStatement()) {
+            return statement.executeUpdate("DELETE FROM inventory");
+        }
+    }
+
+    /**
+     * @return the highest _ID in use, or 0 if the table is empty
+     */
+    long getMaxId() throws SQLException {
+        try (Statement statement = mConnection.createStatement();
+             ResultSet result = statement.executeQuery("SELECT max(_id) FROM inventory")) {
+            return result.next() ? result.getLong(1) : 0;
+        }
+    }
+
+    Random getRandom() {
+        return mRandom;
+    }
+
+    private void bindRandomItem(PreparedStatement statement) throws SQLException {
+        statement.setString(1, WORDS[mRandom.nextInt(WORDS.length)] + " " +
+                WORDS[mRandom.nextInt(WORDS.length)] + " " + mRandom.nextInt(100000));
+        statement.setInt(2, mRandom.nextInt(5000000));
+        statement.setInt(3, mRandom.nextInt(1000));
+        statement.setString(4, SUPPLIERS[mRandom.nextInt(SUPPLIERS.length)]);
+        statement.setLong(5, 5550000000L + mRandom.nextInt(10000000));
+    }
+
+    @Override
+    public void close() throws SQLException {
+        mConnection.close();
+        mFile.delete();
+        new File(mFile.getPath() + "-wal").delete();
+        new File(mFile.getPath() + "-shm").delete();
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.android.inventory_project.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Times an operation over many iterations, after a warmup, and reports its throughput,
+ * latency percentiles, allocations per operation and peak heap use.
+ */
+final class BenchmarkHarness {
+
+    /**
+     * One measured operation. The iteration number lets operations vary their input.
+     */
+    interface Operation {
+        void run(int iteration) throws Exception;
+    }
+
+    // Operation that does nothing, for benchmarks without per-iteration setup
+    static final Operation NO_SETUP = iteration -> {
+    };
+
+    private static final com.sun.management.ThreadMXBean THREAD_BEAN = getThreadBean();
+
+    private BenchmarkHarness() {
+    }
+
+    /**
+     * Runs the operation warmup times untimed, then iterations times timed. The setup runs
+     * before every iteration and is neither timed nor counted in the allocations.
+     *
+     * @param unitsPerOp number of rows or items one operation handles, to report unit throughput
+     */
+    static Result measure(String name, int rows, int warmup, int iterations, int unitsPerOp,
+                          Operation setup, Operation operation) throws Exception {
+        for (int i = 0; i < warmup; i++) {
+            setup.run(i);
+            operation.run(i);
+        }
+
+        resetPeakHeap();
+        long[] latencies = new long[iterations];
+        long allocated = 0;
+        long total = 0;
+        for (int i = 0; i < iterations; i++) {
+            setup.run(warmup + i);
+            long allocatedBefore = getAllocatedBytes();
+            long start = System.nanoTime();
+            operation.run(warmup + i);
+            long elapsed = System.nanoTime() - start;
+            allocated += getAllocatedBytes() - allocatedBefore;
+            latencies[i] = elapsed;
+            total += elapsed;
+        }
+
+        long peakHeap = getPeakHeap();
+
+        Arrays.sort(latencies);
+        return new Result(name, rows, iterations, unitsPerOp, total,
+                percentile(latencies, 0.50), percentile(latencies, 0.99),
+                THREAD_BEAN == null ? -1 : allocated / iterations, peakHeap);
+    }
+
+    // Collects the garbage of the warmup and starts the peaks from the live heap, so the
+    // peak of the measured iterations is what they held at once, plus uncollected garbage.
+    static void resetPeakHeap() {
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    static long getPeakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    static long percentile(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    private static long getAllocatedBytes() {
+        return THREAD_BEAN == null ? 0 : THREAD_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static com.sun.management.ThreadMXBean getThreadBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+            if (threadBean.isThreadAllocatedMemorySupported()) {
+                threadBean.setThreadAllocatedMemoryEnabled(true);
+                return threadBean;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Measurements of one benchmark at one table size.
+     */
+    static final class Result {
+        final String name;
+        final int rows;
+        final int ops;
+        final int unitsPerOp;
+        final long totalNanos;
+        final long p50Nanos;
+        final long p99Nanos;
+        // -1 if the JVM can't measure allocations
+        final long bytesPerOp;
+        // Sum of the peaks of the heap pools, which don't have to peak at the same time,
+        // so this overestimates the real peak a bit
+        final long peakHeapBytes;
+
+        Result(String name, int rows, int ops, int unitsPerOp, long totalNanos, long p50Nanos,
+               long p99Nanos, long bytesPerOp, long peakHeapBytes) {
+            this.name = name;
+            this.rows = rows;
+            this.ops = ops;
+            this.unitsPerOp = unitsPerOp;
+            this.totalNanos = totalNanos;
+            this.p50Nanos = p50Nanos;
+            this.p99Nanos = p99Nanos;
+            this.bytesPerOp = bytesPerOp;
+            this.peakHeapBytes = peakHeapBytes;
+        }
+
+        double getOpsPerSecond() {
+            return ops / (totalNanos / 1e9);
+        }
+
+        String toJson() {
+            return String.format(Locale.US,
+                    "{\"benchmark\":\"%s\",\"rows\":%d,\"ops\":%d,\"unitsPerOp\":%d," +
+                            "\"opsPerSec\":%.2f,\"unitsPerSec\":%.2f,\"p50Micros\":%.3f," +
+                            "\"p99Micros\":%.3f,\"bytesPerOp\":%d,\"peakHeapBytes\":%d}",
+                    name, rows, ops, unitsPerOp, getOpsPerSecond(), getOpsPerSecond() * unitsPerOp,
+                    p50Nanos / 1e3, p99Nanos / 1e3, bytesPerOp, peakHeapBytes);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "%-28s rows=%-8d %12.1f ops/s %14.1f units/s  p50=%10.1fus  p99=%10.1fus  %8d B/op  " +
+                            "peak heap %6.1f MB",
+                    name, rows, getOpsPerSecond(), getOpsPerSecond() * unitsPerOp,
+                    p50Nanos / 1e3, p99Nanos / 1e3, bytesPerOp, peakHeapBytes / 1e6);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.example.android.inventory_project.benchmark;
+
+import com.example.android.inventory_project.data.Prices;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The CSV import of CsvImporter on a plain JVM: the same record parser, validation and batch
+ * size, with batches written by BenchmarkDatabase.insertRows(). Keep it in step with
+ * CsvImporter and InventoryCsv.readRecord().
+ */
+final class CsvImport {
+
+    // Same as CsvImporter
+    private static final int BATCH_SIZE = 500;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final BenchmarkDatabase mDb;
+    private final File mFile;
+    private int mImported;
+    private volatile int mRejected;
+
+    CsvImport(BenchmarkDatabase db, File file) {
+        mDb = db;
+        mFile = file;
+    }
+
+    /**
+     * Parses the file and writes each batch as soon as it is full, like CsvImporter.
+     *
+     * @return the number of rows imported
+     */
+    int run() throws Exception {
+        parse(true);
+        return mImported;
+    }
+
+    /**
+     * Only parses the file into batches, to tell how much of the import that is.
+     *
+     * @return the number of rows that would be imported
+     */
+    int parseOnly() throws Exception {
+        parse(false);
+        return mImported;
+    }
+
+    int getRejectedCount() {
+        return mRejected;
+    }
+
+    // Parse the file into batches of valid rows, each written once full if asked to.
+    private void parse(boolean write) throws Exception {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(mFile), StandardCharsets.UTF_8), READ_BUFFER_SIZE)) {
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            if (!readRecord(reader, fields, field)) {
+                return;
+            }
+            int[] columns = findColumns(fields);
+
+            Object[][] rows = new Object[BATCH_SIZE][];
+            int size = 0;
+            int rejected = 0;
+            while (readRecord(reader, fields, field)) {
+                Object[] row = toRow(fields, columns);
+                if (row == null) {
+                    rejected++;
+                    continue;
+                }
+                rows[size++] = row;
+                if (size == BATCH_SIZE) {
+                    addBatch(rows, size, write);
+                    size = 0;
+                }
+            }
+            if (size != 0) {
+                addBatch(rows, size, write);
+            }
+            mRejected = rejected;
+        }
+    }
+
+    private void addBatch(Object[][] rows, int size, boolean write) throws Exception {
+        mImported += write ? mDb.insertRows(rows, size) : size;
+    }
+
+    private static int[] findColumns(List<String> header) throws IOException {
+        String[] names = {"name", "price", "quantity", "suppName", "suppPhone"};
+        int[] columns = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            columns[i] = header.indexOf(names[i]);
+            if (columns[i] == -1 && i != 4) {
+                throw new IOException("Missing column " + names[i]);
+            }
+        }
+        return columns;
+    }
+
+    // Turn a record into the values bound by insertRows(), or null if InventoryProvider's
+    // validation would reject it.
+    private static Object[] toRow(List<String> fields, int[] columns) {
+        String name = getField(fields, columns[0]);
+        Integer price = parsePrice(getField(fields, columns[1]));
+        Integer quantity = parseInt(getField(fields, columns[2]));
+        String supplierName = getField(fields, columns[3]);
+        if (name == null || price == null || price < 0 || quantity == null || quantity < 0
+                || supplierName == null) {
+            return null;
+        }
+        Long supplierPhone = null;
+        String phone = getField(fields, columns[4]);
+        if (phone != null) {
+            try {
+                supplierPhone = Long.parseLong(phone);
+            } catch (NumberFormatException e) {
+                // Optional, dropped
+            }
+        }
+        return new Object[]{name, price, quantity, supplierName, supplierPhone};
+    }
+
+    private static String getField(List<String> fields, int column) {
+        if (column < 0 || column >= fields.size()) {
+            return null;
+        }
+        String field = fields.get(column).trim();
+        return field.isEmpty() ? null : field;
+    }
+
+    private static Integer parseInt(String field) {
+        if (field == null) {
+            return null;
+        }
+        try {
+            return Integer.parseInt(field);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static Integer parsePrice(String field) {
+        if (field == null) {
+            return null;
+        }
+        try {
+            return Prices.parse(field);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // Copy of InventoryCsv.readRecord()
+    private static boolean readRecord(BufferedReader reader, List<String> fields, StringBuilder field)
+            throws IOException {
+        fields.clear();
+        field.setLength(0);
+        String line = reader.readLine();
+        if (line == null) {
+            return false;
+        }
+
+        boolean quoted = false;
+        int i = 0;
+        while (true) {
+            if (i == line.length()) {
+                String next = quoted ? reader.readLine() : null;
+                if (next == null) {
+                    fields.add(field.toString());
+                    return true;
+                }
+                field.append('\n');
+                line = next;
+                i = 0;
+                continue;
+            }
+
+            char c = line.charAt(i++);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i < line.length() && line.charAt(i) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,979 @@
+package com.example.android.inventory_project.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+
+import com.example.android.inventory_project.data.CatalogSnapshot;
+import com.example.android.inventory_project.data.InMemorySyncServer;
+import com.example.android.inventory_project.data.ProviderMetrics;
+import com.example.android.inventory_project.data.SyncEngine;
+
+import static com.example.android.inventory_project.benchmark.BenchmarkHarness.NO_SETUP;
+import static com.example.android.inventory_project.benchmark.BenchmarkHarness.Operation;
+import static com.example.android.inventory_project.benchmark.BenchmarkHarness.Result;
+import static com.example.android.inventory_project.benchmark.BenchmarkHarness.measure;
+
+/**
+ * Runs the data layer benchmarks at several table sizes and writes the results as JSON.
+ * <p>
+ * Options:
+ * <pre>
+ *   --rows 1000,100000   table sizes to run at (default 1000,100000,1000000)
+ *   --suite crud,import  only run the given suites, comma separated (default all)
+ *   --out results.json   write the JSON results to a file instead of stdout
+ * </pre>
+ * The search suite runs once, at SEARCH_ROWS, whatever the table sizes.
+ * A readable summary of every result is printed to stderr as the benchmarks run.
+ */
+public final class InventoryBenchmark {
+
+    private static final String SUITE_CRUD = "crud";
+    private static final String SUITE_EDITOR = "editor";
+    private static final String SUITE_INSERT = "insert";
+    private static final String SUITE_PAGING = "paging";
+    private static final String SUITE_EXPORT = "export";
+    private static final String SUITE_IMPORT = "import";
+    private static final String SUITE_UPSERT = "upsert";
+    private static final String SUITE_STATS = "stats";
+    private static final String SUITE_LOW_STOCK = "lowstock";
+    private static final String SUITE_MIXED = "mixed";
+    private static final String SUITE_LEDGER = "ledger";
+    private static final String SUITE_METRICS = "metrics";
+    private static final String SUITE_BARCODE = "barcode";
+    private static final String SUITE_LOCATION = "location";
+    private static final String SUITE_SYNC = "sync";
+    private static final String SUITE_COLD_START = "coldstart";
+    private static final String SUITE_SEARCH = "search";
+
+    private static final List<String> SUITES = Arrays.asList(SUITE_CRUD, SUITE_INSERT, SUITE_PAGING, SUITE_EDITOR,
+            SUITE_EXPORT, SUITE_IMPORT,
+            SUITE_UPSERT, SUITE_STATS, SUITE_LOW_STOCK, SUITE_MIXED, SUITE_LEDGER, SUITE_METRICS,
+            SUITE_BARCODE, SUITE_LOCATION, SUITE_SYNC, SUITE_COLD_START, SUITE_SEARCH);
+
+    // Most the provider metrics may add to a provider operation
+    private static final double MAX_METRICS_OVERHEAD = 0.01;
+
+    // Slowest the 99th percentile of a barcode lookup may be, at the till
+    private static final long MAX_BARCODE_LOOKUP_P99_NANOS = 1000000;
+
+    // Same as BarcodeCache.MAX_SIZE
+    private static final int BARCODE_CACHE_SIZE = 4096;
+
+    // Items each operation of the insert suite adds
+    private static final int INSERT_BATCH = 1000;
+
+    // Same as ItemCache.MAX_SIZE
+    private static final int ITEM_CACHE_SIZE = 512;
+
+    // Columns of the item the editor shows, by index into BenchmarkDatabase.readItem(): the
+    // name, price, quantity, supplier name and phone, barcode, reorder level and photo
+    private static final int[] EDITOR_COLUMNS = {1, 2, 3, 4, 5, 6, 7, 8};
+
+    // Locations of the location suite, a warehouse and the stores it supplies
+    private static final int LOCATIONS = 10;
+
+    // Items the ledger suite sells out from SELL_OUT_THREADS threads, and their stock
+    private static final int SELL_OUT_ITEMS = 10;
+    private static final int SELL_OUT_STOCK = 500;
+    private static final int SELL_OUT_THREADS = 8;
+
+    // Same as CatalogPager.PAGE_SIZE and MAX_PAGES
+    private static final int PAGE_SIZE = 50;
+    private static final int MAX_PAGES = 5;
+
+    // Slowest the median page of the catalog may be, whatever the size of the table
+    private static final long MAX_PAGE_P50_NANOS = 1000000;
+
+    // Share of the items a device changes between two syncs in the sync suite
+    private static final double SYNC_CHURN = 0.01;
+
+    // Slowest the median of opening the database and reading the first page may be, a
+    // small part of StartupTimeline.FIRST_DATA_BUDGET_MILLIS on a device
+    private static final long MAX_COLD_START_P50_NANOS = 5000000;
+
+    // Table size of the search suite
+    private static final int SEARCH_ROWS = 500000;
+
+    // Same as InventoryProvider.DEFAULT_SEARCH_LIMIT
+    private static final int SEARCH_LIMIT = 100;
+
+    private final List<Result> mResults = new ArrayList<>();
+
+    private InventoryBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int[] rowCounts = {1000, 100000, 1000000};
+        Set<String> suites = new HashSet<>(SUITES);
+        String out = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--rows":
+                    rowCounts = Arrays.stream(args[i + 1].split(",")).mapToInt(Integer::parseInt).toArray();
+                    break;
+                case "--suite":
+                    suites = new HashSet<>(Arrays.asList(args[i + 1].split(",")));
+                    break;
+                case "--out":
+                    out = args[i + 1];
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        InventoryBenchmark benchmark = new InventoryBenchmark();
+        for (int rows : rowCounts) {
+            if (suites.contains(SUITE_CRUD)) {
+                benchmark.runCrud(rows);
+            }
+            if (suites.contains(SUITE_INSERT)) {
+                benchmark.runInsert(rows);
+            }
+            if (suites.contains(SUITE_PAGING)) {
+                benchmark.runPaging(rows);
+            }
+            if (suites.contains(SUITE_EDITOR)) {
+                benchmark.runEditor(rows);
+            }
+            if (suites.contains(SUITE_EXPORT)) {
+                benchmark.runExport(rows);
+            }
+            if (suites.contains(SUITE_IMPORT)) {
+                benchmark.runImport(rows);
+            }
+            if (suites.contains(SUITE_UPSERT)) {
+                benchmark.runUpsert(rows);
+            }
+            if (suites.contains(SUITE_STATS)) {
+                benchmark.runStats(rows);
+            }
+            if (suites.contains(SUITE_LOW_STOCK)) {
+                benchmark.runLowStock(rows);
+            }
+            if (suites.contains(SUITE_MIXED)) {
+                benchmark.runMixed(rows);
+            }
+            if (suites.contains(SUITE_LEDGER)) {
+                benchmark.runLedger(rows);
+            }
+            if (suites.contains(SUITE_METRICS)) {
+                benchmark.runMetrics(rows);
+            }
+            if (suites.contains(SUITE_BARCODE)) {
+                benchmark.runBarcode(rows);
+            }
+            if (suites.contains(SUITE_LOCATION)) {
+                benchmark.runLocation(rows);
+            }
+            if (suites.contains(SUITE_SYNC)) {
+                benchmark.runSync(rows);
+                benchmark.runSyncSales(rows);
+            }
+            if (suites.contains(SUITE_COLD_START)) {
+                benchmark.runColdStart(rows);
+            }
+        }
+        if (suites.contains(SUITE_SEARCH)) {
+            benchmark.runSearch(SEARCH_ROWS);
+        }
+        benchmark.writeJson(out);
+    }
+
+    /**
+     * The provider's basic operations: point query, full scan, sale, insert, bulk insert
+     * and delete all.
+     */
+    private void runCrud(int rows) throws Exception {
+        try (BenchmarkDatabase db = BenchmarkDatabase.create()) {
+            db.fill(rows);
+            long maxId = db.getMaxId();
+            Random random = new Random(7);
+
+            add(measure("queryById", rows, 1000, 10000, 1, NO_SETUP,
+                    i -> db.queryItem(1 + (long) random.nextInt((int) maxId))));
+            add(measure("fullScan", rows, 1, Math.max(3, Math.min(50, 3000000 / rows)), rows, NO_SETUP,
+                    i -> db.scanCatalog()));
+            add(measure("sell", rows, 1000, 10000, 1, NO_SETUP,
+                    i -> db.sell(1 + (long) random.nextInt((int) maxId), 1)));
+            add(measure("insert", rows, 100, 1000, 1, NO_SETUP,
+                    i -> db.insert()));
+            add(measure("bulkInsert", rows, 2, 20, 1000, NO_SETUP,
+                    i -> db.bulkInsert(1000)));
+            // Every iteration starts from a full table again
+            add(measure("deleteAll", rows, 0, 3, rows, i -> {
+                db.deleteAll();
+                db.fill(rows);
+            }, i -> db.deleteAll()));
+        }
+    }
+
+    /**
+     * INSERT_BATCH new items added to a table of rows items: with an insert() per item, each
+     * in its own transaction, as the app did before the bulk import, with one bulkInsert(),
+     * and with one applyBatch() of insert operations. Units are items, so units/s compare the
+     * three directly.
+     * <p>
+     * Fails if bulkInsert() doesn't add the items faster than insert() one by one.
+     */
+    private void runInsert(int rows) throws Exception {
+        try (BenchmarkDatabase db = BenchmarkDatabase.create()) {
+            db.fill(rows);
+
+            Result perRow = measure("insertPerRow", rows, 1, 5, INSERT_BATCH, NO_SETUP, i -> {
+                for (int j = 0; j < INSERT_BATCH; j++) {
+                    db.insert();
+                }
+            });
+            add(perRow);
+            Result bulk = measure("insertBulk", rows, 2, 20, INSERT_BATCH, NO_SETUP,
+                    i -> db.bulkInsert(INSERT_BATCH));
+            add(bulk);
+            Result batch = measure("insertApplyBatch", rows, 2, 20, INSERT_BATCH, NO_SETUP,
+                    i -> db.applyBatch(INSERT_BATCH));
+            add(batch);
+            System.err.println(String.format(Locale.US, "  bulkInsert() adds items %.1fx as fast as " +
+                    "insert(), applyBatch() %.1fx", (double) perRow.p50Nanos / bulk.p50Nanos,
+                    (double) perRow.p50Nanos / batch.p50Nanos));
+
+            if (bulk.p50Nanos >= perRow.p50Nanos) {
+                throw new IllegalStateException("bulkInsert() is no faster than an insert() per item");
+            }
+        }
+    }
+
+    /**
+     * The catalog in pages as CatalogPager loads it: a page after a random key, against the
+     * page at a random offset, and a scroll through the whole catalog keeping a window of
+     * MAX_PAGES pages, against loading the catalog in one cursor as before paging. Units are
+     * rows. The peak heap of the scroll should stay the same at every table size, while the
+     * one of the full load grows with the table.
+     * <p>
+     * Fails if the median page after a key is over MAX_PAGE_P50_NANOS.
+     */
+    private void runPaging(int rows) throws Exception {
+        try (BenchmarkDatabase db = BenchmarkDatabase.create()) {
+            db.fill(rows);
+            long maxId = db.getMaxId();
+            Random random = new Random(7);
+            int pageIterations = Math.max(20, Math.min(1000, 20000000 / rows));
+            int scanIterations = Math.max(3, Math.min(20, 2000000 / rows));
+
+            Result page = measure("pageAfterKey", rows, 100, 1000, PAGE_SIZE, NO_SETUP,
+                    i -> db.queryCatalogPage(random.nextInt((int) maxId), PAGE_SIZE));
+            add(page);
+            add(measure("pageAtOffset", rows, 10, pageIterations, PAGE_SIZE, NO_SETUP,
+                    i -> db.queryCatalogPageAt(random.nextInt(rows), PAGE_SIZE)));
+            add(measure("scrollWindowed", rows, 1, scanIterations, rows, NO_SETUP, i -> {
+                Object[][][] window = new Object[MAX_PAGES][][];
+                long afterId = 0;
+                for (int n = 0; ; n++) {
+                    Object[][] rowsOfPage = db.queryCatalogPage(afterId, PAGE_SIZE);
+                    // The page at the other end of the window is dropped
+                    window[n % MAX_PAGES] = rowsOfPage;
+                    if (rowsOfPage.length < PAGE_SIZE) {
+                        break;
+                    }
+                    afterId = (Long) rowsOfPage[PAGE_SIZE - 1][0];
+                }
+            }));
+            add(measure("loadAll", rows, 1, scanIterations, rows, NO_SETUP, i -> db.loadCatalog()));
+
+            if (page.p50Nanos > MAX_PAGE_P50_NANOS) {
+                throw new IllegalStateException("The median page is over " + MAX_PAGE_P50_NANOS / 1000 + "us");
+            }
+        }
+    }
+
+    /**
+     * Opening an item in the editor: the query of the editor on the item URI when the item
+     * is in the item cache of the provider, against when the cache has to read it from the
+     * database first, as on the first open of the item after a start of the app. The cache
+     * is an LRU map of ITEM_CACHE_SIZE items like ItemCache, and a hit copies the columns of
+     * the editor into a row, as the provider does into its MatrixCursor.
+     * <p>
+     * Fails if an open from the cache isn't faster than one from the database.
+     */
+    private void runEditor(int rows) throws Exception {
+        try (BenchmarkDatabase db = BenchmarkDatabase.create()) {
+            db.fill(rows);
+            long maxId = db.getMaxId();
+            Random random = new Random(7);
+            Map<Long, Object[]> cache = new LinkedHashMap<Long, Object[]>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, Object[]> eldest) {
+                    return size() > ITEM_CACHE_SIZE;
+                }
+            };
+            Operation open = i -> {
+                long id = 1 + random.nextInt((int) maxId);
+                Object[] item = cache.get(id);
+                if (item == null) {
+                    item = db.readItem(id);
+                    cache.put(id, item);
+                }
+                copyEditorColumns(item);
+            };
+
+            // Every open misses: the cache is empty, as after a start of the app
+            Result cold = measure("editorOpenCold", rows, 1000, 10000, 1, i -> cache.clear(), open);
+            add(cold);
+            // Every open hits: the items are the ones opened last
+            int cached = (int) Math.min(ITEM_CACHE_SIZE, maxId);
+            Result warm = measure("editorOpenWarm", rows, 1000, 10000, 1, i -> {
+                if (cache.size() < cached) {
+                    for (long id = 1; id <= cached; id++) {
+                        cache.put(id, db.readItem(id));
+                    }
+                }
+            }, i -> {
+                long id = 1 + random.nextInt(cached);
+                copyEditorColumns(cache.get(id));
+            });
+            add(warm);
+            System.err.println(String.format(Locale.US, "  an open from the cache takes %.1f%% of one " +
+                    "from the database", 100.0 * warm.p50Nanos / cold.p50Nanos));
+
+            if (warm.p50Nanos >= cold.p50Nanos) {
+                throw new IllegalStateException("Opening an item from the cache is no faster than from the database");
+            }
+        }
+    }
+
+    /**
+     * The CSV export, written through the same 64 KB buffer as the provider into a stream
+     * that drops the bytes. Units are bytes, so units/s is the export speed; the peak heap
+     * should not grow with the table.
+     */
+    private void runExport(int rows) throws Exception {
+        try (BenchmarkDatabase db = BenchmarkDatabase.create()) {
+            db.fill(rows);
+            CountingOutputStream sizing = new CountingOutputStream();
+            exportCsv(db, sizing);
+            int bytes = (int) sizing.getCount();
+
+            add(measure("exportCsv", rows, 1, Math.max(3, Math.min(20, 2000000 / rows)), bytes,
+                    NO_SETUP, i -> exportCsv(db, new CountingOutputStream())));
+        }
+    }
+
+    /**
+     * The CSV import of a file with the given number of lines into an empty table, as
+     * CsvImporter does it, and the parsing of the file alone, the most a second thread
+     * parsing ahead of the writes could save. Units are lines.
+     */
+    private void runImport(int rows) throws Exception {
+        File csv = File.createTempFile("inventory-benchmark", ".csv");
+        try (BenchmarkDatabase db = BenchmarkDatabase.create()) {
+            db.writeCsv(csv, rows);
+            int warmup = rows >= 1000000 ? 0 : 1;
+            int iterations = Math.max(2, Math.min(10, 2000000 / rows));
+
+            add(measure("importCsv", rows, warmup, iterations, rows, i -> db.deleteAll(),
+                    i -> new CsvImport(db, csv).run()));
+            add(measure("parseCsv", rows, warmup, iterations, rows, NO_SETUP,
+                    i -> new CsvImport(db, csv).parseOnly()));
+        } finally {
+            csv.delete();
+        }
+    }
+
+    /**
+     * A re-import of the whole catalog by SKU, with one in ten SKUs new: the upsert
+     * statements against the query-then-write round trips callers needed before. Each
+     * re-import runs in one transaction. Single upserts are measured too, each in its own
+     * transaction like an insert() on the upsert URI.
+     */
+    private void runUpsert(int rows) throws Exception {
+        try (BenchmarkDatabase db = BenchmarkDatabase.create()) {
+            db.fill(rows);
+            db.assignSkus();
+            String[] skus = new String[rows];
+            for (int i = 0; i < rows; i++) {
+                skus[i] = i % 10 == 9 ? "NEW-" + i : "SKU-" + (i + 1);
+            }
+            int iterations = Math.max(3, Math.min(20, 1000000 / rows));
+
+            add(measure("reimportUpsert", rows, 1, iterations, rows, NO_SETUP,
+                    i -> db.upsert(skus, false)));
+            add(measure("reimportUpsertAdd", rows, 1, iterations, rows, NO_SETUP,
+                    i -> db.upsert(skus, true)));
+            add(measure("reimportQueryThenWrite", rows, 1, iterations, rows, NO_SETUP,
+                    i -> db.queryThenWrite(skus)));
+
+            Random random = new Random(7);
+            String[] sku = new String[1];
+            add(measure("upsertSingle", rows, 100, 1000, 1,
+                    i -> sku[0] = skus[random.nextInt(rows)], i -> db.upsert(sku, false)));
+            add(measure("queryThenWriteSingle", rows, 100, 1000, 1,
+                    i -> sku[0] = skus[random.nextInt(rows)], i -> db.queryThenWrite(sku)));
+        }
+    }
+
+    /**
+     * The inventory totals read from the trigger-maintained summary table against computing
+     * them over the table, and the totals per supplier from the covering index. Fails if
+     * the summary table drifted from the table after the writes of the benchmark.
+     */
+    private void runStats(int rows) throws Exception {
+        try (BenchmarkDatabase db = BenchmarkDatabase.create()) {
+            db.fill(rows);
+            long maxId = db.getMaxId();
+            Random random = new Random(7);
+
+            add(measure("statsTotals", rows, 1000, 10000, 1, NO_SETUP, i -> db.queryTotals()));
+            add(measure("statsFullScan", rows, 1, Math.max(3, Math.min(50, 3000000 / rows)), rows,
+                    NO_SETUP, i -> db.scanTotals()));
+            add(measure("statsBySupplier", rows, 1, Math.max(3, Math.min(50, 3000000 / rows)), rows,
+                    NO_SETUP, i -> db.queryTotalsBySupplier()));
+            // Sales and inserts pay for the triggers
+            add(measure("sellWithTotals", rows, 1000, 10000, 1, NO_SETUP,
+                    i -> db.sell(1 + (long) random.nextInt((int) maxId), 1)));
+
+            if (!Arrays.equals(db.queryTotals(), db.scanTotals())) {
+                throw new IllegalStateException("Totals drifted: " + Arrays.toString(db.queryTotals()) +
+                        " != " + Arrays.toString(db.scanTotals()));
+            }
+        }
+    }
+
+    /**
+     * The low stock check after 100 items crossed their reorder level, reading only the
+     * change log from its checkpoint, against finding the low items by reading the table.
+     * The check should cost the same at every table size. Units are changes and rows.
+     */
+    private void runLowStock(int rows) throws Exception {
+        try (BenchmarkDatabase db = BenchmarkDatabase.create()) {
+            db.fill(rows);
+            // Start from the items that were already low after the fill
+            long[] checkpoint = {db.checkLowStock(0)};
+            int changes = 100;
+
+            add(measure("lowStockCheck", rows, 10, 200, changes, i -> db.toggleStock(changes),
+                    i -> checkpoint[0] = db.checkLowStock(checkpoint[0])));
+            add(measure("lowStockScan", rows, 1, Math.max(3, Math.min(50, 3000000 / rows)), rows,
+                    NO_SETUP, i -> db.scanLowStock()));
+            add(measure("sellWithChangeLog", rows, 1000, 10000, 1, NO_SETUP,
+                    i -> db.sell(1 + (long) db.getRandom().nextInt(rows), 1)));
+        }
+    }
+
+    /**
+     * Two threads paging through the catalog while a third sells, under every PragmaConfig,
+     * each for a few seconds. The ops/s of each result are those of all its threads together.
+     */
+    private void runMixed(int rows) throws Exception {
+        for (PragmaConfig config : PragmaConfig.ALL) {
+            try (BenchmarkDatabase db = BenchmarkDatabase.create(config)) {
+                db.fill(rows);
+                MixedWorkload workload = new MixedWorkload(db, config.name, rows);
+                for (Result result : workload.run(2, 1, 500, 3000)) {
+                    add(result);
+                }
+                if (workload.getBusyCount() != 0) {
+                    System.err.println("  " + workload.getBusyCount() + " ops timed out waiting for a lock");
+                }
+            }
+        }
+    }
+
+    /**
+     * Four threads selling at once, without the sales ledger, with it and a commit per sale,
+     * and with it and group commit, with synchronous NORMAL as in the app and with FULL,
+     * where every commit waits for the disk. Then the time range query on the sales of an
+     * item, over the ledger the last run filled.
+     * <p>
+     * Fails if SELL_OUT_THREADS threads selling out SELL_OUT_ITEMS items at once, in every
+     * mode with the settings of the app, lose a decrement or oversell an item, and the same
+     * with only SQL_SELL_ITEM on a connection per thread.
+     */
+    private void runLedger(int rows) throws Exception {
+        for (PragmaConfig config : new PragmaConfig[]{PragmaConfig.APP, PragmaConfig.WAL_FULL}) {
+            for (SalesWorkload.Mode mode : SalesWorkload.Mode.values()) {
+                try (BenchmarkDatabase db = BenchmarkDatabase.create(config)) {
+                    db.fill(rows);
+                    db.restock();
+                    SalesWorkload workload = new SalesWorkload(db, config.name, rows, mode);
+                    add(workload.run(4, 500, 3000));
+                    System.err.println(String.format(Locale.US, "  %.1f sales per commit",
+                            workload.getSalesPerCommit()));
+
+                    if (config == PragmaConfig.APP) {
+                        int items = Math.min(SELL_OUT_ITEMS, rows);
+                        workload.checkSellOut(SELL_OUT_THREADS, items, SELL_OUT_STOCK, false);
+                        if (mode == SalesWorkload.Mode.NO_LEDGER) {
+                            workload.checkSellOut(SELL_OUT_THREADS, items, SELL_OUT_STOCK, true);
+                        }
+                        System.err.println("  sold out " + items + " items from " + SELL_OUT_THREADS +
+                                " threads without losing or overselling a unit");
+                    }
+
+                    if (config == PragmaConfig.APP && mode == SalesWorkload.Mode.LEDGER_GROUP_COMMIT) {
+                        long maxId = db.getMaxId();
+                        Random random = new Random(7);
+                        long now = System.currentTimeMillis();
+                        add(measure("salesRangeQuery", rows, 1000, 10000, 1, NO_SETUP,
+                                i -> db.querySales(1 + (long) random.nextInt((int) maxId), now - 60000, now)));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The cost of ProviderMetrics: a million queries counted, one in eight of them timed
+     * with two clock reads and recorded the way InventoryProvider samples its queries,
+     * recording alone, and a query of one item and a sale with and without it.
+     * <p>
+     * Fails if recording allocates, or if either costs more than MAX_METRICS_OVERHEAD of the
+     * median query of one item, the cheapest operation of the provider. Timing every query
+     * would not pass: the two clock reads alone come to 1-2% of a bare point query over JDBC.
+     */
+    private void runMetrics(int rows) throws Exception {
+        try (BenchmarkDatabase db = BenchmarkDatabase.create()) {
+            db.fill(rows);
+            db.restock();
+            long maxId = db.getMaxId();
+            Random random = new Random(7);
+            ProviderMetrics metrics = new ProviderMetrics(100, new String[]{"items", "item"});
+            int records = 1000000;
+
+            Result timed = measure("metricsSampleQueries", rows, 2, 20, records, NO_SETUP, i -> {
+                for (int j = 0; j < records; j++) {
+                    if (metrics.sampleQuery(101)) {
+                        long start = System.nanoTime();
+                        metrics.record(ProviderMetrics.OP_QUERY, 101, System.nanoTime() - start + (j & 0xffff), 1);
+                    }
+                }
+            });
+            add(timed);
+            Result record = measure("metricsRecord", rows, 2, 20, records, NO_SETUP, i -> {
+                for (int j = 0; j < records; j++) {
+                    metrics.record(ProviderMetrics.OP_QUERY, 101, j & 0xffff, 1);
+                }
+            });
+            add(record);
+            Result query = measure("queryById", rows, 1000, 20000, 1, NO_SETUP,
+                    i -> db.queryItem(1 + (long) random.nextInt((int) maxId)));
+            add(query);
+            add(measure("queryByIdSampled", rows, 1000, 20000, 1, NO_SETUP, i -> {
+                long id = 1 + (long) random.nextInt((int) maxId);
+                if (!metrics.sampleQuery(101)) {
+                    db.queryItem(id);
+                    return;
+                }
+                long start = System.nanoTime();
+                boolean found = db.queryItem(id);
+                metrics.record(ProviderMetrics.OP_QUERY, 101, System.nanoTime() - start, found ? 1 : 0);
+            }));
+            Result sell = measure("sell", rows, 1000, 10000, 1, NO_SETUP,
+                    i -> db.sell(1 + (long) random.nextInt((int) maxId), 1));
+            add(sell);
+            add(measure("sellRecorded", rows, 1000, 10000, 1, NO_SETUP, i -> {
+                long start = System.nanoTime();
+                db.sell(1 + (long) random.nextInt((int) maxId), 1);
+                metrics.record(ProviderMetrics.OP_CALL, -1, System.nanoTime() - start, 0);
+            }));
+
+            double timedNanos = timed.totalNanos / (double) timed.ops / records;
+            double recordNanos = record.totalNanos / (double) record.ops / records;
+            System.err.println(String.format(Locale.US,
+                    "  recording costs %.1fns, %.2f%% of the median query of one item; counting a " +
+                            "query and timing one in eight %.1fns, %.2f%% of it",
+                    recordNanos, 100 * recordNanos / query.p50Nanos, timedNanos,
+                    100 * timedNanos / query.p50Nanos));
+            if (timed.bytesPerOp >= records || record.bytesPerOp >= records) {
+                throw new IllegalStateException("Recording allocates");
+            }
+            if (recordNanos > MAX_METRICS_OVERHEAD * query.p50Nanos ||
+                    timedNanos > MAX_METRICS_OVERHEAD * query.p50Nanos) {
+                throw new IllegalStateException("Metrics overhead is over " + MAX_METRICS_OVERHEAD * 100 + "%");
+            }
+        }
+    }
+
+    /**
+     * Barcode lookups of random items, none of which are in the provider's barcode cache:
+     * the statement compiled once on the barcode index, then the read of the item, against
+     * a query on the items URI with a barcode selection, compiled for every query. Then
+     * lookups of the thousand items a shop sells most, whose barcodes are cached but whose
+     * items have to be read again, as every sale drops them from the item cache, and a
+     * scan-and-sell of random items.
+     * <p>
+     * Fails if the p99 of a lookup that misses the cache is over MAX_BARCODE_LOOKUP_P99_NANOS.
+     */
+    private void runBarcode(int rows) throws Exception {
+        try (BenchmarkDatabase db = BenchmarkDatabase.create()) {
+            db.fill(rows);
+            db.assignBarcodes();
+            db.restock();
+            long maxId = db.getMaxId();
+            Random random = new Random(7);
+            String[] barcode = new String[1];
+            Operation pickAny = i -> barcode[0] = BenchmarkDatabase.barcodeOf(1 + random.nextInt((int) maxId));
+            Operation pickPopular = i -> barcode[0] = BenchmarkDatabase.barcodeOf(1 + random.nextInt(1000));
+
+            Result lookup = measure("barcodeLookup", rows, 1000, 20000, 1, pickAny,
+                    i -> db.queryItem(db.lookupBarcode(barcode[0])));
+            add(lookup);
+            add(measure("barcodeQuery", rows, 1000, 20000, 1, pickAny,
+                    i -> db.queryByBarcode(barcode[0])));
+
+            // The barcode map of BarcodeCache
+            Map<String, Long> ids = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                    return size() > BARCODE_CACHE_SIZE;
+                }
+            };
+            add(measure("barcodeLookupCached", rows, 1000, 20000, 1, pickPopular, i -> {
+                Long id = ids.get(barcode[0]);
+                if (id == null) {
+                    id = db.lookupBarcode(barcode[0]);
+                    ids.put(barcode[0], id);
+                }
+                db.queryItem(id);
+            }));
+            add(measure("scanAndSell", rows, 1000, 10000, 1, pickAny,
+                    i -> db.sell(db.lookupBarcode(barcode[0]), 1)));
+
+            if (lookup.p99Nanos > MAX_BARCODE_LOOKUP_P99_NANOS) {
+                throw new IllegalStateException("Barcode lookup p99 is over " +
+                        MAX_BARCODE_LOOKUP_P99_NANOS / 1000 + "us");
+            }
+        }
+    }
+
+    /**
+     * Stock at LOCATIONS locations with every item at each of them, rows being the number of
+     * stock rows: a page of the catalog of one location, the whole catalog of one, the totals
+     * per location over all the stock, the stock of an item at every location and transfers
+     * of one unit of random items between random locations. Units are rows read, and
+     * transfers.
+     * <p>
+     * Fails if a read of the stock reads the stock table rather than only one of its
+     * covering indexes, or if the transfers created or lost units.
+     */
+    private void runLocation(int rows) throws Exception {
+        try (BenchmarkDatabase db = BenchmarkDatabase.create()) {
+            int items = Math.max(1, rows / LOCATIONS);
+            db.fill(items);
+            long[] locations = db.fillStock(LOCATIONS);
+            long maxId = db.getMaxId();
+            long units = db.sumStock();
+            Random random = new Random(7);
+
+            add(measure("locationPage", rows, 1000, 10000, PAGE_SIZE, NO_SETUP,
+                    i -> db.queryLocationPage(locations[random.nextInt(LOCATIONS)],
+                            random.nextInt((int) maxId), PAGE_SIZE)));
+            add(measure("locationCatalog", rows, 1, Math.max(3, Math.min(50, 3000000 / items)), items,
+                    NO_SETUP, i -> db.queryLocationPage(locations[random.nextInt(LOCATIONS)], 0, Integer.MAX_VALUE)));
+            add(measure("locationTotals", rows, 1, Math.max(3, Math.min(50, 3000000 / rows)), rows,
+                    NO_SETUP, i -> db.queryLocationTotals()));
+            add(measure("itemStock", rows, 1000, 10000, LOCATIONS, NO_SETUP,
+                    i -> db.queryItemStock(1 + random.nextInt((int) maxId))));
+            add(measure("transfer", rows, 1000, 10000, 1, NO_SETUP, i -> {
+                int from = random.nextInt(LOCATIONS);
+                int to = (from + 1 + random.nextInt(LOCATIONS - 1)) % LOCATIONS;
+                db.transfer(1 + random.nextInt((int) maxId), locations[from], locations[to], 1);
+            }));
+
+            for (Map.Entry<String, String> plan : db.explainStockQueries().entrySet()) {
+                System.err.println("  " + plan.getKey() + ": " + plan.getValue());
+                for (String step : plan.getValue().split("; ")) {
+                    if (step.matches(".*\\bstock\\b.*") && !step.contains("COVERING INDEX")) {
+                        throw new IllegalStateException(plan.getKey() + " reads the stock table: " + step);
+                    }
+                }
+            }
+            if (db.sumStock() != units || db.queryLocationTotals() != units) {
+                throw new IllegalStateException("Transfers changed the units in stock from " + units +
+                        " to " + db.sumStock());
+            }
+        }
+    }
+
+    /**
+     * Two devices syncing through an InMemorySyncServer. First the initial syncs: the first
+     * device pushes its rows items, the second, empty, pulls them all. Then SYNC_CHURN of
+     * the items changed on the first device, pushed, and pulled by the second, and finally
+     * both devices changing SYNC_CHURN of the items, some of them the same ones, and syncing
+     * in turn until both have every change. Units are changes; the bytes sent and received
+     * per sync are printed, the requests and responses gzipped as sent.
+     * <p>
+     * Fails if the devices don't end up with the same items.
+     */
+    private void runSync(int rows) throws Exception {
+        try (BenchmarkDatabase first = BenchmarkDatabase.create();
+             BenchmarkDatabase second = BenchmarkDatabase.create()) {
+            first.fill(rows);
+            InMemorySyncServer server = new InMemorySyncServer();
+            JdbcSyncStore firstStore = new JdbcSyncStore(first);
+            JdbcSyncStore secondStore = new JdbcSyncStore(second);
+            SyncEngine firstEngine = new SyncEngine(firstStore, server);
+            SyncEngine secondEngine = new SyncEngine(secondStore, server);
+            int churn = Math.max(1, (int) (rows * SYNC_CHURN));
+            long[] bytes = new long[2];
+
+            add(measure("syncInitialPush", rows, 0, 1, rows, NO_SETUP, i -> firstEngine.sync()));
+            printSyncBytes(firstEngine, 1);
+            add(measure("syncInitialPull", rows, 0, 1, rows, NO_SETUP, i -> secondEngine.sync()));
+            printSyncBytes(secondEngine, 1);
+            checkSynced(firstStore, secondStore);
+
+            Arrays.fill(bytes, 0);
+            add(measure("syncDeltaPush", rows, 1, 5, churn, i -> first.churn(churn), i -> {
+                firstEngine.sync();
+                addSyncBytes(bytes, firstEngine);
+            }));
+            printSyncBytes(bytes, 6);
+            // Pull the pushes above, so every pull below brings one push
+            secondEngine.sync();
+
+            Arrays.fill(bytes, 0);
+            add(measure("syncDeltaPull", rows, 1, 5, churn, i -> {
+                first.churn(churn);
+                firstEngine.sync();
+            }, i -> {
+                secondEngine.sync();
+                addSyncBytes(bytes, secondEngine);
+            }));
+            printSyncBytes(bytes, 6);
+            checkSynced(firstStore, secondStore);
+
+            // The second device pushes its own changes and pulls those of the first, which
+            // then pulls the second's
+            Arrays.fill(bytes, 0);
+            add(measure("syncBothChanged", rows, 1, 5, 2 * churn, i -> {
+                first.churn(churn);
+                second.churn(churn);
+            }, i -> {
+                firstEngine.sync();
+                addSyncBytes(bytes, firstEngine);
+                secondEngine.sync();
+                addSyncBytes(bytes, secondEngine);
+                firstEngine.sync();
+                addSyncBytes(bytes, firstEngine);
+            }));
+            printSyncBytes(bytes, 18);
+            checkSynced(firstStore, secondStore);
+        }
+    }
+
+    /**
+     * Sales as the app makes them, with the ledger and a commit each, without any sync
+     * tracking, with the sync triggers of version 11, which took the number of every change
+     * from a counter in sync_state and then stamped the item in a second write, and with the
+     * tracking of the app, where the sale numbers its change in its own write. Units are
+     * sales; the cost of each tracking over a sale without it is printed.
+     */
+    private void runSyncSales(int rows) throws Exception {
+        Result untracked = measureSales(rows, "sellNoSync", false, false);
+        Result counter = measureSales(rows, "sellSyncCounter", true, true);
+        Result tracked = measureSales(rows, "sellSync", true, false);
+        System.err.println(String.format(Locale.US,
+                "  sync tracking adds %.1f%% to the median sale, %.1f%% with the counter of version 11",
+                100 * ((double) tracked.p50Nanos / untracked.p50Nanos - 1),
+                100 * ((double) counter.p50Nanos / untracked.p50Nanos - 1)));
+    }
+
+    private Result measureSales(int rows, String name, boolean tracked, boolean counter) throws Exception {
+        try (BenchmarkDatabase db = BenchmarkDatabase.create()) {
+            db.fill(rows);
+            db.restock();
+            if (!tracked || counter) {
+                db.replaceSyncTracking(counter);
+            }
+            long maxId = db.getMaxId();
+            Random random = new Random(7);
+            Result result = measure(name, rows, 1000, 10000, 1, NO_SETUP,
+                    i -> db.sell(1 + (long) random.nextInt((int) maxId), 1));
+            add(result);
+            return result;
+        }
+    }
+
+    /**
+     * Time to the first row of the catalog on a cold start, with and without a
+     * CatalogSnapshot: opening the database and reading its first page, against reading the
+     * snapshot of that page. Also the cost of writing the snapshot after a burst of changes.
+     * Units are rows.
+     * <p>
+     * A cold start on a device also reads the files from storage, which the operating system
+     * here has cached after the first run, and starts the loader threads, so the times
+     * without the snapshot are lower bounds.
+     * <p>
+     * Fails if the snapshot doesn't have the rows of the first page, or if the median time
+     * to the first page without it is over MAX_COLD_START_P50_NANOS.
+     */
+    private void runColdStart(int rows) throws Exception {
+        try (BenchmarkDatabase db = BenchmarkDatabase.create()) {
+            db.fill(rows);
+            File file = File.createTempFile("catalog", ".snapshot");
+            try {
+                add(measure("snapshotWrite", rows, 10, 200, CatalogSnapshot.MAX_ROWS, NO_SETUP,
+                        i -> BenchmarkDatabase.readFirstPage(db.getConnection()).write(file)));
+
+                Result query = measure("coldStartQuery", rows, 10, 200, CatalogSnapshot.MAX_ROWS, NO_SETUP, i -> {
+                    try (Connection connection = db.openCold()) {
+                        BenchmarkDatabase.readFirstPage(connection);
+                    }
+                });
+                add(query);
+                add(measure("coldStartSnapshot", rows, 10, 200, CatalogSnapshot.MAX_ROWS, NO_SETUP,
+                        i -> CatalogSnapshot.read(file)));
+
+                CatalogSnapshot expected = BenchmarkDatabase.readFirstPage(db.getConnection());
+                CatalogSnapshot snapshot = CatalogSnapshot.read(file);
+                if (snapshot == null || snapshot.getCount() != expected.getCount()) {
+                    throw new IllegalStateException("The snapshot doesn't have the first page");
+                }
+                for (int i = 0; i < expected.getCount(); i++) {
+                    if (snapshot.getId(i) != expected.getId(i)
+                            || !snapshot.getName(i).equals(expected.getName(i))
+                            || snapshot.getPrice(i) != expected.getPrice(i)
+                            || snapshot.getQuantity(i) != expected.getQuantity(i)
+                            || !Objects.equals(snapshot.getPhoto(i), expected.getPhoto(i))) {
+                        throw new IllegalStateException("Row " + i + " of the snapshot differs");
+                    }
+                }
+                if (query.p50Nanos > MAX_COLD_START_P50_NANOS) {
+                    throw new IllegalStateException("Time to the first page is over " +
+                            MAX_COLD_START_P50_NANOS / 1000 + "us");
+                }
+            } finally {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Searches as typed in the catalog, through the full-text index as InventoryProvider runs
+     * them and with LIKE on every row: a prefix found in a tenth of the names, two words, one
+     * of them a supplier, and a number found in a few names only. Units are items found.
+     * <p>
+     * LIKE in name order can stop after SEARCH_LIMIT items, while the index ranks every item
+     * it finds, so LIKE can come out ahead for a common prefix. The fewer items match, the
+     * more rows LIKE reads: fails if the search for the number isn't faster through the index.
+     */
+    private void runSearch(int rows) throws Exception {
+        try (BenchmarkDatabase db = BenchmarkDatabase.create()) {
+            db.fill(rows);
+            String[][] searches = {{"common", "kra"}, {"twoWords", "sony wire"}, {"rare", "4242"}};
+            Result rareIndexed = null;
+            Result rareLike = null;
+            for (String[] search : searches) {
+                String[] words = search[1].split(" ");
+                String matchQuery = search[1].replace(" ", "* ") + "*";
+                int found = db.search(matchQuery, SEARCH_LIMIT);
+                System.err.println("  \"" + search[1] + "\" finds " + found + " items");
+
+                Result indexed = measure("search/" + search[0], rows, 20, 200, found, NO_SETUP,
+                        i -> db.search(matchQuery, SEARCH_LIMIT));
+                add(indexed);
+                Result like = measure("searchLike/" + search[0], rows, 2, 20, found, NO_SETUP,
+                        i -> db.searchLike(words, SEARCH_LIMIT));
+                add(like);
+                if (search[0].equals("rare")) {
+                    rareIndexed = indexed;
+                    rareLike = like;
+                }
+            }
+
+            if (rareIndexed.p50Nanos >= rareLike.p50Nanos) {
+                throw new IllegalStateException("Searching a rare word through the index is no faster than LIKE");
+            }
+        }
+    }
+
+    // The row of the editor's query, as the provider copies it out of a cached item
+    private static Object[] copyEditorColumns(Object[] item) {
+        Object[] row = new Object[EDITOR_COLUMNS.length];
+        for (int column = 0; column < row.length; column++) {
+            row[column] = item[EDITOR_COLUMNS[column]];
+        }
+        return row;
+    }
+
+    private static void addSyncBytes(long[] bytes, SyncEngine engine) {
+        bytes[0] += engine.getBytesSent();
+        bytes[1] += engine.getBytesReceived();
+    }
+
+    private static void printSyncBytes(SyncEngine engine, int syncs) {
+        printSyncBytes(new long[]{engine.getBytesSent(), engine.getBytesReceived()}, syncs);
+    }
+
+    private static void printSyncBytes(long[] bytes, int syncs) {
+        System.err.println(String.format(Locale.US, "  %.1f KB sent, %.1f KB received per sync",
+                bytes[0] / 1024.0 / syncs, bytes[1] / 1024.0 / syncs));
+    }
+
+    private static void checkSynced(JdbcSyncStore first, JdbcSyncStore second) throws Exception {
+        if (first.checksum() != second.checksum()) {
+            throw new IllegalStateException("The devices have different items after syncing");
+        }
+    }
+
+    private static void exportCsv(BenchmarkDatabase db, OutputStream out) throws Exception {
+        try (Writer writer = new BufferedWriter(
+                new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024)) {
+            db.exportCsv(writer);
+        }
+    }
+
+    private void add(Result result) {
+        System.err.println(result);
+        mResults.add(result);
+    }
+
+    private void writeJson(String out) throws IOException {
+        Writer writer = out == null ? new PrintWriter(System.out) : new FileWriter(out);
+        try (PrintWriter json = new PrintWriter(writer)) {
+            json.println("[");
+            for (int i = 0; i < mResults.size(); i++) {
+                json.print("  ");
+                json.print(mResults.get(i).toJson());
+                json.println(i + 1 < mResults.size() ? "," : "");
+            }
+            json.println("]");
+        }
+    }
+
+    // Stream that only counts the bytes written to it
+    private static final class CountingOutputStream extends OutputStream {
+        private long mCount;
+
+        @Override
+        public void write(int b) {
+            mCount++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            mCount += len;
+        }
+
+        long getCount() {
+            return mCount;
+        }
+    }
+}
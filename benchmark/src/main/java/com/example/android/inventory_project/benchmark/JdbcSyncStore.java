@@ -0,0 +1,338 @@
+package com.example.android.inventory_project.benchmark;
+
+import com.example.android.inventory_project.data.SyncBatch;
+import com.example.android.inventory_project.data.SyncChange;
+import com.example.android.inventory_project.data.SyncEngine;
+import com.example.android.inventory_project.data.SyncStore;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.example.android.inventory_project.data.InventorySql.SQL_CHANGED_ITEMS;
+import static com.example.android.inventory_project.data.InventorySql.SQL_CHANGED_TOMBSTONES;
+import static com.example.android.inventory_project.data.InventorySql.SQL_COUNT_TOMBSTONE;
+import static com.example.android.inventory_project.data.InventorySql.SQL_DELETE_PUSHED_TOMBSTONES;
+import static com.example.android.inventory_project.data.InventorySql.SQL_ITEM_BY_SYNC_ID;
+import static com.example.android.inventory_project.data.InventorySql.SQL_MARK_ITEMS_PUSHED;
+import static com.example.android.inventory_project.data.InventorySql.SQL_SET_APPLYING;
+import static com.example.android.inventory_project.data.InventorySql.SQL_SET_PENDING_PUSH;
+import static com.example.android.inventory_project.data.InventorySql.SQL_SYNC_STATE;
+import static com.example.android.inventory_project.data.InventorySql.SYNC_COLUMNS;
+
+/**
+ * The SyncStore of a BenchmarkDatabase, running the statements of InventorySql over JDBC as
+ * InventorySyncStore does. Keep the two in step.
+ */
+final class JdbcSyncStore implements SyncStore {
+
+    // The synced columns start at the fifth column of the item queries, column 5 in JDBC
+    private static final int SYNC_COLUMNS_START = 5;
+    private static final String SQL_INSERT_ITEM = "INSERT INTO inventory (" + SYNC_COLUMNS +
+            ", syncId, syncedQuantity) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String SQL_DELETE_ITEM = "DELETE FROM inventory WHERE _id = ?";
+
+    private final Connection mConnection;
+    private final PreparedStatement mChangedItems;
+    private final PreparedStatement mChangedTombstones;
+    private final PreparedStatement mItemBySyncId;
+    private final PreparedStatement mMarkItemsPushed;
+    private final PreparedStatement mDeletePushedTombstones;
+    private final PreparedStatement mSetPendingPush;
+    private final PreparedStatement mSetApplying;
+    private final PreparedStatement mCountTombstone;
+    private final PreparedStatement mInsertItem;
+    // Updates of the items by the mask of the columns they set, as InventorySyncStore only
+    // sets the columns that change
+    private final Map<Integer, PreparedStatement> mUpdateItem = new HashMap<>();
+    private final PreparedStatement mDeleteItem;
+
+    JdbcSyncStore(BenchmarkDatabase db) throws SQLException {
+        mConnection = db.getConnection();
+        mChangedItems = mConnection.prepareStatement(SQL_CHANGED_ITEMS);
+        mChangedTombstones = mConnection.prepareStatement(SQL_CHANGED_TOMBSTONES);
+        mItemBySyncId = mConnection.prepareStatement(SQL_ITEM_BY_SYNC_ID);
+        mMarkItemsPushed = mConnection.prepareStatement(SQL_MARK_ITEMS_PUSHED);
+        mDeletePushedTombstones = mConnection.prepareStatement(SQL_DELETE_PUSHED_TOMBSTONES);
+        mSetPendingPush = mConnection.prepareStatement(SQL_SET_PENDING_PUSH);
+        mSetApplying = mConnection.prepareStatement(SQL_SET_APPLYING);
+        mCountTombstone = mConnection.prepareStatement(SQL_COUNT_TOMBSTONE);
+        mInsertItem = mConnection.prepareStatement(SQL_INSERT_ITEM);
+        mDeleteItem = mConnection.prepareStatement(SQL_DELETE_ITEM);
+    }
+
+    @Override
+    public String getClientId() {
+        return readState("clientId");
+    }
+
+    @Override
+    public long getPulledVersion() {
+        return Long.parseLong(readState("pulledVersion"));
+    }
+
+    @Override
+    public SyncBatch takeChanges(int limit) {
+        try {
+            mConnection.setAutoCommit(false);
+            try {
+                String clientId;
+                long pushedSeq;
+                long pulledVersion;
+                try (Statement statement = mConnection.createStatement();
+                     ResultSet state = statement.executeQuery(SQL_SYNC_STATE)) {
+                    state.next();
+                    byte[] pending = state.getBytes(4);
+                    if (pending != null) {
+                        return SyncBatch.decode(pending);
+                    }
+                    clientId = state.getString(1);
+                    pushedSeq = state.getLong(2);
+                    pulledVersion = state.getLong(3);
+                }
+
+                List<SyncChange> changes = new ArrayList<>();
+                long seq = pushedSeq;
+                mChangedItems.setLong(1, pushedSeq);
+                mChangedItems.setInt(2, limit);
+                mChangedTombstones.setLong(1, pushedSeq);
+                mChangedTombstones.setInt(2, limit);
+                try (ResultSet items = mChangedItems.executeQuery();
+                     ResultSet tombstones = mChangedTombstones.executeQuery()) {
+                    boolean item = items.next();
+                    boolean tombstone = tombstones.next();
+                    while ((item || tombstone) && changes.size() < limit) {
+                        if (item && (!tombstone || items.getLong(2) < tombstones.getLong(2))) {
+                            seq = items.getLong(2);
+                            changes.add(readChange(items));
+                            item = items.next();
+                        } else {
+                            seq = tombstones.getLong(2);
+                            changes.add(SyncChange.deletion(tombstones.getString(1)));
+                            tombstone = tombstones.next();
+                        }
+                    }
+                }
+                SyncBatch batch = new SyncBatch(clientId, pulledVersion, seq, false, changes);
+                if (changes.isEmpty()) {
+                    return batch;
+                }
+
+                mMarkItemsPushed.setLong(1, pushedSeq);
+                mMarkItemsPushed.setLong(2, seq);
+                mMarkItemsPushed.executeUpdate();
+                mDeletePushedTombstones.setLong(1, seq);
+                mDeletePushedTombstones.executeUpdate();
+                mSetPendingPush.setLong(1, seq);
+                mSetPendingPush.setBytes(2, batch.encode());
+                mSetPendingPush.executeUpdate();
+                mConnection.commit();
+                return batch;
+            } finally {
+                rollbackUnlessCommitted();
+            }
+        } catch (SQLException | IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void acknowledge(SyncBatch response) {
+        applyAndSet(response, "UPDATE sync_state SET pendingPush = NULL");
+    }
+
+    @Override
+    public void applyPulled(SyncBatch response) {
+        applyAndSet(response, "UPDATE sync_state SET pulledVersion = " + response.getVersion());
+    }
+
+    /**
+     * Returns a hash of the synced columns of every item, equal on two devices that agree.
+     */
+    long checksum() throws SQLException {
+        long hash = 0;
+        try (Statement statement = mConnection.createStatement();
+             ResultSet items = statement.executeQuery("SELECT syncId, " + SYNC_COLUMNS +
+                     " FROM inventory ORDER BY syncId")) {
+            while (items.next()) {
+                for (int i = 1; i <= 1 + SyncChange.COLUMN_COUNT; i++) {
+                    String value = items.getString(i);
+                    hash = 31 * hash + (value == null ? 0 : value.hashCode());
+                }
+            }
+        }
+        return hash;
+    }
+
+    private void applyAndSet(SyncBatch response, String sql) {
+        try {
+            mConnection.setAutoCommit(false);
+            try {
+                apply(response.getChanges());
+                try (Statement statement = mConnection.createStatement()) {
+                    statement.executeUpdate(sql);
+                }
+                mConnection.commit();
+            } finally {
+                rollbackUnlessCommitted();
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void apply(List<SyncChange> changes) throws SQLException {
+        if (changes.isEmpty()) {
+            return;
+        }
+        mSetApplying.setInt(1, 1);
+        mSetApplying.executeUpdate();
+        for (SyncChange change : changes) {
+            mItemBySyncId.setString(1, change.getSyncId());
+            try (ResultSet item = mItemBySyncId.executeQuery()) {
+                if (!item.next()) {
+                    mCountTombstone.setString(1, change.getSyncId());
+                    boolean deletedHere;
+                    try (ResultSet count = mCountTombstone.executeQuery()) {
+                        deletedHere = count.next() && count.getLong(1) > 0;
+                    }
+                    if (!change.isDeleted() && !deletedHere) {
+                        bindValues(mInsertItem, readValues(change));
+                        mInsertItem.setString(9, change.getSyncId());
+                        bindLong(mInsertItem, 10, change.getValue(SyncChange.QUANTITY));
+                        mInsertItem.executeUpdate();
+                    }
+                } else if (change.isDeleted()) {
+                    mDeleteItem.setLong(1, item.getLong(1));
+                    mDeleteItem.executeUpdate();
+                } else {
+                    long syncedQuantity = item.getLong(4);
+                    Long synced = item.wasNull() ? null : syncedQuantity;
+                    Object[] local = readValues(item);
+                    Object[] merged = SyncEngine.merge(local, item.getInt(3), synced, change);
+                    int columns = SyncEngine.changedColumns(local, merged);
+                    boolean quantity = change.hasColumn(SyncChange.QUANTITY);
+                    if (columns != 0 || quantity) {
+                        PreparedStatement update = getUpdateItem(columns, quantity);
+                        int index = 1;
+                        for (int column = 0; column < SyncChange.COLUMN_COUNT; column++) {
+                            if (SyncChange.has(columns, column)) {
+                                bindValue(update, index++, column, merged[column]);
+                            }
+                        }
+                        if (quantity) {
+                            bindLong(update, index++, change.getValue(SyncChange.QUANTITY));
+                        }
+                        update.setLong(index, item.getLong(1));
+                        update.executeUpdate();
+                    }
+                }
+            }
+        }
+        mSetApplying.setInt(1, 0);
+        mSetApplying.executeUpdate();
+    }
+
+    private PreparedStatement getUpdateItem(int columns, boolean syncedQuantity) throws SQLException {
+        int key = columns | (syncedQuantity ? 1 << SyncChange.COLUMN_COUNT : 0);
+        PreparedStatement update = mUpdateItem.get(key);
+        if (update == null) {
+            StringBuilder sql = new StringBuilder("UPDATE inventory SET ");
+            String[] names = SYNC_COLUMNS.split(", ");
+            for (int column = 0; column < SyncChange.COLUMN_COUNT; column++) {
+                if (SyncChange.has(columns, column)) {
+                    sql.append(names[column]).append(" = ?, ");
+                }
+            }
+            if (syncedQuantity) {
+                sql.append("syncedQuantity = ?, ");
+            }
+            sql.setLength(sql.length() - 2);
+            update = mConnection.prepareStatement(sql.append(" WHERE _id = ?").toString());
+            mUpdateItem.put(key, update);
+        }
+        return update;
+    }
+
+    private void rollbackUnlessCommitted() throws SQLException {
+        if (!mConnection.getAutoCommit()) {
+            mConnection.rollback();
+            mConnection.setAutoCommit(true);
+        }
+    }
+
+    private String readState(String column) {
+        try (Statement statement = mConnection.createStatement();
+             ResultSet state = statement.executeQuery("SELECT " + column + " FROM sync_state")) {
+            state.next();
+            return state.getString(1);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static SyncChange readChange(ResultSet items) throws SQLException {
+        Object[] values = readValues(items);
+        long syncedQuantity = items.getLong(4);
+        boolean quantityDelta = !items.wasNull();
+        if (quantityDelta) {
+            Long quantity = (Long) values[SyncChange.QUANTITY];
+            values[SyncChange.QUANTITY] = (quantity == null ? 0 : quantity) - syncedQuantity;
+        }
+        return SyncChange.update(items.getString(1), items.getInt(3), values, quantityDelta);
+    }
+
+    private static Object[] readValues(ResultSet row) throws SQLException {
+        Object[] values = new Object[SyncChange.COLUMN_COUNT];
+        for (int column = 0; column < SyncChange.COLUMN_COUNT; column++) {
+            int index = SYNC_COLUMNS_START + column;
+            if (SyncChange.isText(column)) {
+                values[column] = row.getString(index);
+            } else {
+                long value = row.getLong(index);
+                values[column] = row.wasNull() ? null : (Object) value;
+            }
+        }
+        return values;
+    }
+
+    // The values of a change from the server, which always has every column
+    private static Object[] readValues(SyncChange change) {
+        Object[] values = new Object[SyncChange.COLUMN_COUNT];
+        for (int column = 0; column < SyncChange.COLUMN_COUNT; column++) {
+            values[column] = change.getValue(column);
+        }
+        return values;
+    }
+
+    private static void bindValues(PreparedStatement statement, Object[] values) throws SQLException {
+        for (int column = 0; column < SyncChange.COLUMN_COUNT; column++) {
+            bindValue(statement, column + 1, column, values[column]);
+        }
+    }
+
+    private static void bindValue(PreparedStatement statement, int index, int column, Object value)
+            throws SQLException {
+        if (SyncChange.isText(column)) {
+            statement.setString(index, (String) value);
+        } else {
+            bindLong(statement, index, value);
+        }
+    }
+
+    private static void bindLong(PreparedStatement statement, int index, Object value) throws SQLException {
+        if (value == null) {
+            statement.setNull(index, Types.INTEGER);
+        } else {
+            statement.setLong(index, (Long) value);
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.example.android.inventory_project.benchmark;
+
+import com.example.android.inventory_project.data.InventorySql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import static com.example.android.inventory_project.benchmark.BenchmarkHarness.Result;
+
+/**
+ * Catalog reads and sales at the same time, each thread on its own connection: readers page
+ * through the catalog like CatalogPager, writers sell like InventoryProvider's METHOD_SELL,
+ * in an exclusive transaction as SQLiteDatabase.beginTransaction() starts it. Shows how much
+ * the two block each other under a PragmaConfig.
+ */
+final class MixedWorkload {
+
+    // Same as CatalogPager.PAGE_SIZE
+    private static final int PAGE_SIZE = 50;
+
+    // Result code of a statement that timed out waiting for a lock
+    private static final int SQLITE_BUSY = 5;
+
+    private static final String SQL_CATALOG_PAGE =
+            "SELECT _id, name, price, quantity, photo FROM inventory WHERE _id > ? ORDER BY _id LIMIT ?";
+
+    private final BenchmarkDatabase mDb;
+    private final String mName;
+    private final int mRows;
+    private final long mMaxId;
+
+    private volatile boolean mRecording;
+    private volatile boolean mStopped;
+    private int mBusyCount;
+
+    MixedWorkload(BenchmarkDatabase db, String name, int rows) throws SQLException {
+        mDb = db;
+        mName = name;
+        mRows = rows;
+        mMaxId = db.getMaxId();
+    }
+
+    /**
+     * Runs the readers and writers for warmupMillis, then records them for durationMillis.
+     *
+     * @return the results of the reads (units are rows) and of the sales
+     */
+    Result[] run(int readers, int writers, long warmupMillis, long durationMillis) throws Exception {
+        List<Worker> workers = new ArrayList<>();
+        for (int i = 0; i < readers; i++) {
+            workers.add(new Reader(i));
+        }
+        for (int i = 0; i < writers; i++) {
+            workers.add(new Writer(i));
+        }
+        CountDownLatch ready = new CountDownLatch(workers.size());
+        for (Worker worker : workers) {
+            worker.start(ready);
+        }
+        ready.await();
+
+        Thread.sleep(warmupMillis);
+        BenchmarkHarness.resetPeakHeap();
+        mRecording = true;
+        long start = System.nanoTime();
+        Thread.sleep(durationMillis);
+        mStopped = true;
+        long wallNanos = System.nanoTime() - start;
+        for (Worker worker : workers) {
+            worker.join();
+        }
+        long peakHeap = BenchmarkHarness.getPeakHeap();
+
+        return new Result[]{
+                merge("mixedRead/" + mName, workers, Reader.class, PAGE_SIZE, wallNanos, peakHeap),
+                merge("mixedSell/" + mName, workers, Writer.class, 1, wallNanos, peakHeap)};
+    }
+
+    private Result merge(String name, List<Worker> workers, Class<? extends Worker> type, int unitsPerOp,
+                         long wallNanos, long peakHeap) throws Exception {
+        long[] latencies = new long[0];
+        for (Worker worker : workers) {
+            if (!type.isInstance(worker)) {
+                continue;
+            }
+            if (worker.mError != null) {
+                throw worker.mError;
+            }
+            mBusyCount += worker.mBusyCount;
+            int offset = latencies.length;
+            latencies = Arrays.copyOf(latencies, offset + worker.mCount);
+            System.arraycopy(worker.mLatencies, 0, latencies, offset, worker.mCount);
+        }
+        Arrays.sort(latencies);
+        // The ops of all threads over the wall time, so ops/s is the combined throughput
+        return new Result(name, mRows, latencies.length, unitsPerOp, wallNanos,
+                BenchmarkHarness.percentile(latencies, 0.50), BenchmarkHarness.percentile(latencies, 0.99),
+                -1, peakHeap);
+    }
+
+    /**
+     * @return the number of operations of the last run that failed with SQLITE_BUSY
+     */
+    int getBusyCount() {
+        return mBusyCount;
+    }
+
+    /**
+     * One thread of the workload, with its own connection, timing every operation while
+     * the workload is recording.
+     */
+    private abstract class Worker {
+        private final Thread mThread;
+        final Random mRandom;
+        long[] mLatencies = new long[1 << 16];
+        int mCount;
+        int mBusyCount;
+        Exception mError;
+        private CountDownLatch mReady;
+
+        Worker(String name, int seed) {
+            mRandom = new Random(seed);
+            mThread = new Thread(this::runLoop, name);
+        }
+
+        abstract void prepare(Connection connection) throws SQLException;
+
+        abstract void operate() throws SQLException;
+
+        void start(CountDownLatch ready) {
+            mReady = ready;
+            mThread.start();
+        }
+
+        void join() throws InterruptedException {
+            mThread.join();
+        }
+
+        private void runLoop() {
+            try (Connection connection = mDb.openConnection()) {
+                prepare(connection);
+                mReady.countDown();
+                while (!mStopped) {
+                    long start = System.nanoTime();
+                    boolean busy = false;
+                    try {
+                        operate();
+                    } catch (SQLException e) {
+                        // Gave up waiting for a lock after the busy timeout, as Android
+                        // would with a SQLiteDatabaseLockedException. Counted as an op, since
+                        // the caller waited for it all the same.
+                        if (e.getErrorCode() != SQLITE_BUSY) {
+                            throw e;
+                        }
+                        busy = true;
+                    }
+                    long elapsed = System.nanoTime() - start;
+                    if (mRecording && !mStopped) {
+                        if (busy) {
+                            mBusyCount++;
+                        }
+                        if (mCount == mLatencies.length) {
+                            mLatencies = Arrays.copyOf(mLatencies, mCount * 2);
+                        }
+                        mLatencies[mCount++] = elapsed;
+                    }
+                }
+            } catch (Exception e) {
+                mError = e;
+                mReady.countDown();
+            }
+        }
+    }
+
+    private final class Reader extends Worker {
+        private PreparedStatement mPage;
+
+        Reader(int index) {
+            super("mixed-reader-" + index, 100 + index);
+        }
+
+        @Override
+        void prepare(Connection connection) throws SQLException {
+            mPage = connection.prepareStatement(SQL_CATALOG_PAGE);
+        }
+
+        @Override
+        void operate() throws SQLException {
+            mPage.setLong(1, mRandom.nextInt((int) Math.max(1, mMaxId - PAGE_SIZE)));
+            mPage.setInt(2, PAGE_SIZE);
+            try (ResultSet page = mPage.executeQuery()) {
+                while (page.next()) {
+                    page.getLong(1);
+                    page.getString(2);
+                    page.getInt(3);
+                    page.getInt(4);
+                    page.getString(5);
+                }
+            }
+        }
+    }
+
+    private final class Writer extends Worker {
+        private Statement mStatement;
+        private PreparedStatement mSell;
+        private PreparedStatement mQuantity;
+
+        Writer(int index) {
+            super("mixed-writer-" + index, 200 + index);
+        }
+
+        @Override
+        void prepare(Connection connection) throws SQLException {
+            mStatement = connection.createStatement();
+            mSell = connection.prepareStatement(InventorySql.SQL_SELL_ITEM);
+            mQuantity = connection.prepareStatement(InventorySql.SQL_ITEM_QUANTITY);
+        }
+
+        @Override
+        void operate() throws SQLException {
+            long id = 1 + (long) mRandom.nextInt((int) mMaxId);
+            mStatement.execute("BEGIN EXCLUSIVE");
+            try {
+                mSell.setInt(1, 1);
+                mSell.setLong(2, id);
+                mSell.setInt(3, 1);
+                if (mSell.executeUpdate() != 0) {
+                    mQuantity.setLong(1, id);
+                    try (ResultSet result = mQuantity.executeQuery()) {
+                        result.next();
+                        result.getInt(1);
+                    }
+                }
+                mStatement.execute("COMMIT");
+            } catch (SQLException e) {
+                mStatement.execute("ROLLBACK");
+                throw e;
+            }
+        }
+    }
+}
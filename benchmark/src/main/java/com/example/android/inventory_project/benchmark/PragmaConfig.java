@@ -0,0 +1,44 @@
+package com.example.android.inventory_project.benchmark;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * The connection settings of DatabaseConfig, applied through JDBC. APP is what the app
+ * ships with; the others are the alternatives the mixed workload compares it against.
+ */
+final class PragmaConfig {
+
+    // Same as the busy timeout of Android's SQLiteConnection
+    private static final int BUSY_TIMEOUT_MILLIS = 2500;
+
+    // The default rollback journal, as before the app enabled WAL
+    static final PragmaConfig ROLLBACK = new PragmaConfig("rollback", false, "FULL");
+    static final PragmaConfig WAL_FULL = new PragmaConfig("walFull", true, "FULL");
+    // Same as DatabaseConfig.DEFAULT
+    static final PragmaConfig APP = new PragmaConfig("walNormal", true, "NORMAL");
+
+    static final PragmaConfig[] ALL = {ROLLBACK, WAL_FULL, APP};
+
+    final String name;
+    private final boolean mWriteAheadLogging;
+    private final String mSynchronous;
+
+    private PragmaConfig(String name, boolean writeAheadLogging, String synchronous) {
+        this.name = name;
+        mWriteAheadLogging = writeAheadLogging;
+        mSynchronous = synchronous;
+    }
+
+    /**
+     * Applies the settings to a new connection, like InventoryDbHelper.onConfigure().
+     */
+    void apply(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA busy_timeout = " + BUSY_TIMEOUT_MILLIS);
+            statement.execute("PRAGMA journal_mode = " + (mWriteAheadLogging ? "WAL" : "DELETE"));
+            statement.execute("PRAGMA synchronous = " + mSynchronous);
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package com.example.android.inventory_project.benchmark;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static com.example.android.inventory_project.benchmark.BenchmarkHarness.Result;
+
+/**
+ * Sales on several threads at once, all through the main connection as every write of the
+ * app goes through the primary connection of SQLiteDatabase. Sales are committed one by one
+ * without the ledger, as before it, one by one with the ledger, or grouped with the ledger
+ * the way SaleWriter commits them.
+ */
+final class SalesWorkload {
+
+    enum Mode {
+        NO_LEDGER("noLedger"),
+        LEDGER("ledger"),
+        LEDGER_GROUP_COMMIT("ledgerGroupCommit");
+
+        final String name;
+
+        Mode(String name) {
+            this.name = name;
+        }
+    }
+
+    // Same as SaleWriter.MAX_BATCH_SIZE
+    private static final int MAX_BATCH_SIZE = 64;
+
+    private final BenchmarkDatabase mDb;
+    private final Connection mConnection;
+    private final String mName;
+    private final int mRows;
+    private final Mode mMode;
+    private final long mMaxId;
+
+    private volatile boolean mRecording;
+    private volatile boolean mStopped;
+
+    // Group commit state, guarded by mLock, as in SaleWriter
+    private final Object mLock = new Object();
+    private List<Sale> mPending = new ArrayList<>();
+    private boolean mCommitting;
+    private long mSaleCount;
+    private long mCommitCount;
+
+    SalesWorkload(BenchmarkDatabase db, String configName, int rows, Mode mode) throws SQLException {
+        mDb = db;
+        mConnection = db.getConnection();
+        mName = "sales/" + mode.name + "/" + configName;
+        mRows = rows;
+        mMode = mode;
+        mMaxId = db.getMaxId();
+    }
+
+    /**
+     * Runs the sellers for warmupMillis, then records them for durationMillis.
+     */
+    Result run(int threads, long warmupMillis, long durationMillis) throws Exception {
+        List<Seller> sellers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            sellers.add(new Seller(i));
+        }
+        CountDownLatch ready = new CountDownLatch(threads);
+        for (Seller seller : sellers) {
+            seller.start(ready);
+        }
+        ready.await();
+
+        Thread.sleep(warmupMillis);
+        BenchmarkHarness.resetPeakHeap();
+        synchronized (mLock) {
+            mSaleCount = 0;
+            mCommitCount = 0;
+        }
+        mRecording = true;
+        long start = System.nanoTime();
+        Thread.sleep(durationMillis);
+        mStopped = true;
+        long wallNanos = System.nanoTime() - start;
+        for (Seller seller : sellers) {
+            seller.join();
+        }
+        long peakHeap = BenchmarkHarness.getPeakHeap();
+
+        long[] latencies = new long[0];
+        for (Seller seller : sellers) {
+            if (seller.mError != null) {
+                throw seller.mError;
+            }
+            int offset = latencies.length;
+            latencies = Arrays.copyOf(latencies, offset + seller.mCount);
+            System.arraycopy(seller.mLatencies, 0, latencies, offset, seller.mCount);
+        }
+        Arrays.sort(latencies);
+        // The sales of all threads over the wall time, so ops/s is the combined throughput
+        return new Result(mName, mRows, latencies.length, 1, wallNanos,
+                BenchmarkHarness.percentile(latencies, 0.50), BenchmarkHarness.percentile(latencies, 0.99),
+                -1, peakHeap);
+    }
+
+    /**
+     * Sells out the items with _ID 1 to items, stock units each, one unit at a time from
+     * several threads at once, and fails if a decrement was lost or an item oversold: every
+     * item must end with no stock after exactly stock sales, every sale must have left a
+     * different quantity, and with the ledger every unit sold must be in it.
+     *
+     * @param ownConnections sell with SQL_SELL_ITEM alone on a connection per thread, in
+     *                       auto-commit, instead of the way of the workload's mode
+     */
+    void checkSellOut(int threads, int items, int stock, boolean ownConnections) throws Exception {
+        mDb.stock(items, stock);
+        AtomicIntegerArray sold = new AtomicIntegerArray(items);
+        // The quantities the sales left, as a count per item and quantity
+        AtomicIntegerArray left = new AtomicIntegerArray(items * stock);
+        Exception[] errors = new Exception[threads];
+        Thread[] sellers = new Thread[threads];
+        CountDownLatch start = new CountDownLatch(1);
+        for (int i = 0; i < threads; i++) {
+            int index = i;
+            sellers[i] = new Thread(() -> {
+                Random random = new Random(500 + index);
+                boolean[] soldOut = new boolean[items];
+                int remaining = items;
+                try (Connection connection = ownConnections ? mDb.openConnection() : null) {
+                    start.await();
+                    while (remaining > 0) {
+                        int item = random.nextInt(items);
+                        if (soldOut[item]) {
+                            continue;
+                        }
+                        int quantity = 0;
+                        boolean made;
+                        if (ownConnections) {
+                            made = BenchmarkDatabase.sell(connection, item + 1, 1);
+                        } else {
+                            quantity = sell(item + 1);
+                            made = quantity != -1;
+                        }
+                        if (!made) {
+                            soldOut[item] = true;
+                            remaining--;
+                            continue;
+                        }
+                        if (sold.incrementAndGet(item) > stock) {
+                            throw new IllegalStateException(mName + ": item " + (item + 1) + " oversold");
+                        }
+                        if (!ownConnections) {
+                            if (quantity < 0 || quantity >= stock) {
+                                throw new IllegalStateException(mName + ": item " + (item + 1) + " left at " +
+                                        quantity);
+                            }
+                            left.incrementAndGet(item * stock + quantity);
+                        }
+                    }
+                } catch (Exception e) {
+                    errors[index] = e;
+                }
+            }, "seller-" + i);
+            sellers[i].start();
+        }
+        start.countDown();
+        for (int i = 0; i < threads; i++) {
+            sellers[i].join();
+            if (errors[i] != null) {
+                throw errors[i];
+            }
+        }
+
+        for (int item = 0; item < items; item++) {
+            long id = item + 1;
+            int quantity = mDb.queryQuantity(id);
+            if (sold.get(item) != stock || quantity != 0) {
+                throw new IllegalStateException(mName + ": item " + id + " sold " + sold.get(item) +
+                        " of " + stock + " units and has " + quantity + " left");
+            }
+            if (!ownConnections) {
+                for (int j = 0; j < stock; j++) {
+                    if (left.get(item * stock + j) != 1) {
+                        throw new IllegalStateException(mName + ": " + left.get(item * stock + j) +
+                                " sales of item " + id + " left " + j + " units");
+                    }
+                }
+            }
+            long ledger = mDb.queryUnitsSold(id);
+            long expected = !ownConnections && mMode != Mode.NO_LEDGER ? stock : 0;
+            if (ledger != expected) {
+                throw new IllegalStateException(mName + ": the ledger has " + ledger + " units of item " +
+                        id + " sold, not " + expected);
+            }
+        }
+    }
+
+    /**
+     * @return the average number of sales per transaction since recording started
+     */
+    double getSalesPerCommit() {
+        synchronized (mLock) {
+            return mCommitCount == 0 ? 0 : (double) mSaleCount / mCommitCount;
+        }
+    }
+
+    private int sell(long id) throws SQLException {
+        long timestamp = System.currentTimeMillis();
+        if (mMode == Mode.LEDGER_GROUP_COMMIT) {
+            return sellGrouped(new Sale(id, timestamp));
+        }
+        // Each sale in its own transaction, waiting for the connection like a transaction
+        // of SQLiteDatabase waits for the primary connection
+        synchronized (mConnection) {
+            mConnection.setAutoCommit(false);
+            try {
+                int quantity = mDb.sellInTransaction(id, 1, timestamp, mMode == Mode.LEDGER);
+                mConnection.commit();
+                return quantity;
+            } finally {
+                mConnection.setAutoCommit(true);
+                synchronized (mLock) {
+                    mSaleCount++;
+                    mCommitCount++;
+                }
+            }
+        }
+    }
+
+    // Same as SaleWriter.sell()
+    private int sellGrouped(Sale sale) throws SQLException {
+        synchronized (mLock) {
+            mPending.add(sale);
+        }
+        while (true) {
+            List<Sale> batch;
+            synchronized (mLock) {
+                while (!sale.done && mCommitting) {
+                    try {
+                        mLock.wait();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+                if (sale.done) {
+                    break;
+                }
+                mCommitting = true;
+                if (mPending.size() <= MAX_BATCH_SIZE) {
+                    batch = mPending;
+                    mPending = new ArrayList<>();
+                } else {
+                    List<Sale> head = mPending.subList(0, MAX_BATCH_SIZE);
+                    batch = new ArrayList<>(head);
+                    head.clear();
+                }
+            }
+
+            SQLException error = null;
+            try {
+                commit(batch);
+            } catch (SQLException e) {
+                error = e;
+            }
+
+            synchronized (mLock) {
+                for (Sale done : batch) {
+                    done.error = error;
+                    done.done = true;
+                }
+                mSaleCount += batch.size();
+                mCommitCount++;
+                mCommitting = false;
+                mLock.notifyAll();
+            }
+        }
+        if (sale.error != null) {
+            throw sale.error;
+        }
+        return sale.quantity;
+    }
+
+    private void commit(List<Sale> batch) throws SQLException {
+        synchronized (mConnection) {
+            mConnection.setAutoCommit(false);
+            try {
+                for (Sale sale : batch) {
+                    sale.quantity = mDb.sellInTransaction(sale.id, 1, sale.timestamp, true);
+                }
+                mConnection.commit();
+            } catch (SQLException e) {
+                mConnection.rollback();
+                throw e;
+            } finally {
+                mConnection.setAutoCommit(true);
+            }
+        }
+    }
+
+    private static final class Sale {
+        final long id;
+        final long timestamp;
+        int quantity;
+        SQLException error;
+        boolean done;
+
+        Sale(long id, long timestamp) {
+            this.id = id;
+            this.timestamp = timestamp;
+        }
+    }
+
+    /**
+     * One thread selling random items back to back, timing every sale while the workload
+     * is recording.
+     */
+    private final class Seller {
+        private final Thread mThread;
+        private final Random mRandom;
+        long[] mLatencies = new long[1 << 16];
+        int mCount;
+        Exception mError;
+        private CountDownLatch mReady;
+
+        Seller(int index) {
+            mRandom = new Random(300 + index);
+            mThread = new Thread(this::runLoop, "seller-" + index);
+        }
+
+        void start(CountDownLatch ready) {
+            mReady = ready;
+            mThread.start();
+        }
+
+        void join() throws InterruptedException {
+            mThread.join();
+        }
+
+        private void runLoop() {
+            mReady.countDown();
+            try {
+                while (!mStopped) {
+                    long id = 1 + (long) mRandom.nextInt((int) mMaxId);
+                    long start = System.nanoTime();
+                    sell(id);
+                    long elapsed = System.nanoTime() - start;
+                    if (mRecording && !mStopped) {
+                        if (mCount == mLatencies.length) {
+                            mLatencies = Arrays.copyOf(mLatencies, mCount * 2);
+                        }
+                        mLatencies[mCount++] = elapsed;
+                    }
+                }
+            } catch (Exception e) {
+                mError = e;
+            }
+        }
+    }
+}